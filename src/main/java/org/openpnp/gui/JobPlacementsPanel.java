@@ -783,8 +783,8 @@ public class JobPlacementsPanel extends JPanel {
                     placement.setType(type);
                 }
                 tableModel.fireTableDataChanged();
-                updateActivePlacements();
             }
+            updateActivePlacements();
         }
     };
 
@@ -826,8 +826,8 @@ public class JobPlacementsPanel extends JPanel {
                 }
                 tableModel.fireTableCellUpdated(placement, 
                         Translations.getString("PlacementsTableModel.ColumnName.Side")); //$NON-NLS-1$
-                updateActivePlacements();
             }
+            updateActivePlacements();
         }
     };
     
@@ -869,8 +869,8 @@ public class JobPlacementsPanel extends JPanel {
                 }
                 tableModel.fireTableCellUpdated(placement, 
                         Translations.getString("PlacementsTableModel.ColumnName.ErrorHandling")); //$NON-NLS-1$
-                updateActivePlacements();
             }
+            updateActivePlacements();
         }
     };
     
@@ -899,13 +899,14 @@ public class JobPlacementsPanel extends JPanel {
 
         @Override
         public void actionPerformed(ActionEvent arg0) {
-            for (Placement placement : getSelections()) {
-                Object oldValue = jobPanel.getJob().retrievePlacedStatus(boardOrPanelLocation, placement.getId());
-                jobPanel.getJob().storePlacedStatus(boardOrPanelLocation, placement.getId(), placed);
-                tableModel.fireTableCellUpdated(placement,
-                        Translations.getString("PlacementsTableModel.ColumnName.Placed")); //$NON-NLS-1$
-                updateActivePlacements();
-            }
+            jobPanel.getJob().batchStateChanges(() -> {
+                for (Placement placement : getSelections()) {
+                    jobPanel.getJob().storePlacedStatus(boardOrPanelLocation, placement.getId(), placed);
+                    tableModel.fireTableCellUpdated(placement,
+                            Translations.getString("PlacementsTableModel.ColumnName.Placed")); //$NON-NLS-1$
+                }
+            });
+            updateActivePlacements();
         }
     };
 
@@ -944,8 +945,8 @@ public class JobPlacementsPanel extends JPanel {
                 }
                 tableModel.fireTableCellUpdated(placement,
                         Translations.getString("PlacementsTableModel.ColumnName.Enabled")); //$NON-NLS-1$
-                updateActivePlacements();
             }
+            updateActivePlacements();
         }
     };
 
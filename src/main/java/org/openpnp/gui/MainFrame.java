@@ -94,6 +94,7 @@ import org.openpnp.model.Configuration;
 import org.openpnp.model.Configuration.TablesLinked;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.scripting.ScriptFileWatcher;
+import org.openpnp.util.DebugImageWriter;
 import org.openpnp.util.UiUtils;
 import org.pmw.tinylog.Logger;
 
@@ -1097,6 +1098,8 @@ public class MainFrame extends JFrame {
         catch (Exception e) {
             e.printStackTrace();
         }
+        // Write the queued debug images, the writer threads do not keep the application alive.
+        DebugImageWriter.shutdown(10000);
         Logger.info("Shutdown complete, exiting."); //$NON-NLS-1$
         System.exit(0);
         return true;
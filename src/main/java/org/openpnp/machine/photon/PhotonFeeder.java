@@ -250,6 +250,44 @@ public class PhotonFeeder extends ReferenceFeeder {
 
     @Override
     public void feed(Nozzle nozzle) throws Exception {
+        int timeToWaitMillis = moveFeedForward();
+        waitForFeed(System.currentTimeMillis(), timeToWaitMillis);
+    }
+
+    @Override
+    public boolean canPrefeed() {
+        return true;
+    }
+
+    @Override
+    public DeferredFeed prefeed(Nozzle nozzle) throws Exception {
+        long issued = System.currentTimeMillis();
+        int timeToWaitMillis = moveFeedForward();
+        return new DeferredFeed() {
+            @Override
+            public boolean isDone() {
+                return System.currentTimeMillis() - issued >= timeToWaitMillis;
+            }
+
+            @Override
+            public void complete() throws Exception {
+                waitForFeed(issued, timeToWaitMillis);
+            }
+
+            @Override
+            public double getFeedTime() {
+                return timeToWaitMillis*0.001;
+            }
+        };
+    }
+
+    /**
+     * Commands the feeder to move forward by one part.
+     *
+     * @return The time in milliseconds the feeder expects the feed to take.
+     * @throws Exception
+     */
+    private int moveFeedForward() throws Exception {
         for (int i = 0; i <= photonProperties.getFeederCommunicationMaxRetry(); i++) {
             findSlotAddressIfNeeded();
             initializeIfNeeded();
@@ -273,30 +311,43 @@ public class PhotonFeeder extends ReferenceFeeder {
                 continue;  // We'll initialize it on a retry
             }
 
-            int timeToWaitMillis = moveFeedForwardResponse.expectedTimeToFeed;
+            return moveFeedForwardResponse.expectedTimeToFeed;
+        }
 
-            for (int j = 0; j < 3; j++) {
-                //noinspection BusyWait
-                Thread.sleep(timeToWaitMillis);
+        throw new FeedFailureException("Failed to feed for an unknown reason. Is the feeder inserted?");
+    }
 
-                MoveFeedStatus moveFeedStatus = new MoveFeedStatus(slotAddress);
-                MoveFeedStatus.Response moveFeedStatusResponse = moveFeedStatus.send(photonBus);
+    /**
+     * Waits for the feed issued at the given time to complete.
+     *
+     * @param issued The System.currentTimeMillis() when the feed was issued.
+     * @param timeToWaitMillis The time the feeder expects the feed to take.
+     * @throws Exception
+     */
+    private void waitForFeed(long issued, int timeToWaitMillis) throws Exception {
+        for (int j = 0; j < 3; j++) {
+            // The first wait only covers what is left of the expected feed time.
+            long wait = (j == 0 ? issued + timeToWaitMillis - System.currentTimeMillis() : timeToWaitMillis);
+            if (wait > 0) {
+                //noinspection BusyWait
+                Thread.sleep(wait);
+            }
 
-                if (moveFeedStatusResponse == null) {
-                    continue; // Timeout. retry after delay.
-                }
+            MoveFeedStatus moveFeedStatus = new MoveFeedStatus(slotAddress);
+            MoveFeedStatus.Response moveFeedStatusResponse = moveFeedStatus.send(photonBus);
 
-                if (moveFeedStatusResponse.error == ErrorTypes.NONE) {
-                    return;
-                } else if (moveFeedStatusResponse.error == ErrorTypes.COULD_NOT_REACH) {
-                    throw new FeedFailureException("Feeder could not reach its destination.");
-                }
+            if (moveFeedStatusResponse == null) {
+                continue; // Timeout. retry after delay.
             }
 
-            throw new FeedFailureException("Feeder timed out when we requested a feed status update.");
+            if (moveFeedStatusResponse.error == ErrorTypes.NONE) {
+                return;
+            } else if (moveFeedStatusResponse.error == ErrorTypes.COULD_NOT_REACH) {
+                throw new FeedFailureException("Feeder could not reach its destination.");
+            }
         }
 
-        throw new FeedFailureException("Failed to feed for an unknown reason. Is the feeder inserted?");
+        throw new FeedFailureException("Feeder timed out when we requested a feed status update.");
     }
 
     @Override
@@ -5,7 +5,6 @@ import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 
-import javax.imageio.ImageIO;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.JOptionPane;
@@ -14,7 +13,6 @@ import org.opencv.core.Core;
 import org.opencv.core.Core.MinMaxLocResult;
 import org.opencv.core.Mat;
 import org.opencv.core.Rect;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 import org.openpnp.ConfigurationListener;
 import org.openpnp.Translations;
@@ -36,6 +34,7 @@ import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.NozzleTip;
 import org.openpnp.spi.PropertySheetHolder;
 import org.openpnp.spi.base.AbstractNozzleTip;
+import org.openpnp.util.DebugImageWriter;
 import org.openpnp.util.ImageUtils;
 import org.openpnp.util.LogUtils;
 import org.openpnp.util.MovableUtils;
@@ -1220,11 +1219,11 @@ public class ReferenceNozzleTip extends AbstractNozzleTip {
                         if (LogUtils.isDebugEnabled()) {
                             File file;
                             file = Configuration.get().createResourceFile(getClass(), "camera-cropped", ".png");
-                            Imgcodecs.imwrite(file.getAbsolutePath(), cameraCropMat);
+                            DebugImageWriter.get().write(file, cameraCropMat);
                             file = Configuration.get().createResourceFile(getClass(), "template-empty", ".png");
-                            Imgcodecs.imwrite(file.getAbsolutePath(), templateMatEmpty);
+                            DebugImageWriter.get().write(file, templateMatEmpty);
                             file = Configuration.get().createResourceFile(getClass(), "template-occupied", ".png");
-                            Imgcodecs.imwrite(file.getAbsolutePath(), templateMatOccupied);
+                            DebugImageWriter.get().write(file, templateMatOccupied);
                         }
                         Mat resultEmptyMat = new Mat();
                         Mat resultOccupiedMat = new Mat();
@@ -1241,13 +1240,10 @@ public class ReferenceNozzleTip extends AbstractNozzleTip {
                         if (LogUtils.isDebugEnabled()) {
                             File file;
                             file = Configuration.get().createResourceFile(getClass(), "match-empty", ".png");
-                            // this is a 3x32bit image, cannot save these as .png, need to convert to known image format first
-                            BufferedImage img;
-                            img = OpenCvUtils.toBufferedImage(resultEmptyMat);
-                            ImageIO.write(img, "png", file);
+                            // this is a 32bit float image, the writer converts it to a known image format first
+                            DebugImageWriter.get().write(file, resultEmptyMat);
                             file = Configuration.get().createResourceFile(getClass(), "match-occupied", ".png");
-                            img = OpenCvUtils.toBufferedImage(resultOccupiedMat);
-                            ImageIO.write(img, "png", file);
+                            DebugImageWriter.get().write(file, resultOccupiedMat);
                         }
                         resultEmptyMat.release();
                         resultOccupiedMat.release();
@@ -18,7 +18,6 @@ import org.opencv.core.KeyPoint;
 import org.opencv.core.Mat;
 import org.opencv.core.RotatedRect;
 import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 import org.openpnp.gui.MainFrame;
 import org.openpnp.machine.reference.camera.ReferenceCamera;
@@ -32,6 +31,7 @@ import org.openpnp.spi.Camera;
 import org.openpnp.spi.HeadMountable;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.NozzleTip;
+import org.openpnp.util.DebugImageWriter;
 import org.openpnp.util.LogUtils;
 import org.openpnp.util.MovableUtils;
 import org.openpnp.util.NanosecondTime;
@@ -1027,7 +1027,7 @@ public class ReferenceNozzleTipCalibration extends AbstractModelObject {
             if (LogUtils.isDebugEnabled()) {
                 try {
                     File file = Configuration.get().createResourceFile(getClass(), "background-calibrate", ".png");
-                    Imgcodecs.imwrite(file.getAbsolutePath(), image);
+                    DebugImageWriter.get().write(file, image);
                 }
                 catch (IOException e) {
                     Logger.debug(e);
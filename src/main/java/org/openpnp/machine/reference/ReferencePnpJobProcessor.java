@@ -21,6 +21,7 @@ package org.openpnp.machine.reference;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -38,6 +39,7 @@ import org.openpnp.gui.support.Wizard;
 import org.openpnp.machine.reference.vision.AbstractPartAlignment;
 import org.openpnp.machine.reference.wizards.ReferencePnpJobProcessorConfigurationWizard;
 import org.openpnp.model.BoardLocation;
+import org.openpnp.model.BottomVisionSettings;
 import org.openpnp.model.Configuration;
 import org.openpnp.model.Job;
 import org.openpnp.model.Length;
@@ -49,6 +51,7 @@ import org.openpnp.model.Placement;
 import org.openpnp.model.PlacementsHolderLocation;
 import org.openpnp.spi.Camera;
 import org.openpnp.spi.Feeder;
+import org.openpnp.spi.Feeder.DeferredFeed;
 import org.openpnp.spi.FiducialLocator;
 import org.openpnp.spi.Head;
 import org.openpnp.spi.HeadMountable;
@@ -56,12 +59,16 @@ import org.openpnp.spi.Machine;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.NozzleTip;
 import org.openpnp.spi.PartAlignment;
+import org.openpnp.spi.PartAlignment.DeferredPartAlignmentOffset;
+import org.openpnp.spi.PartAlignment.PartAlignmentOffset;
 import org.openpnp.spi.PnpJobPlanner;
 import org.openpnp.spi.PnpJobPlanner.PlannedPlacement;
+import org.openpnp.spi.PnpJobPlanner.Strategy;
 import org.openpnp.spi.PnpJobProcessor.JobPlacement.Status;
 import org.openpnp.spi.base.AbstractJobProcessor;
 import org.openpnp.spi.base.AbstractPnpJobProcessor;
 import org.openpnp.util.MovableUtils;
+import org.openpnp.util.NanosecondTime;
 import org.openpnp.util.TravellingSalesman;
 import org.openpnp.util.UiUtils;
 import org.openpnp.util.Utils2D;
@@ -97,6 +104,20 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     @Attribute(required = false)
     boolean allowImmediateNozzleTipCalibration = false;
 
+    /**
+     * Process the alignment images on a worker thread, while the machine moves on to align the next nozzle or 
+     * towards the board. Each placement waits for its alignment result just before it is placed.
+     */
+    @Attribute(required = false)
+    boolean pipelinedAlignment = false;
+
+    /**
+     * Issue the feeds of feeders that can feed without the head ahead of the pick, for the current and the 
+     * next cycle, so the feeders feed while the machine moves. Each pick only waits for what is left of its feed.
+     */
+    @Attribute(required = false)
+    boolean prefeedLookahead = false;
+
     /**
      * Number of ficudial nesting level to check separately before checking the remaining all at once.
      * Default is 1 to check root-level panels/boards separately avoiding missdetections and/or extra
@@ -125,6 +146,18 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     
     long startTime;
     int totalPartsPlaced;
+
+    protected Map<PlannedPlacement, DeferredPartAlignmentOffset> deferredAlignments = new HashMap<>();
+    double deferredVisionTime;
+    double deferredVisionWaitTime;
+    int deferredVisionMisses;
+    int deferredVisionFailures;
+
+    protected Map<Feeder, DeferredFeed> prefeeds = new HashMap<>();
+    double prefeedTime;
+    double prefeedWaitTime;
+    int prefeedMisses;
+    int prefeedDrops;
     
     public ReferencePnpJobProcessor() {
     }
@@ -185,8 +218,18 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         public Step step() throws JobProcessorException {
             startTime = System.currentTimeMillis();
             totalPartsPlaced = 0;
+            deferredVisionTime = 0;
+            deferredVisionWaitTime = 0;
+            deferredVisionMisses = 0;
+            deferredVisionFailures = 0;
+            prefeedTime = 0;
+            prefeedWaitTime = 0;
+            prefeedMisses = 0;
+            prefeedDrops = 0;
             
             jobPlacements.clear();
+            deferredAlignments.clear();
+            prefeeds.clear();
 
             // Create some shortcuts for things that won't change during the run
             machine = Configuration.get().getMachine();
@@ -202,6 +245,8 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             
             checkSetupErrors();
             
+            precomputeComposites();
+            
             prepMachine();
             
             prepFeeders();
@@ -307,6 +352,49 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             }
         }
         
+        /**
+         * Computes the vision compositing solutions of all the packages in the job, for all the compatible nozzle 
+         * tips, in parallel. The solutions are cached, so this takes the computation off the alignment step.  
+         * Failures are ignored here, they will be reported when the part is aligned.
+         */
+        private void precomputeComposites() {
+            Camera camera;
+            try {
+                camera = VisionUtils.getBottomVisionCamera();
+                // Make sure the camera dimensions are known, before going parallel. 
+                camera.getWidth();
+            }
+            catch (Exception e) {
+                return;
+            }
+            Map<List<Object>, Runnable> tasks = new HashMap<>();
+            for (JobPlacement jobPlacement : jobPlacements) {
+                Part part = jobPlacement.getPlacement().getPart();
+                BottomVisionSettings visionSettings = AbstractPartAlignment.getInheritedVisionSettings(part, false);
+                if (visionSettings == null) {
+                    continue;
+                }
+                org.openpnp.model.Package pkg = part.getPackage();
+                for (Nozzle nozzle : head.getNozzles()) {
+                    for (NozzleTip nozzleTip : nozzle.getCompatibleNozzleTips(part)) {
+                        tasks.putIfAbsent(List.of(pkg, visionSettings, nozzleTip), () -> {
+                            try {
+                                pkg.getVisionCompositing()
+                                    .precomputeComposite(pkg, visionSettings, nozzleTip, camera);
+                            }
+                            catch (Exception e) {
+                                Logger.trace(e, "Vision compositing precomputation failed for package {}.", pkg.getId());
+                            }
+                        });
+                    }
+                }
+            }
+            if (!tasks.isEmpty()) {
+                fireTextStatus("Computing vision compositing.");
+                tasks.values().parallelStream().forEach(Runnable::run);
+            }
+        }
+
         private void scriptJobStarting() throws JobProcessorException {
             HashMap<String, Object> params = new HashMap<>();
             params.put("job", job);
@@ -574,6 +662,13 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             }
             
             Logger.debug("Planned placements {}", plannedPlacements);
+
+            if (isPrefeedLookahead()) {
+                // Feed ahead for the picks of this cycle, the first pick may still have to wait.
+                for (PlannedPlacement plannedPlacement : plannedPlacements) {
+                    prefeed(plannedPlacement.jobPlacement.getPlacement().getPart(), plannedPlacement.nozzle);
+                }
+            }
             
             return new ChangeNozzleTips(plannedPlacements);
         }
@@ -691,6 +786,9 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         @Override
         public Step stepImpl(PlannedPlacement plannedPlacement) throws JobProcessorException {
             if (plannedPlacement == null) {
+                if (isPrefeedLookahead()) {
+                    prefeedNextCycle();
+                }
                 return new OptimizeNozzlesForAlign(plannedPlacements);
             }
             
@@ -785,6 +883,10 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             globals.put("feeder", feeder);
             globals.put("part", feeder.getPart());
 
+            if (completePrefeed(feeder, nozzle, globals)) {
+                return;
+            }
+
             for (int i = 0; i < 1 + feeder.getFeedRetryCount(); i++) {
                 try {
                     fireTextStatus("Feed %s on %s.", feeder.getName(), feeder.getPart().getId());
@@ -801,6 +903,56 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             feeder.setEnabled(false);
             throw new JobProcessorException(feeder, lastException);
         }
+
+        /**
+         * Waits for what is left of the feed that was issued ahead for this feeder, if any.
+         * 
+         * @return true if the part was fed, false if there was no feed ahead or it failed, i.e. the feeder 
+         * must be fed again. 
+         */
+        private boolean completePrefeed(Feeder feeder, Nozzle nozzle, Map<String, Object> globals) {
+            DeferredFeed deferred = prefeeds.remove(feeder);
+            if (deferred == null) {
+                return false;
+            }
+            double t0 = NanosecondTime.getRuntimeSeconds();
+            try {
+                if (!deferred.isDone()) {
+                    fireTextStatus("Wait for feed %s on %s.", feeder.getName(), feeder.getPart().getId());
+                }
+                deferred.complete();
+                prefeedWaitTime += NanosecondTime.getRuntimeSeconds() - t0;
+                prefeedTime += deferred.getFeedTime();
+                Configuration.get().getScripting().on("Feeder.AfterFeed", globals);
+                return true;
+            }
+            catch (Exception e) {
+                Logger.warn("Feed ahead of {} for {} failed, feeding again: {}", feeder.getName(), nozzle.getName(), e.getMessage());
+                prefeedWaitTime += NanosecondTime.getRuntimeSeconds() - t0;
+                prefeedMisses++;
+                return false;
+            }
+        }
+
+        /**
+         * Feeds ahead for the next cycle: the feeders picked from in this cycle are likely picked from again, 
+         * if more placements of their parts are pending.
+         */
+        private void prefeedNextCycle() {
+            Set<Part> parts = new HashSet<>();
+            for (JobPlacement jobPlacement : getPendingJobPlacements()) {
+                parts.add(jobPlacement.getPlacement().getPart());
+            }
+            for (PlannedPlacement plannedPlacement : plannedPlacements) {
+                if (plannedPlacement.jobPlacement.getStatus() != Status.Processing) {
+                    continue;
+                }
+                Part part = plannedPlacement.jobPlacement.getPlacement().getPart();
+                if (parts.remove(part)) {
+                    prefeed(part, plannedPlacement.nozzle);
+                }
+            }
+        }
         
         private void checkPartOff(Nozzle nozzle, Part part) throws JobProcessorException {
             if (!nozzle.isPartOffEnabled(Nozzle.PartOffStep.BeforePick)) {
@@ -933,14 +1085,19 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                 return this;
             }
 
-            align(plannedPlacement, partAlignment);
+            if (isPipelinedAlignment()) {
+                alignDeferred(plannedPlacement, partAlignment);
+            }
+            else {
+                align(plannedPlacement, partAlignment);
+            }
             
             checkPartOn(nozzle);
 
             return this;
         }
         
-        private void align(PlannedPlacement plannedPlacement, PartAlignment partAlignment) throws JobProcessorException {
+        private void alignDeferred(PlannedPlacement plannedPlacement, PartAlignment partAlignment) throws JobProcessorException {
             final Nozzle nozzle = plannedPlacement.nozzle;
             final JobPlacement jobPlacement = plannedPlacement.jobPlacement;
             final Placement placement = jobPlacement.getPlacement();
@@ -951,12 +1108,12 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             for (int i = 0; i < ReferencePnpJobProcessor.this.getMaxVisionRetries(); i++) {
                 fireTextStatus("Aligning %s for %s using nozzle %s.", part.getId(), placement.getId(), nozzle.getName());
                 try {
-                    plannedPlacement.alignmentOffsets = VisionUtils.findPartAlignmentOffsets(
+                    plannedPlacement.alignmentOffsets = null;
+                    deferredAlignments.put(plannedPlacement, VisionUtils.findPartAlignmentOffsetsDeferred(
                             partAlignment,
                             part,
                             boardLocation,
-                            placement, nozzle);
-                    Logger.debug("Align {} with {}, offsets {}", part, nozzle, plannedPlacement.alignmentOffsets);
+                            placement, nozzle));
                     return;
                 }
                 catch (Exception e) {
@@ -1022,6 +1179,8 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             final Part part = placement.getPart();
             final BoardLocation boardLocation = plannedPlacement.jobPlacement.getBoardLocation();
 
+            resolveDeferredAlignment(plannedPlacement);
+
             Location placementLocation = getPlacementLocation(plannedPlacement);
             
             scriptBeforeAssembly(plannedPlacement, placementLocation);
@@ -1046,6 +1205,63 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             return this;
         }
         
+        /**
+         * Waits for the deferred alignment of the placement, if any. If the result is not ready yet, the nozzle 
+         * already moves at Safe Z to the uncorrected placement location in X/Y. The rotation is left alone, as the 
+         * alignment may still correct it considerably, and the part is then rotated only once. If the speculative 
+         * alignment missed or failed, the part is aligned again synchronously. A failure, unlike a speculative miss, 
+         * is unexpected and therefore logged as a warning.
+         * 
+         * @param plannedPlacement
+         * @throws JobProcessorException
+         */
+        private void resolveDeferredAlignment(PlannedPlacement plannedPlacement) throws JobProcessorException {
+            DeferredPartAlignmentOffset deferred = deferredAlignments.remove(plannedPlacement);
+            if (deferred == null) {
+                return;
+            }
+            final Nozzle nozzle = plannedPlacement.nozzle;
+            final Part part = plannedPlacement.jobPlacement.getPlacement().getPart();
+            if (!deferred.isDone()) {
+                try {
+                    Location location = getPlacementLocation(plannedPlacement);
+                    head.moveToSafeZ();
+                    nozzle.moveTo(location.derive(nozzle.getLocation(), false, false, true, true));
+                }
+                catch (Exception e) {
+                    throw new JobProcessorException(nozzle, e);
+                }
+            }
+            double t0 = NanosecondTime.getRuntimeSeconds();
+            PartAlignmentOffset offsets = null;
+            boolean failed = false;
+            try {
+                offsets = deferred.get();
+            }
+            catch (Exception e) {
+                failed = true;
+                Logger.warn("Deferred alignment of {} with {} failed, aligning again: {}", part.getId(), 
+                        nozzle.getName(), e.getMessage());
+            }
+            deferredVisionWaitTime += NanosecondTime.getRuntimeSeconds() - t0;
+            deferredVisionTime += deferred.getProcessingTime();
+            if (offsets != null) {
+                plannedPlacement.alignmentOffsets = offsets;
+                Logger.debug("Align {} with {}, offsets {}", part, nozzle, offsets);
+            }
+            else {
+                if (failed) {
+                    deferredVisionFailures++;
+                }
+                else {
+                    deferredVisionMisses++;
+                    Logger.debug("Speculative alignment of {} with {} missed, aligning again.", part.getId(), 
+                            nozzle.getName());
+                }
+                align(plannedPlacement, AbstractPartAlignment.getPartAlignment(part));
+            }
+        }
+
         private void place(Nozzle nozzle, Part part, Placement placement, Location placementLocation) throws JobProcessorException {
             fireTextStatus("Placing %s for %s using nozzle %s.", part.getId(), placement.getId(), nozzle.getName());
             
@@ -1210,8 +1426,76 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         }
     }
     
+    /**
+     * Issues the feed for the part ahead of the pick, if its feeder can feed without the head and has not 
+     * been fed ahead already. A failure is ignored here, the pick will feed again.
+     * 
+     * @param part
+     * @param nozzle The nozzle expected to pick the part.
+     */
+    protected void prefeed(Part part, Nozzle nozzle) {
+        Feeder feeder;
+        try {
+            feeder = findFeeder(machine, part);
+        }
+        catch (JobProcessorException e) {
+            return;
+        }
+        if (!feeder.canPrefeed() || prefeeds.containsKey(feeder)) {
+            return;
+        }
+        try {
+            Map<String, Object> globals = new HashMap<>();
+            globals.put("nozzle", nozzle);
+            globals.put("feeder", feeder);
+            globals.put("part", part);
+            Configuration.get().getScripting().on("Feeder.BeforeFeed", globals);
+            prefeeds.put(feeder, feeder.prefeed(nozzle));
+        }
+        catch (Exception e) {
+            Logger.warn("Feed ahead of {} failed: {}", feeder.getName(), e.getMessage());
+            prefeedMisses++;
+        }
+    }
+
+    /**
+     * Drops the feeds issued ahead that are not going to be picked. The feeders are still waited for, so they are 
+     * idle when the job goes on or ends. The fed parts stay on the feeders, which are fed again for the next pick.
+     * 
+     * @param all true to drop all the feeds ahead, false to drop only those whose part has no pending placements.
+     */
+    protected void dropPrefeeds(boolean all) {
+        if (prefeeds.isEmpty()) {
+            return;
+        }
+        Set<Part> parts = new HashSet<>();
+        if (!all) {
+            for (JobPlacement jobPlacement : getPendingJobPlacements()) {
+                parts.add(jobPlacement.getPlacement().getPart());
+            }
+        }
+        for (Iterator<Map.Entry<Feeder, DeferredFeed>> iterator = prefeeds.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Feeder, DeferredFeed> entry = iterator.next();
+            Feeder feeder = entry.getKey();
+            if (parts.contains(feeder.getPart())) {
+                continue;
+            }
+            iterator.remove();
+            prefeedDrops++;
+            try {
+                entry.getValue().complete();
+                Logger.warn("Feed ahead of {} dropped, the part was not picked.", feeder.getName());
+            }
+            catch (Exception e) {
+                Logger.warn("Feed ahead of {} dropped, the feed failed: {}", feeder.getName(), e.getMessage());
+            }
+        }
+    }
+
     protected class FinishCycle implements Step {
         public Step step() throws JobProcessorException {
+            deferredAlignments.clear();
+            dropPrefeeds(false);
             discardAll(head);
             return new Plan();
         }
@@ -1221,6 +1505,8 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         public Step step() throws JobProcessorException {
             fireTextStatus("Cleaning up.");
             
+            dropPrefeeds(true);
+
             try {
                 // Safe Z the machine
                 head.moveToSafeZ();
@@ -1264,6 +1550,18 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
 
             Logger.info("Job finished {} parts in {} sec. This is {} CPH", totalPartsPlaced,
                     df.format(dtSec), df.format(totalPartsPlaced / (dtSec / 3600.0)));
+            if (isPipelinedAlignment()) {
+                Logger.info("Pipelined alignment processed vision for {} sec, {} sec hidden by motion, {} speculative misses, {} failures.",
+                        df.format(deferredVisionTime), 
+                        df.format(Math.max(0, deferredVisionTime - deferredVisionWaitTime)), 
+                        deferredVisionMisses, deferredVisionFailures);
+            }
+            if (isPrefeedLookahead()) {
+                Logger.info("Prefeed lookahead fed for {} sec, {} sec of head idle time saved, {} failed feeds ahead, {} dropped.",
+                        df.format(prefeedTime), 
+                        df.format(Math.max(0, prefeedTime - prefeedWaitTime)), 
+                        prefeedMisses, prefeedDrops);
+            }
 
             try {
                 HashMap<String, Object> params = new HashMap<>();
@@ -1358,6 +1656,39 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         this.optimizeMultipleNozzles = optimizeMultipleNozzles;
     }
 
+    public boolean isPipelinedAlignment() {
+        return pipelinedAlignment;
+    }
+
+    public void setPipelinedAlignment(boolean pipelinedAlignment) {
+        this.pipelinedAlignment = pipelinedAlignment;
+    }
+
+    public boolean isPrefeedLookahead() {
+        return prefeedLookahead;
+    }
+
+    public void setPrefeedLookahead(boolean prefeedLookahead) {
+        this.prefeedLookahead = prefeedLookahead;
+    }
+
+    public boolean isCostModelPlanning() {
+        return planner instanceof CostModelPnpJobPlanner;
+    }
+
+    /**
+     * Switch between the CostModelPnpJobPlanner and the SimplePnpJobPlanner, keeping the strategy.
+     * 
+     * @param costModelPlanning
+     */
+    public void setCostModelPlanning(boolean costModelPlanning) {
+        if (costModelPlanning != isCostModelPlanning()) {
+            Strategy strategy = planner.getStrategy();
+            planner = (costModelPlanning ? new CostModelPnpJobPlanner() : new SimplePnpJobPlanner());
+            planner.setStrategy(strategy);
+        }
+    }
+
     /**
      * This class groups a step for step for multi-nozzle optimization
      */
@@ -1526,6 +1857,32 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         }
     }
     
+    protected void align(PlannedPlacement plannedPlacement, PartAlignment partAlignment) throws JobProcessorException {
+        final Nozzle nozzle = plannedPlacement.nozzle;
+        final JobPlacement jobPlacement = plannedPlacement.jobPlacement;
+        final Placement placement = jobPlacement.getPlacement();
+        final BoardLocation boardLocation = jobPlacement.getBoardLocation();
+        final Part part = placement.getPart();
+
+        Exception lastException = null;
+        for (int i = 0; i < getMaxVisionRetries(); i++) {
+            fireTextStatus("Aligning %s for %s using nozzle %s.", part.getId(), placement.getId(), nozzle.getName());
+            try {
+                plannedPlacement.alignmentOffsets = VisionUtils.findPartAlignmentOffsets(
+                        partAlignment,
+                        part,
+                        boardLocation,
+                        placement, nozzle);
+                Logger.debug("Align {} with {}, offsets {}", part, nozzle, plannedPlacement.alignmentOffsets);
+                return;
+            }
+            catch (Exception e) {
+                lastException = e;
+            }
+        }
+        throw new JobProcessorException(part, nozzle, lastException);
+    }
+
     private class AlignLocator extends Locator {
         public Location getLocation(PlannedPlacement p) {
             Location location;
@@ -1751,7 +2108,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         @Attribute(required = false)
         protected Strategy strategy = Strategy.Minimize;
         
-        private boolean restart;
+        protected boolean restart;
         
         @Override
         public Strategy getStrategy() {
@@ -1894,4 +2251,493 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             return null;
         }
     }
+
+    /**
+     * A planner that scores the candidate placements of a cycle with a cost model, instead of taking the first
+     * compatible placement in list order.
+     * 
+     * The cost of a cycle is the travel time from the end of the previous cycle to the feeders, picking in 
+     * nozzle order, and on to the placement locations, plus a fixed time for each nozzle tip change. 
+     * 
+     * The cycle is built nozzle by nozzle using a beam search, keeping the best partial cycles. The complete
+     * candidate cycles are then compared by their own cost plus the cost of the following cycles, as planned 
+     * greedily by the same cost model (lookahead). Cycles that fill more nozzles always win, like in the 
+     * SimplePnpJobPlanner. 
+     * 
+     * With the FullyAsPlanned strategy, and for the first cycle with the StartAsPlanned strategy, the planner 
+     * behaves like the SimplePnpJobPlanner. 
+     * 
+     * The cost model is built once per job, on the first plan() after restart(). 
+     */
+    @Root
+    public static class CostModelPnpJobPlanner extends SimplePnpJobPlanner {
+        /**
+         * Average travel speed of the head in mm/s, including acceleration and settling.
+         */
+        @Attribute(required = false)
+        protected double travelSpeed = 250;
+
+        /**
+         * Time of a nozzle tip change in seconds.
+         */
+        @Attribute(required = false)
+        protected double nozzleTipChangeTime = 10;
+
+        @Attribute(required = false)
+        protected int lookaheadCycles = 2;
+
+        @Attribute(required = false)
+        protected int beamWidth = 8;
+
+        /**
+         * Log the predicted total time of the job against first-match planning, when the job starts. This 
+         * simulates the whole job, therefore it is off by default.
+         */
+        @Attribute(required = false)
+        protected boolean logEstimate = false;
+
+        /**
+         * Location cache, in millimeters, reset on restart().
+         */
+        private Map<JobPlacement, Location> placeLocations = new HashMap<>();
+        private Map<Part, Location> pickLocations = new HashMap<>();
+        private Location lastLocation;
+        private CostModel model;
+
+        @Override
+        public void restart() {
+            super.restart();
+            placeLocations.clear();
+            pickLocations.clear();
+            lastLocation = null;
+            model = null;
+        }
+
+        @Override
+        public List<PlannedPlacement> plan(Head head, List<JobPlacement> jobPlacements) {
+            if (model == null || !model.contains(jobPlacements)) {
+                // First plan of the job, or placements were added.
+                boolean jobStart = (model == null);
+                model = new CostModel(head, jobPlacements);
+                if (jobStart && logEstimate) {
+                    double [] estimate = estimate(model, model.getState(jobPlacements, lastLocation));
+                    Logger.info("Cost model planner predicts {}s total time, first-match planning {}s.", 
+                            Math.round(estimate[0]), Math.round(estimate[1]));
+                }
+            }
+            if (strategy == Strategy.FullyAsPlanned
+                    || (strategy == Strategy.StartAsPlanned && restart)) {
+                List<PlannedPlacement> plannedPlacements = super.plan(head, jobPlacements);
+                lastLocation = null;
+                return plannedPlacements;
+            }
+            restart = false;
+            Cycle cycle = model.planCycle(model.getState(jobPlacements, lastLocation), lookaheadCycles);
+            List<PlannedPlacement> plannedPlacements = new ArrayList<>();
+            for (Assignment assignment : cycle.assignments) {
+                plannedPlacements.add(new PlannedPlacement(model.nozzles.get(assignment.nozzle), 
+                        assignment.nozzleTip, model.placements.get(assignment.placement)));
+                jobPlacements.remove(model.placements.get(assignment.placement));
+            }
+            lastLocation = cycle.endLocation;
+            Logger.debug("Cost model planned cycle of {}s.", cycle.cost);
+            return plannedPlacements;
+        }
+
+        /**
+         * Estimate the total time of the given job placements, as planned by this planner, and as planned by 
+         * taking the first compatible placement for each nozzle. Nozzle tip loading strategies are ignored.
+         * 
+         * @param head
+         * @param jobPlacements
+         * @return The predicted total time and the first-match total time in seconds.
+         */
+        public double[] estimate(Head head, List<JobPlacement> jobPlacements) {
+            CostModel model = new CostModel(head, jobPlacements);
+            return estimate(model, model.getState(jobPlacements, lastLocation));
+        }
+
+        private double[] estimate(CostModel model, State initialState) {
+            double predicted = 0;
+            State state = initialState;
+            while (state.remaining > 0) {
+                Cycle cycle = model.planCycle(state, lookaheadCycles);
+                if (cycle.assignments.isEmpty()) {
+                    break;
+                }
+                predicted += cycle.cost;
+                state = cycle.endState;
+            }
+            double firstMatch = 0;
+            state = initialState;
+            while (state.remaining > 0) {
+                Cycle cycle = model.planFirstMatchCycle(state);
+                if (cycle.assignments.isEmpty()) {
+                    break;
+                }
+                firstMatch += cycle.cost;
+                state = cycle.endState;
+            }
+            return new double[] { predicted, firstMatch };
+        }
+
+        private Location getPlaceLocation(JobPlacement jobPlacement) {
+            return placeLocations.computeIfAbsent(jobPlacement, (p) -> 
+                Utils2D.calculateBoardPlacementLocation(p.getBoardLocation(), p.getPlacement().getLocation())
+                    .convertToUnits(LengthUnit.Millimeters));
+        }
+
+        private Location getPickLocation(Machine machine, Part part) {
+            if (!pickLocations.containsKey(part)) {
+                Location location = null;
+                try {
+                    location = findFeeder(machine, part).getPickLocation().convertToUnits(LengthUnit.Millimeters);
+                }
+                catch (Exception e) {
+                    // No travel cost then, the job processor will report the missing feeder.
+                }
+                pickLocations.put(part, location);
+            }
+            return pickLocations.get(part);
+        }
+
+        private static class Assignment {
+            final int nozzle;
+            final NozzleTip nozzleTip;
+            final int placement;
+
+            Assignment(int nozzle, NozzleTip nozzleTip, int placement) {
+                this.nozzle = nozzle;
+                this.nozzleTip = nozzleTip;
+                this.placement = placement;
+            }
+        }
+
+        /**
+         * The loaded nozzle tips, head location and remaining placements, as simulated by the cost model.
+         */
+        private static class State {
+            final NozzleTip[] nozzleTips;
+            final Location location;
+            final boolean[] done;
+            final int remaining;
+
+            State(NozzleTip[] nozzleTips, Location location, boolean[] done, int remaining) {
+                this.nozzleTips = nozzleTips;
+                this.location = location;
+                this.done = done;
+                this.remaining = remaining;
+            }
+        }
+
+        private static class Cycle {
+            final List<Assignment> assignments;
+            final double cost;
+            Location endLocation;
+            State endState;
+            double score;
+
+            Cycle(List<Assignment> assignments, double cost) {
+                this.assignments = assignments;
+                this.cost = cost;
+            }
+        }
+
+        private class CostModel {
+            final List<Nozzle> nozzles;
+            final List<NozzleTip> nozzleTips;
+            final List<JobPlacement> placements;
+            final Map<JobPlacement, Integer> indices = new HashMap<>();
+            final Location[] pick;
+            final Location[] place;
+            final double[] height;
+            /**
+             * False for placements no nozzle can take, they must not hold back the taller parts.
+             */
+            final boolean[] plannable;
+            final List<Set<NozzleTip>> compatibleNozzleTips = new ArrayList<>();
+
+            CostModel(Head head, List<JobPlacement> jobPlacements) {
+                // Cycles are executed in the order of nozzle names.
+                nozzles = new ArrayList<>(head.getNozzles());
+                nozzles.sort(Comparator.comparing(Nozzle::getName));
+                nozzleTips = new ArrayList<>(head.getMachine().getNozzleTips());
+                placements = new ArrayList<>(jobPlacements);
+                pick = new Location[placements.size()];
+                place = new Location[placements.size()];
+                height = new double[placements.size()];
+                for (int i = 0; i < placements.size(); i++) {
+                    JobPlacement jobPlacement = placements.get(i);
+                    indices.put(jobPlacement, i);
+                    height[i] = jobPlacement.getPartHeight();
+                    Part part = jobPlacement.getPlacement().getPart();
+                    pick[i] = getPickLocation(head.getMachine(), part);
+                    place[i] = getPlaceLocation(jobPlacement);
+                    compatibleNozzleTips.add(new HashSet<>(part.getPackage().getCompatibleNozzleTips()));
+                }
+                plannable = new boolean[placements.size()];
+                for (int i = 0; i < placements.size(); i++) {
+                    for (Nozzle nozzle : nozzles) {
+                        for (NozzleTip nozzleTip : nozzle.getCompatibleNozzleTips()) {
+                            plannable[i] |= compatibleNozzleTips.get(i).contains(nozzleTip);
+                        }
+                    }
+                }
+            }
+
+            /**
+             * @return true if all the given job placements are part of the model.
+             */
+            boolean contains(List<JobPlacement> jobPlacements) {
+                for (JobPlacement jobPlacement : jobPlacements) {
+                    if (!indices.containsKey(jobPlacement)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            /**
+             * @return The state with the given job placements remaining, the nozzle tips currently loaded, and 
+             * the head at the given location.
+             */
+            State getState(List<JobPlacement> jobPlacements, Location location) {
+                NozzleTip[] tips = new NozzleTip[nozzles.size()];
+                for (int n = 0; n < tips.length; n++) {
+                    tips[n] = nozzles.get(n).getNozzleTip();
+                }
+                boolean[] done = new boolean[placements.size()];
+                Arrays.fill(done, true);
+                int remaining = 0;
+                for (JobPlacement jobPlacement : jobPlacements) {
+                    int p = indices.get(jobPlacement);
+                    if (done[p]) {
+                        done[p] = false;
+                        remaining++;
+                    }
+                }
+                return new State(tips, location, done, remaining);
+            }
+
+            /**
+             * @return The nozzle tip to use for the placement on the nozzle, or null if not possible.
+             */
+            NozzleTip getNozzleTip(State state, int n, int placement, Set<NozzleTip> usedNozzleTips) {
+                Set<NozzleTip> compatible = compatibleNozzleTips.get(placement);
+                NozzleTip loaded = state.nozzleTips[n];
+                if (loaded != null && compatible.contains(loaded) && !usedNozzleTips.contains(loaded)) {
+                    return loaded;
+                }
+                Nozzle nozzle = nozzles.get(n);
+                for (NozzleTip nozzleTip : nozzleTips) {
+                    if (compatible.contains(nozzleTip) && !usedNozzleTips.contains(nozzleTip)
+                            && nozzle.getCompatibleNozzleTips().contains(nozzleTip)) {
+                        return nozzleTip;
+                    }
+                }
+                return null;
+            }
+
+            double getDistance(Location from, Location to) {
+                if (from == null || to == null) {
+                    return 0;
+                }
+                return from.getLinearDistanceTo(to);
+            }
+
+            /**
+             * @return The cost of the cycle in seconds, optionally extended by one more assignment.
+             */
+            double getCost(State state, List<Assignment> assignments, Assignment extension) {
+                double distance = 0;
+                int changes = 0;
+                Location location = state.location;
+                int count = assignments.size() + (extension != null ? 1 : 0);
+                // Pick all, in nozzle order.
+                for (int i = 0; i < count; i++) {
+                    Assignment assignment = (i < assignments.size() ? assignments.get(i) : extension);
+                    if (assignment.nozzleTip != state.nozzleTips[assignment.nozzle]) {
+                        changes++;
+                    }
+                    Location pickLocation = pick[assignment.placement];
+                    distance += getDistance(location, pickLocation);
+                    location = (pickLocation != null ? pickLocation : location);
+                }
+                // Place all, in nozzle order.
+                for (int i = 0; i < count; i++) {
+                    Assignment assignment = (i < assignments.size() ? assignments.get(i) : extension);
+                    Location placeLocation = place[assignment.placement];
+                    distance += getDistance(location, placeLocation);
+                    location = (placeLocation != null ? placeLocation : location);
+                }
+                return distance/travelSpeed + changes*nozzleTipChangeTime;
+            }
+
+            Cycle createCycle(State state, List<Assignment> assignments) {
+                Cycle cycle = new Cycle(assignments, getCost(state, assignments, null));
+                NozzleTip[] tips = state.nozzleTips.clone();
+                boolean[] done = state.done.clone();
+                Location location = state.location;
+                for (Assignment assignment : assignments) {
+                    // A nozzle tip taken from another nozzle is unloaded there.
+                    for (int n = 0; n < tips.length; n++) {
+                        if (tips[n] == assignment.nozzleTip) {
+                            tips[n] = null;
+                        }
+                    }
+                    tips[assignment.nozzle] = assignment.nozzleTip;
+                    done[assignment.placement] = true;
+                    if (place[assignment.placement] != null) {
+                        location = place[assignment.placement];
+                    }
+                }
+                cycle.endLocation = location;
+                cycle.endState = new State(tips, location, done, state.remaining - assignments.size());
+                return cycle;
+            }
+
+            /**
+             * @return The lowest part height of the placements that are neither done nor assigned. Placements 
+             * are placed in the order of their part height, like the job processor orders them, so that a taller 
+             * part never gets placed before a shorter neighbour, which could collide with the nozzle. As the 
+             * placements of a cycle are placed in nozzle order, only placements of this height can be assigned 
+             * to the next nozzle.
+             */
+            double getNextHeight(State state, List<Assignment> assignments) {
+                double nextHeight = Double.POSITIVE_INFINITY;
+                for (int p = 0; p < placements.size(); p++) {
+                    if (!state.done[p] && plannable[p] && height[p] < nextHeight && !isAssigned(assignments, p)) {
+                        nextHeight = height[p];
+                    }
+                }
+                return nextHeight;
+            }
+
+            /**
+             * Plan a cycle using a beam search over the nozzles and a greedy lookahead over the
+             * following cycles. Only the order within a part height is changed, see 
+             * {@link #getNextHeight(State, List)}.
+             */
+            Cycle planCycle(State state, int lookahead) {
+                int width = (lookahead > 0 ? Math.max(1, beamWidth) : 1);
+                List<List<Assignment>> beam = new ArrayList<>();
+                beam.add(new ArrayList<>());
+                for (int n = 0; n < nozzles.size(); n++) {
+                    List<Cycle> candidates = new ArrayList<>();
+                    for (List<Assignment> partial : beam) {
+                        Set<NozzleTip> usedNozzleTips = new HashSet<>();
+                        for (Assignment assignment : partial) {
+                            usedNozzleTips.add(assignment.nozzleTip);
+                        }
+                        // Keep the cheapest extensions, sorted by cost.
+                        List<Cycle> extensions = new ArrayList<>();
+                        double nextHeight = getNextHeight(state, partial);
+                        for (int p = 0; p < placements.size(); p++) {
+                            if (state.done[p] || height[p] > nextHeight || isAssigned(partial, p)) {
+                                continue;
+                            }
+                            NozzleTip nozzleTip = getNozzleTip(state, n, p, usedNozzleTips);
+                            if (nozzleTip == null) {
+                                continue;
+                            }
+                            Assignment extension = new Assignment(n, nozzleTip, p);
+                            double cost = getCost(state, partial, extension);
+                            if (extensions.size() == width 
+                                    && cost >= extensions.get(width - 1).cost) {
+                                continue;
+                            }
+                            int index = extensions.size();
+                            while (index > 0 && extensions.get(index - 1).cost > cost) {
+                                index--;
+                            }
+                            List<Assignment> extended = new ArrayList<>(partial);
+                            extended.add(extension);
+                            extensions.add(index, new Cycle(extended, cost));
+                            if (extensions.size() > width) {
+                                extensions.remove(width);
+                            }
+                        }
+                        if (extensions.isEmpty()) {
+                            // Leave the nozzle empty.
+                            candidates.add(new Cycle(partial, getCost(state, partial, null)));
+                        }
+                        else {
+                            candidates.addAll(extensions);
+                        }
+                    }
+                    candidates.sort(Comparator.comparingInt((Cycle c) -> -c.assignments.size())
+                            .thenComparingDouble(c -> c.cost));
+                    beam.clear();
+                    for (Cycle candidate : candidates.subList(0, Math.min(width, candidates.size()))) {
+                        beam.add(candidate.assignments);
+                    }
+                }
+                Cycle best = null;
+                for (List<Assignment> assignments : beam) {
+                    Cycle cycle = createCycle(state, assignments);
+                    cycle.score = cycle.cost;
+                    State next = cycle.endState;
+                    for (int i = 0; i < lookahead && next.remaining > 0; i++) {
+                        Cycle following = planCycle(next, 0);
+                        if (following.assignments.isEmpty()) {
+                            break;
+                        }
+                        cycle.score += following.cost;
+                        next = following.endState;
+                    }
+                    if (best == null 
+                            || cycle.assignments.size() > best.assignments.size()
+                            || (cycle.assignments.size() == best.assignments.size() && cycle.score < best.score)) {
+                        best = cycle;
+                    }
+                }
+                return best;
+            }
+
+            boolean isAssigned(List<Assignment> assignments, int placement) {
+                for (Assignment assignment : assignments) {
+                    if (assignment.placement == placement) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            /**
+             * Plan a cycle like the SimplePnpJobPlanner with the Minimize strategy, i.e. take the first
+             * compatible placement for each nozzle, first without and then with nozzle tip change.
+             */
+            Cycle planFirstMatchCycle(State state) {
+                Assignment[] byNozzle = new Assignment[nozzles.size()];
+                Set<NozzleTip> usedNozzleTips = new HashSet<>();
+                Set<Integer> usedPlacements = new HashSet<>();
+                for (boolean allowChange : new boolean[] { false, true }) {
+                    for (int n = 0; n < nozzles.size(); n++) {
+                        if (byNozzle[n] != null || (!allowChange && state.nozzleTips[n] == null)) {
+                            continue;
+                        }
+                        for (int p = 0; p < placements.size(); p++) {
+                            if (state.done[p] || usedPlacements.contains(p)) {
+                                continue;
+                            }
+                            NozzleTip nozzleTip = getNozzleTip(state, n, p, usedNozzleTips);
+                            if (nozzleTip != null && (allowChange || nozzleTip == state.nozzleTips[n])) {
+                                byNozzle[n] = new Assignment(n, nozzleTip, p);
+                                usedNozzleTips.add(nozzleTip);
+                                usedPlacements.add(p);
+                                break;
+                            }
+                        }
+                    }
+                }
+                List<Assignment> assignments = new ArrayList<>();
+                for (Assignment assignment : byNozzle) {
+                    if (assignment != null) {
+                        assignments.add(assignment);
+                    }
+                }
+                return createCycle(state, assignments);
+            }
+        }
+    }
 }
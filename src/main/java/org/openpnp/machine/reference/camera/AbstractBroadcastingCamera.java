@@ -35,6 +35,7 @@ import org.openpnp.ConfigurationListener;
 import org.openpnp.model.Configuration;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
+import org.openpnp.scripting.Scripting;
 import org.openpnp.spi.Actuator;
 import org.openpnp.spi.Camera;
 import org.openpnp.spi.Head;
@@ -70,6 +71,17 @@ public abstract class AbstractBroadcastingCamera extends AbstractSettlingCamera
      */
     private AtomicReference<BufferedImage> lastTransformedImage = new AtomicReference<>();
 
+    /**
+     * Number of the last transformed frames kept in the capturedFrames ring buffer.
+     */
+    protected static final int capturedFramesSize = 4;
+
+    /**
+     * The capturedFrames are produced by captureTransformed() on whatever thread captures, and can be consumed 
+     * by any thread that needs a frame captured after a certain time, see getFrameCapturedAfter().
+     */
+    private final FrameRingBuffer capturedFrames = new FrameRingBuffer(capturedFramesSize);
+
     volatile private boolean cameraViewDirty;
 
     AbstractBroadcastingCamera() {
@@ -170,6 +182,53 @@ public abstract class AbstractBroadcastingCamera extends AbstractSettlingCamera
         notifyCapture();
     }
 
+    /**
+     * Adds a transformed frame to the ring buffer of captured frames. Capture error images are not added.
+     * 
+     * @param image
+     * @param captureTime The NanosecondTime.getRuntime() taken just before the capture started.
+     */
+    protected void addCapturedFrame(BufferedImage image, long captureTime) {
+        if (image != null && image != CAPTURE_ERROR_IMAGE) {
+            capturedFrames.add(image, captureTime);
+        }
+    }
+
+    /**
+     * Returns the first transformed frame captured after time t, if one is available in the ring buffer. This
+     * never blocks nor triggers a capture.  
+     * 
+     * @param t NanosecondTime.getRuntime() reference time.
+     * @return The frame or null if none is available.
+     */
+    public FrameRingBuffer.Frame getFrameCapturedAfter(long t) {
+        return capturedFrames.getFirstFrameCapturedAfter(t);
+    }
+
+    /**
+     * Frames in the ring buffer may have been captured by another thread, e.g. the preview, without running the
+     * Camera.BeforeCapture and Camera.AfterCapture scripts. If any such scripts exist, they may expect to run 
+     * around each capture, therefore buffered frames are then never reused.
+     * 
+     * @return True if frames from the ring buffer can be taken instead of capturing.
+     */
+    protected boolean isCapturedFrameReusable() {
+        Scripting scripting = Configuration.get().getScripting();
+        return !(scripting.hasEventScripts("Camera.BeforeCapture") 
+                || scripting.hasEventScripts("Camera.AfterCapture"));
+    }
+
+    @Override
+    protected FrameRingBuffer.Frame captureFrameAfter(long t) throws Exception {
+        if (isCapturedFrameReusable()) {
+            FrameRingBuffer.Frame frame = getFrameCapturedAfter(t);
+            if (frame != null) {
+                return frame;
+            }
+        }
+        return super.captureFrameAfter(t);
+    }
+
     protected void notifyCapture() {
         synchronized(captureNotifier) {
             captureNotifier.notifyAll();
@@ -264,6 +323,7 @@ public abstract class AbstractBroadcastingCamera extends AbstractSettlingCamera
     }
 
     protected synchronized void stop() {
+        capturedFrames.clear();
         if (isOpen()) {
             thread.interrupt();
             try {
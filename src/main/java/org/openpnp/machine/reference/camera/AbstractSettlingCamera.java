@@ -37,12 +37,12 @@ import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 import org.openpnp.gui.MainFrame;
 import org.openpnp.model.Configuration;
 import org.openpnp.spi.MotionPlanner.CompletionType;
 import org.openpnp.spi.base.AbstractCamera;
+import org.openpnp.util.DebugImageWriter;
 import org.openpnp.util.NanosecondTime;
 import org.openpnp.util.OpenCvUtils;
 import org.openpnp.util.SimpleGraph;
@@ -263,6 +263,19 @@ public abstract class AbstractSettlingCamera extends AbstractCamera {
         }
     }
 
+    /**
+     * Captures a frame that was captured after the given time. The default implementation always captures a new one. 
+     * Subclasses may instead return a frame that was already captured after that time by another thread.
+     * 
+     * @param t NanosecondTime.getRuntime() reference time. 
+     * @return The frame.
+     * @throws Exception
+     */
+    protected FrameRingBuffer.Frame captureFrameAfter(long t) throws Exception {
+        long captureTime = NanosecondTime.getRuntime();
+        return new FrameRingBuffer.Frame(capture(), captureTime);
+    }
+
     private BufferedImage autoSettleAndCapture(double settleMaskCircle) throws Exception {
         Mat mask = null;
         Mat maskFullsize = null;
@@ -271,6 +284,9 @@ public abstract class AbstractSettlingCamera extends AbstractCamera {
         try {
             long t0 = NanosecondTime.getRuntimeMilliseconds();
             long timeout = t0 + settleTimeoutMs;
+            // Frames must be captured after the camera (or its subject) came to a stillstand, and then each after the 
+            // previous one.
+            long tLastCapture = NanosecondTime.getRuntime();
             int debounceCount = 0;
             SimpleGraph settleGraph = startDiagnostics();
             TreeMap<Double, BufferedImage> settleImages = null;
@@ -285,8 +301,10 @@ public abstract class AbstractSettlingCamera extends AbstractCamera {
                     settleGraph.getRow(BOOLEAN, CAPTURE).recordDataPoint(settleGraph.getT(), 1);
                 }
 
-                // The actual capture.
-                BufferedImage image = capture();
+                // The actual capture. A frame captured by another thread in the meantime may be taken instead. 
+                FrameRingBuffer.Frame frame = captureFrameAfter(tLastCapture);
+                BufferedImage image = frame.getImage();
+                tLastCapture = frame.getCaptureTime();
 
                 long t1 = NanosecondTime.getRuntimeMilliseconds();
                 double tCapture = 0.0; 
@@ -613,7 +631,7 @@ public abstract class AbstractSettlingCamera extends AbstractCamera {
             try {
                 File file = Configuration.get()
                         .createResourceFile(getClass(), "settle", ".png");
-                Imgcodecs.imwrite(file.getAbsolutePath(), diagnosticMat);
+                DebugImageWriter.get().write(file, diagnosticMat);
             }
             catch (Exception e) {
                 Logger.error(e);
@@ -0,0 +1,95 @@
+package org.openpnp.machine.reference.camera;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free ring buffer of the last N transformed frames of a Camera, each tagged with its capture time as
+ * obtained from NanosecondTime.getRuntime() before the capture started.
+ *
+ * Consumers can ask for the first frame captured after a given time, without blocking the thread that adds
+ * the frames. As the buffer is small, lookups simply scan all the slots.
+ *
+ */
+public class FrameRingBuffer {
+    public static class Frame {
+        private final BufferedImage image;
+        private final long captureTime;
+
+        public Frame(BufferedImage image, long captureTime) {
+            this.image = image;
+            this.captureTime = captureTime;
+        }
+
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        /**
+         * @return The NanosecondTime.getRuntime() taken just before the frame was captured.
+         */
+        public long getCaptureTime() {
+            return captureTime;
+        }
+    }
+
+    private final AtomicReferenceArray<Frame> frames;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public FrameRingBuffer(int size) {
+        frames = new AtomicReferenceArray<>(Math.max(1, size));
+    }
+
+    public int getSize() {
+        return frames.length();
+    }
+
+    /**
+     * Add a frame, replacing the oldest one.
+     *
+     * @param image
+     * @param captureTime
+     */
+    public void add(BufferedImage image, long captureTime) {
+        int slot = (int) (sequence.getAndIncrement() % frames.length());
+        frames.set(slot, new Frame(image, captureTime));
+    }
+
+    /**
+     * @param t NanosecondTime.getRuntime() reference time.
+     * @return The first frame captured after t, or null if none is available.
+     */
+    public Frame getFirstFrameCapturedAfter(long t) {
+        Frame first = null;
+        for (int i = 0; i < frames.length(); i++) {
+            Frame frame = frames.get(i);
+            if (frame != null && frame.captureTime > t
+                    && (first == null || frame.captureTime < first.captureTime)) {
+                first = frame;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * @return The last frame captured, or null if the buffer is empty.
+     */
+    public Frame getLastFrame() {
+        Frame last = null;
+        for (int i = 0; i < frames.length(); i++) {
+            Frame frame = frames.get(i);
+            if (frame != null
+                    && (last == null || frame.captureTime > last.captureTime)) {
+                last = frame;
+            }
+        }
+        return last;
+    }
+
+    public void clear() {
+        for (int i = 0; i < frames.length(); i++) {
+            frames.set(i, null);
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.videoio.VideoCapture;
 import org.opencv.videoio.Videoio;
@@ -31,6 +32,7 @@ import org.openpnp.gui.support.Wizard;
 import org.openpnp.machine.reference.camera.wizards.OpenCvCameraConfigurationWizard;
 import org.openpnp.spi.PropertySheetHolder;
 import org.openpnp.util.OpenCvUtils;
+import org.openpnp.util.SharedImage;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.ElementList;
@@ -69,6 +71,11 @@ public class OpenCvCamera extends ReferenceCamera implements Runnable {
             if (!fg.read(mat)) {
                 return null;
             }
+            if (isRawImageShareable()
+                    && (mat.type() == CvType.CV_8UC3 || mat.type() == CvType.CV_8UC1)) {
+                // The frame goes straight into the fused transform, so it can stay in native memory.
+                return SharedImage.fromMat(mat);
+            }
             return OpenCvUtils.toBufferedImage(mat);
         }
         catch (Exception e) {
@@ -23,6 +23,7 @@ import java.awt.Color;
 import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.lang.ref.Reference;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -68,7 +69,9 @@ import org.openpnp.spi.Head;
 import org.openpnp.spi.HeadMountable;
 import org.openpnp.spi.Machine;
 import org.openpnp.util.Collect;
+import org.openpnp.util.NanosecondTime;
 import org.openpnp.util.OpenCvUtils;
+import org.openpnp.util.SharedImage;
 import org.openpnp.util.SimpleGraph;
 import org.openpnp.util.VisionUtils;
 import org.openpnp.vision.LensCalibration;
@@ -144,6 +147,13 @@ public abstract class ReferenceCamera extends AbstractBroadcastingCamera impleme
     @Attribute(required = false)
     protected boolean deinterlace;
 
+    /**
+     * Apply the geometric transforms with one remap, instead of step by step. Off by default, it can be switched on 
+     * in the Image Transforms wizard.
+     */
+    @Attribute(required = false)
+    protected boolean fusedTransforms = false;
+
     @Element(required = false)
     private LensCalibrationParams calibration = new LensCalibrationParams();
 
@@ -186,6 +196,23 @@ public abstract class ReferenceCamera extends AbstractBroadcastingCamera impleme
     private Mat undistortionMap2;
     private Mat lut;
 
+    /**
+     * The fused transform maps compose crop, undistortion, scale, rotation, offset and flip into one remap. They 
+     * are rebuilt whenever the fusedTransformKey changes. Guarded by the fusedTransformLock, which is separate from 
+     * the camera monitor, so transforming never waits for an on-going capture.  
+     */
+    private final Object fusedTransformLock = new Object();
+    private Mat fusedTransformMap1;
+    private Mat fusedTransformMap2;
+    private Mat fusedTransformBuffer;
+    private double[] fusedTransformKey;
+    private volatile int calibrationCacheVersion;
+
+    /**
+     * Source coordinate used in the fused transform maps for pixels that have no source, i.e. that are black. 
+     */
+    private static final float fusedTransformInvalid = -1000f;
+
     private LensCalibration lensCalibration;
 
     private Actuator lightActuator;
@@ -232,11 +259,15 @@ public abstract class ReferenceCamera extends AbstractBroadcastingCamera impleme
     }
     
     /**
-     * Captures an image using captureRaw(), applies local transformations and returns the image.
+     * Captures an image using captureRaw(), applies local transformations and returns the image. The image is 
+     * also added to the ring buffer of captured frames, tagged with the time the capture started.
      */
     @Override
     public BufferedImage captureTransformed() {
-        return transformImage(captureRaw());
+        long captureTime = NanosecondTime.getRuntime();
+        BufferedImage image = transformImage(captureRaw());
+        addCapturedFrame(image, captureTime);
+        return image;
     }
     
     /**
@@ -522,6 +553,14 @@ public abstract class ReferenceCamera extends AbstractBroadcastingCamera impleme
         this.deinterlace = deinterlace;
     }
 
+    public boolean isFusedTransforms() {
+        return fusedTransforms;
+    }
+
+    public void setFusedTransforms(boolean fusedTransforms) {
+        this.fusedTransforms = fusedTransforms;
+    }
+
     public boolean isWhiteBalanced() {
         return redBalance != 1.0 || greenBalance != 1.0 || blueBalance != 1.0
                 || redGamma != 1.0 || greenGamma != 1.0 || blueGamma != 1.0
@@ -575,7 +614,11 @@ public abstract class ReferenceCamera extends AbstractBroadcastingCamera impleme
             if (advancedCalibration.isOverridingOldTransformsAndDistortionCorrectionSettings()) {
                 //Skip all the old style image transforms and distortion corrections except for 
                 //deinterlacing, cropping, and white balancing
-                if (isDeinterlaced() || isCropped() || isWhiteBalanced() || advancedCalibration.isEnabled()) {
+                if (isFusedTransforms() 
+                        && (isDeinterlaced() || isCropped() || isWhiteBalanced() || advancedCalibration.isEnabled())) {
+                    image = fusedTransform(image, true);
+                }
+                else if (isDeinterlaced() || isCropped() || isWhiteBalanced() || advancedCalibration.isEnabled()) {
                     Mat mat = OpenCvUtils.toMat(image);
                     mat = deinterlace(mat);
                     mat = crop(mat);
@@ -585,6 +628,11 @@ public abstract class ReferenceCamera extends AbstractBroadcastingCamera impleme
                     mat.release();
                 }
             }
+            // Old style of image transforms, where the geometry can be fused into one remap. The calibration process 
+            // and one-sided scaling are left to the step by step transforms below.
+            else if (isFusedTransform()) {
+                image = fusedTransform(image, false);
+            }
             // Old style of image transforms and distortion correction
             // We do skip the convert to and from Mat if no transforms are needed.
             // But we must enter while performing original calibration.
@@ -635,6 +683,32 @@ public abstract class ReferenceCamera extends AbstractBroadcastingCamera impleme
         return image;
     }
 
+    private boolean isFusedTransform() {
+        return isFusedTransforms()
+                && !isCalibrating() 
+                && (!isScaled() || (scaleWidth != 0 && scaleHeight != 0))
+                && (isDeinterlaced()
+                    || isCropped() 
+                    || isUndistorted()
+                    || isScaled()
+                    || isRotated()
+                    || isOffset()
+                    || isFlipped()
+                    || isWhiteBalanced());
+    }
+
+    /**
+     * @return true if transformImage() only reads the raw image as a Mat, by the fused transform. The raw image is 
+     * then never drawn by Java2D, and internalCapture() may return a SharedImage to avoid copying it.
+     */
+    protected boolean isRawImageShareable() {
+        if (advancedCalibration.isOverridingOldTransformsAndDistortionCorrectionSettings()) {
+            return isFusedTransforms() 
+                    && (isDeinterlaced() || isCropped() || isWhiteBalanced() || advancedCalibration.isEnabled());
+        }
+        return isFusedTransform();
+    }
+
     @Override
     public synchronized Location getUnitsPerPixel(Length viewingPlaneZ) {
         if (advancedCalibration.isOverridingOldTransformsAndDistortionCorrectionSettings() && 
@@ -672,14 +746,261 @@ public abstract class ReferenceCamera extends AbstractBroadcastingCamera impleme
     private Mat whiteBalance(Mat mat) {
         if (isWhiteBalanced() && mat.channels() == 3) {
             initWhiteBalanceLut();
-            Mat whiteBalanced = new Mat();
-            Core.LUT(mat, lut, whiteBalanced);
-            mat.release();
-            mat = whiteBalanced;
+            // The LUT is a per pixel operation, so it can be done in place.
+            Core.LUT(mat, lut, mat);
         }
         return mat;
     }
 
+    /**
+     * Applies deinterlacing, white balancing and all the geometric transforms to the image, using one LUT pass and 
+     * one remap with precomputed maps. The remap goes to a reused buffer. If the raw image is a SharedImage, it is 
+     * read in place, without copying it to a Mat first. 
+     * 
+     * @param image The raw image.
+     * @param advanced true to apply crop and the advanced calibration undistortion, false to apply the old style
+     * transforms. 
+     * @return The transformed image.
+     */
+    private BufferedImage fusedTransform(BufferedImage image, boolean advanced) {
+        Mat mat = OpenCvUtils.toMatView(image);
+        boolean shared = SharedImage.isShared(image);
+        if (isDeinterlaced()) {
+            mat = deinterlace(mat);
+            shared = false;
+        }
+        if (shared && isWhiteBalanced() && mat.channels() == 3) {
+            // Must not modify the shared raw image, so apply the LUT to a new Mat rather than in place.
+            initWhiteBalanceLut();
+            Mat dst = new Mat();
+            Core.LUT(mat, lut, dst);
+            mat.release();
+            mat = dst;
+        }
+        else {
+            mat = whiteBalance(mat);
+        }
+        try {
+            return fusedTransform(mat, advanced);
+        }
+        finally {
+            mat.release();
+            // The Mat may be a view of a SharedImage buffer, which is recycled as soon as the image is collected.
+            Reference.reachabilityFence(image);
+        }
+    }
+
+    private BufferedImage fusedTransform(Mat mat, boolean advanced) {
+        boolean geometric = advanced ? 
+                (isCropped() || advancedCalibration.isEnabled())
+                : (isCropped() || isUndistorted() || isScaled() || isRotated() || isOffset() || isFlipped());
+        if (!geometric) {
+            return OpenCvUtils.toBufferedImage(mat);
+        }
+        synchronized (fusedTransformLock) {
+            double[] key = new double[] {
+                    mat.cols(), mat.rows(), advanced ? 1 : 0, calibrationCacheVersion,
+                    cropWidth, cropHeight,
+                    advanced ? (advancedCalibration.isEnabled() ? 1 : 0) : (isUndistorted() ? 1 : 0),
+                    advanced ? 0 : scaleWidth, advanced ? 0 : scaleHeight, 
+                    advanced ? 0 : rotation, 
+                    advanced ? 0 : offsetX, advanced ? 0 : offsetY, 
+                    advanced ? 0 : (flipX ? 1 : 0), advanced ? 0 : (flipY ? 1 : 0)
+            };
+            if (fusedTransformMap1 == null || !Arrays.equals(key, fusedTransformKey)) {
+                buildFusedTransformMaps(mat.size(), advanced);
+                fusedTransformKey = key;
+            }
+            if (fusedTransformBuffer == null) {
+                fusedTransformBuffer = new Mat();
+            }
+            Imgproc.remap(mat, fusedTransformBuffer, fusedTransformMap1, fusedTransformMap2, Imgproc.INTER_LINEAR);
+            return OpenCvUtils.toBufferedImage(fusedTransformBuffer);
+        }
+    }
+
+    /**
+     * Builds the fused transform maps, by following each destination pixel back through the transforms to its 
+     * source coordinate in the raw image. The transforms are the same as in crop(), undistort() or
+     * the advanced calibration undistortion, scale(), rotate(), offset() and flip(), in that order. Pixels that fall outside of an 
+     * intermediate image are black, like with the step by step transforms.
+     * 
+     * @param rawSize
+     * @param advanced
+     */
+    private void buildFusedTransformMaps(Size rawSize, boolean advanced) {
+        releaseFusedTransformMaps();
+        int rawWidth = (int) rawSize.width;
+        int rawHeight = (int) rawSize.height;
+        // Crop, see crop().
+        int cw = rawWidth;
+        int ch = rawHeight;
+        if (isCropped()) {
+            cw = (cropWidth != 0 && cropWidth < rawWidth) ? cropWidth : rawWidth;
+            ch = (cropHeight != 0 && cropHeight < rawHeight) ? cropHeight : rawHeight;
+        }
+        int cropX = (int) ((rawSize.width / 2) - (cw / 2));
+        int cropY = (int) ((rawSize.height / 2) - (ch / 2));
+
+        // Undistortion maps, if any. These also determine the output size of the advanced transform.
+        Mat map1 = null;
+        Mat map2 = null;
+        if (advanced) {
+            if (advancedCalibration.isEnabled()) {
+                synchronized (this) {
+                    if (undistortionMap1 == null || undistortionMap2 == null) {
+                        undistortionMap1 = new Mat();
+                        undistortionMap2 = new Mat();
+                        advancedCalibration.initUndistortRectifyMap(undistortionMap1, undistortionMap2);
+                    }
+                    map1 = undistortionMap1.clone();
+                    map2 = undistortionMap2.clone();
+                }
+            }
+        }
+        else if (isUndistorted()) {
+            synchronized (this) {
+                initUndistortionMaps(new Size(cw, ch));
+                map1 = undistortionMap1.clone();
+                map2 = undistortionMap2.clone();
+            }
+        }
+        int width = (map1 != null ? map1.cols() : cw);
+        int height = (map1 != null ? map1.rows() : ch);
+
+        // Affine transforms of the old style, see scale(), rotate().
+        int scaledWidth = width;
+        int scaledHeight = height;
+        double[] inverseRotation = null;
+        int rotatedWidth = width;
+        int rotatedHeight = height;
+        if (!advanced) {
+            if (isScaled()) {
+                scaledWidth = scaleWidth;
+                scaledHeight = scaleHeight;
+            }
+            rotatedWidth = scaledWidth;
+            rotatedHeight = scaledHeight;
+            if (isRotated()) {
+                Point center = new Point(scaledWidth / 2D, scaledHeight / 2D);
+                Mat mapMatrix = Imgproc.getRotationMatrix2D(center, rotation, 1.0);
+                Rect bbox = new RotatedRect(center, new Size(scaledWidth, scaledHeight), rotation).boundingRect();
+                double[] cx = mapMatrix.get(0, 2);
+                double[] cy = mapMatrix.get(1, 2);
+                cx[0] += bbox.width / 2D - center.x;
+                cy[0] += bbox.height / 2D - center.y;
+                mapMatrix.put(0, 2, cx);
+                mapMatrix.put(1, 2, cy);
+                Mat inverseMatrix = new Mat();
+                Imgproc.invertAffineTransform(mapMatrix, inverseMatrix);
+                inverseRotation = new double[6];
+                inverseMatrix.get(0, 0, inverseRotation);
+                inverseMatrix.release();
+                mapMatrix.release();
+                rotatedWidth = bbox.width;
+                rotatedHeight = bbox.height;
+            }
+        }
+
+        // Follow each destination pixel back to the (undistorted) cropped image.
+        int outWidth = rotatedWidth;
+        int outHeight = rotatedHeight;
+        float[] xs = new float[outWidth*outHeight];
+        float[] ys = new float[outWidth*outHeight];
+        boolean[] valid = new boolean[outWidth*outHeight];
+        for (int v = 0, i = 0; v < outHeight; v++) {
+            for (int u = 0; u < outWidth; u++, i++) {
+                double x = u;
+                double y = v;
+                if (!advanced) {
+                    // Note, flipX means to flip about the x-axis, see flip().
+                    if (flipY) {
+                        x = outWidth - 1 - x;
+                    }
+                    if (flipX) {
+                        y = outHeight - 1 - y;
+                    }
+                    x -= offsetX;
+                    y -= offsetY;
+                    if (!isInside(x, y, rotatedWidth, rotatedHeight)) {
+                        continue;
+                    }
+                    if (inverseRotation != null) {
+                        double xr = inverseRotation[0]*x + inverseRotation[1]*y + inverseRotation[2];
+                        double yr = inverseRotation[3]*x + inverseRotation[4]*y + inverseRotation[5];
+                        x = xr;
+                        y = yr;
+                        if (!isInside(x, y, scaledWidth, scaledHeight)) {
+                            continue;
+                        }
+                    }
+                    x = (x + 0.5)*width/scaledWidth - 0.5;
+                    y = (y + 0.5)*height/scaledHeight - 0.5;
+                }
+                if (!isInside(x, y, width, height)) {
+                    continue;
+                }
+                xs[i] = (float) x;
+                ys[i] = (float) y;
+                valid[i] = true;
+            }
+        }
+        Mat mapX = new Mat(outHeight, outWidth, CvType.CV_32FC1);
+        Mat mapY = new Mat(outHeight, outWidth, CvType.CV_32FC1);
+        mapX.put(0, 0, xs);
+        mapY.put(0, 0, ys);
+        if (map1 != null) {
+            // Look up the undistortion maps, i.e. remap the maps themselves.
+            Mat undistortedX = new Mat();
+            Mat undistortedY = new Mat();
+            Imgproc.remap(map1, undistortedX, mapX, mapY, Imgproc.INTER_LINEAR, Core.BORDER_REPLICATE);
+            Imgproc.remap(map2, undistortedY, mapX, mapY, Imgproc.INTER_LINEAR, Core.BORDER_REPLICATE);
+            undistortedX.get(0, 0, xs);
+            undistortedY.get(0, 0, ys);
+            undistortedX.release();
+            undistortedY.release();
+            map1.release();
+            map2.release();
+        }
+        // Translate from the cropped to the raw image.
+        for (int i = 0; i < xs.length; i++) {
+            if (valid[i] && isInside(xs[i], ys[i], cw, ch)) {
+                xs[i] += cropX;
+                ys[i] += cropY;
+            }
+            else {
+                xs[i] = fusedTransformInvalid;
+                ys[i] = fusedTransformInvalid;
+            }
+        }
+        mapX.put(0, 0, xs);
+        mapY.put(0, 0, ys);
+        // Convert to the fixed point representation, which remaps faster.
+        fusedTransformMap1 = new Mat();
+        fusedTransformMap2 = new Mat();
+        Imgproc.convertMaps(mapX, mapY, fusedTransformMap1, fusedTransformMap2, CvType.CV_16SC2);
+        mapX.release();
+        mapY.release();
+        Logger.debug("{} fused transform maps built for {}x{} to {}x{}", getName(), rawWidth, rawHeight, 
+                outWidth, outHeight);
+    }
+
+    private static boolean isInside(double x, double y, int width, int height) {
+        return x >= -0.5 && y >= -0.5 && x <= width - 0.5 && y <= height - 0.5;
+    }
+
+    private void releaseFusedTransformMaps() {
+        if (fusedTransformMap1 != null) {
+            fusedTransformMap1.release();
+            fusedTransformMap1 = null;
+        }
+        if (fusedTransformMap2 != null) {
+            fusedTransformMap2.release();
+            fusedTransformMap2 = null;
+        }
+        fusedTransformKey = null;
+    }
+
     protected void initWhiteBalanceLut() {
         if (lut == null) {
             byte[] data = new byte[3];
@@ -1077,22 +1398,26 @@ public abstract class ReferenceCamera extends AbstractBroadcastingCamera impleme
             return mat;
         }
 
+        initUndistortionMaps(mat.size());
+
+        Mat dst = mat.clone();
+        Imgproc.remap(mat, dst, undistortionMap1, undistortionMap2, Imgproc.INTER_LINEAR);
+        mat.release();
+
+        return dst;
+    }
+
+    private synchronized void initUndistortionMaps(Size size) {
         if (undistortionMap1 == null || undistortionMap2 == null) {
             undistortionMap1 = new Mat();
             undistortionMap2 = new Mat();
             Mat rectification = Mat.eye(3, 3, CvType.CV_32F);
             Calib3d.initUndistortRectifyMap(calibration.getCameraMatrixMat(),
                     calibration.getDistortionCoefficientsMat(), rectification,
-                    calibration.getCameraMatrixMat(), mat.size(), CvType.CV_32FC1, undistortionMap1,
+                    calibration.getCameraMatrixMat(), size, CvType.CV_32FC1, undistortionMap1,
                     undistortionMap2);
             rectification.release();
         }
-
-        Mat dst = mat.clone();
-        Imgproc.remap(mat, dst, undistortionMap1, undistortionMap2, Imgproc.INTER_LINEAR);
-        mat.release();
-
-        return dst;
     }
 
     public void setUndistorted(boolean undistorted) {
@@ -1186,6 +1511,8 @@ public abstract class ReferenceCamera extends AbstractBroadcastingCamera impleme
             undistortionMap2.release();
             undistortionMap2 = null;
         }
+        // The fused transform maps are rebuilt on the next frame.
+        calibrationCacheVersion++;
     }
 
     public void startCalibration(CalibrationCallback callback) {
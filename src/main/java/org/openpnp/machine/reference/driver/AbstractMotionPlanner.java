@@ -25,7 +25,7 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import javax.swing.Action;
 import javax.swing.Icon;
@@ -84,7 +84,13 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
     private ReferenceMachine machine;
 
     protected LinkedList<Motion> motionCommands = new LinkedList<>();
-    protected TreeMap<Double, Motion> motionPlan = new TreeMap<Double, Motion>();
+    /**
+     * The real-time motion plan, indexed by the planned end time of the motions. Motions are appended by 
+     * executeMotionPlan() and trimmed by clearMotionPlanOlderThan(). Camera, simulation and UI threads read it 
+     * through getMomentaryMotion() and getLastMotion() without taking the planner lock, so they do not contend
+     * with the planning. 
+     */
+    protected final ConcurrentSkipListMap<Double, Motion> motionPlan = new ConcurrentSkipListMap<>();
 
     private AxesLocation lastDirectionalBacklashOffset = new AxesLocation();
     private List<Driver> lastPlannedDrivers = new ArrayList<Driver>();
@@ -439,9 +445,10 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
         // Now execute the plan against the drivers.
         // We also record it into the real-time motionPlan to enable motion prediction and simulation. 
         double t = NanosecondTime.getRuntimeSeconds();
-        if (motionPlan.isEmpty() == false && motionPlan.lastKey() > t) {
+        Map.Entry<Double, Motion> lastEntry = motionPlan.lastEntry();
+        if (lastEntry != null && lastEntry.getKey() > t) {
             // Append to a plan that is still running. 
-            t = motionPlan.lastKey();
+            t = lastEntry.getKey();
         }
         ReferenceMachine machine = (ReferenceMachine) Configuration.get().getMachine();
         List<Head> movedHeads = new ArrayList<>();
@@ -717,7 +724,7 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
     }
 
     @Override
-    public synchronized Motion getMomentaryMotion(double time) {
+    public Motion getMomentaryMotion(double time) {
         Map.Entry<Double, Motion> entry1 = motionPlan.higherEntry(time);
         if (entry1 != null) {
             // Return the motion.
@@ -741,7 +748,7 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
     }
 
     @Override
-    public synchronized Motion getLastMotion() {
+    public Motion getLastMotion() {
         for (Map.Entry<Double, Motion> entry : motionPlan.descendingMap().entrySet()) {
             Motion motion = entry.getValue();
             if (!motion.getLocation0().matches(motion.getLocation1())) {
@@ -862,10 +869,8 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
     }
 
     @Override
-    public synchronized void clearMotionPlanOlderThan(double time) {
-        while (motionPlan.isEmpty() == false && motionPlan.firstKey() < time) {
-            motionPlan.remove(motionPlan.firstKey());
-        }
+    public void clearMotionPlanOlderThan(double time) {
+        motionPlan.headMap(time).clear();
     }
 
     public boolean isInterpolationRetiming() {
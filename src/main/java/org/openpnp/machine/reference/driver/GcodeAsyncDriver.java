@@ -22,8 +22,12 @@
 package org.openpnp.machine.reference.driver;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.openpnp.gui.support.PropertySheetWizardAdapter;
 import org.openpnp.machine.reference.driver.wizards.GcodeAsyncDriverSettings;
@@ -94,6 +98,26 @@ public class GcodeAsyncDriver extends GcodeDriver {
     @Attribute(required=false)
     private boolean confirmationFlowControl = true;
 
+    /**
+     * Maximum number of commands that may be sent without having been confirmed. With 1, each command is 
+     * confirmed before the next one is sent. Larger windows hide the link round-trip time.
+     */
+    @Attribute(required=false)
+    private int confirmationWindowCommands = 1;
+
+    /**
+     * Maximum number of bytes that may be sent without having been confirmed. Set this to the size of the 
+     * controller's receive buffer, e.g. 128 on Grbl. 0 means no limit.
+     */
+    @Attribute(required=false)
+    private int confirmationWindowBytes = 0;
+
+    /**
+     * Maximum number of queued commands that are coalesced into one write.
+     */
+    @Attribute(required=false)
+    private int maxCommandsCoalesced = 16;
+
     @Attribute(required=false)
     private boolean reportedLocationConfirmation = true;
 
@@ -121,6 +145,11 @@ public class GcodeAsyncDriver extends GcodeDriver {
 
     static public class CommandLine extends Line {
         final long timeout;
+        /**
+         * The position of the command in the sequence of windowed commands, i.e. the number of responses
+         * expected before the one to this command.
+         */
+        long sequence;
 
         public CommandLine(String line, long timeout) {
             super(line);
@@ -133,6 +162,17 @@ public class GcodeAsyncDriver extends GcodeDriver {
     }
     protected LinkedBlockingQueue<CommandLine> commandQueue;
 
+    /**
+     * The commands sent but not yet confirmed, oldest first. Confirmations are matched to them in order.
+     */
+    protected ConcurrentLinkedDeque<CommandLine> unconfirmedCommands = new ConcurrentLinkedDeque<>();
+
+    /**
+     * The number of confirmation or error responses received, counted by the reader thread. It indexes the 
+     * sequence of the command that the next response belongs to.
+     */
+    protected AtomicLong responsesReceived = new AtomicLong();
+
     private boolean waitedForCommands;
     private volatile boolean confirmationComplete;
 
@@ -146,6 +186,33 @@ public class GcodeAsyncDriver extends GcodeDriver {
         firePropertyChange("confirmationFlowControl", oldValue, confirmationFlowControl);
     }
 
+    public int getConfirmationWindowCommands() {
+        return confirmationWindowCommands;
+    }
+
+    public void setConfirmationWindowCommands(int confirmationWindowCommands) {
+        Object oldValue = this.confirmationWindowCommands;
+        this.confirmationWindowCommands = Math.max(1, confirmationWindowCommands);
+        firePropertyChange("confirmationWindowCommands", oldValue, this.confirmationWindowCommands);
+    }
+
+    public int getConfirmationWindowBytes() {
+        return confirmationWindowBytes;
+    }
+
+    public void setConfirmationWindowBytes(int confirmationWindowBytes) {
+        Object oldValue = this.confirmationWindowBytes;
+        this.confirmationWindowBytes = Math.max(0, confirmationWindowBytes);
+        firePropertyChange("confirmationWindowBytes", oldValue, this.confirmationWindowBytes);
+    }
+
+    /**
+     * @return true if more than one command may be unconfirmed at a time. 
+     */
+    public boolean isConfirmationWindowed() {
+        return confirmationFlowControl && confirmationWindowCommands > 1;
+    }
+
     public boolean isReportedLocationConfirmation() {
         return reportedLocationConfirmation;
     }
@@ -234,7 +301,13 @@ public class GcodeAsyncDriver extends GcodeDriver {
             ReferenceDriverCommunications comms = getCommunications();
             String connectionName = comms.getConnectionName();
 
-            CommandLine lastCommand = null;
+            unconfirmedCommands.clear();
+            int unconfirmedBytes = 0;
+            long commandsSent = 0;
+            // Commands taken from the queue, but not yet written. Commands that are queued back-to-back are 
+            // coalesced into one write.
+            List<CommandLine> unwrittenCommands = new ArrayList<>();
+            List<String> unwrittenLines = new ArrayList<>();
             while (!disconnectRequested) {
                 CommandLine command;
                 try {
@@ -248,24 +321,51 @@ public class GcodeAsyncDriver extends GcodeDriver {
                     continue;
                 }
                 try {
-                    if (confirmationFlowControl && lastCommand != null) {
-                        try {
-                            // Before we can send the new command, make sure the wanted confirmation count of the last command was received.
-                            waitForConfirmation(lastCommand.toString(), lastCommand.getTimeout());
-                        }
-                        finally {
-                            // Whatever happens, never wait for this one again.
-                            lastCommand = null;
+                    int commandBytes = (command.line != null ? getLineBytes(comms, command.line) : 0);
+                    if (confirmationFlowControl) {
+                        // Before we can send the new command, make sure there is room in the confirmation window. 
+                        // The null command drains the window completely.
+                        while (!unconfirmedCommands.isEmpty() 
+                                && (command.line == null 
+                                || unconfirmedCommands.size() >= confirmationWindowCommands
+                                || (confirmationWindowBytes > 0 
+                                        && unconfirmedBytes + commandBytes > confirmationWindowBytes))) {
+                            CommandLine oldestCommand = unconfirmedCommands.peek();
+                            // Make sure everything is written, before waiting for it to be confirmed.
+                            writeCommands(comms, unwrittenCommands, unwrittenLines);
+                            try {
+                                waitForConfirmation(oldestCommand.toString(), oldestCommand.getTimeout());
+                            }
+                            catch (Exception e) {
+                                // The confirmations are no longer in sync, never wait for any of these again.
+                                unconfirmedCommands.clear();
+                                unconfirmedBytes = 0;
+                                throw e;
+                            }
+                            unconfirmedCommands.poll();
+                            unconfirmedBytes -= getLineBytes(comms, oldestCommand.line);
                         }
                     }
                     if (command.line != null) {
-                        // Set up the wanted confirmations for next time.
-                        lastCommand = command;
-                        receivedConfirmationsQueue.clear();
-                        comms.writeLine(command.line);
-                        Logger.trace("[{}] >> {}", connectionName, command);
+                        if (unconfirmedCommands.isEmpty()) {
+                            // Nothing is pending, so anything received so far is stale.
+                            receivedConfirmationsQueue.clear();
+                            responsesReceived.set(commandsSent);
+                        }
+                        if (confirmationFlowControl) {
+                            // Set up the wanted confirmation.
+                            command.sequence = commandsSent++;
+                            unconfirmedCommands.add(command);
+                            unconfirmedBytes += commandBytes;
+                        }
+                        unwrittenCommands.add(command);
+                        unwrittenLines.add(command.line);
+                        if (unwrittenCommands.size() >= maxCommandsCoalesced || commandQueue.isEmpty()) {
+                            writeCommands(comms, unwrittenCommands, unwrittenLines);
+                        }
                     }
                     else {
+                        writeCommands(comms, unwrittenCommands, unwrittenLines);
                         confirmationComplete = true;
                         synchronized(GcodeAsyncDriver.this) {
                             GcodeAsyncDriver.this.notify();
@@ -288,6 +388,73 @@ public class GcodeAsyncDriver extends GcodeDriver {
         }
     }
 
+    private void writeCommands(ReferenceDriverCommunications comms, List<CommandLine> commands, List<String> lines)
+            throws IOException {
+        if (commands.isEmpty()) {
+            return;
+        }
+        try {
+            if (lines.size() == 1) {
+                comms.writeLine(lines.get(0));
+            }
+            else {
+                comms.writeLines(lines);
+            }
+            for (CommandLine command : commands) {
+                Logger.trace("[{}] >> {}", comms.getConnectionName(), command);
+            }
+        }
+        finally {
+            commands.clear();
+            lines.clear();
+        }
+    }
+
+    private static int getLineBytes(ReferenceDriverCommunications comms, String line) {
+        return line.length() + comms.getLineEndingType().getLineEnding().length();
+    }
+
+    /**
+     * In windowed confirmation mode, an error response is traced back to the command the controller was 
+     * processing, i.e. the one with as many confirmation or error responses before it, as were received so 
+     * far. Commands that are already confirmed may still be in the window, until the writer thread has taken 
+     * their confirmation. As controllers typically send the error instead of the confirmation, the error 
+     * also takes the command out of the window.
+     */
+    @Override
+    protected void processResponse(Line line) {
+        long sequence = -1;
+        if (isConfirmationWindowed()) {
+            String response = line.getLine();
+            if (responseClassifier.isConfirmation(response) || responseClassifier.isError(response)) {
+                sequence = responsesReceived.getAndIncrement();
+            }
+        }
+        super.processResponse(line);
+        if (sequence >= 0 && errorResponse == line) {
+            CommandLine command = getUnconfirmedCommand(sequence);
+            if (command != null) {
+                errorResponse = new Line(line+" (in response to "+command+")");
+                if (!responseClassifier.isConfirmation(line.getLine())) {
+                    receivedConfirmationsQueue.add(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param sequence
+     * @return The unconfirmed command with the given sequence, or null if none.
+     */
+    private CommandLine getUnconfirmedCommand(long sequence) {
+        for (CommandLine command : unconfirmedCommands) {
+            if (command.sequence == sequence) {
+                return command;
+            }
+        }
+        return null;
+    }
+
     @Override
     protected void bailOnError() throws Exception {
         super.bailOnError();
@@ -76,6 +76,7 @@ import org.openpnp.spi.base.AbstractHeadMountable;
 import org.openpnp.spi.base.AbstractSingleTransformedAxis;
 import org.openpnp.spi.base.AbstractTransformedAxis;
 import org.openpnp.util.NanosecondTime;
+import org.openpnp.util.TextTemplate;
 import org.openpnp.util.TextUtils;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
@@ -318,6 +319,8 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
     }
 
     protected LinkedBlockingQueue<Line> responseQueue = new LinkedBlockingQueue<>();
+    // Reused by moveTo() to render the MOVE_TO_COMMAND template.
+    private final TextTemplate.Values moveToValues = new TextTemplate.Values();
     protected LinkedBlockingQueue<AxesLocation> reportedLocationsQueue = new LinkedBlockingQueue<>();
     protected LinkedBlockingQueue<Line> receivedConfirmationsQueue = new LinkedBlockingQueue<>();
 
@@ -326,6 +329,8 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
 
     private PrintWriter gcodeLogger;
 
+    protected final GcodeResponseClassifier responseClassifier = new GcodeResponseClassifier(this);
+
     // create a class to group send-on-change behavior
     // used to support sending feedRate, acceleration and jerk only when they have changed
     static class SendOnChange {
@@ -364,21 +369,31 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         }
         
         public String substituteVariable(String command, Double value) {
-            // send/substitute string and value
+            // send/substitute string and value, or remove the variable
+            command = GcodeDriver.substituteVariable(command, variable, getSentValue(value)); // call the substitute method of the outer class as used by the rest of the code
+            // always substitute string + "F"
+            command = GcodeDriver.substituteVariable(command, variable + "F", value); // call the substitute method of the outer class as used by the rest of the code
+            
+            return command;
+        }
+
+        // same as substituteVariable(), but sets the values for a compiled command template
+        public void setValues(TextTemplate.Values values, Double value) {
+            values.set(variable, getSentValue(value));
+            values.set(variable + "F", value);
+        }
+
+        // returns the value if it is to be sent, null otherwise
+        private Double getSentValue(Double value) {
             if (!sendOnChange                                                         // .. if forced
                  || value == null                                                     // .. or value not initialized
                  || lastValue == null                                                 // .. or last value not initialized
                  || value == 0.0                                                      // .. of if the new value is 0 - avoid division by zero
                  || Math.abs((lastValue - value) / value) > relativeDeviation) {      // .. or if the value has changed by more then 1e-3 relative
                 lastValue = value;
-                command = GcodeDriver.substituteVariable(command, variable, value);   // call the substitute method of the outer class as used by the rest of the code
-            } else {
-                command = GcodeDriver.substituteVariable(command, variable, null);    // remove the variable
+                return value;
             }
-            // always substitute string + "F"
-            command = GcodeDriver.substituteVariable(command, variable + "F", value); // call the substitute method of the outer class as used by the rest of the code
-            
-            return command;
+            return null;
         }
 
         // reset the send on change behavior by invalidating lastValue
@@ -459,6 +474,11 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         command = getSendOnChangeJerk().substituteVariable(command, jerk);
         return command;
     }
+    private void sendOnChangeSetAllValues(TextTemplate.Values values, Double feedRate, Double acceleration, Double jerk) {
+        getSendOnChangeFeedRate().setValues(values, feedRate);
+        getSendOnChangeAcceleration().setValues(values, acceleration);
+        getSendOnChangeJerk().setValues(values, jerk);
+    }
     
     @Commit
     public void commit() {
@@ -862,7 +882,10 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
             movedAxesLocation.getLengthCoordinate(axis).convertToUnits(getUnits()).getValue() - axis.getDriverCoordinate()).third;
 
         // Start composing the command, will decide later, whether we actually send it.
-        String command = getCommand(hm, CommandType.MOVE_TO_COMMAND);
+        // The command template is parsed once and then rendered with the values collected below.
+        TextTemplate command = TextTemplate.compile(getCommand(hm, CommandType.MOVE_TO_COMMAND));
+        TextTemplate.Values values = moveToValues;
+        values.clear();
         if (command == null) {
             if (movedAxesLocation.isEmpty()) {
                 return;
@@ -875,7 +898,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
                 throw new Exception(getName()+" MOVE_TO_COMMAND missing, please use Issues & Solutions to propose proper G-code commands.");
             }
         }
-        if (hasVariable(command, "BacklashFeedRate")) {
+        if (command.hasVariable("BacklashFeedRate")) {
             throw new Exception(getName()+" configuration upgrade needed: Please remove the extra backlash compensation move from your MOVE_TO_COMMAND. "
                     +"Backlash compensation is now done outside of the drivers and configured on the axes.");
         }
@@ -902,9 +925,9 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
             jerk *= driverUnitsFactor;
         }
 
-        command = substituteVariable(command, "Id", hm.getId());
-        command = substituteVariable(command, "Name", hm.getName());
-        command = sendOnChangeSubstituteAllVariables(command, feedRate, acceleration, jerk);
+        values.set("Id", hm.getId());
+        values.set("Name", hm.getName());
+        sendOnChangeSetAllValues(values, feedRate, acceleration, jerk);
 
         ReferenceMachine machine = (ReferenceMachine) hm.getHead().getMachine();
         // Get a map of the axes of ...
@@ -931,7 +954,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
                 // position change after all. 
                 // Note, there is no need for separate backlash compensation variables, as these are always 
                 // substituted alongside. 
-                if (hasVariable(command, variable+"F")) {
+                if (command.hasVariable(variable+"F") && !values.isSet(variable+"F")) {
                     // Force it! Must get it from the mappedAxes. If the mappedAxes do not have it, it is 
                     // still suppressed (this never happens when using letter variables). 
                     axis = mappedAxes.getAxisByVariable(this, variable);
@@ -952,15 +975,15 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
                 double previousCoordinate = axis.getDriverCoordinate(); 
                 int direction = ((Double)coordinate).compareTo(previousCoordinate);
                 // Substitute the axis variables.
-                command = substituteVariable(command, variable, coordinate);
-                command = substituteVariable(command, variable+"F", coordinate);
-                command = substituteVariable(command, variable+"L", axis.getLetter());
-                if (hasVariable(command, "BacklashOffset"+variable)) {
+                values.set(variable, coordinate);
+                values.set(variable+"F", coordinate);
+                values.set(variable+"L", axis.getLetter());
+                if (command.hasVariable("BacklashOffset"+variable) && !values.isSet("BacklashOffset"+variable)) {
                     throw new Exception(getName()+" configuration upgrade needed: Please remove the extra backlash compensation move from your MOVE_TO_COMMAND. "
                             +"Backlash compensation is now done outside of the drivers.");
                 }
-                command = substituteVariable(command, variable+"Decreasing", direction < 0 ? true : null);
-                command = substituteVariable(command, variable+"Increasing", direction > 0 ? true : null);
+                values.set(variable+"Decreasing", direction < 0 ? true : null);
+                values.set(variable+"Increasing", direction > 0 ? true : null);
                 if (isSupportingPreMove() && axis instanceof ReferenceControllerAxis) {
                     // Check for a pre-move command.
                     String preMoveCommand = ((ReferenceControllerAxis) axis).getPreMoveCommand();
@@ -972,27 +995,27 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
                 // Axis specific jerk limits are needed on TinyG.
                 double axisDistance = coordinate - previousCoordinate;
                 double axisJerk = (jerk != null ? jerk : 0)*Math.abs(axisDistance)/driverDistance;
-                command = substituteVariable(command, variable+"Jerk", axisJerk > jMin ? axisJerk : null);
-                command = substituteVariable(command, variable+"JerkMupm3", axisJerk > jMin*4.63 ? axisJerk*1e-6*Math.pow(60, 3) : null); // TinyG: Megaunits/min^3 
+                values.set(variable+"Jerk", axisJerk > jMin ? axisJerk : null);
+                values.set(variable+"JerkMupm3", axisJerk > jMin*4.63 ? axisJerk*1e-6*Math.pow(60, 3) : null); // TinyG: Megaunits/min^3 
                 // Store the new driver coordinate on the axis.
                 axis.setDriverCoordinate(coordinate);
             }
             else {
                 // Delete the unused axis variables.
-                command = substituteVariable(command, variable, null);
-                command = substituteVariable(command, variable+"F", null);
-                command = substituteVariable(command, variable+"L", null); 
-                command = substituteVariable(command, "BacklashOffset"+variable, null);
-                command = substituteVariable(command, variable+"Decreasing", null);
-                command = substituteVariable(command, variable+"Increasing", null);
-                command = substituteVariable(command, variable+"Jerk", null);
-                command = substituteVariable(command, variable+"JerkMupm3", null);  
+                values.set(variable, null);
+                values.set(variable+"F", null);
+                values.set(variable+"L", null); 
+                values.set("BacklashOffset"+variable, null);
+                values.set(variable+"Decreasing", null);
+                values.set(variable+"Increasing", null);
+                values.set(variable+"Jerk", null);
+                values.set(variable+"JerkMupm3", null);  
             }
         }
         if (doesMove) {
             // We do actually send the command.
             motionPending = true;
-            sendGcode(command);
+            sendGcode(command.render(values));
         }
     }
 
@@ -1355,7 +1378,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
                         continue;
                     }
                 }
-                else if (compressionExcludes.contains(String.valueOf(ch))) {
+                else if (compressionExcludes.indexOf(ch) >= 0) {
                     trailingZeroes = compressDecimal(trailingZeroes, compressedCommand);
                     decimal = false;
                     // Due to ambiguities in escaping of strings and nesting of brackets, and brackets in strings,
@@ -1525,53 +1548,21 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
      * @param line
      */
     protected void processResponse(Line line) {
-        String regex = getCommand(null, CommandType.COMMAND_CONFIRM_REGEX);
-        if (regex != null && line.getLine().matches(regex)) {
+        String response = line.getLine();
+        if (responseClassifier.isConfirmation(response)) {
             receivedConfirmationsQueue.add(line);
         }
-        regex = getCommand(null, CommandType.COMMAND_ERROR_REGEX);
-        if (regex != null && line.getLine().matches(regex)) {
+        if (responseClassifier.isError(response)) {
             errorResponse = line;
         }
         processPositionReport(line);
     }
 
     protected boolean processPositionReport(Line line) {
-        String regex = getCommand(null, CommandType.POSITION_REPORT_REGEX); 
-        if (regex == null) {
-            return false;
-        }
-
-        if (!line.getLine().matches(regex)) {
-            return false;
-        }
-
-        Logger.trace("Position report: {}", line);
         ReferenceMachine machine = ((ReferenceMachine) Configuration.get().getMachine());
-        Matcher matcher =
-                Pattern.compile(regex).matcher(line.getLine());
-        matcher.matches();
-        AxesLocation position = AxesLocation.zero;
-        for (ControllerAxis axis : new AxesLocation(machine).getAxes(this)) {
-            try {
-                String variable = axis.getLetter(); 
-                String s = matcher.group(variable);
-                Double d = Double.valueOf(s);
-                if (axis.getType() == Type.Rotation) {
-                    // Rotation axis is not converted from driver units.
-                    position = position.put(new AxesLocation(axis, new Length(d, AxesLocation.getUnits())));
-                }
-                else {
-                    position = position.put(new AxesLocation(axis, new Length(d, getUnits())));
-                }
-            }
-            catch (IllegalArgumentException e) {
-                // Axis is not present in pattern. That's a warning, but might not be supported by controller, so we let it go. 
-                Logger.warn("{}: Axis {} letter {} missing in POSITION_REPORT_REGEX groups.", getName(), axis.getName(), axis.getLetter());
-            }
-            catch (Exception e) {
-                Logger.warn("{}: Error processing position report for axis {}: {}", getName(), axis.getName(), e);
-            }
+        AxesLocation position = responseClassifier.parsePositionReport(line.getLine(), machine);
+        if (position == null) {
+            return false;
         }
         // Store the latest momentary position.
         reportedLocationsQueue.add(position);
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ *
+ * This file is part of OpenPnP.
+ *
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+package org.openpnp.machine.reference.driver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openpnp.machine.reference.driver.GcodeDriver.Command;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+import org.openpnp.model.AxesLocation;
+import org.openpnp.model.Length;
+import org.openpnp.spi.Axis;
+import org.openpnp.spi.Axis.Type;
+import org.openpnp.spi.ControllerAxis;
+import org.openpnp.spi.Machine;
+import org.pmw.tinylog.Logger;
+
+/**
+ * Classifies the response lines received by the GcodeDriver's ReaderThread.
+ *
+ * The COMMAND_CONFIRM_REGEX, COMMAND_ERROR_REGEX and POSITION_REPORT_REGEX are compiled once and only
+ * recompiled, when the driver's command configuration changes. The literal prefix of each regex is
+ * extracted, so most lines are rejected by a cheap startsWith() check before any regex runs. Position
+ * reports are parsed into a reusable axis buffer.
+ *
+ * The classifier reuses its Matchers, therefore the methods are synchronized. In practice they are only
+ * ever called from the ReaderThread, so the locks are uncontended.
+ */
+public class GcodeResponseClassifier {
+    private static final Pattern GROUP_NAME_PATTERN = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+
+    private final GcodeDriver driver;
+    private final CompiledRegex confirmRegex = new CompiledRegex(CommandType.COMMAND_CONFIRM_REGEX);
+    private final CompiledRegex errorRegex = new CompiledRegex(CommandType.COMMAND_ERROR_REGEX);
+    private final CompiledRegex positionReportRegex = new CompiledRegex(CommandType.POSITION_REPORT_REGEX);
+
+    // Reusable position report buffer.
+    private ControllerAxis[] axisBuffer = new ControllerAxis[8];
+    private double[] coordinateBuffer = new double[8];
+
+    /**
+     * A response regex compiled from the driver's command. Recompiled whenever the command is replaced or
+     * its text is changed.
+     */
+    private class CompiledRegex {
+        final CommandType type;
+        private Command command;
+        private List<String> source;
+        private Matcher matcher;
+        private String prefix;
+        private Set<String> groupNames;
+
+        CompiledRegex(CommandType type) {
+            this.type = type;
+        }
+
+        /**
+         * Make sure the compiled regex is in sync with the driver's configuration.
+         *
+         * @return true if the driver has this command configured.
+         */
+        boolean update() {
+            Command command = driver.getCommand(null, type, true);
+            if (command == null) {
+                this.command = null;
+                this.source = null;
+                this.matcher = null;
+                return false;
+            }
+            if (command != this.command || !command.commands.equals(source)) {
+                String regex = command.getCommand();
+                Pattern pattern = Pattern.compile(regex);
+                this.matcher = pattern.matcher("");
+                this.prefix = getLiteralPrefix(regex);
+                this.groupNames = getGroupNames(regex);
+                this.source = new ArrayList<>(command.commands);
+                this.command = command;
+            }
+            return true;
+        }
+
+        /**
+         * @param line
+         * @return The Matcher having matched the line, or null if not matched.
+         */
+        Matcher match(String line) {
+            if (!update()) {
+                return null;
+            }
+            if (!line.startsWith(prefix)) {
+                return null;
+            }
+            Matcher matcher = this.matcher.reset(line);
+            return matcher.matches() ? matcher : null;
+        }
+    }
+
+    GcodeResponseClassifier(GcodeDriver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * @param line
+     * @return true if the line matches the COMMAND_CONFIRM_REGEX.
+     */
+    public synchronized boolean isConfirmation(String line) {
+        return confirmRegex.match(line) != null;
+    }
+
+    /**
+     * @param line
+     * @return true if the line matches the COMMAND_ERROR_REGEX.
+     */
+    public synchronized boolean isError(String line) {
+        return errorRegex.match(line) != null;
+    }
+
+    /**
+     * Parse the line as a position report, using the POSITION_REPORT_REGEX. The axis letters are used as
+     * the named groups of the regex.
+     *
+     * @param line
+     * @param machine
+     * @return The reported AxesLocation of the driver's axes, or null if the line is not a position report.
+     */
+    public synchronized AxesLocation parsePositionReport(String line, Machine machine) {
+        Matcher matcher = positionReportRegex.match(line);
+        if (matcher == null) {
+            return null;
+        }
+        Logger.trace("Position report: {}", line);
+        Set<String> groupNames = positionReportRegex.groupNames;
+        int count = 0;
+        for (Axis machineAxis : machine.getAxes()) {
+            if (!(machineAxis instanceof ControllerAxis)
+                    || ((ControllerAxis) machineAxis).getDriver() != driver) {
+                continue;
+            }
+            ControllerAxis axis = (ControllerAxis) machineAxis;
+            String variable = axis.getLetter();
+            if (variable == null || !groupNames.contains(variable)) {
+                // Axis is not present in pattern. That's a warning, but might not be supported by controller, so we let it go.
+                Logger.warn("{}: Axis {} letter {} missing in POSITION_REPORT_REGEX groups.", driver.getName(), axis.getName(), variable);
+                continue;
+            }
+            double coordinate;
+            try {
+                double d = Double.parseDouble(matcher.group(variable));
+                if (axis.getType() == Type.Rotation) {
+                    // Rotation axis is not converted from driver units.
+                    coordinate = d;
+                }
+                else {
+                    coordinate = new Length(d, driver.getUnits())
+                            .convertToUnits(AxesLocation.getUnits()).getValue();
+                }
+            }
+            catch (Exception e) {
+                Logger.warn("{}: Error processing position report for axis {}: {}", driver.getName(), axis.getName(), e);
+                continue;
+            }
+            if (count == axisBuffer.length) {
+                growBuffer();
+            }
+            axisBuffer[count] = axis;
+            coordinateBuffer[count] = coordinate;
+            count++;
+        }
+        AxesLocation position = new AxesLocation(axisBuffer, coordinateBuffer, count);
+        // Do not retain the axes.
+        for (int i = 0; i < count; i++) {
+            axisBuffer[i] = null;
+        }
+        return position;
+    }
+
+    private void growBuffer() {
+        ControllerAxis[] axes = new ControllerAxis[axisBuffer.length*2];
+        double[] coordinates = new double[coordinateBuffer.length*2];
+        System.arraycopy(axisBuffer, 0, axes, 0, axisBuffer.length);
+        System.arraycopy(coordinateBuffer, 0, coordinates, 0, coordinateBuffer.length);
+        axisBuffer = axes;
+        coordinateBuffer = coordinates;
+    }
+
+    /**
+     * Get the literal prefix any line matching the whole regex must start with. The analysis is conservative,
+     * i.e. as soon as anything but plain literal characters is encountered, the prefix ends. Regexes with
+     * alternatives have no prefix.
+     *
+     * @param regex
+     * @return The literal prefix, possibly empty.
+     */
+    public static String getLiteralPrefix(String regex) {
+        if (hasAlternatives(regex)) {
+            // Top-level alternatives could have different prefixes.
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        int length = regex.length();
+        int i = regex.startsWith("^") ? 1 : 0;
+        while (i < length) {
+            char ch = regex.charAt(i);
+            int next;
+            if (ch == '\\') {
+                if (i + 1 >= length) {
+                    break;
+                }
+                char escaped = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(escaped)) {
+                    // Character class, back-reference, quotation etc.
+                    break;
+                }
+                ch = escaped;
+                next = i + 2;
+            }
+            else if (".[](){}*+?^$|#".indexOf(ch) >= 0) {
+                break;
+            }
+            else {
+                next = i + 1;
+            }
+            if (next < length && "*+?{".indexOf(regex.charAt(next)) >= 0) {
+                // The character is quantified, i.e. optional or repeated.
+                break;
+            }
+            prefix.append(ch);
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+    private static boolean hasAlternatives(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            char ch = regex.charAt(i);
+            if (ch == '\\') {
+                // Skip the escaped character.
+                i++;
+            }
+            else if (ch == '|') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> getGroupNames(String regex) {
+        Set<String> groupNames = new HashSet<>();
+        Matcher matcher = GROUP_NAME_PATTERN.matcher(regex);
+        while (matcher.find()) {
+            groupNames.add(matcher.group(1));
+        }
+        return groupNames;
+    }
+}
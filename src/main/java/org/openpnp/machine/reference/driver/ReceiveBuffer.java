@@ -0,0 +1,119 @@
+package org.openpnp.machine.reference.driver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Receive buffer for the communications. Received bytes are pulled into the buffer in bulk, as many as are
+ * available, and lines are split from there by scanning the buffer, instead of reading byte by byte.
+ *
+ * The buffer is only to be used by one reading thread.
+ */
+class ReceiveBuffer {
+    /**
+     * Source of the received bytes.
+     */
+    interface Source {
+        /**
+         * Reads as many bytes as available into the buffer, blocking until at least one byte is received.
+         *
+         * @param buffer The buffer to put the bytes into, in write mode.
+         * @return The number of bytes read, or -1 at the end of the stream.
+         * @throws TimeoutException If no byte was received within the timeout of the source.
+         * @throws IOException
+         */
+        int read(ByteBuffer buffer) throws TimeoutException, IOException;
+    }
+
+    private final ByteBuffer buffer;
+    private final Source source;
+    private byte[] lineBytes = new byte[256];
+
+    /**
+     * @param buffer The buffer to use, direct or heap.
+     * @param source
+     */
+    ReceiveBuffer(ByteBuffer buffer, Source source) {
+        this.buffer = buffer;
+        this.source = source;
+        // Start empty, in read mode.
+        buffer.clear().flip();
+    }
+
+    private int fill() throws TimeoutException, IOException {
+        buffer.compact();
+        try {
+            return source.read(buffer);
+        }
+        finally {
+            buffer.flip();
+        }
+    }
+
+    /**
+     * @return The next byte, 0-255, or -1 at the end of the stream.
+     * @throws TimeoutException
+     * @throws IOException
+     */
+    int read() throws TimeoutException, IOException {
+        if (!buffer.hasRemaining()) {
+            if (fill() < 0) {
+                return -1;
+            }
+            if (!buffer.hasRemaining()) {
+                throw new TimeoutException("Read timeout.");
+            }
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Same as ReferenceDriverCommunications.readUntil(), i.e. read until one of the characters is found, skipping
+     * empty lines. Timeouts of the source are ignored.
+     *
+     * @param characters list of ending characters
+     * @return The line, or null at the end of the stream.
+     * @throws IOException
+     */
+    String readUntil(String characters) throws IOException {
+        int lineLength = 0;
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                try {
+                    if (fill() < 0) {
+                        return null;
+                    }
+                }
+                catch (TimeoutException e) {
+                    // In case an implementation has a read timeout, we must not stop reading.
+                }
+                continue;
+            }
+            int start = buffer.position();
+            int limit = buffer.limit();
+            int end = start;
+            while (end < limit && characters.indexOf((char) (buffer.get(end) & 0xFF)) < 0) {
+                end++;
+            }
+            int length = end - start;
+            if (length > 0) {
+                if (lineLength + length > lineBytes.length) {
+                    byte[] newBytes = new byte[Math.max(lineBytes.length*2, lineLength + length)];
+                    System.arraycopy(lineBytes, 0, newBytes, 0, lineLength);
+                    lineBytes = newBytes;
+                }
+                buffer.get(lineBytes, lineLength, length);
+                lineLength += length;
+            }
+            if (end < limit) {
+                // Skip the ending character.
+                buffer.get();
+                if (lineLength > 0) {
+                    return new String(lineBytes, 0, lineLength, Charset.defaultCharset());
+                }
+            }
+        }
+    }
+}
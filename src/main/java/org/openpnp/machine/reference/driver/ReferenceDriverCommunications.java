@@ -19,7 +19,9 @@
 
 package org.openpnp.machine.reference.driver;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -91,6 +93,23 @@ public abstract class ReferenceDriverCommunications {
         writeBytes(line);
     }
 
+    /**
+     * Write several lines at once. The lines are coalesced into one write, implementations may override this to
+     * avoid the copying.
+     *
+     * @param lines
+     * @throws IOException
+     */
+    public void writeLines(List<String> lines) throws IOException {
+        byte[] lineEnding = getLineEndingType().getLineEnding().getBytes();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (String line : lines) {
+            data.write(line.getBytes());
+            data.write(lineEnding);
+        }
+        writeBytes(data.toByteArray());
+    }
+
     /**
      * Read the input stream until one of the characters is found. Blocks for the default timeout. If the read times out
      * a TimeoutException is thrown. Any other failure to read results in an IOExeption;
@@ -1,6 +1,7 @@
 package org.openpnp.machine.reference.driver;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.concurrent.TimeoutException;
 
@@ -91,8 +92,17 @@ public class SerialPortCommunications extends ReferenceDriverCommunications {
     @Attribute(required = false)
     protected String name = "SerialPortCommunications";
 
+    /**
+     * Read all the available bytes with one call into the receive buffer, and split the lines from there, instead
+     * of reading byte by byte.
+     */
+    @Attribute(required = false)
+    protected boolean bulkRead = true;
+
+    private static final int receiveBufferSize = 4096;
 
     private SerialPort serialPort;
+    private ReceiveBuffer receiveBuffer;
 
     @Override
     public synchronized void connect() throws Exception {
@@ -108,8 +118,11 @@ public class SerialPortCommunications extends ReferenceDriverCommunications {
         if (setRts) {
             serialPort.setRTS();
         }
+        // Semi-blocking read without a timeout: blocks until at least one byte is available, then returns all
+        // the available bytes, up to the requested number.
         serialPort.setComPortTimeouts(
                 SerialPort.TIMEOUT_READ_SEMI_BLOCKING | SerialPort.TIMEOUT_WRITE_BLOCKING, 0, 0);
+        receiveBuffer = new ReceiveBuffer(ByteBuffer.allocate(receiveBufferSize), this::readAvailableBytes);
     }
 
     @Override
@@ -136,8 +149,38 @@ public class SerialPortCommunications extends ReferenceDriverCommunications {
         return portNames.toArray(new String[] {});
     }
 
+    private int readAvailableBytes(ByteBuffer buffer) throws TimeoutException, IOException {
+        SerialPort serialPort = this.serialPort;
+        if (serialPort == null) {
+            throw new IOException("Trying to read from a unconnected serial.");
+        }
+        int l = serialPort.readBytes(buffer.array(), buffer.remaining(), buffer.arrayOffset() + buffer.position());
+        if (l == -1) {
+            throw new IOException("Read error.");
+        }
+        if (l == 0) {
+            throw new TimeoutException("Read timeout.");
+        }
+        buffer.position(buffer.position() + l);
+        return l;
+    }
+
+    @Override
+    protected String readUntil(String characters) throws TimeoutException, IOException {
+        ReceiveBuffer receiveBuffer = this.receiveBuffer;
+        if (bulkRead && receiveBuffer != null) {
+            return receiveBuffer.readUntil(characters);
+        }
+        return super.readUntil(characters);
+    }
+
     @Override
     public int read() throws TimeoutException, IOException {
+        ReceiveBuffer receiveBuffer = this.receiveBuffer;
+        if (bulkRead && receiveBuffer != null) {
+            // Signed, as returned by the single byte read below.
+            return (byte) receiveBuffer.read();
+        }
         byte[] b = new byte[1];
         int l;
         try {
@@ -225,6 +268,14 @@ public class SerialPortCommunications extends ReferenceDriverCommunications {
         this.setDtr = setDtr;
     }
 
+    public boolean isBulkRead() {
+        return bulkRead;
+    }
+
+    public void setBulkRead(boolean bulkRead) {
+        this.bulkRead = bulkRead;
+    }
+
     public boolean isSetRts() {
         return setRts;
     }
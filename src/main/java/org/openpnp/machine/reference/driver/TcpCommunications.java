@@ -1,11 +1,12 @@
 package org.openpnp.machine.reference.driver;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.SocketChannel;
+import java.util.List;
 import java.util.concurrent.TimeoutException;
 
 import org.openpnp.util.GcodeServer;
@@ -14,6 +15,17 @@ import org.simpleframework.xml.Attribute;
 /**
  * A base class for basic TCP based Drivers. Includes functions for connecting,
  * disconnecting, reading and sending lines.
+ *
+ * The socket is accessed through a SocketChannel in blocking mode. Received data is read into a direct 
+ * ReceiveBuffer in bulk and split into lines from there, instead of reading byte by byte. Lines can be written in one gather-write,
+ * see writeLines(). Nagle's algorithm is switched off, as commands are written as a whole and must not be held
+ * back waiting for the acknowledgement of the previous ones.
+ *
+ * Unlike a socket stream, a SocketChannel is interruptible: interrupting a thread that is blocked in, or enters, 
+ * a read or write on the channel closes the connection. The machine task thread may carry a pending interrupt, 
+ * e.g. from the shutdownNow() of its lane after a failed task, so writes clear the interrupt status and restore 
+ * it afterwards. An interrupt arriving while a read or write is blocked still closes the connection, this is 
+ * reported as an IOException and the driver must reconnect.
  */
 public class TcpCommunications extends ReferenceDriverCommunications {
     @Attribute(required = false)
@@ -25,36 +37,48 @@ public class TcpCommunications extends ReferenceDriverCommunications {
     @Attribute(required = false)
     protected String name = "TcpCommunications";
 
+    private static final int readBufferSize = 8192;
 
-    protected Socket clientSocket;
-    protected BufferedReader input;
-    protected DataOutputStream output;
+    protected SocketChannel channel;
     protected GcodeServer gcodeServer;
     protected AbstractReferenceDriver driver;
 
+    private ReceiveBuffer receiveBuffer;
+
+    private final Object writeLock = new Object();
+
     @Override
     public synchronized void connect() throws Exception {
         disconnect();
+        InetSocketAddress address;
         if (ipAddress.equals("GcodeServer")) {
             gcodeServer = new GcodeServer();
             gcodeServer.setDriver(driver);
             port = gcodeServer.getListenerPort();
-            clientSocket = new Socket("localhost", port);
+            address = new InetSocketAddress("localhost", port);
         }
         else {
-            clientSocket = new Socket(ipAddress,port);
+            address = new InetSocketAddress(ipAddress, port);
         }
-        input = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-        output = new DataOutputStream(clientSocket.getOutputStream());
+        SocketChannel channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        receiveBuffer = new ReceiveBuffer(ByteBuffer.allocateDirect(readBufferSize), 
+                (buffer) -> {
+                    try {
+                        return getChannel().read(buffer);
+                    }
+                    catch (ClosedByInterruptException e) {
+                        throw new IOException("Connection "+getConnectionName()+" closed by an interrupt while reading.", e);
+                    }
+                });
+        this.channel = channel;
     }
 
     @Override
     public synchronized void disconnect() throws Exception {
-        if (clientSocket != null && clientSocket.isBound()) {
-            clientSocket.close();
-            input = null;
-            output = null;
-            clientSocket = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
         }
         if (gcodeServer != null) {
             gcodeServer.shutdown();
@@ -67,30 +91,80 @@ public class TcpCommunications extends ReferenceDriverCommunications {
         return (driverName != null ? driverName +":" : "") + ipAddress + ":" + port;
     }
 
+    private SocketChannel getChannel() throws IOException {
+        SocketChannel channel = this.channel;
+        if (channel == null) {
+            throw new IOException("Trying to access an unconnected socket.");
+        }
+        return channel;
+    }
+
     @Override
     public int read() throws TimeoutException, IOException {
-        try {
-            return input.read();
-        }
-        catch (NullPointerException ex) {
+        ReceiveBuffer receiveBuffer = this.receiveBuffer;
+        if (receiveBuffer == null) {
             throw new IOException("Trying to read from a unconnected socket.");
         }
-        catch (IOException ex) {
-            if (ex.getCause() instanceof SocketTimeoutException) {
-                throw new TimeoutException(ex.getMessage());
-            }
-            throw ex;
+        return receiveBuffer.read();
+    }
+
+    @Override
+    protected String readUntil(String characters) throws TimeoutException, IOException {
+        ReceiveBuffer receiveBuffer = this.receiveBuffer;
+        if (receiveBuffer == null) {
+            throw new IOException("Trying to read from a unconnected socket.");
         }
+        return receiveBuffer.readUntil(characters);
     }
 
     @Override
     public void write(int d) throws IOException {
-        output.write(d);
+        writeBytes(new byte[] { (byte) d });
     }
 
     @Override
     public void writeBytes(byte[] data) throws IOException {
-        output.write(data);
+        writeBuffers(new ByteBuffer[] { ByteBuffer.wrap(data) });
+    }
+
+    /**
+     * Writes all the lines in one gather-write.
+     */
+    @Override
+    public void writeLines(List<String> lines) throws IOException {
+        byte[] lineEnding = getLineEndingType().getLineEnding().getBytes();
+        ByteBuffer[] buffers = new ByteBuffer[lines.size()*2];
+        int i = 0;
+        for (String line : lines) {
+            buffers[i++] = ByteBuffer.wrap(line.getBytes());
+            buffers[i++] = ByteBuffer.wrap(lineEnding);
+        }
+        writeBuffers(buffers);
+    }
+
+    private void writeBuffers(ByteBuffer[] buffers) throws IOException {
+        SocketChannel channel = getChannel();
+        synchronized (writeLock) {
+            // A pending interrupt would close the channel, see the class comment.
+            boolean interrupted = Thread.interrupted();
+            try {
+                int offset = 0;
+                while (offset < buffers.length) {
+                    channel.write(buffers, offset, buffers.length - offset);
+                    while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+                        offset++;
+                    }
+                }
+            }
+            catch (ClosedByInterruptException e) {
+                throw new IOException("Connection "+getConnectionName()+" closed by an interrupt while writing.", e);
+            }
+            finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
     }
 
     public String getIpAddress() {
@@ -118,4 +192,3 @@ public class TcpCommunications extends ReferenceDriverCommunications {
         return gcodeServer;
     }
 }
-
@@ -33,6 +33,8 @@ public class GcodeAsyncDriverSettings extends AbstractConfigurationWizard {
     private JTextField junctionDeviation;
     private JTextField interpolationJerkSteps;
     private JCheckBox reportedLocationConfirmation;
+    private JTextField confirmationWindowCommands;
+    private JTextField confirmationWindowBytes;
 
     public GcodeAsyncDriverSettings(GcodeAsyncDriver driver) {
         this.driver = driver;
@@ -50,6 +52,10 @@ public class GcodeAsyncDriverSettings extends AbstractConfigurationWizard {
                 FormSpecs.RELATED_GAP_COLSPEC,
                 FormSpecs.DEFAULT_COLSPEC,},
             new RowSpec[] {
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
@@ -156,6 +162,22 @@ public class GcodeAsyncDriverSettings extends AbstractConfigurationWizard {
         });
         settingsPanel.add(reportedLocationConfirmation, "4, 4");
 
+        JLabel lblConfirmationWindowCommands = new JLabel("Confirmation Window [Commands]");
+        lblConfirmationWindowCommands.setToolTipText("<html>\r\n<p>Maximum number of commands that can be sent before they are confirmed with \"ok\".</p>\r\n<p>With 1, each command is confirmed before the next one is sent. Larger windows hide<br/>\r\nthe round-trip time of the link. Confirmations are matched to the commands in order.</p>\r\n</html>");
+        settingsPanel.add(lblConfirmationWindowCommands, "2, 6, right, default");
+
+        confirmationWindowCommands = new JTextField();
+        settingsPanel.add(confirmationWindowCommands, "4, 6, fill, default");
+        confirmationWindowCommands.setColumns(10);
+
+        JLabel lblConfirmationWindowBytes = new JLabel("Confirmation Window [Bytes]");
+        lblConfirmationWindowBytes.setToolTipText("<html>\r\n<p>Maximum number of bytes that can be sent before they are confirmed.</p>\r\n<p>Set this to the size of the controller's receive buffer, e.g. 128 on Grbl. 0 means no limit.</p>\r\n</html>");
+        settingsPanel.add(lblConfirmationWindowBytes, "2, 8, right, default");
+
+        confirmationWindowBytes = new JTextField();
+        settingsPanel.add(confirmationWindowBytes, "4, 8, fill, default");
+        confirmationWindowBytes.setColumns(10);
+
     }
 
     @Override
@@ -167,12 +189,16 @@ public class GcodeAsyncDriverSettings extends AbstractConfigurationWizard {
 
         addWrappedBinding(driver, "confirmationFlowControl", confirmationFlowControl, "selected");
         addWrappedBinding(driver, "reportedLocationConfirmation", reportedLocationConfirmation, "selected");
+        addWrappedBinding(driver, "confirmationWindowCommands", confirmationWindowCommands, "text", intConverter);
+        addWrappedBinding(driver, "confirmationWindowBytes", confirmationWindowBytes, "text", intConverter);
         addWrappedBinding(driver, "interpolationMaxSteps", interpolationMaxSteps, "text", intConverter);
         addWrappedBinding(driver, "interpolationJerkSteps", interpolationJerkSteps, "text", intConverter);
         addWrappedBinding(driver, "interpolationTimeStep", interpolationTimeStep, "text", doubleConverterFine);
         addWrappedBinding(driver, "interpolationMinStep", interpolationMinStep, "text", intConverter);
         addWrappedBinding(driver, "junctionDeviation", junctionDeviation, "text", lengthConverter);
 
+        ComponentDecorators.decorateWithAutoSelect(confirmationWindowCommands);
+        ComponentDecorators.decorateWithAutoSelect(confirmationWindowBytes);
         ComponentDecorators.decorateWithAutoSelect(interpolationMaxSteps);
         ComponentDecorators.decorateWithAutoSelect(interpolationJerkSteps);
         ComponentDecorators.decorateWithAutoSelect(interpolationTimeStep);
@@ -103,6 +103,12 @@ public class ReferenceAutoFeeder extends ReferenceFeeder {
         actuator.actuate((Object)actuatorValue);
     }
     
+    @Override
+    public boolean canPrefeed() {
+        // The feed only actuates, unless the head has to move to the feeder first.
+        return !isMoveBeforeFeed();
+    }
+    
     @Override
     public void postPick(Nozzle nozzle) throws Exception {
         if (postPickActuatorName == null || postPickActuatorName.equals("")) {
@@ -1274,6 +1274,8 @@ public class CalibrationSolutions implements Solutions.Subject {
                             camera.setDefaultZ(advCal.getPrimaryLocation().getLengthZ());
                         }
                         advCal.applyCalibrationToMachine(head, camera);
+                        // Don't lose the calibration, if the application does not exit normally.
+                        Configuration.get().saveInBackground();
 
                         // Tidy up.
                         UiUtils.submitUiMachineTask(() -> {
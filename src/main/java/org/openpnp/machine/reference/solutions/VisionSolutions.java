@@ -36,7 +36,6 @@ import javax.swing.Icon;
 import javax.swing.SwingUtilities;
 
 import org.opencv.core.Mat;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.openpnp.gui.MainFrame;
 import org.openpnp.gui.support.Icons;
 import org.openpnp.machine.reference.ReferenceHead;
@@ -66,6 +65,7 @@ import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.Nozzle.RotationMode;
 import org.openpnp.spi.base.AbstractCamera;
 import org.openpnp.spi.base.AbstractHead.VisualHomingMethod;
+import org.openpnp.util.DebugImageWriter;
 import org.openpnp.util.LogUtils;
 import org.openpnp.util.MovableUtils;
 import org.openpnp.util.OpenCvUtils;
@@ -1516,7 +1516,7 @@ public class VisionSolutions implements Solutions.Subject {
         if (diagnostics != null) {
             if (LogUtils.isDebugEnabled()) {
                 File file = Configuration.get().createResourceFile(getClass(), "loc_", ".png");
-                Imgcodecs.imwrite(file.getAbsolutePath(), image);
+                DebugImageWriter.get().write(file, image);
             }                
             final BufferedImage diagnosticImage = OpenCvUtils.toBufferedImage(image);
             SwingUtilities.invokeLater(() -> {
@@ -4,6 +4,10 @@ import java.awt.image.BufferedImage;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
 import org.opencv.core.Point;
@@ -40,6 +44,7 @@ import org.openpnp.spi.NozzleTip;
 import org.openpnp.spi.PartAlignment;
 import org.openpnp.spi.PropertySheetHolder;
 import org.openpnp.util.MovableUtils;
+import org.openpnp.util.NanosecondTime;
 import org.openpnp.util.OpenCvUtils;
 import org.openpnp.util.Utils2D;
 import org.openpnp.util.VisionUtils;
@@ -84,6 +89,15 @@ public class ReferenceBottomVision extends AbstractPartAlignment {
     @ElementMap(required = false)
     protected Map<String, PartSettings> partSettingsByPartId = null;
 
+    /**
+     * Processes the images of deferred alignments.
+     */
+    private static final ExecutorService deferredExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "ReferenceBottomVision-deferred");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public ReferenceBottomVision() {
         Configuration.get().addListener(new ConfigurationListener.Adapter() {
             @Override
@@ -111,22 +125,93 @@ public class ReferenceBottomVision extends AbstractPartAlignment {
             return new PartAlignmentOffset(new Location(LengthUnit.Millimeters), false);
         }
 
-        if (part == null || nozzle.getPart() == null) {
-            throw new Exception("No part on nozzle.");
-        }
-        if (part != nozzle.getPart()) {
-            throw new Exception("Part mismatch with part on nozzle.");
-        }
+        checkPartOnNozzle(part, nozzle);
 
         Camera camera = VisionUtils.getBottomVisionCamera();
         PartAlignmentOffset offsets;
-        if ((bottomVisionSettings.getPreRotateUsage() == PreRotateUsage.Default && preRotate)
-                || (bottomVisionSettings.getPreRotateUsage() == PreRotateUsage.AlwaysOn)) {
+        if (isPreRotate(bottomVisionSettings)) {
             offsets = findOffsetsPreRotate(part, boardLocation, placement, nozzle, camera, bottomVisionSettings);
         }
         else {
             offsets = findOffsetsPostRotate(part, boardLocation, placement, nozzle, camera, bottomVisionSettings);
         }
+        return applyRotationMode(nozzle, offsets);
+    }
+
+    /**
+     * Moves the part to the camera and captures the image on the calling thread, then processes it on a worker 
+     * thread. This is only done for single shot alignments with pipelines that do not access the machine 
+     * after capturing, otherwise the part is aligned synchronously.
+     * 
+     * With pre-rotate, the first pass is speculatively assumed to give a good enough fix. If it does not, 
+     * the returned DeferredPartAlignmentOffset.get() returns null, and the part must be aligned again.   
+     */
+    @Override
+    public DeferredPartAlignmentOffset findOffsetsDeferred(Part part, BoardLocation boardLocation,
+            Placement placement, Nozzle nozzle) throws Exception {
+        BottomVisionSettings bottomVisionSettings = getInheritedVisionSettings(part);
+
+        if (!isEnabled() || !bottomVisionSettings.isEnabled() 
+                || !bottomVisionSettings.getPipeline().isCaptureSeparable()) {
+            return super.findOffsetsDeferred(part, boardLocation, placement, nozzle);
+        }
+
+        checkPartOnNozzle(part, nozzle);
+
+        Camera camera = VisionUtils.getBottomVisionCamera();
+        CvPipeline pipeline = bottomVisionSettings.getPipeline();
+        Future<PartAlignmentOffset> future;
+        DeferredOffsets deferred = new DeferredOffsets(nozzle);
+        if (isPreRotate(bottomVisionSettings)) {
+            double wantedAngle = getPreRotateWantedAngle(boardLocation, placement);
+            Location wantedLocation = getCameraLocationAtPartHeight(part, camera, nozzle, wantedAngle);
+            future = processPipelineDeferred(pipeline, camera, part, nozzle, wantedLocation, wantedLocation, 
+                    bottomVisionSettings, deferred, (rect, processedPipeline) -> {
+                        Location offsets = getPreRotatePassOffsets(camera, rect, wantedAngle, bottomVisionSettings);
+                        if (maxVisionPasses > 1 && !isGoodFix(camera, rect, offsets)) {
+                            Logger.debug("Speculative alignment of part {} missed, offsets {}", part.getId(), offsets);
+                            return null;
+                        }
+                        Location nozzleLocation = wantedLocation.subtractWithRotation(offsets);
+                        return getPreRotateResult(part, nozzle, camera, bottomVisionSettings, processedPipeline, 
+                                rect, wantedLocation, nozzleLocation, wantedAngle);
+                    });
+            if (future == null) {
+                deferred.setOffsets(findOffsetsPreRotate(part, boardLocation, placement, nozzle, camera, 
+                        bottomVisionSettings));
+                return deferred;
+            }
+        }
+        else {
+            Location wantedLocation = getCameraLocationAtPartHeight(part, camera, nozzle, 0.);
+            future = processPipelineDeferred(pipeline, camera, part, nozzle, wantedLocation, wantedLocation, 
+                    bottomVisionSettings, deferred, (rect, processedPipeline) -> 
+                        getPostRotateResult(part, nozzle, camera, bottomVisionSettings, processedPipeline, rect));
+            if (future == null) {
+                deferred.setOffsets(findOffsetsPostRotate(part, boardLocation, placement, nozzle, camera, 
+                        bottomVisionSettings));
+                return deferred;
+            }
+        }
+        deferred.setFuture(future);
+        return deferred;
+    }
+
+    private boolean isPreRotate(BottomVisionSettings bottomVisionSettings) {
+        return (bottomVisionSettings.getPreRotateUsage() == PreRotateUsage.Default && preRotate)
+                || (bottomVisionSettings.getPreRotateUsage() == PreRotateUsage.AlwaysOn);
+    }
+
+    private void checkPartOnNozzle(Part part, Nozzle nozzle) throws Exception {
+        if (part == null || nozzle.getPart() == null) {
+            throw new Exception("No part on nozzle.");
+        }
+        if (part != nozzle.getPart()) {
+            throw new Exception("Part mismatch with part on nozzle.");
+        }
+    }
+
+    private PartAlignmentOffset applyRotationMode(Nozzle nozzle, PartAlignmentOffset offsets) {
         if (nozzle.isAligningRotationMode()) {
             // Add the rotation offset to the rotation mode rather than adjusting for it in placement. This has the advantage of
             // showing the rotation aligned with the part rotation in the DRO, cross-hairs etc.
@@ -138,6 +223,69 @@ public class ReferenceBottomVision extends AbstractPartAlignment {
         return offsets;
     }
 
+    /**
+     * Interprets the result of a deferred pipeline on the worker thread.
+     */
+    private interface DeferredInterpreter {
+        PartAlignmentOffset interpret(RotatedRect rect, CvPipeline pipeline) throws Exception;
+    }
+
+    private class DeferredOffsets implements DeferredPartAlignmentOffset {
+        private final Nozzle nozzle;
+        private PartAlignmentOffset offsets;
+        private Future<PartAlignmentOffset> future;
+        private volatile double processingTime;
+
+        DeferredOffsets(Nozzle nozzle) {
+            this.nozzle = nozzle;
+        }
+
+        void setOffsets(PartAlignmentOffset offsets) {
+            this.offsets = offsets;
+        }
+
+        void setFuture(Future<PartAlignmentOffset> future) {
+            this.future = future;
+        }
+
+        void setProcessingTime(double processingTime) {
+            this.processingTime = processingTime;
+        }
+
+        @Override
+        public boolean isDone() {
+            return future == null || future.isDone();
+        }
+
+        @Override
+        public PartAlignmentOffset get() throws Exception {
+            if (future != null) {
+                try {
+                    offsets = future.get();
+                }
+                catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+                finally {
+                    future = null;
+                }
+                if (offsets == null) {
+                    // Speculation missed.
+                    return null;
+                }
+            }
+            return applyRotationMode(nozzle, offsets);
+        }
+
+        @Override
+        public double getProcessingTime() {
+            return processingTime;
+        }
+    }
+
     public Location getCameraLocationAtPartHeight(Part part, Camera camera, Nozzle nozzle, double angle) throws Exception {
         if (part == null) {
             // No part height accounted for.
@@ -186,20 +334,23 @@ public class ReferenceBottomVision extends AbstractPartAlignment {
                 .derive(null, null, null, angle);
     }
 
-    private PartAlignmentOffset findOffsetsPreRotate(Part part, BoardLocation boardLocation,
-            Placement placement, Nozzle nozzle, Camera camera, BottomVisionSettings bottomVisionSettings)
-                    throws Exception {
+    private double getPreRotateWantedAngle(BoardLocation boardLocation, Placement placement) {
         double wantedAngle = placement.getLocation().getRotation();
         if (boardLocation != null) {
             wantedAngle = Utils2D.calculateBoardPlacementLocation(boardLocation, placement.getLocation())
                     .getRotation();
         }
-        wantedAngle = Utils2D.angleNorm(wantedAngle, 180.);
+        return Utils2D.angleNorm(wantedAngle, 180.);
+    }
+
+    private PartAlignmentOffset findOffsetsPreRotate(Part part, BoardLocation boardLocation,
+            Placement placement, Nozzle nozzle, Camera camera, BottomVisionSettings bottomVisionSettings)
+                    throws Exception {
+        double wantedAngle = getPreRotateWantedAngle(boardLocation, placement);
         // Wanted location.
         Location wantedLocation = getCameraLocationAtPartHeight(part, camera, nozzle, wantedAngle);
 
         Location nozzleLocation = wantedLocation;
-        final Location center = new Location(maxLinearOffset.getUnits());
 
         try (CvPipeline pipeline = bottomVisionSettings.getPipeline()) {
 
@@ -213,27 +364,7 @@ public class ReferenceBottomVision extends AbstractPartAlignment {
 
                 Logger.debug("Bottom vision part {} result rect {}", part.getId(), rect);
 
-                // Create the offsets object. This is the physical distance from
-                // the center of the camera to the located part.
-                offsets = VisionUtils.getPixelCenterOffsets(camera, rect.center.x, rect.center.y);
-
-                double angleOffset = VisionUtils.getPixelAngle(camera, rect.angle) - wantedAngle;
-                // Most OpenCV Pipelines can only tell us the angle of the recognized rectangle in a   
-                // wrapping-around range of 0° .. 90° as it has no notion of which rectangle side 
-                // is which. We can assume that the part is never picked more than +/-45º rotated.
-                // So we change the range wrapping-around to -45° .. +45°. See angleNorm():
-                if (bottomVisionSettings.getMaxRotation() == MaxRotation.Adjust ) {
-                    angleOffset = Utils2D.angleNorm(angleOffset);
-                } else {
-                    // turning more than 180° in one direction makes no sense
-                    angleOffset = Utils2D.angleNorm(angleOffset, 180);
-                }
-
-                // When we rotate the nozzle later to compensate for the angle offset, the X, Y offsets 
-                // will change too, as the off-center part rotates around the nozzle axis.
-                // So we need to compensate for that.
-                offsets = offsets.rotateXy(-angleOffset)
-                        .derive(null, null, null, angleOffset);
+                offsets = getPreRotatePassOffsets(camera, rect, wantedAngle, bottomVisionSettings);
                 nozzleLocation = nozzleLocation.subtractWithRotation(offsets);
 
                 if (++pass >= maxVisionPasses) {
@@ -241,27 +372,7 @@ public class ReferenceBottomVision extends AbstractPartAlignment {
                     break;
                 }
 
-                // We not only check the center offset but also the corner offset brought about by the angular offset
-                // so a large part will react more sensitively to angular offsets.
-                Point corners[] = new Point[4];
-                rect.points(corners);
-                Location corner = VisionUtils.getPixelCenterOffsets(camera, corners[0].x, corners[0].y)
-                        .convertToUnits(maxLinearOffset.getUnits());
-                Location cornerWithAngularOffset = corner.rotateXy(angleOffset);
-
-                if (center.getLinearDistanceTo(offsets) > getMaxLinearOffset().getValue()) {
-                    Logger.debug("Offsets too large {} : center offset {} > {}", 
-                            offsets, center.getLinearDistanceTo(offsets), getMaxLinearOffset().getValue()); 
-                } 
-                else if (corner.getLinearDistanceTo(cornerWithAngularOffset) >  getMaxLinearOffset().getValue()) {
-                    Logger.debug("Offsets too large {} : corner offset {} > {}", 
-                            offsets, corner.getLinearDistanceTo(cornerWithAngularOffset), getMaxLinearOffset().getValue()); 
-                }
-                else if (Math.abs(angleOffset) > getMaxAngularOffset()) {
-                    Logger.debug("Offsets too large {} : angle offset {} > {}", 
-                            offsets, Math.abs(angleOffset), getMaxAngularOffset());
-                }
-                else {
+                if (isGoodFix(camera, rect, offsets)) {
                     // We have a good enough fix - go on with that. 
                     break;
                 }
@@ -270,19 +381,87 @@ public class ReferenceBottomVision extends AbstractPartAlignment {
             }
             Logger.debug("Offsets accepted {}", offsets);
 
-            // Calculate cumulative offsets over all the passes.  
-            offsets = wantedLocation.subtractWithRotation(nozzleLocation);
-
-            // subtract visionCenterOffset
-            offsets = offsets.subtract(bottomVisionSettings.getVisionOffset().rotateXy(wantedAngle));
+            return getPreRotateResult(part, nozzle, camera, bottomVisionSettings, pipeline, rect, 
+                    wantedLocation, nozzleLocation, wantedAngle);
+        }
+    }
 
-            displayResult(OpenCvUtils.toBufferedImage(pipeline.getWorkingImage()), part, offsets, camera, nozzle);
-            offsetsCheck(part, nozzle, offsets);
+    /**
+     * @return The offsets of one pre-rotate vision pass, i.e. the physical distance from the center of the camera
+     * to the located part, compensated for the angle offset, which is set as the rotation.
+     */
+    private Location getPreRotatePassOffsets(Camera camera, RotatedRect rect, double wantedAngle, 
+            BottomVisionSettings bottomVisionSettings) {
+        // Create the offsets object. This is the physical distance from
+        // the center of the camera to the located part.
+        Location offsets = VisionUtils.getPixelCenterOffsets(camera, rect.center.x, rect.center.y);
+
+        double angleOffset = VisionUtils.getPixelAngle(camera, rect.angle) - wantedAngle;
+        // Most OpenCV Pipelines can only tell us the angle of the recognized rectangle in a   
+        // wrapping-around range of 0° .. 90° as it has no notion of which rectangle side 
+        // is which. We can assume that the part is never picked more than +/-45º rotated.
+        // So we change the range wrapping-around to -45° .. +45°. See angleNorm():
+        if (bottomVisionSettings.getMaxRotation() == MaxRotation.Adjust ) {
+            angleOffset = Utils2D.angleNorm(angleOffset);
+        } else {
+            // turning more than 180° in one direction makes no sense
+            angleOffset = Utils2D.angleNorm(angleOffset, 180);
+        }
 
-            partSizeCheck(part, bottomVisionSettings, rect, camera);
+        // When we rotate the nozzle later to compensate for the angle offset, the X, Y offsets 
+        // will change too, as the off-center part rotates around the nozzle axis.
+        // So we need to compensate for that.
+        return offsets.rotateXy(-angleOffset)
+                .derive(null, null, null, angleOffset);
+    }
 
-            return new PartAlignment.PartAlignmentOffset(offsets, true);
+    /**
+     * @return true if the offsets of a pre-rotate vision pass are small enough to not need another pass.
+     */
+    private boolean isGoodFix(Camera camera, RotatedRect rect, Location offsets) {
+        final Location center = new Location(maxLinearOffset.getUnits());
+        double angleOffset = offsets.getRotation();
+        // We not only check the center offset but also the corner offset brought about by the angular offset
+        // so a large part will react more sensitively to angular offsets.
+        Point corners[] = new Point[4];
+        rect.points(corners);
+        Location corner = VisionUtils.getPixelCenterOffsets(camera, corners[0].x, corners[0].y)
+                .convertToUnits(maxLinearOffset.getUnits());
+        Location cornerWithAngularOffset = corner.rotateXy(angleOffset);
+
+        if (center.getLinearDistanceTo(offsets) > getMaxLinearOffset().getValue()) {
+            Logger.debug("Offsets too large {} : center offset {} > {}", 
+                    offsets, center.getLinearDistanceTo(offsets), getMaxLinearOffset().getValue()); 
+            return false;
+        } 
+        else if (corner.getLinearDistanceTo(cornerWithAngularOffset) >  getMaxLinearOffset().getValue()) {
+            Logger.debug("Offsets too large {} : corner offset {} > {}", 
+                    offsets, corner.getLinearDistanceTo(cornerWithAngularOffset), getMaxLinearOffset().getValue()); 
+            return false;
+        }
+        else if (Math.abs(angleOffset) > getMaxAngularOffset()) {
+            Logger.debug("Offsets too large {} : angle offset {} > {}", 
+                    offsets, Math.abs(angleOffset), getMaxAngularOffset());
+            return false;
         }
+        return true;
+    }
+
+    private PartAlignmentOffset getPreRotateResult(Part part, Nozzle nozzle, Camera camera,
+            BottomVisionSettings bottomVisionSettings, CvPipeline pipeline, RotatedRect rect, 
+            Location wantedLocation, Location nozzleLocation, double wantedAngle) throws Exception {
+        // Calculate cumulative offsets over all the passes.  
+        Location offsets = wantedLocation.subtractWithRotation(nozzleLocation);
+
+        // subtract visionCenterOffset
+        offsets = offsets.subtract(bottomVisionSettings.getVisionOffset().rotateXy(wantedAngle));
+
+        displayResult(OpenCvUtils.toBufferedImage(pipeline.getWorkingImage()), part, offsets, camera, nozzle);
+        offsetsCheck(part, nozzle, offsets);
+
+        partSizeCheck(part, bottomVisionSettings, rect, camera);
+
+        return new PartAlignment.PartAlignmentOffset(offsets, true);
     }
 
     private PartAlignmentOffset findOffsetsPostRotate(Part part, BoardLocation boardLocation,
@@ -294,38 +473,42 @@ public class ReferenceBottomVision extends AbstractPartAlignment {
 
         try (CvPipeline pipeline = bottomVisionSettings.getPipeline()) {
             RotatedRect rect = processPipelineAndGetResult(pipeline, camera, part, nozzle, wantedLocation, wantedLocation, bottomVisionSettings);
+            return getPostRotateResult(part, nozzle, camera, bottomVisionSettings, pipeline, rect);
+        }
+    }
 
-            Logger.debug("Bottom vision part {} result rect {}", part.getId(), rect);
-
-            // Create the offsets object. This is the physical distance from
-            // the center of the camera to the located part.
-            Location offsets = VisionUtils.getPixelCenterOffsets(camera, rect.center.x, rect.center.y);
-
-            double angleOffset = VisionUtils.getPixelAngle(camera, rect.angle);
-            // Most OpenCV Pipelines can only tell us the angle of the recognized rectangle in a   
-            // wrapping-around range of 0° .. 90° as it has no notion of which rectangle side 
-            // is which. We can assume that the part is never picked more than +/-45º rotated.
-            // So we change the range wrapping-around to -45° .. +45°. See angleNorm():
-            if (bottomVisionSettings.getMaxRotation() == MaxRotation.Adjust ) {
-                angleOffset = Utils2D.angleNorm(angleOffset);
-            } else {
-                // turning more than 180° in one direction makes no sense
-                angleOffset = Utils2D.angleNorm(angleOffset, 180);
-            }
+    private PartAlignmentOffset getPostRotateResult(Part part, Nozzle nozzle, Camera camera,
+            BottomVisionSettings bottomVisionSettings, CvPipeline pipeline, RotatedRect rect) throws Exception {
+        Logger.debug("Bottom vision part {} result rect {}", part.getId(), rect);
+
+        // Create the offsets object. This is the physical distance from
+        // the center of the camera to the located part.
+        Location offsets = VisionUtils.getPixelCenterOffsets(camera, rect.center.x, rect.center.y);
+
+        double angleOffset = VisionUtils.getPixelAngle(camera, rect.angle);
+        // Most OpenCV Pipelines can only tell us the angle of the recognized rectangle in a   
+        // wrapping-around range of 0° .. 90° as it has no notion of which rectangle side 
+        // is which. We can assume that the part is never picked more than +/-45º rotated.
+        // So we change the range wrapping-around to -45° .. +45°. See angleNorm():
+        if (bottomVisionSettings.getMaxRotation() == MaxRotation.Adjust ) {
+            angleOffset = Utils2D.angleNorm(angleOffset);
+        } else {
+            // turning more than 180° in one direction makes no sense
+            angleOffset = Utils2D.angleNorm(angleOffset, 180);
+        }
 
-            partSizeCheck(part, bottomVisionSettings, rect, camera);
+        partSizeCheck(part, bottomVisionSettings, rect, camera);
 
-            // Set the angle on the offsets.
-            offsets = offsets.derive(null, null, null, angleOffset);
+        // Set the angle on the offsets.
+        offsets = offsets.derive(null, null, null, angleOffset);
 
-            // subtract visionCenterOffset
-            offsets = offsets.subtract(bottomVisionSettings.getVisionOffset().rotateXy(offsets.getRotation()));
+        // subtract visionCenterOffset
+        offsets = offsets.subtract(bottomVisionSettings.getVisionOffset().rotateXy(offsets.getRotation()));
 
-            displayResult(OpenCvUtils.toBufferedImage(pipeline.getWorkingImage()), part, offsets, camera, nozzle);
-            offsetsCheck(part, nozzle, offsets);
+        displayResult(OpenCvUtils.toBufferedImage(pipeline.getWorkingImage()), part, offsets, camera, nozzle);
+        offsetsCheck(part, nozzle, offsets);
 
-            return new PartAlignmentOffset(offsets, false);
-        }
+        return new PartAlignmentOffset(offsets, false);
     }
 
     protected void offsetsCheck(Part part, Nozzle nozzle, Location offsets) throws Exception {
@@ -561,39 +744,91 @@ public class ReferenceBottomVision extends AbstractPartAlignment {
         for (PipelineShot pipelineShot : pipeline.getPipelineShots()) {
             pipelineShot.apply();
 
-            pipeline.process();
-            Result result = pipeline.getResult(VisionUtils.PIPELINE_RESULTS_NAME);
-
-            // Fall back to the old name of "result" instead of "results" for backwards
-            // compatibility.
-            if (result == null) {
-                result = pipeline.getResult("result");
-            }
-
-            if (result == null) {
-                throw new Exception(String.format(
-                        "ReferenceBottomVision (%s): Pipeline error. Pipeline must contain a result named '%s'.",
-                        part.getId(), VisionUtils.PIPELINE_RESULTS_NAME));
-            }
-
-            if (result.model == null) {
-                throw new Exception(String.format(
-                        "ReferenceBottomVision (%s): No result found.",
-                        part.getId()));
+            // Only the results are needed, intermediate images can be released early.
+            pipeline.setReleaseIntermediateImages(true);
+            try {
+                pipeline.process();
             }
-
-            if (!(result.model instanceof RotatedRect)) {
-                throw new Exception(String.format(
-                        "ReferenceBottomVision (%s): Incorrect pipeline result type (%s). Expected RotatedRect.",
-                        part.getId(), result.model.getClass().getSimpleName()));
+            finally {
+                pipeline.setReleaseIntermediateImages(false);
             }
-            pipelineShot.processResult(result);
+            pipelineShot.processResult(getPipelineResult(pipeline, part));
             // Display the shot result.   
             displayResult(OpenCvUtils.toBufferedImage(pipeline.getWorkingImage()), part, null, camera, nozzle);
         }
         return (RotatedRect) pipeline.getCurrentPipelineShot().processCompositeResult().getModel();
     }
 
+    /**
+     * Prepares the pipeline, moves the part to the camera and captures the image on the calling thread, then 
+     * processes and interprets it on the deferredExecutor.
+     * 
+     * @return The future offsets, or null if the alignment cannot be deferred, because it takes multiple shots.
+     * @throws Exception
+     */
+    private Future<PartAlignmentOffset> processPipelineDeferred(CvPipeline pipeline, Camera camera,
+            Part part, Nozzle nozzle, Location wantedLocation, Location adjustedNozzleLocation, 
+            BottomVisionSettings bottomVisionSettings, DeferredOffsets deferred, DeferredInterpreter interpreter) 
+                    throws Exception {
+        preparePipeline(pipeline, bottomVisionSettings.getPipelineParameterAssignments(), camera, part.getPackage(), 
+                nozzle, nozzle.getNozzleTip(), wantedLocation, adjustedNozzleLocation, bottomVisionSettings);
+        if (pipeline.getPipelineShotsCount() != 1) {
+            return null;
+        }
+        PipelineShot pipelineShot = pipeline.getPipelineShot(0);
+        pipelineShot.apply();
+        CvPipeline capturedPipeline;
+        try {
+            capturedPipeline = pipeline.cloneCaptured();
+        }
+        finally {
+            pipeline.release();
+        }
+        return deferredExecutor.submit(() -> {
+            double t0 = NanosecondTime.getRuntimeSeconds();
+            try (CvPipeline processedPipeline = capturedPipeline) {
+                processedPipeline.setReleaseIntermediateImages(true);
+                processedPipeline.process();
+                pipelineShot.processResult(getPipelineResult(processedPipeline, part));
+                RotatedRect rect = (RotatedRect) pipelineShot.processCompositeResult().getModel();
+                Logger.debug("Bottom vision part {} deferred result rect {}", part.getId(), rect);
+                return interpreter.interpret(rect, processedPipeline);
+            }
+            finally {
+                deferred.setProcessingTime(NanosecondTime.getRuntimeSeconds() - t0);
+            }
+        });
+    }
+
+    private Result getPipelineResult(CvPipeline pipeline, Part part) throws Exception {
+        Result result = pipeline.getResult(VisionUtils.PIPELINE_RESULTS_NAME);
+
+        // Fall back to the old name of "result" instead of "results" for backwards
+        // compatibility.
+        if (result == null) {
+            result = pipeline.getResult("result");
+        }
+
+        if (result == null) {
+            throw new Exception(String.format(
+                    "ReferenceBottomVision (%s): Pipeline error. Pipeline must contain a result named '%s'.",
+                    part.getId(), VisionUtils.PIPELINE_RESULTS_NAME));
+        }
+
+        if (result.model == null) {
+            throw new Exception(String.format(
+                    "ReferenceBottomVision (%s): No result found.",
+                    part.getId()));
+        }
+
+        if (!(result.model instanceof RotatedRect)) {
+            throw new Exception(String.format(
+                    "ReferenceBottomVision (%s): Incorrect pipeline result type (%s). Expected RotatedRect.",
+                    part.getId(), result.model.getClass().getSimpleName()));
+        }
+        return result;
+    }
+
     @Override
     public boolean canHandle(PartSettingsHolder settingsHolder, boolean allowDisabled) {
         BottomVisionSettings visionSettings = getInheritedVisionSettings(settingsHolder);
@@ -10,6 +10,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.swing.Action;
 import javax.swing.Icon;
@@ -81,6 +85,13 @@ public class ReferenceFiducialLocator extends AbstractPartSettingsHolder impleme
     @Attribute(required = false)
     protected Integer repeatFiducialRecognition = null;
 
+    /**
+     * When set, the pipeline for a fiducial is processed on a worker thread, while the head already moves on to the
+     * next fiducial. See getAllFiducialLocationsOverlapped().
+     */
+    @Attribute(required = false)
+    protected boolean overlappedProcessing = false;
+
     @Element(required = false)
     protected Length maxDistance = new Length(4, LengthUnit.Millimeters);
 
@@ -93,6 +104,12 @@ public class ReferenceFiducialLocator extends AbstractPartSettingsHolder impleme
         protected Length boardLocationTolerance = new Length(5.0, LengthUnit.Millimeters);
     }
 
+    private static final ExecutorService overlappedExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "ReferenceFiducialLocator-overlapped");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public ReferenceFiducialLocator() {
         Configuration.get().addListener(new ConfigurationListener.Adapter() {
             @Override
@@ -189,6 +206,11 @@ public class ReferenceFiducialLocator extends AbstractPartSettingsHolder impleme
         // Solve it using the default heuristics.
         tsm.solve();
 
+        if (overlappedProcessing) {
+            getAllFiducialLocationsOverlapped(tsm.getTravel());
+            return;
+        }
+
         // loop over all fiducial and visit/measure them
         for (Fiducial fiducial : tsm.getTravel()) {
             Placement placement = fiducial.placement;
@@ -202,6 +224,125 @@ public class ReferenceFiducialLocator extends AbstractPartSettingsHolder impleme
         }
     }
     
+    /**
+     * Measure all fiducial locations with the pipeline processing overlapped with the motion. For each fiducial, the 
+     * camera is moved to it and the image is captured, then the pipeline is processed on a worker thread, while the 
+     * head already moves on to the next fiducial. If any of the results is out of tolerance, i.e. the fiducial could
+     * not be detected or was detected too far away, the remaining fiducials are not visited. 
+     * 
+     * After all the fiducials have been visited, the results are merged. If a fiducial was not detected within the 
+     * max. linear offset of the vision settings, it is refined by the remaining vision passes, starting from the 
+     * detected location. Fiducials that cannot be processed separately from the capture, i.e. with parallax 
+     * operation or a pipeline that actuates or runs scripts, are measured in the conventional way.
+     * 
+     * @param travel
+     * @throws Exception
+     */
+    private void getAllFiducialLocationsOverlapped(List<Fiducial> travel) throws Exception {
+        Camera camera = getVisionCamera();
+        List<Future<Location>> futures = new ArrayList<>();
+        try {
+            for (Fiducial fiducial : travel) {
+                futures.add(submitFiducialLocation(camera, fiducial));
+                // Early out, if an already processed fiducial failed.
+                for (Future<Location> future : futures) {
+                    if (future != null && future.isDone()) {
+                        getOverlappedResult(future);
+                    }
+                }
+            }
+
+            for (int i = 0; i < travel.size(); i++) {
+                Fiducial fiducial = travel.get(i);
+                Placement placement = fiducial.placement;
+                PlacementsHolderLocation<?> placementsHolderLocation = fiducial.placementsHolderLocation;
+                Future<Location> future = futures.get(i);
+                if (future == null) {
+                    fiducial.measuredLocation = getFiducialLocation(placementsHolderLocation, placement);
+                }
+                else {
+                    Location location = getOverlappedResult(future);
+                    Location nominalLocation = Utils2D.calculateBoardPlacementLocation(placementsHolderLocation, 
+                            placement.getLocation());
+                    FiducialVisionSettings visionSettings = getInheritedVisionSettings(placement.getPart());
+                    if (visionSettings.getMaxVisionPasses() > 1
+                            && nominalLocation.getLinearLengthTo(location).compareTo(visionSettings.getMaxLinearOffset()) >= 0) {
+                        // Not yet accurate enough, refine using the remaining passes.
+                        location = getFiducialLocation(nominalLocation, location, 1, placement.getPart());
+                    }
+                    fiducial.measuredLocation = location;
+                }
+                if (fiducial.measuredLocation == null) {
+                    throw new Exception("Unable to locate " + placement.getId() + " on " + placementsHolderLocation.getUniqueId());
+                }
+
+                Logger.debug("Found {} on {} at {}", placement.getId(), placementsHolderLocation.getUniqueId(), fiducial.measuredLocation);
+            }
+        }
+        finally {
+            for (Future<Location> future : futures) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the camera to the fiducial, captures the image and submits the pipeline processing to the worker thread. 
+     * 
+     * @param camera
+     * @param fiducial
+     * @return The future detected location, or null if the fiducial cannot be processed separately from the capture.
+     * @throws Exception
+     */
+    private Future<Location> submitFiducialLocation(Camera camera, Fiducial fiducial) throws Exception {
+        Placement placement = fiducial.placement;
+        Part part = placement.getPart();
+        if (part == null) {
+            throw new Exception(
+                    String.format("Fiducial %s does not have a valid part assigned.", placement.getId()));
+        }
+        FiducialVisionSettings visionSettings = getInheritedVisionSettings(part);
+        if (visionSettings.getParallaxDiameter().getValue() != 0) {
+            return null;
+        }
+        Location nominalLocation = Utils2D.calculateBoardPlacementLocation(fiducial.placementsHolderLocation, 
+                placement.getLocation());
+        CvPipeline capturedPipeline;
+        try (CvPipeline pipeline = getFiducialPipeline(camera, part, nominalLocation)) {
+            if (!pipeline.isCaptureSeparable()) {
+                return null;
+            }
+            Logger.debug("Locating {} on {} overlapped", placement.getId(), 
+                    fiducial.placementsHolderLocation.getUniqueId());
+            MovableUtils.moveToLocationAtSafeZ(camera, nominalLocation);
+            capturedPipeline = pipeline.cloneCaptured();
+        }
+        // The head moves on before the worker runs, so the image must be mapped relative to where it was captured.
+        Location cameraLocation = camera.getLocation();
+        return overlappedExecutor.submit(() -> {
+            try (CvPipeline pipeline = capturedPipeline) {
+                Location location = detectFiducialFromViewpoint(camera, cameraLocation, nominalLocation, 
+                        pipeline, part);
+                checkMaxDistance(location, nominalLocation, part);
+                return location;
+            }
+        });
+    }
+
+    private Location getOverlappedResult(Future<Location> future) throws Exception {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Calculate the affine transformation for a single placementsHolderLocation with fiducial locations already measured.
      * 
@@ -535,7 +676,22 @@ public class ReferenceFiducialLocator extends AbstractPartSettingsHolder impleme
     }
 
     public Location getFiducialLocation(Location nominalLocation, PartSettingsHolder partSettingsHolder) throws Exception {
-        Location location = nominalLocation;
+        return getFiducialLocation(nominalLocation, nominalLocation, 0, partSettingsHolder);
+    }
+
+    /**
+     * Locates the fiducial by repeated vision passes.
+     * 
+     * @param nominalLocation
+     * @param startLocation The location where to start looking for the fiducial. 
+     * @param firstPass The number of vision passes already done to obtain startLocation.
+     * @param partSettingsHolder
+     * @return
+     * @throws Exception
+     */
+    private Location getFiducialLocation(Location nominalLocation, Location startLocation, int firstPass,
+            PartSettingsHolder partSettingsHolder) throws Exception {
+        Location location = startLocation;
         Camera camera = getVisionCamera();
         FiducialVisionSettings visionSettings = getInheritedVisionSettings(partSettingsHolder);
 
@@ -556,13 +712,13 @@ public class ReferenceFiducialLocator extends AbstractPartSettingsHolder impleme
 
         try(CvPipeline pipeline = getFiducialPipeline(camera, partSettingsHolder, nominalLocation)) {
             int repeatFiducialRecognition = visionSettings.getMaxVisionPasses();
-            for (int i = 0; i < repeatFiducialRecognition; i++) {
-                Location newLocation = detectFiducialFromViewpoint(camera, location, pipeline,
+            for (int i = firstPass; i < repeatFiducialRecognition; i++) {
+                Location newLocation = detectFiducialFromViewpoint(camera, camera.getLocation(), location, pipeline,
                         partSettingsHolder);
                 if (parallaxOperation) {
                     Location viewPointLocation2 = location.subtract(parallaxDisplacement);
                     camera.moveTo(viewPointLocation2);
-                    Location newLocation2 = detectFiducialFromViewpoint(camera, location, pipeline,
+                    Location newLocation2 = detectFiducialFromViewpoint(camera, camera.getLocation(), location, pipeline,
                             partSettingsHolder);
                     // Mid-point is the detected location, canceling out any errors.
                     newLocation = newLocation.add(newLocation2).multiply(0.5);
@@ -605,19 +761,42 @@ public class ReferenceFiducialLocator extends AbstractPartSettingsHolder impleme
 
             Logger.debug("{} averaged location is at {}", partSettingsHolder.getId(), location);
         }
+        checkMaxDistance(location, nominalLocation, partSettingsHolder);
+        return location;
+    }
+
+    private void checkMaxDistance(Location location, Location nominalLocation, PartSettingsHolder partSettingsHolder) 
+            throws Exception {
         if (location.convertToUnits(maxDistance.getUnits()).getLinearDistanceTo(nominalLocation) > maxDistance.getValue()) {
             throw new Exception("Fiducial "+partSettingsHolder.getShortName()+ " detected too far away.");
         }
-        return location;
     }
 
-    private Location detectFiducialFromViewpoint(Camera camera, Location location,
+    /**
+     * Processes the pipeline and returns the detected fiducial closest to the expected location.
+     * 
+     * @param camera
+     * @param cameraLocation The camera location at the time the image was captured.
+     * @param location The expected fiducial location.
+     * @param pipeline
+     * @param partSettingsHolder
+     * @return
+     * @throws Exception
+     */
+    private Location detectFiducialFromViewpoint(Camera camera, Location cameraLocation, Location location,
             CvPipeline pipeline, PartSettingsHolder partSettingsHolder) throws Exception {
         // Perform vision operation
         try {
             pipeline.setProperty("fiducial.center", location);
             pipeline.setProperty("MaskCircle.center", location);
-            pipeline.process();
+            // Only the results are needed, intermediate images can be released early.
+            pipeline.setReleaseIntermediateImages(true);
+            try {
+                pipeline.process();
+            }
+            finally {
+                pipeline.setReleaseIntermediateImages(false);
+            }
 
             // Get the results
             List<KeyPoint> keypoints = pipeline.getExpectedResult(VisionUtils.PIPELINE_RESULTS_NAME)
@@ -627,7 +806,8 @@ public class ReferenceFiducialLocator extends AbstractPartSettingsHolder impleme
             // Convert to Locations
             List<Location> locations = new ArrayList<Location>();
             for (KeyPoint keypoint : keypoints) {
-                locations.add(VisionUtils.getPixelLocation(camera, keypoint.pt.x, keypoint.pt.y));
+                locations.add(cameraLocation.add(
+                        VisionUtils.getPixelCenterOffsets(camera, keypoint.pt.x, keypoint.pt.y)));
             }
 
             // Sort by distance from center.
@@ -695,6 +875,14 @@ public class ReferenceFiducialLocator extends AbstractPartSettingsHolder impleme
         this.enabledAveraging = enabledAveraging;
     }
 
+    public boolean isOverlappedProcessing() {
+        return overlappedProcessing;
+    }
+
+    public void setOverlappedProcessing(boolean overlappedProcessing) {
+        this.overlappedProcessing = overlappedProcessing;
+    }
+
     public Length getMaxDistance() {
         return maxDistance;
     }
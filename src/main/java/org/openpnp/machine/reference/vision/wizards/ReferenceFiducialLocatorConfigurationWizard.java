@@ -34,6 +34,7 @@ public class ReferenceFiducialLocatorConfigurationWizard extends AbstractConfigu
     private static Part defaultPart = createDefaultPart();
     
     JCheckBox enabledAveragingCheckbox; 
+    private JCheckBox overlappedProcessingCheckbox;
     private JTextField maxDistance;
     private JComboBox visionSettings;
 
@@ -62,6 +63,8 @@ public class ReferenceFiducialLocatorConfigurationWizard extends AbstractConfigu
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,}));
         
         JLabel lblVisionSettings = new JLabel(Translations.getString(
@@ -97,6 +100,15 @@ public class ReferenceFiducialLocatorConfigurationWizard extends AbstractConfigu
         panel.add(maxDistance, "4, 6, fill, default");
         maxDistance.setColumns(10);
 
+        JLabel lblOverlappedProcessing = new JLabel(Translations.getString(
+                "ReferenceFiducialLocatorConfigurationWizard.GeneralPanel.OverlappedProcessingLabel.text")); //$NON-NLS-1$
+        lblOverlappedProcessing.setToolTipText(Translations.getString(
+                "ReferenceFiducialLocatorConfigurationWizard.GeneralPanel.OverlappedProcessingLabel.toolTipText")); //$NON-NLS-1$
+        panel.add(lblOverlappedProcessing, "2, 8, right, default");
+
+        overlappedProcessingCheckbox = new JCheckBox("");
+        panel.add(overlappedProcessingCheckbox, "4, 8");
+
     }
 
     private static Part createDefaultPart() {
@@ -125,6 +137,7 @@ public class ReferenceFiducialLocatorConfigurationWizard extends AbstractConfigu
         
         addWrappedBinding(fiducialLocator, "enabledAveraging", enabledAveragingCheckbox, "selected");
         addWrappedBinding(fiducialLocator, "maxDistance", maxDistance, "text", lengthConverter);
+        addWrappedBinding(fiducialLocator, "overlappedProcessing", overlappedProcessingCheckbox, "selected");
 
         ComponentDecorators.decorateWithAutoSelectAndLengthConversion(maxDistance);
     }
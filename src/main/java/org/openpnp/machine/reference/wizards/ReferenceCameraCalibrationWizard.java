@@ -1023,6 +1023,8 @@ public class ReferenceCameraCalibrationWizard extends AbstractConfigurationWizar
                                             size, mirrored, apparentMotionDirection);
                                     
                                     postCalibrationProcessing();
+                                    // Don't lose the calibration, if the application does not exit normally.
+                                    Configuration.get().saveInBackground();
                                 }
                                 catch (Exception e) {
                                     UiUtils.showError(e);
@@ -80,6 +80,8 @@ public class ReferenceCameraTransformsConfigurationWizard extends AbstractConfig
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,}));
 
         lblRotation = new JLabel(Translations.getString(
@@ -184,6 +186,19 @@ public class ReferenceCameraTransformsConfigurationWizard extends AbstractConfig
         lblremovesInterlacingFrom = new JLabel(Translations.getString(
                 "ReferenceCameraTransformsConfigurationWizard.TransformsPanel.RemoveInterlacingLabel.text")); //$NON-NLS-1$
         panelTransforms.add(lblremovesInterlacingFrom, "7, 20");
+        
+        lblFusedTransforms = new JLabel(Translations.getString(
+                "ReferenceCameraTransformsConfigurationWizard.TransformsPanel.FusedTransformsLabel.text")); //$NON-NLS-1$
+        lblFusedTransforms.setToolTipText(Translations.getString(
+                "ReferenceCameraTransformsConfigurationWizard.TransformsPanel.FusedTransformsLabel.toolTipText")); //$NON-NLS-1$
+        panelTransforms.add(lblFusedTransforms, "2, 22, right, default");
+        
+        fusedTransformsChk = new JCheckBox("");
+        panelTransforms.add(fusedTransformsChk, "4, 22");
+        
+        lblFusedTransformsHint = new JLabel(Translations.getString(
+                "ReferenceCameraTransformsConfigurationWizard.TransformsPanel.FusedTransformsHintLabel.text")); //$NON-NLS-1$
+        panelTransforms.add(lblFusedTransformsHint, "7, 22");
     }
 
     public boolean isOverriddenClassicTransforms() {
@@ -196,6 +211,10 @@ public class ReferenceCameraTransformsConfigurationWizard extends AbstractConfig
         }
         advancedCalWarning.setVisible(overriddenClassicTransforms);
         advancedCalWarning.setEnabled(overriddenClassicTransforms);
+        // Fusing also applies to the Advanced Calibration transforms.
+        lblFusedTransforms.setEnabled(true);
+        fusedTransformsChk.setEnabled(true);
+        lblFusedTransformsHint.setEnabled(true);
     }
 
     @Override
@@ -217,6 +236,7 @@ public class ReferenceCameraTransformsConfigurationWizard extends AbstractConfig
         addWrappedBinding(referenceCamera, "scaleWidth", scaleWidthTf, "text", intConverter);
         addWrappedBinding(referenceCamera, "scaleHeight", scaleHeightTf, "text", intConverter);
         addWrappedBinding(referenceCamera, "deinterlace", deinterlaceChk, "selected");
+        addWrappedBinding(referenceCamera, "fusedTransforms", fusedTransformsChk, "selected");
 
         ComponentDecorators.decorateWithAutoSelect(textFieldRotation);
         ComponentDecorators.decorateWithAutoSelect(textFieldOffsetX);
@@ -243,6 +263,9 @@ public class ReferenceCameraTransformsConfigurationWizard extends AbstractConfig
     private JCheckBox deinterlaceChk;
     private JLabel lblDeinterlace;
     private JLabel lblremovesInterlacingFrom;
+    private JCheckBox fusedTransformsChk;
+    private JLabel lblFusedTransforms;
+    private JLabel lblFusedTransformsHint;
     private JLabel advancedCalWarning;
 
 }
@@ -48,6 +48,9 @@ public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigu
     private JTextField maxVisionRetriesTextField;
     private JCheckBox steppingToNextMotion;
     private JCheckBox optimizeMultipleNozzles;
+    private JCheckBox costModelPlanning;
+    private JCheckBox pipelinedAlignment;
+    private JCheckBox prefeedLookahead;
     
     public ReferencePnpJobProcessorConfigurationWizard(ReferencePnpJobProcessor jobProcessor) {
         this.jobProcessor = jobProcessor;
@@ -72,6 +75,12 @@ public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigu
                         FormSpecs.RELATED_GAP_ROWSPEC,
                         FormSpecs.DEFAULT_ROWSPEC,
                         FormSpecs.RELATED_GAP_ROWSPEC,
+                        FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC,
+                        FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC,
+                        FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC,
                         FormSpecs.DEFAULT_ROWSPEC,}));
 
         JLabel lblJobOrder = new JLabel(Translations.getString("MachineSetup.JobProcessors.ReferencePnpJobProcessor.Label.JobOrder")); //$NON-NLS-1$
@@ -107,6 +116,27 @@ public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigu
 
         optimizeMultipleNozzles = new JCheckBox(); 
         panelGeneral.add(optimizeMultipleNozzles, "4, 10");
+
+        JLabel lblCostModelPlanning = new JLabel(Translations.getString("ReferencePnpJobProcessorConfigurationWizard.lblCostModelPlanning.text")); //$NON-NLS-1$
+        lblCostModelPlanning.setToolTipText(Translations.getString("ReferencePnpJobProcessorConfigurationWizard.lblCostModelPlanning.toolTipText")); //$NON-NLS-1$
+        panelGeneral.add(lblCostModelPlanning, "2, 12, right, default");
+
+        costModelPlanning = new JCheckBox(); 
+        panelGeneral.add(costModelPlanning, "4, 12");
+
+        JLabel lblPipelinedAlignment = new JLabel(Translations.getString("ReferencePnpJobProcessorConfigurationWizard.lblPipelinedAlignment.text")); //$NON-NLS-1$
+        lblPipelinedAlignment.setToolTipText(Translations.getString("ReferencePnpJobProcessorConfigurationWizard.lblPipelinedAlignment.toolTipText")); //$NON-NLS-1$
+        panelGeneral.add(lblPipelinedAlignment, "2, 14, right, default");
+
+        pipelinedAlignment = new JCheckBox(); 
+        panelGeneral.add(pipelinedAlignment, "4, 14");
+
+        JLabel lblPrefeedLookahead = new JLabel(Translations.getString("ReferencePnpJobProcessorConfigurationWizard.lblPrefeedLookahead.text")); //$NON-NLS-1$
+        lblPrefeedLookahead.setToolTipText(Translations.getString("ReferencePnpJobProcessorConfigurationWizard.lblPrefeedLookahead.toolTipText")); //$NON-NLS-1$
+        panelGeneral.add(lblPrefeedLookahead, "2, 16, right, default");
+
+        prefeedLookahead = new JCheckBox(); 
+        panelGeneral.add(prefeedLookahead, "4, 16");
     }
 
     @Override
@@ -118,6 +148,10 @@ public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigu
         addWrappedBinding(jobProcessor, "maxVisionRetries", maxVisionRetriesTextField, "text", intConverter);
         addWrappedBinding(jobProcessor, "steppingToNextMotion", steppingToNextMotion, "selected");
         addWrappedBinding(jobProcessor, "optimizeMultipleNozzles", optimizeMultipleNozzles, "selected");
+        addWrappedBinding(jobProcessor, "pipelinedAlignment", pipelinedAlignment, "selected");
+        addWrappedBinding(jobProcessor, "prefeedLookahead", prefeedLookahead, "selected");
+        // Bound after the strategy, as switching replaces the planner.
+        addWrappedBinding(jobProcessor, "costModelPlanning", costModelPlanning, "selected");
         
         ComponentDecorators.decorateWithAutoSelect(maxVisionRetriesTextField);
     }
@@ -21,6 +21,7 @@ package org.openpnp.model;
 
 import java.beans.PropertyChangeListener;
 import org.openpnp.spi.Definable;
+import org.openpnp.util.IdentifiableList;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
 
@@ -185,6 +186,9 @@ public abstract class Abstract2DLocatable<T extends Abstract2DLocatable<T>> exte
     public void setId(String id) {
         String oldValue = this.id;
         this.id = id;
+        if (oldValue != null && !oldValue.equals(id)) {
+            IdentifiableList.idChanged();
+        }
         firePropertyChange("id", oldValue, id); //$NON-NLS-1$
     }
 
@@ -104,6 +104,8 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
         int [] colinearWithPrev = new int[size];
         boolean[] simplified = new boolean[size];
         MotionProfile [] prevProfiles0 = null;
+        // Solve all the profiles of the path with the same solver scratch space.
+        MotionProfile.SolverWorkspace workspace = new MotionProfile.SolverWorkspace();
         for (int i = 0; i <= last; i++) {
             MotionProfile [] profiles = get(i);
             if (profiles.length == 0) {
@@ -135,18 +137,13 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
             // Solve all and store initial times.
             if (MotionProfile.isCoordinated(profiles)) {
                 int lead = leadAxis[i];
-                if (profiles[lead].assertSolved()) {
-                    MotionProfile.coordinateProfiles(profiles);
+                if (profiles[lead].assertSolved(workspace)) {
+                    MotionProfile.coordinateProfiles(profiles, workspace);
                 }
             }
             else {
-                boolean sync = false;
-                for (int axis = 0; axis < profiles.length; axis++) {
-                    sync = profiles[axis].assertSolved() 
-                            || sync;
-                }
-                if (sync) {
-                    MotionProfile.synchronizeProfiles(profiles);
+                if (MotionProfile.solveProfiles(profiles, workspace)) {
+                    MotionProfile.synchronizeProfiles(profiles, workspace);
                 }
             }
             for (int axis = 0; axis < profiles.length; axis++) {
@@ -166,8 +163,8 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
                 if (simplified[i]) {
                     // We can only handle them as single coordinated moves for now, because they don't support acceleration != 0 in junctions. 
                     int lead = leadAxis[i];
-                    if (profiles[lead].assertSolved()) {
-                        MotionProfile.coordinateProfiles(profiles);
+                    if (profiles[lead].assertSolved(workspace)) {
+                        MotionProfile.coordinateProfiles(profiles, workspace);
                     }
                 }
                 else if (MotionProfile.isCoordinated(profiles)) {
@@ -269,7 +266,7 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
                         }
                         else {
                             // Solve to boundary conditions.
-                            solverProfile.solve();
+                            solverProfile.solve(workspace);
                         }
                     }
                     //validate("["+i+"]["+lead+"]", solverProfile);
@@ -415,7 +412,7 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
                                 //                                else 
                                 if (solve) {
                                     // Solve with given entry/exit conditions.
-                                    profiles[axis].solve();
+                                    profiles[axis].solve(workspace);
                                     //profiles[axis].validate("simply solved, move "+i);             
                                     hasSolved = true;
                                 }
@@ -426,7 +423,7 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
                             }
                         }
                         if (hasSolved) {
-                            MotionProfile.synchronizeProfiles(profiles);
+                            MotionProfile.synchronizeProfiles(profiles, workspace);
                             //  MotionProfile.validateProfiles(profiles);
                         }
                     }
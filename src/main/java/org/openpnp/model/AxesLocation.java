@@ -192,6 +192,21 @@ public class AxesLocation {
             }
         }
     }
+    /**
+     * Create an AxesLocation from the first count entries of the given parallel axis and coordinate arrays.
+     * Used by parsers that collect coordinates into a reusable buffer. Coordinates must already be in
+     * AxesLocation units.
+     *
+     * @param axes
+     * @param coordinates
+     * @param count
+     */
+    public AxesLocation(Axis[] axes, double[] coordinates, int count) {
+        location = new LinkedHashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            location.put(axes[i], coordinates[i]);
+        }
+    }
     /**
      * Using the given binary function, aggregate the given axesLocation argument list.  
      * 
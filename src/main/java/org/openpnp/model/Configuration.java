@@ -27,22 +27,33 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.prefs.Preferences;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 import org.apache.commons.io.FileUtils;
 import org.openpnp.ConfigurationListener;
@@ -53,6 +64,7 @@ import org.openpnp.gui.support.MessageBoxes;
 import org.openpnp.model.Abstract2DLocatable.Side;
 import org.openpnp.scripting.Scripting;
 import org.openpnp.spi.Machine;
+import org.openpnp.util.DebugImageWriter;
 import org.openpnp.util.NanosecondTime;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Element;
@@ -102,8 +114,25 @@ public class Configuration extends AbstractModelObject {
     private static final String PREF_VERTICAL_SCROLL_UNIT_INCREMENT =
             "Configuration.verticalScrollUnitIncrement";
     private static final int PREF_VERTICAL_SCROLL_UNIT_INCREMENT_DEF = 16;
+
+    private static final String PREF_DEBUG_IMAGE_FORMAT = "Configuration.debugImage.format";
+    private static final String PREF_DEBUG_IMAGE_FORMAT_DEF = "Png";
+
+    private static final String PREF_DEBUG_IMAGE_QUEUE_POLICY = "Configuration.debugImage.queuePolicy";
+    private static final String PREF_DEBUG_IMAGE_QUEUE_POLICY_DEF = "Drop";
+
+    private static final String PREF_DEBUG_IMAGE_QUEUE_SIZE = "Configuration.debugImage.queueSize";
+    private static final int PREF_DEBUG_IMAGE_QUEUE_SIZE_DEF = 32;
+
+    private static final String PREF_DEBUG_IMAGE_MAX_MEGABYTES = "Configuration.debugImage.maxMegabytes";
+    private static final int PREF_DEBUG_IMAGE_MAX_MEGABYTES_DEF = 1024;
     private static final String imgurClientId = "620fc1fa8ee0180";
 
+    /**
+     * Background save requests coming in within this delay are coalesced into one save.
+     */
+    private static final long BACKGROUND_SAVE_DELAY_MS = 1000;
+
     public enum TablesLinked {
         Unlinked,
         Linked
@@ -121,6 +150,21 @@ public class Configuration extends AbstractModelObject {
     private Preferences prefs;
     private Scripting scripting;
     private EventBus bus = new EventBus();
+    /**
+     * The digests of the configuration files as last written by save(), by file name. A file is
+     * dirty if its serialized content no longer matches.
+     */
+    private Map<String, byte[]> savedDigests = new HashMap<>();
+    private final Object saveRequestLock = new Object();
+    private ScheduledExecutorService saveExecutor;
+    private ScheduledFuture<?> pendingSave;
+    /**
+     * Generation of the configuration snapshot taken last, and of the one written last. A snapshot older 
+     * than the one written is not written anymore.
+     */
+    private long serializedGeneration;
+    private long writtenGeneration;
+    private final Object writeLock = new Object();
 
     public static boolean isInstanceInitialized() {
         return (instance != null);
@@ -325,6 +369,56 @@ public class Configuration extends AbstractModelObject {
         prefs.putInt(PREF_VERTICAL_SCROLL_UNIT_INCREMENT, PREF_VERTICAL_SCROLL_UNIT_INCREMENT_DEF);
     }
 
+    public DebugImageWriter.Format getDebugImageFormat() {
+        try {
+            return DebugImageWriter.Format.valueOf(prefs.get(PREF_DEBUG_IMAGE_FORMAT, PREF_DEBUG_IMAGE_FORMAT_DEF));
+        }
+        catch (IllegalArgumentException e) {
+            return DebugImageWriter.Format.valueOf(PREF_DEBUG_IMAGE_FORMAT_DEF);
+        }
+    }
+
+    public void setDebugImageFormat(DebugImageWriter.Format format) {
+        prefs.put(PREF_DEBUG_IMAGE_FORMAT, format.name());
+    }
+
+    public DebugImageWriter.QueuePolicy getDebugImageQueuePolicy() {
+        try {
+            return DebugImageWriter.QueuePolicy.valueOf(prefs.get(PREF_DEBUG_IMAGE_QUEUE_POLICY, 
+                    PREF_DEBUG_IMAGE_QUEUE_POLICY_DEF));
+        }
+        catch (IllegalArgumentException e) {
+            return DebugImageWriter.QueuePolicy.valueOf(PREF_DEBUG_IMAGE_QUEUE_POLICY_DEF);
+        }
+    }
+
+    public void setDebugImageQueuePolicy(DebugImageWriter.QueuePolicy queuePolicy) {
+        prefs.put(PREF_DEBUG_IMAGE_QUEUE_POLICY, queuePolicy.name());
+    }
+
+    /**
+     * @return The number of debug images that can be queued for writing. Takes effect on the next start.
+     */
+    public int getDebugImageQueueSize() {
+        return prefs.getInt(PREF_DEBUG_IMAGE_QUEUE_SIZE, PREF_DEBUG_IMAGE_QUEUE_SIZE_DEF);
+    }
+
+    public void setDebugImageQueueSize(int debugImageQueueSize) {
+        prefs.putInt(PREF_DEBUG_IMAGE_QUEUE_SIZE, debugImageQueueSize);
+    }
+
+    /**
+     * @return The maximum size of the log/vision directory in megabytes, before the oldest images are deleted. 
+     * Zero for no limit.
+     */
+    public int getDebugImageMaxMegabytes() {
+        return prefs.getInt(PREF_DEBUG_IMAGE_MAX_MEGABYTES, PREF_DEBUG_IMAGE_MAX_MEGABYTES_DEF);
+    }
+
+    public void setDebugImageMaxMegabytes(int debugImageMaxMegabytes) {
+        prefs.putInt(PREF_DEBUG_IMAGE_MAX_MEGABYTES, debugImageMaxMegabytes);
+    }
+
     /**
      * Gets a File reference for the resources directory belonging to the given class. The directory
      * is guaranteed to exist.
@@ -527,43 +621,169 @@ public class Configuration extends AbstractModelObject {
         }
     }
 
+    /**
+     * Saves the configuration files that changed since they were last saved. Unchanged files are
+     * neither rewritten nor backed up. Any pending background save is covered by this save. The user
+     * is asked whether modified Boards and Panels should be saved, too.
+     *
+     * @throws Exception
+     */
     public synchronized void save() throws Exception {
-        LocalDateTime now = LocalDateTime.now();
-        try {
-           saveMachine(createBackedUpFile("machine.xml", now));
+        synchronized (saveRequestLock) {
+            if (pendingSave != null) {
+                pendingSave.cancel(false);
+                pendingSave = null;
+            }
         }
-        catch (Exception e) {
-            throw new Exception("Error while saving machine.xml (" + e.getMessage() + ")", e);
+        writeIfChanged(serializeConfiguration(snapshotConfiguration()), ++serializedGeneration);
+        
+        for (Board board : getBoards()) {
+            confirmSaveOfModified(board);
         }
-        try {
-            savePackages(createBackedUpFile("packages.xml", now));
+        for (Panel panel : getPanels()) {
+            confirmSaveOfModified(panel);
         }
-        catch (Exception e) {
-            throw new Exception("Error while saving packages.xml (" + e.getMessage() + ")", e);
+    }
+
+    /**
+     * Requests a save of the configuration on a background thread, so the caller is neither blocked 
+     * by the serialization nor by the writing. May be called from any thread. Requests coming in 
+     * before the save has started are coalesced into one save, which takes the configuration as it 
+     * is when it starts. The user is not asked to save modified Boards and Panels, and errors are 
+     * reported asynchronously.
+     */
+    public void saveInBackground() {
+        synchronized (saveRequestLock) {
+            if (pendingSave != null) {
+                // The pending save has not started yet, so it will include the latest changes.
+                return;
+            }
+            if (saveExecutor == null) {
+                saveExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "ConfigurationSaver");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            pendingSave = saveExecutor.schedule(this::backgroundSave,
+                    BACKGROUND_SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
         }
-        try {
-            saveParts(createBackedUpFile("parts.xml", now));
+    }
+
+    private void backgroundSave() {
+        synchronized (saveRequestLock) {
+            // From here on, new requests need another save.
+            pendingSave = null;
         }
-        catch (Exception e) {
-            throw new Exception("Error while saving parts.xml (" + e.getMessage() + ")", e);
+        Map<String, Object> holders;
+        long generation;
+        synchronized (this) {
+            holders = snapshotConfiguration();
+            generation = ++serializedGeneration;
         }
         try {
-            saveBoards(createBackedUpFile("boards.xml", now));
+            writeIfChanged(serializeConfiguration(holders), generation);
+            Logger.debug("Configuration saved in the background.");
         }
         catch (Exception e) {
-            throw new Exception("Error while saving boards.xml (" + e.getMessage() + ")", e);
+            if (isConcurrentModification(e)) {
+                // The machine was changed while it was serialized, save it again as changed.
+                Logger.debug("Configuration changed during the background save, saving again.");
+                saveInBackground();
+                return;
+            }
+            reportBackgroundSaveError(e);
         }
-        try {
-            savePanels(createBackedUpFile("panels.xml", now));
+    }
+
+    private static boolean isConcurrentModification(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConcurrentModificationException) {
+                return true;
+            }
         }
-        catch (Exception e) {
-            throw new Exception("Error while saving panels.xml (" + e.getMessage() + ")", e);
+        return false;
+    }
+
+    private void reportBackgroundSaveError(Exception e) {
+        Logger.error(e, "Background configuration save failed.");
+        if (MainFrame.get() != null) {
+            SwingUtilities.invokeLater(() ->
+                MessageBoxes.errorBox(MainFrame.get(), "Configuration Save Error", e)); //$NON-NLS-1$
         }
-        try {
-            saveVisionSettings(createBackedUpFile("vision-settings.xml", now));
+    }
+
+    /**
+     * Takes a snapshot of the configuration, i.e. the holders of the configuration files, with 
+     * copies of the lists of Packages, Parts, Boards, Panels and vision settings. The objects in the
+     * lists and the Machine are not copied. Must be called holding the lock of the Configuration, 
+     * which guards the changes of the lists.
+     * 
+     * @return The holders by file name.
+     */
+    private Map<String, Object> snapshotConfiguration() {
+        Map<String, Object> holders = new LinkedHashMap<>();
+        holders.put("machine.xml", createMachineHolder());
+        holders.put("packages.xml", createPackagesHolder());
+        holders.put("parts.xml", createPartsHolder());
+        holders.put("boards.xml", createBoardsHolder());
+        holders.put("panels.xml", createPanelsHolder());
+        holders.put("vision-settings.xml", createVisionSettingsHolder());
+        return holders;
+    }
+
+    /**
+     * Serializes a snapshot of the configuration files into memory.
+     * 
+     * @param holders The holders by file name, as taken by snapshotConfiguration().
+     * @return The content by file name.
+     * @throws Exception
+     */
+    private Map<String, byte[]> serializeConfiguration(Map<String, Object> holders) throws Exception {
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : holders.entrySet()) {
+            try {
+                contents.put(entry.getKey(), serializeObject(entry.getValue()));
+            }
+            catch (Exception e) {
+                throw new Exception("Error while saving " + entry.getKey() + " (" + e.getMessage() + ")", e);
+            }
         }
-        catch (Exception e) {
-            throw new Exception("Error while saving vision-settings.xml (" + e.getMessage() + ")", e);
+        return contents;
+    }
+
+    /**
+     * Writes the serialized configuration files, but only those whose content changed since the file 
+     * was last saved, or that are missing. The files are backed up first. Nothing is written, if a newer
+     * generation of the content was already written.
+     *
+     * @param contents The content by file name.
+     * @param generation
+     * @throws Exception
+     */
+    private void writeIfChanged(Map<String, byte[]> contents, long generation) throws Exception {
+        synchronized (writeLock) {
+            if (generation < writtenGeneration) {
+                return;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+                String fileName = entry.getKey();
+                byte[] content = entry.getValue();
+                try {
+                    byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+                    File file = new File(configurationDirectory, fileName);
+                    if (file.exists() && Arrays.equals(digest, savedDigests.get(fileName))) {
+                        continue;
+                    }
+                    writeFile(content, createBackedUpFile(fileName, now));
+                    savedDigests.put(fileName, digest);
+                }
+                catch (Exception e) {
+                    throw new Exception("Error while saving " + fileName + " (" + e.getMessage() + ")", e);
+                }
+            }
+            writtenGeneration = generation;
         }
     }
 
@@ -599,12 +819,16 @@ public class Configuration extends AbstractModelObject {
         if (null == pkg.getId()) {
             throw new Error("Package with null Id cannot be added to Configuration.");
         }
-        packages.put(pkg.getId().toUpperCase(), pkg);
+        synchronized (this) {
+            packages.put(pkg.getId().toUpperCase(), pkg);
+        }
         firePropertyChange("packages", null, packages);
     }
 
     public void removePackage(Package pkg) {
-        packages.remove(pkg.getId().toUpperCase());
+        synchronized (this) {
+            packages.remove(pkg.getId().toUpperCase());
+        }
         firePropertyChange("packages", null, packages);
     }
 
@@ -623,12 +847,16 @@ public class Configuration extends AbstractModelObject {
         if (null == part.getId()) {
             throw new Error("Part with null Id cannot be added to Configuration.");
         }
-        parts.put(part.getId().toUpperCase(), part);
+        synchronized (this) {
+            parts.put(part.getId().toUpperCase(), part);
+        }
         firePropertyChange("parts", null, parts);
     }
 
     public void removePart(Part part) {
-        parts.remove(part.getId().toUpperCase());
+        synchronized (this) {
+            parts.remove(part.getId().toUpperCase());
+        }
         firePropertyChange("parts", null, parts);
     }
 
@@ -636,7 +864,9 @@ public class Configuration extends AbstractModelObject {
         if (null == visionSettings.getId()) {
             throw new Error("Vision Settings with null Id cannot be added to Configuration.");
         }
-        this.visionSettings.put(visionSettings.getId().toUpperCase(), visionSettings);
+        synchronized (this) {
+            this.visionSettings.put(visionSettings.getId().toUpperCase(), visionSettings);
+        }
         fireVisionSettingsChanged();
     }
 
@@ -653,7 +883,9 @@ public class Configuration extends AbstractModelObject {
     }
 
     public void removeVisionSettings(AbstractVisionSettings visionSettings) {
-        this.visionSettings.remove(visionSettings.getId().toUpperCase());
+        synchronized (this) {
+            this.visionSettings.remove(visionSettings.getId().toUpperCase());
+        }
         fireVisionSettingsChanged();
     }
 
@@ -689,7 +921,9 @@ public class Configuration extends AbstractModelObject {
      */
     public void addPanel(Panel panel) {
         LinkedHashMap<File, Panel> oldValue = new LinkedHashMap<>(panels);
-        panels.put(panel.getFile(), panel);
+        synchronized (this) {
+            panels.put(panel.getFile(), panel);
+        }
         firePropertyChange("panels", oldValue, panels);
     }
     
@@ -705,7 +939,9 @@ public class Configuration extends AbstractModelObject {
         }
         Panel panel = loadPanel(file);
         LinkedHashMap<File, Panel> oldValue = new LinkedHashMap<>(panels);
-        panels.put(file, panel);
+        synchronized (this) {
+            panels.put(file, panel);
+        }
         firePropertyChange("panels", oldValue, panels);
     }
     
@@ -718,7 +954,9 @@ public class Configuration extends AbstractModelObject {
     public void removePanel(Panel panel) {
         confirmSaveOfModified(panel);
         LinkedHashMap<File, Panel> oldValue = new LinkedHashMap<>(panels);
-        panels.remove(panel.getFile());
+        synchronized (this) {
+            panels.remove(panel.getFile());
+        }
         firePropertyChange("panels", oldValue, panels);
         panel.dispose();
     }
@@ -745,7 +983,9 @@ public class Configuration extends AbstractModelObject {
         }
         Panel panel = loadPanel(file);
         LinkedHashMap<File, Panel> oldValue = new LinkedHashMap<>(panels);
-        panels.put(file, panel);
+        synchronized (this) {
+            panels.put(file, panel);
+        }
         firePropertyChange("panels", oldValue, panels);
         return panel;
     }
@@ -756,7 +996,9 @@ public class Configuration extends AbstractModelObject {
      */
     public void addBoard(Board board) {
         LinkedHashMap<File, Board> oldValue = new LinkedHashMap<>(boards);
-        boards.put(board.getFile(), board);
+        synchronized (this) {
+            boards.put(board.getFile(), board);
+        }
         firePropertyChange("boards", oldValue, boards);
     }
     
@@ -772,7 +1014,9 @@ public class Configuration extends AbstractModelObject {
         }
         Board board = loadBoard(file);
         LinkedHashMap<File, Board> oldValue = new LinkedHashMap<>(boards);
-        boards.put(file, board);
+        synchronized (this) {
+            boards.put(file, board);
+        }
         firePropertyChange("boards", oldValue, boards);
     }
     
@@ -785,7 +1029,9 @@ public class Configuration extends AbstractModelObject {
     public void removeBoard(Board board) {
         confirmSaveOfModified(board);
         LinkedHashMap<File, Board> oldValue = new LinkedHashMap<>(boards);
-        boards.remove(board.getFile());
+        synchronized (this) {
+            boards.remove(board.getFile());
+        }
         firePropertyChange("boards", oldValue, boards);
         board.dispose();
     }
@@ -813,20 +1059,44 @@ public class Configuration extends AbstractModelObject {
         }
         Board board = loadBoard(file);
         LinkedHashMap<File, Board> oldValue = new LinkedHashMap<>(boards);
-        boards.put(file, board);
+        synchronized (this) {
+            boards.put(file, board);
+        }
         firePropertyChange("boards", oldValue, boards);
         return board;
     }
     
-    private static void serializeObject(Object o, File file) throws Exception {
-        Serializer serializer = createSerializer();
-        // This write forces any errors that will appear to happen before we start writing to
+    private static byte[] serializeObject(Object o) throws Exception {
+        // Serializing into memory first forces any errors to happen before we start writing to
         // the file, which keeps us from writing a partial configuration to the real file.
-        serializer.write(o, new ByteArrayOutputStream());
-        FileOutputStream out = new FileOutputStream(file);
-        serializer.write(o, out);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createSerializer().write(o, out);
         out.write('\n');
-        out.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the content to a temporary file next to the file, and then renames it over the file,
+     * so a failed or interrupted write leaves the previous file intact.
+     *
+     * @param content
+     * @param file
+     * @throws IOException
+     */
+    private static void writeFile(byte[] content, File file) throws IOException {
+        Path path = file.toPath();
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temporaryPath.toFile())) {
+            out.write(content);
+            out.getFD().sync();
+        }
+        try {
+            Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
     private void loadMachine(File file) throws Exception {
@@ -835,10 +1105,10 @@ public class Configuration extends AbstractModelObject {
         machine = holder.machine;
     }
 
-    private void saveMachine(File file) throws Exception {
+    private MachineConfigurationHolder createMachineHolder() {
         MachineConfigurationHolder holder = new MachineConfigurationHolder();
         holder.machine = machine;
-        serializeObject(holder, file);
+        return holder;
     }
 
     private void loadPackages(File file) throws Exception {
@@ -850,10 +1120,10 @@ public class Configuration extends AbstractModelObject {
         }
     }
 
-    private void savePackages(File file) throws Exception {
+    private PackagesConfigurationHolder createPackagesHolder() {
         PackagesConfigurationHolder holder = new PackagesConfigurationHolder();
         holder.packages = new ArrayList<>(packages.values());
-        serializeObject(holder, file);
+        return holder;
     }
 
     private void loadParts(File file) throws Exception {
@@ -864,10 +1134,10 @@ public class Configuration extends AbstractModelObject {
         }
     }
 
-    private void saveParts(File file) throws Exception {
+    private PartsConfigurationHolder createPartsHolder() {
         PartsConfigurationHolder holder = new PartsConfigurationHolder();
         holder.parts = new ArrayList<>(parts.values());
-        serializeObject(holder, file);
+        return holder;
     }
 
     /**
@@ -894,18 +1164,13 @@ public class Configuration extends AbstractModelObject {
     }
 
     /**
-     * Saves the Boards that are currently loaded in the configuration to the specified file
-     * @param file - the file in which to save the Boards
-     * @throws Exception if the file can't be written successfully
+     * Creates the holder of the list of the Boards that are currently loaded in the configuration
+     * @return the holder
      */
-    private void saveBoards(File file) throws Exception {
+    private BoardsConfigurationHolder createBoardsHolder() {
         BoardsConfigurationHolder holder = new BoardsConfigurationHolder();
         holder.boards = new ArrayList<>(boards.keySet());
-        serializeObject(holder, file);
-        
-        for (Board board : getBoards()) {
-            confirmSaveOfModified(board);
-        }
+        return holder;
     }
 
     /**
@@ -932,18 +1197,13 @@ public class Configuration extends AbstractModelObject {
     }
 
     /**
-     * Saves the Panels that are currently loaded in the configuration to the specified file
-     * @param file - the file in which to save the Panels
-     * @throws Exception if the file can't be written successfully
+     * Creates the holder of the list of the Panels that are currently loaded in the configuration
+     * @return the holder
      */
-    private void savePanels(File file) throws Exception {
+    private PanelsConfigurationHolder createPanelsHolder() {
         PanelsConfigurationHolder holder = new PanelsConfigurationHolder();
         holder.panels = new ArrayList<>(panels.keySet());
-        serializeObject(holder, file);
-        
-        for (Panel panel : getPanels()) {
-            confirmSaveOfModified(panel);
-        }
+        return holder;
     }
 
     private void confirmSaveOfModified(PlacementsHolder<?> placementsHolder) {
@@ -982,10 +1242,10 @@ public class Configuration extends AbstractModelObject {
         }
     }
 
-    private void saveVisionSettings(File file) throws Exception {
+    private VisionSettingsConfigurationHolder createVisionSettingsHolder() {
         VisionSettingsConfigurationHolder holder = new VisionSettingsConfigurationHolder();
         holder.visionSettings = new ArrayList<>(visionSettings.values());
-        serializeObject(holder, file);
+        return holder;
     }
 
     /**
@@ -1115,7 +1375,7 @@ public class Configuration extends AbstractModelObject {
                             PlacementsHolderLocation.ID_DELIMITTER;
                     Map<String, Boolean> subBoardPlaced = subBoard.getPlaced();
                     for (String key : subBoardPlaced.keySet()) {
-                        job.placedStatusMap.put(keyRoot + key, subBoardPlaced.get(key));
+                        job.storePlacedStatus(keyRoot + key, subBoardPlaced.get(key));
                     }
                 }
             }
@@ -1383,9 +1643,7 @@ public class Configuration extends AbstractModelObject {
      */
     public void saveJob(Job job, File file) throws Exception {
         saveJobEnabledAndErrorHandlingSettings(job, job.getRootPanelLocation());
-        Serializer serializer = createSerializer();
-        serializer.write(job, new ByteArrayOutputStream());
-        serializer.write(job, file);
+        writeFile(serializeObject(job), file);
         job.setFile(file);
         job.setDirty(false);
     }
@@ -1400,9 +1658,7 @@ public class Configuration extends AbstractModelObject {
      * @throws Exception if the file can't be written successfully
      */
     public void savePanel(Panel panel) throws Exception {
-        Serializer serializer = createSerializer();
-        serializer.write(panel, new ByteArrayOutputStream());
-        serializer.write(panel, panel.getFile());
+        writeFile(serializeObject(panel), panel.getFile());
         panel.setDirty(false);
     }
 
@@ -1452,9 +1708,7 @@ public class Configuration extends AbstractModelObject {
      * @throws Exception if the file can't be written successfully
      */
     public void saveBoard(Board board) throws Exception {
-        Serializer serializer = createSerializer();
-        serializer.write(board, new ByteArrayOutputStream());
-        serializer.write(board, board.getFile());
+        writeFile(serializeObject(board), board.getFile());
         board.setDirty(false);
     }
 
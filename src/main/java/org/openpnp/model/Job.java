@@ -24,10 +24,13 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.openpnp.model.Placement.Type;
 import org.simpleframework.xml.Attribute;
@@ -80,6 +83,23 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
     protected transient File file;
     protected transient boolean dirty;
     protected transient final PanelLocation rootPanelLocation;
+    protected transient volatile JobStateIndex stateIndex;
+    private transient final Set<String> batchedStateChanges = new LinkedHashSet<>();
+    private transient int batchDepth;
+    
+    /**
+     * The properties of the PlacementsHolderLocations, PlacementsHolders and Placements that
+     * decide which Placements are active.
+     */
+    private static final Set<String> activePlacementProperties = new LinkedHashSet<>(Arrays.asList(
+            "enabled", "side", "type", "id", "locallyEnabled", "placementsHolder", "placement", 
+            "placements", "child", "children"));
+    private transient final List<AbstractModelObject> activeCountSources = new ArrayList<>();
+    private transient final PropertyChangeListener activeCountsListener = evt -> {
+        if (activePlacementProperties.contains(evt.getPropertyName())) {
+            invalidateActiveCounts();
+        }
+    };
     
     public Job() {
         rootPanelLocation = new PanelLocation(rootPanel);
@@ -211,25 +231,13 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
             return 0;
         }
         
-        int counter = 0;
-        if (placementsHolderLocation instanceof BoardLocation) {
-            for(Placement placement : placementsHolderLocation.getPlacementsHolder().getPlacements()) {
-                if (placement.getSide() == placementsHolderLocation.getGlobalSide()
-                        && placement.getType() == Type.Placement
-                        && placement.isEnabled()) {
-                        counter++;
-                }
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            if (countActivePlacements(index, placementsHolderLocation)) {
+                return index.getActiveCount(getActiveCountHandle(index, placementsHolderLocation));
             }
         }
-        else if (placementsHolderLocation instanceof PanelLocation) {
-            for (PlacementsHolderLocation<?> child : ((PanelLocation) placementsHolderLocation).getPanel().getChildren()) {
-                counter += getTotalActivePlacements(child);
-            }
-        }
-        else {
-            throw new UnsupportedOperationException("Instance type " + placementsHolderLocation.getClass() + " not supported.");
-        }
-        return counter;
+        return countActivePlacements(placementsHolderLocation, false);
     }
     
     /**
@@ -244,20 +252,42 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
             return 0;
         }
         
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            if (countActivePlacements(index, placementsHolderLocation)) {
+                int handle = getActiveCountHandle(index, placementsHolderLocation);
+                return index.getActiveCount(handle) - index.getPlacedActiveCount(handle);
+            }
+        }
+        return countActivePlacements(placementsHolderLocation, true);
+    }
+
+    /**
+     * Counts the active Placements of a PlacementsHolderLocation that is not part of the Job, by 
+     * walking its descendants.
+     * @param placementsHolderLocation - the PlacementsHolderLocation
+     * @param unplacedOnly - true to only count the Placements that have not yet been placed
+     * @return the number of active placements
+     */
+    private int countActivePlacements(PlacementsHolderLocation<?> placementsHolderLocation, 
+            boolean unplacedOnly) {
+        if (placementsHolderLocation == null || placementsHolderLocation.getPlacementsHolder() == null ||
+                !placementsHolderLocation.isEnabled()) {
+            return 0;
+        }
+        
         int counter = 0;
         if (placementsHolderLocation instanceof BoardLocation) {
             for(Placement placement : placementsHolderLocation.getPlacementsHolder().getPlacements()) {
-                if (placement.getSide() == placementsHolderLocation.getGlobalSide()
-                        && placement.getType() == Type.Placement
-                        && placement.isEnabled()
-                        && !retrievePlacedStatus(placementsHolderLocation, placement.getId())) {
+                if (isActive(placementsHolderLocation, placement) && (!unplacedOnly 
+                        || !retrievePlacedStatus(placementsHolderLocation, placement.getId()))) {
                         counter++;
                 }
             }
         }
         else if (placementsHolderLocation instanceof PanelLocation) {
             for (PlacementsHolderLocation<?> child : ((PanelLocation) placementsHolderLocation).getPanel().getChildren()) {
-                counter += getActivePlacements(child);
+                counter += countActivePlacements(child, unplacedOnly);
             }
         }
         else {
@@ -266,6 +296,167 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
         return counter;
     }
 
+    private static boolean isActive(PlacementsHolderLocation<?> placementsHolderLocation, Placement placement) {
+        return placement.getSide() == placementsHolderLocation.getGlobalSide()
+                && placement.getType() == Type.Placement
+                && placement.isEnabled();
+    }
+
+    /**
+     * Counts the active Placements of the Job into the index, unless they are already counted. The
+     * counts are kept until one of the PlacementsHolderLocations, PlacementsHolders or Placements 
+     * changes in a way that may change which Placements are active. Must be called while 
+     * synchronized on the index.
+     * @param index - the index
+     * @param placementsHolderLocation - the PlacementsHolderLocation to be looked up
+     * @return true if the active Placements of the PlacementsHolderLocation are counted, false if
+     * it is not part of the Job.
+     */
+    private boolean countActivePlacements(JobStateIndex index, 
+            PlacementsHolderLocation<?> placementsHolderLocation) {
+        if (!index.isActiveCounted()) {
+            countActivePlacements(index, rootPanelLocation, true);
+            index.setActiveCounted();
+        }
+        return index.isActiveCounted(placementsHolderLocation);
+    }
+    
+    private void countActivePlacements(JobStateIndex index, 
+            PlacementsHolderLocation<?> placementsHolderLocation, boolean parentEnabled) {
+        if (placementsHolderLocation == null) {
+            return;
+        }
+        listenForActiveChanges(placementsHolderLocation);
+        PlacementsHolder<?> placementsHolder = placementsHolderLocation.getPlacementsHolder();
+        if (placementsHolder == null) {
+            return;
+        }
+        listenForActiveChanges(placementsHolder);
+        index.putActiveHolder(placementsHolderLocation);
+        boolean enabled = parentEnabled && placementsHolderLocation.isLocallyEnabled();
+        if (placementsHolderLocation instanceof BoardLocation) {
+            for(Placement placement : placementsHolder.getPlacements()) {
+                listenForActiveChanges(placement);
+                if (enabled && isActive(placementsHolderLocation, placement)) {
+                    index.putActive(index.getHandle(placementsHolderLocation, placement.getId()));
+                }
+            }
+        }
+        else if (placementsHolderLocation instanceof PanelLocation) {
+            for (PlacementsHolderLocation<?> child : ((PanelLocation) placementsHolderLocation).getPanel().getChildren()) {
+                countActivePlacements(index, child, enabled);
+            }
+        }
+    }
+    
+    private int getActiveCountHandle(JobStateIndex index, PlacementsHolderLocation<?> placementsHolderLocation) {
+        if (placementsHolderLocation.getUniqueId() == null) {
+            return -1;
+        }
+        return index.getHandle(placementsHolderLocation, null);
+    }
+    
+    private void listenForActiveChanges(AbstractModelObject source) {
+        source.addPropertyChangeListener(activeCountsListener);
+        activeCountSources.add(source);
+    }
+    
+    /**
+     * Clears the active Placement counts, to be counted again on their next use.
+     */
+    private void invalidateActiveCounts() {
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            index.clearActive();
+            for (AbstractModelObject source : activeCountSources) {
+                if (source.isListener(activeCountsListener)) {
+                    source.removePropertyChangeListener(activeCountsListener);
+                }
+            }
+            activeCountSources.clear();
+        }
+    }
+
+    /**
+     * Runs the changes and fires a single property change event for each kind of state that was 
+     * changed by them, instead of one event per change.
+     * @param changes - the changes to the stored states
+     */
+    public void batchStateChanges(Runnable changes) {
+        synchronized (batchedStateChanges) {
+            batchDepth++;
+        }
+        try {
+            changes.run();
+        }
+        finally {
+            Set<String> propertyNames = null;
+            synchronized (batchedStateChanges) {
+                if (--batchDepth == 0) {
+                    propertyNames = new LinkedHashSet<>(batchedStateChanges);
+                    batchedStateChanges.clear();
+                }
+            }
+            if (propertyNames != null) {
+                for (String propertyName : propertyNames) {
+                    firePropertyChange(propertyName, null, getStateMap(propertyName));
+                }
+            }
+        }
+    }
+
+    private void fireStateChange(String propertyName) {
+        synchronized (batchedStateChanges) {
+            if (batchDepth > 0) {
+                batchedStateChanges.add(propertyName);
+                return;
+            }
+        }
+        firePropertyChange(propertyName, null, getStateMap(propertyName));
+    }
+
+    private Map<String, ?> getStateMap(String propertyName) {
+        switch (propertyName) {
+            case "placed":
+                return placedStatusMap;
+            case "enabled":
+                return enabledStateMap;
+            case "checkFiducials":
+                return checkFiducialsStateMap;
+            default:
+                return errorHandlingStateMap;
+        }
+    }
+
+    /**
+     * @return the index of the stored states, built from the persisted maps on first use
+     */
+    private JobStateIndex getStateIndex() {
+        JobStateIndex index = stateIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = stateIndex;
+                if (index == null) {
+                    index = new JobStateIndex();
+                    for (Map.Entry<String, Boolean> entry : placedStatusMap.entrySet()) {
+                        index.putPlaced(index.getHandle(entry.getKey()), entry.getValue());
+                    }
+                    for (Map.Entry<String, Boolean> entry : enabledStateMap.entrySet()) {
+                        index.enabled.put(index.getHandle(entry.getKey()), entry.getValue());
+                    }
+                    for (Map.Entry<String, Boolean> entry : checkFiducialsStateMap.entrySet()) {
+                        index.checkFiducials.put(index.getHandle(entry.getKey()), entry.getValue());
+                    }
+                    for (Map.Entry<String, Placement.ErrorHandling> entry : errorHandlingStateMap.entrySet()) {
+                        index.putErrorHandling(index.getHandle(entry.getKey()), entry.getValue());
+                    }
+                    stateIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
     /**
      * Stores the placed status of a Placement in a way that is uniquely identifiable to it   
      * @param placementsHolderLocation - the PlacementsHolderLocation that contains the Placement
@@ -273,9 +464,27 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * @param placed - the status to be stored
      */
     public void storePlacedStatus(PlacementsHolderLocation<?> placementsHolderLocation, String placementId, boolean placed) {
-        String key = placementsHolderLocation.getUniqueId() + PlacementsHolderLocation.ID_DELIMITTER + placementId;
-        this.placedStatusMap.put(key, placed);
-        firePropertyChange("placed", null, this.placedStatusMap);
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            int handle = index.getHandle(placementsHolderLocation, placementId);
+            index.putPlaced(handle, placed);
+            placedStatusMap.put(index.getKey(handle), placed);
+        }
+        fireStateChange("placed");
+    }
+
+    /**
+     * Stores the placed status of a Placement by its key, as used when migrating legacy jobs
+     * @param key - the unique id of the PlacementsHolderLocation and the id of the Placement
+     * @param placed - the status to be stored
+     */
+    void storePlacedStatus(String key, boolean placed) {
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            index.putPlaced(index.getHandle(key), placed);
+            placedStatusMap.put(key, placed);
+        }
+        fireStateChange("placed");
     }
 
     /**
@@ -286,12 +495,9 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * returns false
      */
     public boolean retrievePlacedStatus(PlacementsHolderLocation<?> placementsHolderLocation, String placementId) {
-        String key = placementsHolderLocation.getUniqueId() + PlacementsHolderLocation.ID_DELIMITTER + placementId;
-        if (placedStatusMap.containsKey(key)) {
-            return placedStatusMap.get(key);
-        } 
-        else {
-            return false;
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            return index.isPlaced(index.getHandle(placementsHolderLocation, placementId));
         }
     }
     
@@ -301,9 +507,15 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * @param placementId - the id of the Placement
      */
     public void removePlacedStatus(PlacementsHolderLocation<?> placementsHolderLocation, String placementId) {
-        String key = placementsHolderLocation.getUniqueId() + PlacementsHolderLocation.ID_DELIMITTER + placementId;
-        if (placedStatusMap.remove(key) != null) {
-            firePropertyChange("placed", null, placedStatusMap);
+        JobStateIndex index = getStateIndex();
+        boolean removed;
+        synchronized (index) {
+            int handle = index.getHandle(placementsHolderLocation, placementId);
+            removed = index.removePlaced(handle);
+            placedStatusMap.remove(index.getKey(handle));
+        }
+        if (removed) {
+            fireStateChange("placed");
         }
     }
     
@@ -311,8 +523,12 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * Removes all stored placed status 
      */
     public void removeAllPlacedStatus() {
-        placedStatusMap.clear();
-        firePropertyChange("placed", null, placedStatusMap);
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            index.clearPlaced();
+            placedStatusMap.clear();
+        }
+        fireStateChange("placed");
     }
     
     /**
@@ -324,12 +540,13 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * @param enabledStateMap - the enabled state to be stored
      */
     public void storeEnabledState(PlacementsHolderLocation<?> placementsHolderLocation, Placement placement, boolean enabled) {
-        String key = placementsHolderLocation.getUniqueId();
-        if (placement != null) {
-            key += PlacementsHolderLocation.ID_DELIMITTER + placement.getId();
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            int handle = index.getHandle(placementsHolderLocation, placement != null ? placement.getId() : null);
+            index.enabled.put(handle, enabled);
+            enabledStateMap.put(index.getKey(handle), enabled);
         }
-        this.enabledStateMap.put(key, enabled);
-        firePropertyChange("enabled", null, this.enabledStateMap);
+        fireStateChange("enabled");
     }
 
     /**
@@ -341,16 +558,14 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * current enabled state of the Placement or PlacementsHolderLocation
      */
     public boolean retrieveEnabledState(PlacementsHolderLocation<?> placementsHolderLocation, Placement placement) {
-        String key = placementsHolderLocation.getUniqueId();
-        if (placement != null) {
-            key += PlacementsHolderLocation.ID_DELIMITTER + placement.getId();
-        }
-        if (enabledStateMap.containsKey(key)) {
-            return enabledStateMap.get(key);
-        } 
-        else {
-            return placement != null ? placement.isEnabled() : placementsHolderLocation.isLocallyEnabled();
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            int handle = index.getHandle(placementsHolderLocation, placement != null ? placement.getId() : null);
+            if (index.enabled.isStored(handle)) {
+                return index.enabled.get(handle, true);
+            }
         }
+        return placement != null ? placement.isEnabled() : placementsHolderLocation.isLocallyEnabled();
     }
     
     /**
@@ -360,20 +575,25 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * PlacementsHolderLocation state is to be removed
      */
     public void removeEnabledState(PlacementsHolderLocation<?> placementsHolderLocation, Placement placement) {
-        String key = placementsHolderLocation.getUniqueId();
-        if (placement != null) {
-            key += PlacementsHolderLocation.ID_DELIMITTER + placement.getId();
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            int handle = index.getHandle(placementsHolderLocation, placement != null ? placement.getId() : null);
+            index.enabled.remove(handle);
+            enabledStateMap.remove(index.getKey(handle));
         }
-        enabledStateMap.remove(key);
-        firePropertyChange("enabled", null, enabledStateMap);
+        fireStateChange("enabled");
     }
     
     /**
      * Removes all stored enabled states
      */
     public void removeAllEnabledState() {
-        enabledStateMap.clear();
-        firePropertyChange("enabled", null, enabledStateMap);
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            index.enabled.clear();
+            enabledStateMap.clear();
+        }
+        fireStateChange("enabled");
     }
     
     /**
@@ -383,9 +603,13 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * @param enabledStateMap - the check fiducials state to be stored
      */
     public void storeCheckFiducialsState(PlacementsHolderLocation<?> placementsHolderLocation, boolean enabled) {
-        String key = placementsHolderLocation.getUniqueId();
-        this.checkFiducialsStateMap.put(key, enabled);
-        firePropertyChange("checkFiducials", null, this.checkFiducialsStateMap);
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            int handle = index.getHandle(placementsHolderLocation, null);
+            index.checkFiducials.put(handle, enabled);
+            checkFiducialsStateMap.put(index.getKey(handle), enabled);
+        }
+        fireStateChange("checkFiducials");
     }
 
     /**
@@ -395,13 +619,14 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * the current check fiducials state of the PlacementsHolderLocation
      */
     public boolean retrieveCheckFiducialsState(PlacementsHolderLocation<?> placementsHolderLocation) {
-        String key = placementsHolderLocation.getUniqueId();
-        if (checkFiducialsStateMap.containsKey(key)) {
-            return checkFiducialsStateMap.get(key);
-        } 
-        else {
-            return placementsHolderLocation.isCheckFiducials();
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            int handle = index.getHandle(placementsHolderLocation, null);
+            if (index.checkFiducials.isStored(handle)) {
+                return index.checkFiducials.get(handle, false);
+            }
         }
+        return placementsHolderLocation.isCheckFiducials();
     }
     
     /**
@@ -409,17 +634,25 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * @param placementsHolderLocation - the PlacementsHolderLocation whose state is to be removed
      */
     public void removeCheckFiducialsState(PlacementsHolderLocation<?> placementsHolderLocation) {
-        String key = placementsHolderLocation.getUniqueId();
-        checkFiducialsStateMap.remove(key);
-        firePropertyChange("checkFiducials", null, checkFiducialsStateMap);
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            int handle = index.getHandle(placementsHolderLocation, null);
+            index.checkFiducials.remove(handle);
+            checkFiducialsStateMap.remove(index.getKey(handle));
+        }
+        fireStateChange("checkFiducials");
     }
     
     /**
      * Removes all stored check fiducial states
      */
     public void removeAllCheckFiducialsState() {
-        checkFiducialsStateMap.clear();
-        firePropertyChange("checkFiducials", null, checkFiducialsStateMap);
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            index.checkFiducials.clear();
+            checkFiducialsStateMap.clear();
+        }
+        fireStateChange("checkFiducials");
     }
     
     /**
@@ -429,9 +662,18 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * @param errorHandling - the state to be stored
      */
     public void storeErrorHandlingState(PlacementsHolderLocation<?> placementsHolderLocation, Placement placement, Placement.ErrorHandling errorHandling) {
-        String key = placementsHolderLocation.getUniqueId() + PlacementsHolderLocation.ID_DELIMITTER + placement.getId();
-        this.errorHandlingStateMap.put(key, errorHandling);
-        firePropertyChange("errorHandling", null, this.errorHandlingStateMap);
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            int handle = index.getHandle(placementsHolderLocation, placement.getId());
+            index.putErrorHandling(handle, errorHandling);
+            if (errorHandling != null) {
+                errorHandlingStateMap.put(index.getKey(handle), errorHandling);
+            }
+            else {
+                errorHandlingStateMap.remove(index.getKey(handle));
+            }
+        }
+        fireStateChange("errorHandling");
     }
 
     /**
@@ -442,13 +684,12 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * the current error handling state of the Placement
      */
     public Placement.ErrorHandling retrieveErrorHandlingState(PlacementsHolderLocation<?> placementsHolderLocation, Placement placement) {
-        String key = placementsHolderLocation.getUniqueId() + PlacementsHolderLocation.ID_DELIMITTER + placement.getId();
-        if (errorHandlingStateMap.containsKey(key)) {
-            return errorHandlingStateMap.get(key);
-        } 
-        else {
-            return placement.getErrorHandling();
+        JobStateIndex index = getStateIndex();
+        Placement.ErrorHandling errorHandling;
+        synchronized (index) {
+            errorHandling = index.getErrorHandling(index.getHandle(placementsHolderLocation, placement.getId()));
         }
+        return errorHandling != null ? errorHandling : placement.getErrorHandling();
     }
     
     /**
@@ -457,17 +698,25 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
      * @param placement - the Placements whose stored state is to be removed
      */
     public void removeErrorHandlingState(PlacementsHolderLocation<?> placementsHolderLocation, Placement placement) {
-        String key = placementsHolderLocation.getUniqueId() + PlacementsHolderLocation.ID_DELIMITTER + placement.getId();
-        errorHandlingStateMap.remove(key);
-        firePropertyChange("errorHandling", null, this.errorHandlingStateMap);
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            int handle = index.getHandle(placementsHolderLocation, placement.getId());
+            index.putErrorHandling(handle, null);
+            errorHandlingStateMap.remove(index.getKey(handle));
+        }
+        fireStateChange("errorHandling");
     }
     
     /**
      * Removes all stored error handling states
      */
     public void removeAllErrorHandlingState() {
-        errorHandlingStateMap.clear();
-        firePropertyChange("errorHandling", null, errorHandlingStateMap);
+        JobStateIndex index = getStateIndex();
+        synchronized (index) {
+            index.errorHandling.clear();
+            errorHandlingStateMap.clear();
+        }
+        fireStateChange("errorHandling");
     }
     
     /**
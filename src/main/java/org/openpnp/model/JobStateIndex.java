@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2023 Jason von Nieda <jason@vonnieda.org>, Tony Luken <tonyluken62+openpnp@gmail.com>
+ *
+ * This file is part of OpenPnP.
+ *
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+package org.openpnp.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Indexes the states that a Job stores per PlacementsHolderLocation and Placement. The states are
+ * keyed by the unique id of the PlacementsHolderLocation, optionally followed by the id of the
+ * Placement. Each key is interned once into an integer handle, so storing and retrieving a state
+ * does not need to build key strings, and the states are held in bitsets indexed by the handles.
+ *
+ * The number of placed Placements is also counted for each unique id prefix, i.e. for each
+ * PlacementsHolderLocation subtree of the Job. The Job may also count its active Placements into
+ * the index, which then keeps the number of active and of active placed Placements per subtree up
+ * to date as the placed states change, until the active counts are cleared again.
+ *
+ * The index is not thread safe, callers must synchronize on it.
+ */
+class JobStateIndex {
+    /**
+     * A boolean state that is either stored for a handle, or not.
+     */
+    static class Flags {
+        private final BitSet stored = new BitSet();
+        private final BitSet values = new BitSet();
+
+        boolean isStored(int handle) {
+            return stored.get(handle);
+        }
+
+        /**
+         * @param handle
+         * @param defaultValue
+         * @return the stored state, or the defaultValue if none is stored.
+         */
+        boolean get(int handle, boolean defaultValue) {
+            return stored.get(handle) ? values.get(handle) : defaultValue;
+        }
+
+        void put(int handle, boolean value) {
+            stored.set(handle);
+            values.set(handle, value);
+        }
+
+        /**
+         * @param handle
+         * @return true if a state was stored.
+         */
+        boolean remove(int handle) {
+            boolean wasStored = stored.get(handle);
+            stored.clear(handle);
+            values.clear(handle);
+            return wasStored;
+        }
+
+        void clear() {
+            stored.clear();
+            values.clear();
+        }
+    }
+
+    /**
+     * The handles of a PlacementsHolderLocation, valid as long as its unique id is unchanged.
+     */
+    private static class HolderHandles {
+        final String uniqueId;
+        final int handle;
+        final Map<String, Integer> placementHandles = new HashMap<>();
+
+        HolderHandles(String uniqueId, int handle) {
+            this.uniqueId = uniqueId;
+            this.handle = handle;
+        }
+    }
+
+    private final Map<String, Integer> handles = new HashMap<>();
+    private final List<String> keys = new ArrayList<>();
+    private final List<int[]> prefixHandles = new ArrayList<>();
+    private final Map<PlacementsHolderLocation<?>, HolderHandles> holderHandles = new WeakHashMap<>();
+
+    private final Flags placed = new Flags();
+    private int[] placedCounts = new int[0];
+    private int totalPlaced;
+
+    private boolean activeCounted;
+    private final Set<PlacementsHolderLocation<?>> activeHolders =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+    private int[] activeRefs = new int[0];
+    private int[] activeCounts = new int[0];
+    private int[] placedActiveCounts = new int[0];
+    private int totalActive;
+    private int totalPlacedActive;
+
+    final Flags enabled = new Flags();
+    final Flags checkFiducials = new Flags();
+    final List<Placement.ErrorHandling> errorHandling = new ArrayList<>();
+
+    /**
+     * @param key
+     * @return the handle of the key, interned if it is new.
+     */
+    int getHandle(String key) {
+        Integer handle = handles.get(key);
+        if (handle == null) {
+            handle = keys.size();
+            handles.put(key, handle);
+            keys.add(key);
+            prefixHandles.add(null);
+        }
+        return handle;
+    }
+
+    /**
+     * @param placementsHolderLocation
+     * @param placementId - the id of the Placement or null for the PlacementsHolderLocation itself
+     * @return the handle of the PlacementsHolderLocation or Placement, interned if it is new.
+     */
+    int getHandle(PlacementsHolderLocation<?> placementsHolderLocation, String placementId) {
+        String uniqueId = placementsHolderLocation.getUniqueId();
+        HolderHandles holder = holderHandles.get(placementsHolderLocation);
+        // The unique id is cached by the PlacementsHolderLocation, so the same instance means unchanged.
+        if (holder == null || holder.uniqueId != uniqueId) {
+            holder = new HolderHandles(uniqueId, getHandle(uniqueId));
+            holderHandles.put(placementsHolderLocation, holder);
+        }
+        if (placementId == null) {
+            return holder.handle;
+        }
+        Integer handle = holder.placementHandles.get(placementId);
+        if (handle == null) {
+            handle = getHandle(uniqueId + PlacementsHolderLocation.ID_DELIMITTER + placementId);
+            holder.placementHandles.put(placementId, handle);
+        }
+        return handle;
+    }
+
+    /**
+     * @param handle
+     * @return the key of the handle.
+     */
+    String getKey(int handle) {
+        return keys.get(handle);
+    }
+
+    boolean isPlaced(int handle) {
+        return placed.get(handle, false);
+    }
+
+    boolean isPlacedStored(int handle) {
+        return placed.isStored(handle);
+    }
+
+    void putPlaced(int handle, boolean value) {
+        countPlaced(handle, (value ? 1 : 0) - (isPlaced(handle) ? 1 : 0));
+        placed.put(handle, value);
+    }
+
+    /**
+     * @param handle
+     * @return true if a placed status was stored.
+     */
+    boolean removePlaced(int handle) {
+        countPlaced(handle, isPlaced(handle) ? -1 : 0);
+        return placed.remove(handle);
+    }
+
+    void clearPlaced() {
+        placed.clear();
+        Arrays.fill(placedCounts, 0);
+        totalPlaced = 0;
+        Arrays.fill(placedActiveCounts, 0);
+        totalPlacedActive = 0;
+    }
+
+    /**
+     * @param placementsHolderLocation
+     * @return the number of Placements stored as placed within the PlacementsHolderLocation and
+     * its descendants, regardless of whether they are active.
+     */
+    int getPlacedCount(PlacementsHolderLocation<?> placementsHolderLocation) {
+        if (placementsHolderLocation.getUniqueId() == null) {
+            return totalPlaced;
+        }
+        return getPlacedCount(getHandle(placementsHolderLocation, null));
+    }
+
+    /**
+     * @param handle - the handle of a PlacementsHolderLocation
+     * @return the number of Placements stored as placed, whose keys are prefixed by the key of the handle.
+     */
+    int getPlacedCount(int handle) {
+        return handle < placedCounts.length ? placedCounts[handle] : 0;
+    }
+
+    private void countPlaced(int handle, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        totalPlaced += delta;
+        int activeDelta = delta*getActiveRefs(handle);
+        totalPlacedActive += activeDelta;
+        for (int prefix : getPrefixHandles(handle)) {
+            placedCounts = add(placedCounts, prefix, delta);
+            if (activeDelta != 0) {
+                placedActiveCounts = add(placedActiveCounts, prefix, activeDelta);
+            }
+        }
+    }
+
+    /**
+     * @return true if the active Placements have been counted since the active counts were last
+     * cleared.
+     */
+    boolean isActiveCounted() {
+        return activeCounted;
+    }
+
+    /**
+     * Marks the active Placements as counted, once all the PlacementsHolderLocations of the Job
+     * have been added.
+     */
+    void setActiveCounted() {
+        activeCounted = true;
+    }
+
+    /**
+     * @param placementsHolderLocation
+     * @return true if the active Placements of the PlacementsHolderLocation have been counted.
+     */
+    boolean isActiveCounted(PlacementsHolderLocation<?> placementsHolderLocation) {
+        return activeCounted && activeHolders.contains(placementsHolderLocation);
+    }
+
+    /**
+     * Adds a PlacementsHolderLocation to the counted ones, its active Placements are added by
+     * putActive().
+     * @param placementsHolderLocation
+     */
+    void putActiveHolder(PlacementsHolderLocation<?> placementsHolderLocation) {
+        activeHolders.add(placementsHolderLocation);
+    }
+
+    /**
+     * Counts an active Placement.
+     * @param handle - the handle of the Placement
+     */
+    void putActive(int handle) {
+        int placedDelta = isPlaced(handle) ? 1 : 0;
+        activeRefs = add(activeRefs, handle, 1);
+        totalActive++;
+        totalPlacedActive += placedDelta;
+        for (int prefix : getPrefixHandles(handle)) {
+            activeCounts = add(activeCounts, prefix, 1);
+            if (placedDelta != 0) {
+                placedActiveCounts = add(placedActiveCounts, prefix, placedDelta);
+            }
+        }
+    }
+
+    void clearActive() {
+        activeCounted = false;
+        activeHolders.clear();
+        Arrays.fill(activeRefs, 0);
+        Arrays.fill(activeCounts, 0);
+        Arrays.fill(placedActiveCounts, 0);
+        totalActive = 0;
+        totalPlacedActive = 0;
+    }
+
+    /**
+     * @param handle - the handle of a PlacementsHolderLocation, or -1 for the whole Job
+     * @return the number of active Placements within the PlacementsHolderLocation and its
+     * descendants.
+     */
+    int getActiveCount(int handle) {
+        if (handle < 0) {
+            return totalActive;
+        }
+        return handle < activeCounts.length ? activeCounts[handle] : 0;
+    }
+
+    /**
+     * @param handle - the handle of a PlacementsHolderLocation, or -1 for the whole Job
+     * @return the number of active Placements within the PlacementsHolderLocation and its
+     * descendants, that are stored as placed.
+     */
+    int getPlacedActiveCount(int handle) {
+        if (handle < 0) {
+            return totalPlacedActive;
+        }
+        return handle < placedActiveCounts.length ? placedActiveCounts[handle] : 0;
+    }
+
+    /**
+     * @param handle
+     * @return the number of times the Placement of the handle was counted as active, more than
+     * once if Placements share their id.
+     */
+    private int getActiveRefs(int handle) {
+        return handle < activeRefs.length ? activeRefs[handle] : 0;
+    }
+
+    private static int[] add(int[] counts, int index, int delta) {
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length*2));
+        }
+        counts[index] += delta;
+        return counts;
+    }
+
+    /**
+     * @param handle
+     * @return the handles of the unique id prefixes of the key, i.e. of the PlacementsHolderLocations
+     * containing it.
+     */
+    private int[] getPrefixHandles(int handle) {
+        int[] prefixes = prefixHandles.get(handle);
+        if (prefixes == null) {
+            String key = keys.get(handle);
+            List<Integer> list = new ArrayList<>();
+            int index = key.indexOf(PlacementsHolderLocation.ID_DELIMITTER);
+            while (index >= 0) {
+                list.add(getHandle(key.substring(0, index)));
+                index = key.indexOf(PlacementsHolderLocation.ID_DELIMITTER, index + 1);
+            }
+            prefixes = list.stream().mapToInt(Integer::intValue).toArray();
+            prefixHandles.set(handle, prefixes);
+        }
+        return prefixes;
+    }
+
+    /**
+     * @param handle
+     * @return the stored error handling state, or null if none is stored.
+     */
+    Placement.ErrorHandling getErrorHandling(int handle) {
+        return handle < errorHandling.size() ? errorHandling.get(handle) : null;
+    }
+
+    void putErrorHandling(int handle, Placement.ErrorHandling value) {
+        while (errorHandling.size() <= handle) {
+            errorHandling.add(null);
+        }
+        errorHandling.set(handle, value);
+    }
+}
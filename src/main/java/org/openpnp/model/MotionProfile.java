@@ -26,8 +26,6 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
-import java.util.function.BiFunction;
-import java.util.function.Function;
 
 import org.openpnp.spi.Driver.MotionControlType;
 import org.openpnp.util.NanosecondTime;
@@ -340,7 +338,16 @@ public class MotionProfile {
         return time;
     }
 
-    protected double getMomentary(double ts, double f0, double f7, BiFunction<Integer, Double, Double> f) {
+    /**
+     * Get the momentary value of the given derivative order at time ts.
+     * 
+     * @param ts
+     * @param f0 Value before the profile. 
+     * @param f7 Value after the profile.
+     * @param order 0 location, 1 velocity, 2 acceleration, 3 jerk.
+     * @return
+     */
+    protected double getMomentary(double ts, double f0, double f7, int order) {
         if (ts <= t[0]) {
             return f0;
         }
@@ -350,7 +357,19 @@ public class MotionProfile {
         }
         for (int i = 1; i <= segments; i++) {
             if (ts < t[i]) {
-                return f.apply(i, ts);
+                switch (order) {
+                    case 0:
+                        // s0 + V0*t + 1/2*a0*t^2 + 1/6*j*t^3
+                        return s[i-1] + v[i-1]*ts + 1./2*a[i-1]*Math.pow(ts, 2) + 1./6*j[i-1]*Math.pow(ts, 3);
+                    case 1:
+                        // V0 + a0*t + 1/2*j*t^2
+                        return v[i-1] + a[i-1]*ts + 1./2*j[i-1]*Math.pow(ts, 2);
+                    case 2:
+                        // a0 + j*t
+                        return a[i-1] + j[i-1]*ts;
+                    default:
+                        return j[i-1];
+                }
             }
             ts -= t[i];
         }
@@ -358,25 +377,19 @@ public class MotionProfile {
     }
 
     public double getMomentaryLocation(double time) { 
-        return getMomentary(time, s[0], s[segments], 
-                // s0 + V0*t + 1/2*a0*t^2 + 1/6*j*t^3
-                (i, ts) -> (s[i-1] + v[i-1]*ts + 1./2*a[i-1]*Math.pow(ts, 2) + 1./6*j[i-1]*Math.pow(ts, 3)));
+        return getMomentary(time, s[0], s[segments], 0);
     }
 
     public double getMomentaryVelocity(double time) { 
-        return getMomentary(time, v[0], v[segments], 
-                // V0 + a0*t + 1/2*j*t^2
-                (i, ts) -> (v[i-1] + a[i-1]*ts + 1./2*j[i-1]*Math.pow(ts, 2)));
+        return getMomentary(time, v[0], v[segments], 1);
     }
 
     public double getMomentaryAcceleration(double time) { 
-        return getMomentary(time, a[0], isConstantAcceleration() ? 0 : a[segments], 
-                // a0 + j*t
-                (i, ts) -> (a[i-1] + j[i-1]*ts));
+        return getMomentary(time, a[0], isConstantAcceleration() ? 0 : a[segments], 2);
     }
 
     public double getMomentaryJerk(double time) { 
-        return getMomentary(time, j[0], 0, (i, ts) -> (j[i-1]));
+        return getMomentary(time, j[0], 0, 3);
     }
 
     public enum ErrorState {
@@ -564,17 +577,37 @@ public class MotionProfile {
         return str.toString();
     }
 
+    /**
+     * Reusable scratch space of the solver. Solving many profiles, such as all the axes of a path, with the same
+     * workspace avoids allocating the solver arrays for each of them.
+     * A workspace must only be used by one thread at a time.
+     */
+    public static class SolverWorkspace {
+        // Solver region borders from -vMax to +vMax, split by effective entry/exit velocities and zero.
+        final double [] borders = new double [7];
+        final double [] borderSResult = new double [7];
+        final double [] borderTResult = new double [7];
+        final int [] regionBorder0 = new int [6];
+        final int [] regionBorder1 = new int [6];
+    }
+
     public void solve() {
+        solve(new SolverWorkspace());
+    }
+    public void solve(SolverWorkspace workspace) {
         // scale down tolerances for tiny moves
-        double magnitude = Math.max(eps,  Math.min(1.0, 
+        double magnitude = Math.max(eps,  Math.min(1.0,
                 0.01*(Math.abs(s[0]-s[segments])
                         +Math.abs(v[0])+Math.abs(v[segments])
                         +Math.abs(a[0])+Math.abs(a[segments]))));
-        solve(iterations, vtol*Math.sqrt(magnitude), ttol*Math.sqrt(magnitude));
+        solve(workspace, iterations, vtol*Math.sqrt(magnitude), ttol*Math.sqrt(magnitude));
     }
     public void solve(final int iterations, final double vtol, final double ttol) {
+        solve(new SolverWorkspace(), iterations, vtol, ttol);
+    }
+    public void solve(SolverWorkspace workspace, final int iterations, final double vtol, final double ttol) {
         double tStart = NanosecondTime.getRuntimeSeconds();
-        solveForVelocity(iterations, vtol, ttol);
+        solveForVelocity(workspace, iterations, vtol, ttol);
         // Result is now stored in the profile i.e. you can get v[4], a[2], a[6] to get the (signed) solution.
         solvingTime = NanosecondTime.getRuntimeSeconds() - tStart;
         setOption(ProfileOption.Solved);
@@ -589,12 +622,17 @@ public class MotionProfile {
         return jMax == 0 || Double.isInfinite(jMax);
     }
     public boolean solveForVelocity(final int iterations, final double vtol, final double ttol) {
+        return solveForVelocity(new SolverWorkspace(), iterations, vtol, ttol);
+    }
+    public boolean solveForVelocity(SolverWorkspace workspace, final int iterations, final double vtol, final double ttol) {
         // Check for a null move. As we always handle all axes of the machine, we want to be fast with those.
         if (solveIfNullMove()) {
             return true;
         }
 
-        trace("\n### solving "+this);
+        if (traceEnabled) {
+            trace("\n### solving "+this);
+        }
 
         // Calculate the effective entry/exit velocity after jerk to acceleration 0.
         double vEffEntry = getEffectiveEntryVelocity(jMax);
@@ -623,22 +661,30 @@ public class MotionProfile {
 
         // Solver regions from -vMax to +vMax are split by effective entry/exit velocities and zero. 
         // Note, we do not allow solutions beyond vMax, even if the effective entry/exit velocities are beyond.
-        double [] borders = new double [] {
-                -vMax, -nearZero, 0, nearZero, vMax, Math.max(-vMax, Math.min(vMax, vEffEntry)), Math.max(-vMax, Math.min(vMax, vEffExit)) 
-        };
+        final double [] borders = workspace.borders;
+        borders[0] = -vMax;
+        borders[1] = -nearZero;
+        borders[2] = 0;
+        borders[3] = nearZero;
+        borders[4] = vMax;
+        borders[5] = Math.max(-vMax, Math.min(vMax, vEffEntry));
+        borders[6] = Math.max(-vMax, Math.min(vMax, vEffExit));
         Arrays.sort(borders);
-        int [][] regions = new int[borders.length-1][];
+        final int [] regionBorder0 = workspace.regionBorder0;
+        final int [] regionBorder1 = workspace.regionBorder1;
         int regionCount = 0;
-        double borderSResult[] = new double [borders.length];
-        double borderTResult[] = new double [borders.length];
+        final double borderSResult[] = workspace.borderSResult;
+        final double borderTResult[] = workspace.borderTResult;
         // Mark these results as missing.
         Arrays.fill(borderSResult, Double.NaN);
+        Arrays.fill(borderTResult, 0);
         int i0 = 0;
         int iVMax = -1;
         for (int i = 1; i < borders.length; i++) {
             if (borders[i0] < borders[i]) {
                 // Region not empty, add it.
-                regions[regionCount] = new int [] {i0, i};
+                regionBorder0[regionCount] = i0;
+                regionBorder1[regionCount] = i;
                 regionCount++;
                 i0 = i;
                 if (borders[i] == v[4]) {
@@ -672,7 +718,9 @@ public class MotionProfile {
                 if (aMaxEntry == aMaxExit) {
                     double sd = signum*(s[segments]-s[0]);
                     vInitialGuess = signum*Math.sqrt(aMaxEntry*sd + 1./2*Math.pow(v[0], 2) + v[0]*v[7] - 1./2*Math.pow(v[7], 2));
-                    trace("Analytical solution with constant acceleration profile = "+vInitialGuess);
+                    if (traceEnabled) {
+                        trace("Analytical solution with constant acceleration profile = "+vInitialGuess);
+                    }
                 }
             }
             else if (!hasOption(ProfileOption.SimplifiedSCurve)){
@@ -701,7 +749,9 @@ public class MotionProfile {
                             - 2*Math.sqrt(3*Math.pow(a[1], 4) + 18*a[1]*Math.pow(j[0], 2)*s3 + 9*Math.pow(j[0], 2)*Math.pow(v[1], 2)))/j[0];
                     double v3_2 = -1./6*(3*Math.pow(a[1], 2) 
                             + 2*Math.sqrt(3*Math.pow(a[1], 4) + 18*a[1]*Math.pow(j[0], 2)*s3 + 9*Math.pow(j[0], 2)*Math.pow(v[1], 2)))/j[0];
-                    trace("Analytical solution with constant acceleration segment (1) = "+vInitialGuess+" (2) = "+v3_2);
+                    if (traceEnabled) {
+                        trace("Analytical solution with constant acceleration segment (1) = "+vInitialGuess+" (2) = "+v3_2);
+                    }
                 }
                 else if (t[5] > (-t[4]*0.25)) { 
                     // Deceleration segment is long enough.
@@ -711,13 +761,17 @@ public class MotionProfile {
                             - 2*Math.sqrt(3*Math.pow(a[6], 4) - 18*a[6]*Math.pow(j[6], 2)*s4 + 9*Math.pow(j[6], 2)*Math.pow(v[6], 2)))/j[6]);
                     double v3_2 = (-1./6*(3*Math.pow(a[6], 2) 
                             + 2*Math.sqrt(3*Math.pow(a[6], 4) - 18*a[6]*Math.pow(j[6], 2)*s4 + 9*Math.pow(j[6], 2)*Math.pow(v[6], 2)))/j[6]);
-                    trace("Analytical solution with constant deceleration segment (1) = "+vInitialGuess+" (2) = "+v3_2);
+                    if (traceEnabled) {
+                        trace("Analytical solution with constant deceleration segment (1) = "+vInitialGuess+" (2) = "+v3_2);
+                    }
                 }
             }
             if (Double.isFinite(vInitialGuess) && Math.abs(vInitialGuess) > 0 && Math.abs(vInitialGuess) <= vMax) {
                 computeProfile(vInitialGuess, vEffEntry, vEffExit, tMin);
                 if (t[4] >= -ttol && t[4] < vttol) {
-                    trace("taken "+this);
+                    if (traceEnabled) {
+                        trace("taken "+this);
+                    }
                     return true;
                 }
             }
@@ -745,7 +799,9 @@ public class MotionProfile {
                 else if (sResult >= -stol && (tMin == 0 || tResult >= tMin-ttol) && tResult < bestTime) {
                     bestVelocity = vPeak;
                     bestTime = tResult;
-                    trace("border case v="+vPeak+", s="+sResult+", t="+tResult+" "+this);
+                    if (traceEnabled) {
+                        trace("border case v="+vPeak+", s="+sResult+", t="+tResult+" "+this);
+                    }
                 }
             }
         }
@@ -763,9 +819,8 @@ public class MotionProfile {
             regionStep = 1;
         }
         for (int regionIndex = regionStart; regionIndex != regionEnd; regionIndex += regionStep) {
-            int [] region = regions[regionIndex];
-            final int border0 =  region[0];
-            final int border1 =  region[1];
+            final int border0 =  regionBorder0[regionIndex];
+            final int border1 =  regionBorder1[regionIndex];
             double vPeak0 = borders[border0];
             double vPeak1 = borders[border1];
             double sign = Math.signum(vPeak0+vPeak1);
@@ -777,7 +832,9 @@ public class MotionProfile {
 
             if (!(sValid0 || sValid1)) {
                 // None valid -> skip this region.
-                trace("region invalid in s "+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1);
+                if (traceEnabled) {
+                    trace("region invalid in s "+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1);
+                }
                 continue;
             }
 
@@ -794,12 +851,16 @@ public class MotionProfile {
             boolean tValid1 = (tMin == 0 || tResult1 >= tMin-ttol);
             if (!(tValid0 || tValid1)) {
                 // None valid -> skip this region.
-                trace("region invalid in t "+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1+", t="+tResult0+" .. "+tResult1);
+                if (traceEnabled) {
+                    trace("region invalid in t "+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1+", t="+tResult0+" .. "+tResult1);
+                }
                 continue;
             }
 
             if (Math.min(tResult0,  tResult1) >= bestTime) {
-                trace("region eclipsed by best t "+bestTime+" "+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1+", t="+tResult0+" .. "+tResult1);
+                if (traceEnabled) {
+                    trace("region eclipsed by best t "+bestTime+" "+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1+", t="+tResult0+" .. "+tResult1);
+                }
                 continue;
             }
 
@@ -843,12 +904,16 @@ public class MotionProfile {
                     tResult = time;
                     if (sResult < 0) {
                         // Great, we found it.
-                        trace("    found invalid mid area "+vSearch+" s "+sResult+" t "+tResult);
+                        if (traceEnabled) {
+                            trace("    found invalid mid area "+vSearch+" s "+sResult+" t "+tResult);
+                        }
                         break;
                     }
                     if (sResult > sSecant) {
                         // Raising result -> overshoot, this means there is no invalid section. 
-                        trace("    overshot, no invalid mid area "+vSearch+" s "+sResult+" t "+tResult);
+                        if (traceEnabled) {
+                            trace("    overshot, no invalid mid area "+vSearch+" s "+sResult+" t "+tResult);
+                        }
                         break;
                     }
                     // Apply secant method. 
@@ -856,7 +921,9 @@ public class MotionProfile {
                     if (Math.abs(gradient) < vttol) {
                         // Stuck in a local minimum. This must be a "tangent" situation, otherwise we should see overshoot.
                         // We simply don't support tangent cases.
-                        trace("    stuck local minimum, no invalid mid area "+vSearch+" s "+sResult+" t "+tResult);
+                        if (traceEnabled) {
+                            trace("    stuck local minimum, no invalid mid area "+vSearch+" s "+sResult+" t "+tResult);
+                        }
                         break;
                     }
                     double delta = -sResult/gradient;
@@ -865,7 +932,9 @@ public class MotionProfile {
                     sSecant = sResult;
                     // Assign new value.
                     vSearch = Math.max(vSearch0, Math.min(vSearch1,  vSearch+delta));
-                    trace("    search for invalid mid area "+vSearch+" gradient "+gradient+" delta "+delta+" s "+sResult+" t "+tResult);
+                    if (traceEnabled) {
+                        trace("    search for invalid mid area "+vSearch+" gradient "+gradient+" delta "+delta+" s "+sResult+" t "+tResult);
+                    }
                 }
                 while (true);
                 if (sResult < 0) {
@@ -910,7 +979,9 @@ public class MotionProfile {
                 }
             }
         }
-        trace("best velocity "+bestVelocity+" best time "+bestTime+" time-tMin "+(bestTime-tMin));
+        if (traceEnabled) {
+            trace("best velocity "+bestVelocity+" best time "+bestTime+" time-tMin "+(bestTime-tMin));
+        }
         if (bestVelocity != v[4]) {
             // re-establish best solution
             trace("  re-establish");
@@ -920,10 +991,14 @@ public class MotionProfile {
             if (Math.abs(time/tMin - 1) < 0.001) {
                 // The solver may have slightly approximated. Stretch the profile into the exact minimum time. 
                 if (retimeProfile()) {
-                    trace("    retimed tMin "+tMin+" time "+time);
+                    if (traceEnabled) {
+                        trace("    retimed tMin "+tMin+" time "+time);
+                    }
                 }
                 else {
-                    trace("    not retimed tMin "+tMin+" time "+time);
+                    if (traceEnabled) {
+                        trace("    not retimed tMin "+tMin+" time "+time);
+                    }
                 }
             }
             else {
@@ -991,13 +1066,19 @@ public class MotionProfile {
             double tMin, double bestTime,
             final int iterations, final double stol, final double vtol, final double ttol) {
 
-        trace("=== solveRegion("+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1+", t="+tResult0+" .. "+tResult1+")");
+        if (traceEnabled) {
+            trace("=== solveRegion("+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1+", t="+tResult0+" .. "+tResult1+")");
+        }
         if (Math.min(tResult0,  tResult1) >= bestTime) {
-            trace("region eclipsed by best t "+bestTime);
+            if (traceEnabled) {
+                trace("region eclipsed by best t "+bestTime);
+            }
             return false;
         }
         if (bestTime == tMin) {
-            trace("region eclipsed by best t == min t "+bestTime);
+            if (traceEnabled) {
+                trace("region eclipsed by best t == min t "+bestTime);
+            }
             return false;
         }
 
@@ -1037,7 +1118,9 @@ public class MotionProfile {
 
             double sResult = sign*(s[4] - s[3]);
             double tResult = time;
-            trace("vPeak = "+vPeak+" s="+sResult+" t-tMin="+(time-tMin)+" "+this);
+            if (traceEnabled) {
+                trace("vPeak = "+vPeak+" s="+sResult+" t-tMin="+(time-tMin)+" "+this);
+            }
             double magnitude = Math.max(eps, Math.min(maxMagnitude, 0.0001*(Math.abs(s[3]-s[0])+Math.abs(s[segments]-s[4]))));
             if (Math.abs(vPeak - vSecant) < magnitude*vtol) {
                 converging++;
@@ -1064,7 +1147,9 @@ public class MotionProfile {
                     // Restore the previously valid solution after converging (turns out there was not a better one).
                     computeProfile(vValid, vEffEntry, vEffExit, tMin);
                     // That's a solution
-                    trace("taken previous valid solution after converging "+vValid);
+                    if (traceEnabled) {
+                        trace("taken previous valid solution after converging "+vValid);
+                    }
                     return true;
                 }
                 else {
@@ -1138,14 +1223,38 @@ public class MotionProfile {
     }
 
     public boolean assertSolved() {
+        return assertSolved(new SolverWorkspace());
+    }
+
+    public boolean assertSolved(SolverWorkspace workspace) {
         if (!hasOption(ProfileOption.Solved)) {
-            solve();
+            solve(workspace);
             return true;
         }
         return false;
     }
 
+    /**
+     * Solves all the profiles that are not yet solved, in one batch using the same solver workspace.
+     * 
+     * @param profiles
+     * @param workspace
+     * @return true if any profile was solved.
+     */
+    public static boolean solveProfiles(MotionProfile [] profiles, SolverWorkspace workspace) {
+        boolean solved = false;
+        for (MotionProfile profile : profiles) {
+            solved = profile.assertSolved(workspace) 
+                    || solved;
+        }
+        return solved;
+    }
+
     public static void coordinateProfiles(MotionProfile [] profiles) {
+        coordinateProfiles(profiles, new SolverWorkspace());
+    }
+
+    public static void coordinateProfiles(MotionProfile [] profiles, SolverWorkspace workspace) {
         // Find the lead profile i.e. the one axis moving the most.
         MotionProfile leadProfile = null;
         double bestDist = Double.NEGATIVE_INFINITY;
@@ -1157,7 +1266,7 @@ public class MotionProfile {
             }
         }
         if (leadProfile != null) {
-            leadProfile.assertSolved();
+            leadProfile.assertSolved(workspace);
             coordinateProfilesToLead(profiles, leadProfile);
         }
     }
@@ -1207,15 +1316,21 @@ public class MotionProfile {
     }
 
     public static void synchronizeProfiles(MotionProfile [] profiles) {
+        synchronizeProfiles(profiles, new SolverWorkspace());
+    }
+
+    public static void synchronizeProfiles(MotionProfile [] profiles, SolverWorkspace workspace) {
         // Find the maximum time.
         double maxTime = 0;
         MotionProfile leadProfile = null;
         for (MotionProfile profile : profiles) {
-            profile.assertSolved();
+            profile.assertSolved(workspace);
             if (profile.time > maxTime) {
                 maxTime = profile.time;
                 leadProfile = profile;
-                trace("    max time "+maxTime+" from "+profile);
+                if (traceEnabled) {
+                    trace("    max time "+maxTime+" from "+profile);
+                }
             }
         }
         // Re-time the others.
@@ -1223,7 +1338,7 @@ public class MotionProfile {
         do {
             restart = false;
             for (MotionProfile profile : profiles) {
-                profile.assertSolved();
+                profile.assertSolved(workspace);
                 profile.tMin = maxTime;
                 if (profile.time != maxTime) {
                     if (profile.hasOption(ProfileOption.SynchronizeStraighten) 
@@ -1258,7 +1373,7 @@ public class MotionProfile {
                                     if (!profile.isConstantAcceleration() && !leadProfile.isConstantAcceleration()) {
                                         coordinated.setJerkMax(leadProfile.getJerkMax()*factor);
                                     }
-                                    coordinated.solve();
+                                    coordinated.solve(workspace);
                                     if (coordinated.time <= maxTime && coordinated.checkValidity() == null) {
                                         // No errors, take it.
                                         profile.copyProfileSolution(coordinated);
@@ -1298,7 +1413,7 @@ public class MotionProfile {
                                 }
                             }
                             if (coordinated != null) {
-                                coordinated.solve();
+                                coordinated.solve(workspace);
                                 if (coordinated.time <= maxTime && coordinated.checkValidity() == null) {
                                     // No errors, take it.
                                     profile.copyProfileSolution(coordinated);
@@ -1335,12 +1450,14 @@ public class MotionProfile {
                     }
 
                     // Arrived here: none of the simple solutions applicable. Re-solve with tMin.
-                    profile.solve();
+                    profile.solve(workspace);
                     if (profile.time > maxTime) {
                         // Sometimes the solution was at/near entry/exit speeds and in these cases, it is possible
                         // that the new tMin is impossible, i.e. more time is needed. 
                         // --> restart the process.
-                        trace("    need to restart synchronize, maxTime "+maxTime+" breached with "+profile.time+" on "+profile);
+                        if (traceEnabled) {
+                            trace("    need to restart synchronize, maxTime "+maxTime+" breached with "+profile.time+" on "+profile);
+                        }
                         maxTime = profile.time;
                         restart = true;
                         break;
@@ -2083,8 +2200,8 @@ solve(eq, t)            # Solve for t
             }
         }
         for (int i = 1; i <= (halfProfile ? 3 : segments); i++) {
-            Double ts = getSegmentCrossingTime(sCross, tSeg, i, true);
-            if (ts != null) {
+            double ts = getSegmentCrossingTime(sCross, tSeg, i, true);
+            if (!Double.isNaN(ts)) {
                 return ts;
             }
             tSeg += t[i];
@@ -2106,15 +2223,18 @@ solve(eq, t)            # Solve for t
         }
         for (int i = segments; i >= (halfProfile ? 4 : 1); i--) {
             tSeg -= t[i];
-            Double ts = getSegmentCrossingTime(sCross, tSeg, i, false);
-            if (ts != null) {
+            double ts = getSegmentCrossingTime(sCross, tSeg, i, false);
+            if (!Double.isNaN(ts)) {
                 return ts;
             }
         }
         return null;
     }
 
-    protected Double getSegmentCrossingTime(double sCross, double tSeg, int i, boolean forward) {
+    /**
+     * @return The crossing time in segment i, or NaN if the segment does not cross sCross.
+     */
+    protected double getSegmentCrossingTime(double sCross, double tSeg, int i, boolean forward) {
         double ti = t[i];
         double j = this.j[i-1];
 
@@ -2165,8 +2285,6 @@ solve(eq, t)            # Solve for t
             double ti1 = Math.max(ti0, Math.min(ti, -(a0 + sTerm)/j));
             double ti2 = Math.max(ti0, Math.min(ti, -(a0 - sTerm)/j));
             // Now treat each interval and solve for roots numerically. 
-            Function<Double, Double> f = (t) -> (-ds + v0*t + 1./2*a0*Math.pow(t, 2) + 1./6*j*Math.pow(t, 3)); 
-            Function<Double, Double> g = (t) -> (v0 + a0*t + 1./2*j*Math.pow(t, 2));
             if (ti1 > ti2) {
                 // swap
                 double tmp = ti2;
@@ -2174,13 +2292,24 @@ solve(eq, t)            # Solve for t
                 ti1 = tmp;
             }
             // We want the first (forward==true) or last one in time.
-            double[][]intervals = (forward ? 
-                    new double[][] {{ti0, ti1}, {ti1, ti2}, {ti2, ti}}
-            :       new double[][] {{ti2, ti}, {ti1, ti2}, {ti0, ti1}});
-            for (double [] interval : intervals) {
-                if (interval[0] < interval[1]) {
-                    Double ts = newtonSolve(interval[0], interval[1], f, g, true);
-                    if (ts != null) {
+            for (int interval = 0; interval < 3; interval++) {
+                double x0, x1;
+                switch (forward ? interval : 2 - interval) {
+                    case 0:
+                        x0 = ti0;
+                        x1 = ti1;
+                        break;
+                    case 1:
+                        x0 = ti1;
+                        x1 = ti2;
+                        break;
+                    default:
+                        x0 = ti2;
+                        x1 = ti;
+                }
+                if (x0 < x1) {
+                    double ts = newtonSolve(x0, x1, ds, v0, a0, j, true);
+                    if (!Double.isNaN(ts)) {
                         return ts + tSeg;
                     }
                 }
@@ -2224,22 +2353,27 @@ solve(eq, t)            # Solve for t
                 return ts + tSeg;
             }
         }
-        return null;
+        return Double.NaN;
     }
 
-    protected Double newtonSolve(double x0, double x1, Function<Double, Double> f,
-            Function<Double, Double> g, boolean zeroes) {
+    /**
+     * Solves the displacement polynomial s0 + v0*t + 1/2*a0*t^2 + 1/6*j*t^3 == s0 + ds for t in the interval x0 .. x1,
+     * using Newton's method.
+     * 
+     * @return The solution or NaN if none was found. 
+     */
+    protected double newtonSolve(double x0, double x1, double ds, double v0, double a0, double j, boolean zeroes) {
         // Start value.
         double x = (x0 + x1)*0.5;
         int escapeNeg = 0;
         int escapePos = 0;
         for(int iter = 0; iter < iterations; iter++) {
-            double y = f.apply(x);
-            double dydt = g.apply(x);
+            double y = -ds + v0*x + 1./2*a0*Math.pow(x, 2) + 1./6*j*Math.pow(x, 3);
+            double dydt = v0 + a0*x + 1./2*j*Math.pow(x, 2);
 
             if (Math.abs(dydt) < ttol) {
                 // Stop if the denominator is too small
-                return null;
+                return Double.NaN;
             }
             // Do Newton's computation. Limit to interval.
             double xn = Math.max(x0, Math.min(x1, x - y/dydt));  
@@ -2247,14 +2381,14 @@ solve(eq, t)            # Solve for t
             if (xn <= x0) {
                 if (++escapeNeg > 1) {
                     // Multiple times outside, escaped. 
-                    return null;
+                    return Double.NaN;
                 }
                 escapePos = 0;
             }
             else if (xn >= x1) {
                 if (++escapePos > 1) {
                     // Multiple times outside, escaped. 
-                    return null;
+                    return Double.NaN;
                 }
                 escapeNeg = 0;
             }
@@ -215,17 +215,20 @@ public abstract class PlacementsHolder<T extends PlacementsHolder<T>>
     public void setPlacement(int index, Placement placement) {
         if (placement != null) {
             placement = new Placement(placement);
+            Placement oldPlacement = null;
             if (index >= placements.size()) {
                 placements.add(placement);
             }
             else {
-                Placement oldPlacement = placements.get(index);
-                oldPlacement.removePropertyChangeListener(this);
-                oldPlacement.dispose();
-                placements.set(index, placement);
+                oldPlacement = placements.set(index, placement);
             }
             fireIndexedPropertyChange("placement", index, null, placement);
             placement.addPropertyChangeListener(this);
+            if (oldPlacement != null) {
+                // Disposed after the event, like a removed placement, so its listeners can let go of it
+                oldPlacement.removePropertyChangeListener(this);
+                oldPlacement.dispose();
+            }
         }
         else {
             if (index >= 0 && index < placements.size()) {
@@ -245,7 +248,7 @@ public abstract class PlacementsHolder<T extends PlacementsHolder<T>>
     public void addPlacement(Placement placement) {
         if (placement != null) {
             placements.add(placement);
-            fireIndexedPropertyChange("placement", placements.indexOf(placement), null, placement);
+            fireIndexedPropertyChange("placement", placements.size() - 1, null, placement);
             placement.addPropertyChangeListener(this);
         }
         
@@ -57,6 +57,7 @@ public abstract class PlacementsHolderLocation<T extends PlacementsHolderLocatio
      */
     protected AffineTransform localToParentTransform;
     protected PlacementsTransformStatus placementsTransformStatus = PlacementsTransformStatus.NotSet;
+    private volatile UniqueId uniqueId;
     
     @Commit
     protected void commit() {
@@ -443,11 +444,29 @@ public abstract class PlacementsHolderLocation<T extends PlacementsHolderLocatio
      * of its relatives
      */
     public String getUniqueId() {
-        if (parent != null && parent.getUniqueId() != null) {
-            return parent.getUniqueId() + ID_DELIMITTER + getId();
+        String parentUniqueId = parent != null ? parent.getUniqueId() : null;
+        String id = getId();
+        UniqueId uniqueId = this.uniqueId;
+        // The id instances are compared, so the same unique id instance is returned while unchanged.
+        if (uniqueId == null || uniqueId.id != id || uniqueId.parentUniqueId != parentUniqueId) {
+            uniqueId = new UniqueId(id, parentUniqueId);
+            this.uniqueId = uniqueId;
         }
-        else {
-            return getId();
+        return uniqueId.uniqueId;
+    }
+
+    /**
+     * The unique id, cached together with the ids it was built from.
+     */
+    private static class UniqueId {
+        final String id;
+        final String parentUniqueId;
+        final String uniqueId;
+
+        UniqueId(String id, String parentUniqueId) {
+            this.id = id;
+            this.parentUniqueId = parentUniqueId;
+            this.uniqueId = parentUniqueId != null ? parentUniqueId + ID_DELIMITTER + id : id;
         }
     }
 }
@@ -23,11 +23,15 @@ package org.openpnp.model;
 import org.pmw.tinylog.Logger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opencv.core.RotatedRect;
 import org.openpnp.gui.support.LengthConverter;
@@ -122,6 +126,70 @@ public class VisionCompositing extends AbstractModelObject{
 
     private static final double eps = 1e-5;
 
+    /**
+     * Computed compositing solutions, keyed by the ids of the package, vision settings, nozzle tip and camera, plus 
+     * a fingerprint of their values that the solution depends on, and the configuration version stamp. The key 
+     * holds no references to the configuration objects, so the cache does not keep removed ones alive. 
+     */
+    private static final Map<List<Object>, Solution> solutionCache = new ConcurrentHashMap<>();
+
+    private static final int solutionCacheMaxSize = 1000;
+
+    /**
+     * Configuration version stamp, incremented on any property change of a VisionCompositing. 
+     */
+    private static final AtomicLong configurationVersion = new AtomicLong();
+
+    public VisionCompositing() {
+        super();
+        addPropertyChangeListener(e -> invalidateCompositeCache());
+    }
+
+    /**
+     * Invalidates all the cached compositing solutions. 
+     */
+    public static void invalidateCompositeCache() {
+        configurationVersion.incrementAndGet();
+        solutionCache.clear();
+    }
+
+    /**
+     * Computes the compositing solution for the given inputs ahead of time, so it is taken from the cache when the 
+     * Composite is later created for alignment.  
+     * 
+     * @param pkg
+     * @param visionSettings
+     * @param nozzleTip
+     * @param camera
+     * @throws Exception
+     */
+    public void precomputeComposite(Package pkg, BottomVisionSettings visionSettings, 
+            NozzleTip nozzleTip, Camera camera) throws Exception {
+        new Composite(pkg, visionSettings, null, nozzleTip, camera, Location.origin);
+    }
+
+    /**
+     * The results of Composite.compute(). The shots and corners are not modified after the computation, so they 
+     * can be shared by all the Composites with the same inputs.  
+     */
+    private static class Solution {
+        private Location upp;
+        private double tolerance;
+        private double cameraViewRadius;
+        private TreeSet<Double> leftEdges;
+        private TreeSet<Double> rightEdges;
+        private TreeSet<Double> topEdges;
+        private TreeSet<Double> bottomEdges;
+        private ArrayList<Shot> compositeShots;
+        private CompositingSolution compositingSolution;
+        private double maxCornerRadius;
+        private ArrayList<Footprint.Pad> rectifiedPads;
+        private int outOfRoamingCandidates;
+        private String diagnostics;
+        private double maxPadRadius;
+        private double[] octogonalHull;
+    }
+
     public CompositingMethod getCompositingMethod() {
         return compositingMethod;
     }
@@ -697,11 +765,92 @@ public class VisionCompositing extends AbstractModelObject{
             this.locationAndRotation = locationAndRotation.convertToUnits(units);
             this.expectedAngle = locationAndRotation.getRotation();
             double t0 = NanosecondTime.getRuntimeSeconds();
-            // Compute the solution.
-            compute();
+            // Compute the solution, or take it from the cache.
+            List<Object> key = getSolutionKey();
+            Solution solution = solutionCache.get(key);
+            if (solution != null) {
+                restoreSolution(solution);
+            }
+            else {
+                compute();
+                if (solutionCache.size() >= solutionCacheMaxSize) {
+                    solutionCache.clear();
+                }
+                solutionCache.put(key, saveSolution());
+            }
             this.computeTime = NanosecondTime.getRuntimeSeconds() - t0;
         }
 
+        /**
+         * @return The key of the compositing solution. Besides the ids of the inputs, it contains the values that 
+         * compute() depends on, as not all of them fire property change events, e.g. the footprint pads. 
+         */
+        private List<Object> getSolutionKey() {
+            ArrayList<Object> key = new ArrayList<>();
+            key.add(pkg.getId());
+            key.add(visionSettings.getId());
+            key.add(nozzleTip.getId());
+            key.add(camera.getId());
+            key.add(configurationVersion.get());
+            key.add(compositingMethod);
+            key.add(maxPickTolerance);
+            key.add(minLeverageFactor);
+            key.add(allowInside);
+            key.add(extraShots);
+            key.add(units);
+            key.add(footprint.getBodyWidth());
+            key.add(footprint.getBodyHeight());
+            for (Pad pad : footprint.getPads()) {
+                key.add(Arrays.asList(pad.getX(), pad.getY(), pad.getWidth(), pad.getHeight(), pad.getRotation()));
+            }
+            key.add(visionSettings.getVisionOffset());
+            key.add(camera.getUnitsPerPixel());
+            key.add(camera.getWidth());
+            key.add(camera.getHeight());
+            key.add(camera.getRoamingRadius());
+            key.add(nozzleTip.getMaxPickTolerance());
+            key.add(nozzleTip.getMaxPartDiameter());
+            return key;
+        }
+
+        private Solution saveSolution() {
+            Solution solution = new Solution();
+            solution.upp = upp;
+            solution.tolerance = tolerance;
+            solution.cameraViewRadius = cameraViewRadius;
+            solution.leftEdges = leftEdges;
+            solution.rightEdges = rightEdges;
+            solution.topEdges = topEdges;
+            solution.bottomEdges = bottomEdges;
+            solution.compositeShots = compositeShots;
+            solution.compositingSolution = compositingSolution;
+            solution.maxCornerRadius = maxCornerRadius;
+            solution.rectifiedPads = rectifiedPads;
+            solution.outOfRoamingCandidates = outOfRoamingCandidates;
+            solution.diagnostics = diagnostics;
+            solution.maxPadRadius = maxPadRadius;
+            solution.octogonalHull = octogonalHull.clone();
+            return solution;
+        }
+
+        private void restoreSolution(Solution solution) {
+            upp = solution.upp;
+            tolerance = solution.tolerance;
+            cameraViewRadius = solution.cameraViewRadius;
+            leftEdges = solution.leftEdges;
+            rightEdges = solution.rightEdges;
+            topEdges = solution.topEdges;
+            bottomEdges = solution.bottomEdges;
+            compositeShots = solution.compositeShots;
+            compositingSolution = solution.compositingSolution;
+            maxCornerRadius = solution.maxCornerRadius;
+            rectifiedPads = solution.rectifiedPads;
+            outOfRoamingCandidates = solution.outOfRoamingCandidates;
+            diagnostics = solution.diagnostics;
+            maxPadRadius = solution.maxPadRadius;
+            octogonalHull = solution.octogonalHull.clone();
+        }
+
         public Package getPackage() {
             return pkg;
         }
@@ -1,5 +1,7 @@
 package org.openpnp.scripting;
 
+import java.util.function.Consumer;
+
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 
@@ -11,9 +13,21 @@ import org.pmw.tinylog.Logger;
 public class ScriptEngineKeyedPooledObjectFactory
         extends BaseKeyedPooledObjectFactory<String, ScriptEngine> {
     private final ScriptEngineManager manager;
+    private final Consumer<ScriptEngine> destroyListener;
 
     public ScriptEngineKeyedPooledObjectFactory(ScriptEngineManager manager) {
+        this(manager, null);
+    }
+
+    /**
+     * @param manager
+     * @param destroyListener Called when an engine is destroyed by the pool, e.g. when evicted or when the pool is
+     * cleared, to release anything held for the engine.
+     */
+    public ScriptEngineKeyedPooledObjectFactory(ScriptEngineManager manager,
+            Consumer<ScriptEngine> destroyListener) {
         this.manager = manager;
+        this.destroyListener = destroyListener;
     }
 
     @Override
@@ -35,4 +49,13 @@ public class ScriptEngineKeyedPooledObjectFactory
     public PooledObject<ScriptEngine> wrap(ScriptEngine value) {
         return new DefaultPooledObject<ScriptEngine>(value);
     }
+
+    @Override
+    public void destroyObject(String engineName, PooledObject<ScriptEngine> pooledObject)
+            throws Exception {
+        if (destroyListener != null) {
+            destroyListener.accept(pooledObject.getObject());
+        }
+        super.destroyObject(engineName, pooledObject);
+    }
 }
@@ -138,6 +138,8 @@ public class ScriptFileWatcher {
         try {
             fileWatcher = FileSystems.getDefault().newWatchService();
             watchDirectory(scripting.getScriptsDirectory());
+            // The events directory is not in the menu, but its scripts are cached too
+            watchDirectory(scripting.getEventsDirectory());
             Thread thread = new Thread(() -> {
                 for (;;) {
                     try {
@@ -145,6 +147,8 @@ public class ScriptFileWatcher {
                         WatchKey key = fileWatcher.take();
                         key.pollEvents();
                         key.reset();
+                        // drop cached scripts
+                        scripting.clearScriptCache();
                         // rescan
                         synchronizeMenu(menu, scripting.getScriptsDirectory());
                     }
@@ -1,15 +1,20 @@
 package org.openpnp.scripting;
 
 import java.io.File;
-import java.io.FileReader;
+import java.nio.charset.Charset;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
@@ -35,11 +40,98 @@ public class Scripting {
     private final HashMap<String, String> extensionToEngineNameMap;
     private final GenericKeyedObjectPool<String, ScriptEngine> enginePool;
 
+    /**
+     * Script sources by absolute path, so a script file is only read again when it was modified.
+     */
+    private final Map<String, ScriptSource> sourceCache = new ConcurrentHashMap<>();
+
+    /**
+     * Compiled scripts per pooled engine, by absolute path. A CompiledScript is bound to the engine that compiled
+     * it, so this cache only pays off for pooled engines. As the CompiledScript references its engine, the entries 
+     * are removed explicitly when the pool destroys the engine.
+     */
+    private final Map<ScriptEngine, Map<String, ScriptSource>> compiledCache = new ConcurrentHashMap<>();
+
+    /**
+     * Event scripts by event name, valid as long as the eventsDirectory is not modified.
+     */
+    private volatile Map<String, List<File>> eventScripts = null;
+    private volatile long eventScriptsLastModified;
+
+    private final Map<String, ScriptStatistics> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * Source of a script file, with the file's lastModified and length at the time it was read. When compiled, 
+     * also holds the CompiledScript.
+     */
+    private static class ScriptSource {
+        final long lastModified;
+        final long length;
+        final String source;
+        final CompiledScript compiled;
+
+        ScriptSource(long lastModified, long length, String source, CompiledScript compiled) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.source = source;
+            this.compiled = compiled;
+        }
+
+        boolean isCurrent(File script) {
+            return lastModified == script.lastModified() && length == script.length();
+        }
+    }
+
+    /**
+     * Execution time statistics of one script.
+     */
+    public static class ScriptStatistics {
+        private long count;
+        private long errorCount;
+        private long totalNs;
+        private long maxNs;
+
+        synchronized void record(long elapsedTimeNs, boolean error) {
+            count++;
+            if (error) {
+                errorCount++;
+            }
+            totalNs += elapsedTimeNs;
+            maxNs = Math.max(maxNs, elapsedTimeNs);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getErrorCount() {
+            return errorCount;
+        }
+
+        public synchronized double getTotalMilliseconds() {
+            return totalNs / 1E6;
+        }
+
+        public synchronized double getAverageMilliseconds() {
+            return count == 0 ? 0 : totalNs / 1E6 / count;
+        }
+
+        public synchronized double getMaxMilliseconds() {
+            return maxNs / 1E6;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("count %d, errors %d, total %.3f ms, average %.3f ms, max %.3f ms", 
+                    count, errorCount, getTotalMilliseconds(), getAverageMilliseconds(), getMaxMilliseconds());
+        }
+    }
+
     public Scripting(File scriptsDirectory) {
         this.scriptsDirectory = scriptsDirectory;
         extensionToEngineNameMap = new HashMap<>();
         enginePool = new GenericKeyedObjectPool<>(
-                new ScriptEngineKeyedPooledObjectFactory(this.manager));
+                new ScriptEngineKeyedPooledObjectFactory(this.manager, compiledCache::remove));
         // Allow unlimited engines, but evict all but five per key after a short idle time
         enginePool.setMaxTotal(-1);
         enginePool.setMaxTotalPerKey(-1);
@@ -176,8 +268,15 @@ public class Scripting {
 
         boolean execError = false;
         startTimeNs = System.nanoTime();
-        try (FileReader reader = new FileReader(script)) {
-            engine.eval(reader);
+        try {
+            ScriptSource source = getSource(script);
+            CompiledScript compiled = (usePool ? getCompiled(engine, script, source) : null);
+            if (compiled != null) {
+                compiled.eval();
+            }
+            else {
+                engine.eval(source.source);
+            }
         }
         catch (Exception e) {
             execError = true;
@@ -185,6 +284,8 @@ public class Scripting {
         }
         finally {
             elapsedTimeNs = System.nanoTime() - startTimeNs;
+            statistics.computeIfAbsent(script.getAbsolutePath(), k -> new ScriptStatistics())
+                      .record(elapsedTimeNs, execError);
 
             if (usePool) {
                 enginePool.returnObject(extensionToEngineNameMap.get(extension), engine);
@@ -202,20 +303,116 @@ public class Scripting {
         }
     }
 
+    private ScriptSource getSource(File script) throws Exception {
+        String path = script.getAbsolutePath();
+        ScriptSource source = sourceCache.get(path);
+        if (source == null || !source.isCurrent(script)) {
+            long lastModified = script.lastModified();
+            long length = script.length();
+            source = new ScriptSource(lastModified, length,
+                    FileUtils.readFileToString(script, Charset.defaultCharset()), null);
+            sourceCache.put(path, source);
+        }
+        return source;
+    }
+
+    /**
+     * Gets the script compiled by the given engine, compiling it if needed. 
+     * 
+     * @return The CompiledScript or null if the engine cannot compile scripts.
+     * @throws Exception
+     */
+    private CompiledScript getCompiled(ScriptEngine engine, File script, ScriptSource source)
+            throws Exception {
+        if (!(engine instanceof Compilable)
+                || engine.getFactory() instanceof BshScriptEngineFactory) {
+            // Beanshell declares Compilable, but does not implement it.
+            return null;
+        }
+        Map<String, ScriptSource> engineCache =
+                compiledCache.computeIfAbsent(engine, k -> new ConcurrentHashMap<>());
+        String path = script.getAbsolutePath();
+        ScriptSource compiled = engineCache.get(path);
+        if (compiled == null || compiled.lastModified != source.lastModified
+                || compiled.length != source.length) {
+            compiled = new ScriptSource(source.lastModified, source.length, source.source,
+                    ((Compilable) engine).compile(source.source));
+            engineCache.put(path, compiled);
+        }
+        return compiled.compiled;
+    }
+
+    /**
+     * Clears the cached script sources, compiled scripts and event scripts. Scripts are also reloaded when their 
+     * file is modified, so this is only needed to free the memory, or when the modification cannot be detected.
+     */
+    public void clearScriptCache() {
+        sourceCache.clear();
+        compiledCache.clear();
+        eventScripts = null;
+    }
+
+    /**
+     * @return The number of engines with compiled scripts in the cache.
+     */
+    int getCompiledCacheEngineCount() {
+        return compiledCache.size();
+    }
+
+    /**
+     * @return A copy of the execution time statistics of all the scripts executed, by absolute path.
+     */
+    public Map<String, ScriptStatistics> getScriptStatistics() {
+        return new TreeMap<>(statistics);
+    }
+
+    public void resetScriptStatistics() {
+        statistics.clear();
+    }
+
+    /**
+     * Gets the scripts for the event. The eventsDirectory is only scanned again when it was modified.
+     * 
+     * @param event
+     * @return The list of scripts, empty if there are none.
+     */
+    private List<File> getEventScripts(String event) {
+        Map<String, List<File>> eventScripts = this.eventScripts;
+        long lastModified = eventsDirectory.lastModified();
+        if (eventScripts == null || lastModified != eventScriptsLastModified) {
+            eventScripts = new HashMap<>();
+            for (File script : FileUtils.listFiles(eventsDirectory, getExtensions(), false)) {
+                if (!script.isFile()) {
+                    continue;
+                }
+                eventScripts.computeIfAbsent(FilenameUtils.getBaseName(script.getName()), 
+                        k -> new ArrayList<>()).add(script);
+            }
+            this.eventScriptsLastModified = lastModified;
+            this.eventScripts = eventScripts;
+        }
+        return eventScripts.getOrDefault(event, Collections.emptyList());
+    }
+
+    /**
+     * @param event
+     * @return True if there are scripts for the event, i.e. if on(event, ...) would execute any.
+     */
+    public boolean hasEventScripts(String event) {
+        if (eventsDirectory == null) {
+            return false;
+        }
+        return !getEventScripts(event).isEmpty();
+    }
+
     public void on(String event, Map<String, Object> globals) throws Exception {
         Logger.trace("Scripting.on " + event);
         if (eventsDirectory == null) {
             return;
         }
-        for (File script : FileUtils.listFiles(eventsDirectory, getExtensions(), false)) {
-            if (!script.isFile()) {
-                continue;
-            }
-            if (FilenameUtils.getBaseName(script.getName())
-                             .equals(event)) {
-                Logger.trace("Scripting.on found " + script.getName());
-                execute(script, globals);
-            }
+        for (File script : getEventScripts(event)) {
+            Logger.trace("Scripting.on found " + script.getName());
+            execute(script, globals);
         }
     }
 
@@ -107,6 +107,66 @@ public interface Feeder extends Identifiable, Named, WizardConfigurable, Propert
      */
     public void feed(Nozzle nozzle) throws Exception;
 
+    /**
+     * A feed that was issued ahead of the pick and may still be in progress on the feeder.
+     */
+    public interface DeferredFeed {
+        /**
+         * @return true if complete() will not block.
+         */
+        boolean isDone();
+
+        /**
+         * Waits for the feed to complete. Must be called on the machine task thread, before the part
+         * is picked.
+         *
+         * @throws Exception if the feed failed for any reason. The caller may retry with feed().
+         */
+        void complete() throws Exception;
+
+        /**
+         * @return The time in seconds the Feeder took (or was expected to take) to complete the feed on its
+         * own, after prefeed() returned.
+         */
+        double getFeedTime();
+    }
+
+    /**
+     * @return True if the Feeder can feed without any Head interaction, i.e. the feed can be issued
+     * ahead of the pick using prefeed(), while the Head is busy elsewhere.
+     */
+    default boolean canPrefeed() {
+        return false;
+    }
+
+    /**
+     * Like feed(), but the feed is only issued and the Feeder may complete it on its own, while the
+     * machine moves on. The part must not be picked before DeferredFeed.complete() returned. Only
+     * called if canPrefeed() is true. The default implementation feeds synchronously.
+     *
+     * @param nozzle The Nozzle expected to be used for picking.
+     * @return
+     * @throws Exception
+     */
+    default DeferredFeed prefeed(Nozzle nozzle) throws Exception {
+        feed(nozzle);
+        return new DeferredFeed() {
+            @Override
+            public boolean isDone() {
+                return true;
+            }
+
+            @Override
+            public void complete() {
+            }
+
+            @Override
+            public double getFeedTime() {
+                return 0;
+            }
+        };
+    }
+
     public void postPick(Nozzle nozzle) throws Exception;
 
     /*
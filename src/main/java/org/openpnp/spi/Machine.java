@@ -261,6 +261,41 @@ public interface Machine extends WizardConfigurable, PropertySheetHolder, Closea
     public <T> Future<T> submit(final Callable<T> callable, final FutureCallback<T> callback,
             boolean ignoreEnabled);
 
+    /**
+     * The task lane of all the tasks that are submitted without naming their lanes.
+     */
+    public String MACHINE_LANE = "Machine";
+
+    /**
+     * The task lane of the feeders, i.e. the feeder bus.
+     */
+    public String FEEDER_LANE = "Feeders";
+
+    /**
+     * Submit a task to run in the given task lanes. Lanes are keyed by the resource they serve, typically a 
+     * {@link Head}, a {@link Driver}, a {@link Camera}, {@link #FEEDER_LANE} or {@link #MACHINE_LANE}. Tasks in 
+     * the same lane are executed in the order of submission, tasks in different lanes run in parallel. 
+     * 
+     * A task that uses several resources must name all their lanes. It then acts as a barrier: it waits until 
+     * the earlier tasks of all its lanes are done and holds back their later tasks until it is done itself. 
+     * 
+     * Tasks submitted with {@link #submit(Callable, FutureCallback, boolean)} run in the {@link #MACHINE_LANE}, 
+     * i.e. they do not wait for the tasks of other lanes. Tasks that plan motion must therefore include the 
+     * {@link #MACHINE_LANE}, as there is only one motion planner. Other resources used by tasks in multiple lanes, 
+     * such as drivers, must be safe to use concurrently.
+     * 
+     * Otherwise the same as {@link #submit(Callable, FutureCallback, boolean)}. If a task throws an Exception, 
+     * the queued tasks of its lanes are cancelled, and if it is in the {@link #MACHINE_LANE}, pending motion is 
+     * executed. Other lanes are not affected.
+     * 
+     * @param callable
+     * @param callback
+     * @param lanes The keys of the lanes, at least one.
+     * @return
+     */
+    public <T> Future<T> submitToLanes(final Callable<T> callable, final FutureCallback<T> callback,
+            Object... lanes);
+
     /**
      * Execute a task to be run with access to the Machine. The submit() and execute() methods are 
      * the primary entry points into executing any blocking operation on the Machine. If you are 
@@ -56,6 +56,63 @@ public interface PartAlignment extends PartSettingsHolder, Named, Solutions.Subj
      * @throws Exception if the alignment fails for any reason. The caller may retry.
      */
     PartAlignmentOffset findOffsets(Part part, BoardLocation boardLocation, Placement placement, Nozzle nozzle) throws Exception;
+
+    /**
+     * Offsets of an alignment whose image processing may still be running on a worker thread.
+     */
+    public interface DeferredPartAlignmentOffset {
+        /**
+         * @return true if get() will not block.
+         */
+        boolean isDone();
+
+        /**
+         * Waits for the image processing and returns the offsets. Must be called on the machine task thread, 
+         * before the offsets are used.
+         * 
+         * @return The offsets, or null if the speculative alignment missed, i.e. the part must be aligned again
+         * using findOffsets().
+         * @throws Exception if the alignment fails for any reason. The caller may retry with findOffsets().
+         */
+        PartAlignmentOffset get() throws Exception;
+
+        /**
+         * @return The time in seconds spent processing on the worker thread.
+         */
+        double getProcessingTime();
+    }
+
+    /**
+     * Like findOffsets(), but once the last image is captured, the image processing may be deferred to a 
+     * worker thread, so the machine can move on while it runs. The default implementation aligns synchronously.
+     * 
+     * @param part
+     * @param boardLocation
+     * @param placement
+     * @param nozzle
+     * @return
+     * @throws Exception
+     */
+    default DeferredPartAlignmentOffset findOffsetsDeferred(Part part, BoardLocation boardLocation, 
+            Placement placement, Nozzle nozzle) throws Exception {
+        PartAlignmentOffset offsets = findOffsets(part, boardLocation, placement, nozzle);
+        return new DeferredPartAlignmentOffset() {
+            @Override
+            public boolean isDone() {
+                return true;
+            }
+
+            @Override
+            public PartAlignmentOffset get() {
+                return offsets;
+            }
+
+            @Override
+            public double getProcessingTime() {
+                return 0;
+            }
+        };
+    }
     
     /**
      * Get a Wizard for configuring the PartAlignment instance properties for a specific
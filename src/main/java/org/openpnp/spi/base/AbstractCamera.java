@@ -20,6 +20,7 @@ import org.openpnp.spi.Camera;
 import org.openpnp.spi.Head;
 import org.openpnp.spi.HeadMountable;
 import org.openpnp.spi.VisionProvider;
+import org.openpnp.util.IdentifiableList;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
 
@@ -135,6 +136,9 @@ public abstract class AbstractCamera extends AbstractHeadMountable implements Ca
     public void setId(String id) {
         Object oldValue = this.id;
         this.id = id;
+        if (oldValue != null && !oldValue.equals(id)) {
+            IdentifiableList.idChanged();
+        }
         firePropertyChange("id", oldValue, id);
     }
 
@@ -29,6 +29,7 @@ import org.openpnp.spi.Driver;
 import org.openpnp.spi.Machine;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.PropertySheetHolder;
+import org.openpnp.util.IdentifiableList;
 import org.simpleframework.xml.Attribute;
 
 public abstract class AbstractDriver extends AbstractModelObject implements Driver {
@@ -50,7 +51,11 @@ public abstract class AbstractDriver extends AbstractModelObject implements Driv
     }
 
     public void setId(String id) {
+        String oldValue = this.id;
         this.id = id;
+        if (oldValue != null && !oldValue.equals(id)) {
+            IdentifiableList.idChanged();
+        }
     }
 
     @Override
@@ -1,6 +1,6 @@
 package org.openpnp.spi.base;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -10,8 +10,6 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
@@ -38,6 +36,7 @@ import org.openpnp.spi.NozzleTip;
 import org.openpnp.spi.PartAlignment;
 import org.openpnp.spi.Signaler;
 import org.openpnp.util.IdentifiableList;
+import org.openpnp.util.LaneExecutor;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
@@ -99,10 +98,20 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
 
     protected Set<MachineListener> listeners = Collections.synchronizedSet(new HashSet<>());
 
-    protected ThreadPoolExecutor executor;
+    protected LaneExecutor taskLanes = new LaneExecutor("Machine task");
 
     volatile protected Thread taskThread;
 
+    volatile protected boolean busy;
+
+    protected int activeTasks;
+
+    /**
+     * Held while a task makes the machine busy or idle, including the notification of the listeners, so the
+     * busy and idle notifications of tasks in different lanes cannot overtake each other.
+     */
+    private final Object busyTransitionLock = new Object();
+
     protected AbstractMachine() {}
 
     @SuppressWarnings("unused")
@@ -539,31 +548,41 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
         return submit(callable, callback, false);
     }
 
-    private synchronized boolean isQueueEmpty() {
-        return executor == null || executor.isShutdown() || executor.getQueue().isEmpty();
-    }
-
     @Override
     public <T> Future<T> submit(final Callable<T> callable, final FutureCallback<T> callback,
             final boolean ignoreEnabled) {
-        synchronized (this) {
-            if (executor == null || executor.isShutdown()) {
-                executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
-                        new LinkedBlockingQueue<>());
-            }
-        }
+        return submit(callable, callback, ignoreEnabled, MACHINE_LANE);
+    }
+
+    @Override
+    public <T> Future<T> submitToLanes(final Callable<T> callable, final FutureCallback<T> callback,
+            final Object... lanes) {
+        return submit(callable, callback, false, lanes);
+    }
 
+    protected <T> Future<T> submit(final Callable<T> callable, final FutureCallback<T> callback,
+            final boolean ignoreEnabled, final Object... lanes) {
+        final boolean machineLane = Arrays.asList(lanes).contains(MACHINE_LANE);
         Callable<T> wrapper = new Callable<T>() {
             public T call() throws Exception {
                 Exception exception = null;
                 try {
-                    boolean isBusy = isBusy();
-                    // Note, this also locks drivers (busy).
-                    setTaskThread(Thread.currentThread());
+                    synchronized (busyTransitionLock) {
+                        boolean isBusy;
+                        synchronized (AbstractMachine.this) {
+                            isBusy = busy;
+                            busy = true;
+                            activeTasks++;
+                        }
+                        if (machineLane) {
+                            // Note, this also locks drivers (busy).
+                            setTaskThread(Thread.currentThread());
+                        }
 
-                    if (!isBusy) {
-                        // Notify listeners that the machine is now busy
-                        fireMachineBusy(true);
+                        if (!isBusy) {
+                            // Notify listeners that the machine is now busy
+                            fireMachineBusy(true);
+                        }
                     }
 
                     // Call the task, storing the result and exception if any
@@ -573,16 +592,18 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
                             throw new Exception("Machine has not been started.");
                         }
                         result = callable.call();
-                        // Make sure all pending motion commands are planned and sent to the controllers. 
-                        // This does not necessarily wait for the motion to be complete physically, as this would 
-                        // be undesirable for continuous Jog commands.  
-                        getMotionPlanner().waitForCompletion(null, CompletionType.CommandJog);
+                        if (machineLane) {
+                            // Make sure all pending motion commands are planned and sent to the controllers. 
+                            // This does not necessarily wait for the motion to be complete physically, as this would 
+                            // be undesirable for continuous Jog commands. Only tasks in the machine lane plan motion.
+                            getMotionPlanner().waitForCompletion(null, CompletionType.CommandJog);
+                        }
                     }
                     catch (Exception e) {
                         exception = e;
                     }
 
-                    if (exception != null) {
+                    if (exception != null && machineLane) {
                         try {
                             // If there was an exception, we still need to execute the moves that were already in the queue
                             // when it happened. When full asynchronous operation is configured (location confirmation flow control)
@@ -600,21 +621,16 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
                         }
                     }
 
-                    // If there was an exception, cancel all pending tasks.
+                    // If there was an exception, cancel all pending tasks in the lanes of this task. Other lanes are
+                    // not affected, except for barrier tasks that are also queued in the lanes of this task.
                     if (exception != null) {
-                        synchronized (this) {
-                            if (executor != null) {
-                                // Remove all pending tasks from the queue. Note, we no longer use executor.shutdownNow() here,
-                                // as this introduces a potential race conditions where a new task submitted could be run in 
-                                // parallel with this task still finishing up. Furthermore, this task may still need to function 
-                                // nominally in its onSuccess(), onFailure(), and fireMachineBusy(false)
-                                // handlers, i.e. it must not be subject to any Thread.interrupt() calls causing InterruptedException. 
-                                // After finishing up, there will still be a call to executor.shutdownNow() (see further below).
-                                for (Runnable runnable : new ArrayList<>(executor.getQueue())) {
-                                    executor.remove(runnable);
-                                }
-                            }
-                        }
+                        // Remove all pending tasks from the queue. Note, we no longer use executor.shutdownNow() here,
+                        // as this introduces a potential race conditions where a new task submitted could be run in
+                        // parallel with this task still finishing up. Furthermore, this task may still need to function
+                        // nominally in its onSuccess(), onFailure(), and fireMachineBusy(false)
+                        // handlers, i.e. it must not be subject to any Thread.interrupt() calls causing InterruptedException.
+                        // After finishing up, there will still be a call to shutdownNow() (see further below).
+                        taskLanes.cancelQueuedTasks(lanes);
                     }
 
                     // If a callback was supplied, call it with the results
@@ -635,26 +651,37 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
                     return result;
                 }
                 finally {
-                    // If no more tasks are scheduled notify listeners that
+                    // If no more tasks are running or scheduled in any lane, notify listeners that
                     // the machine is no longer busy
-                    if (isQueueEmpty()) {
-                        Logger.trace("Machine entering idle state.");
-                        fireMachineBusy(false);
-                        // Note, this also unlocks drivers (idle).
-                        setTaskThread(null);
-                    }
-                    if (exception != null) {
-                        synchronized (this) {
-                            if (executor != null) {
-                                executor.shutdownNow();
+                    synchronized (busyTransitionLock) {
+                        boolean idle;
+                        synchronized (AbstractMachine.this) {
+                            activeTasks--;
+                            idle = (activeTasks == 0 && !taskLanes.hasQueuedTasks());
+                            if (idle) {
+                                busy = false;
                             }
                         }
+                        if (idle) {
+                            Logger.trace("Machine entering idle state.");
+                            // The listeners are notified on the task thread, like from a machine task, whatever
+                            // the lane of this last task was. Tasks of other lanes wait for the notification to 
+                            // finish before they make the machine busy again.
+                            setTaskThread(Thread.currentThread());
+                            fireMachineBusy(false);
+                            // Note, this also unlocks drivers (idle).
+                            setTaskThread(null);
+                        }
+                    }
+                    if (exception != null) {
+                        // The task is executed on the thread of its first lane.
+                        taskLanes.shutdownNow(lanes[0]);
                     }
                 }
             }
         };
 
-        return executor.submit(wrapper);
+        return taskLanes.submit(wrapper, lanes);
     }
 
     @Override
@@ -707,15 +734,19 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
 
     @Override
     public boolean isTask(Thread thread) {
-        if (taskThread == null || thread == null) {
+        if (thread == null) {
             return false;
         }
-        return taskThread.getId() == thread.getId();
+        if (taskThread != null && taskThread.getId() == thread.getId()) {
+            return true;
+        }
+        // Tasks in the other lanes.
+        return busy && taskLanes.getLane(thread) != null;
     }
 
     @Override
     public boolean isBusy() {
-        return taskThread != null;
+        return busy;
     }
 
     @Override
@@ -0,0 +1,403 @@
+package org.openpnp.util;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.openpnp.model.Configuration;
+import org.pmw.tinylog.Logger;
+
+/**
+ * Writes debug images in the background, so vision does not stall on image encoding and disk I/O. Images are
+ * copied and queued in a bounded queue, then encoded and written by worker threads. When the queue is full,
+ * images are either dropped or the caller is blocked, according to the QueuePolicy.
+ *
+ * The log/vision directory is kept below the configured maximum size by deleting the oldest images.
+ *
+ * Settings are taken from the Configuration preferences, defaults are used if there is no Configuration.
+ */
+public class DebugImageWriter {
+    public enum Format {
+        /**
+         * PNG with the default compression.
+         */
+        Png(".png", 3),
+        /**
+         * PNG with the lowest compression, encodes several times faster.
+         */
+        PngFast(".png", 1),
+        /**
+         * Uncompressed PNG, encodes fastest, but the images are large.
+         */
+        PngUncompressed(".png", 0),
+        /**
+         * JPEG with high quality, fast and small, but lossy.
+         */
+        Jpeg(".jpg", 95);
+
+        private final String extension;
+        private final int parameter;
+
+        Format(String extension, int parameter) {
+            this.extension = extension;
+            this.parameter = parameter;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    public enum QueuePolicy {
+        /**
+         * Drop the image when the queue is full.
+         */
+        Drop,
+        /**
+         * Block the caller until there is room in the queue.
+         */
+        Block
+    }
+
+    private static final int workerCount = 2;
+
+    /**
+     * When the log/vision directory exceeds its maximum size, it is reduced to this fraction of it, so the
+     * directory is not scanned on every write.
+     */
+    private static final double rotationTargetFraction = 0.8;
+
+    private static DebugImageWriter instance;
+
+    private final BlockingQueue<Job> queue;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Object rotationLock = new Object();
+    private File rotationDirectory;
+    private long rotationDirectorySize = -1;
+    private QueuePolicy queuePolicy;
+    private Long maxBytes;
+
+    private static class Job {
+        final File file;
+        final Mat mat;
+        final boolean rotate;
+
+        Job(File file, Mat mat, boolean rotate) {
+            this.file = file;
+            this.mat = mat;
+            this.rotate = rotate;
+        }
+    }
+
+    public static synchronized DebugImageWriter get() {
+        if (instance == null) {
+            int queueSize = (Configuration.get() != null ? Configuration.get().getDebugImageQueueSize() : 32);
+            instance = new DebugImageWriter(queueSize);
+        }
+        return instance;
+    }
+
+    /**
+     * Writes the queued images before the application exits. The worker threads are daemon threads, so the
+     * queued images would be lost otherwise.
+     *
+     * @param timeoutMs
+     */
+    public static void shutdown(long timeoutMs) {
+        DebugImageWriter writer;
+        synchronized (DebugImageWriter.class) {
+            writer = instance;
+        }
+        if (writer == null) {
+            return;
+        }
+        try {
+            if (!writer.flush(timeoutMs)) {
+                Logger.warn("{} debug images could not be written before shutdown.", writer.pending.get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public DebugImageWriter(int queueSize) {
+        this(queueSize, workerCount);
+    }
+
+    DebugImageWriter(int queueSize, int workers) {
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::work, "DebugImageWriter-"+i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * @return The directory where the vision debug images are written, i.e. log/vision.
+     */
+    public static File getVisionDirectory() {
+        File directory = new File(Configuration.get().getConfigurationDirectory(), "log");
+        return new File(directory, "vision");
+    }
+
+    public Format getFormat() {
+        return (Configuration.get() != null ? Configuration.get().getDebugImageFormat() : Format.Png);
+    }
+
+    public QueuePolicy getQueuePolicy() {
+        if (queuePolicy != null) {
+            return queuePolicy;
+        }
+        return (Configuration.get() != null ? Configuration.get().getDebugImageQueuePolicy() : QueuePolicy.Drop);
+    }
+
+    /**
+     * @param queuePolicy The queue policy of this writer, or null to use the one of the Configuration preferences.
+     */
+    public void setQueuePolicy(QueuePolicy queuePolicy) {
+        this.queuePolicy = queuePolicy;
+    }
+
+    public long getMaxBytes() {
+        if (maxBytes != null) {
+            return maxBytes;
+        }
+        return (Configuration.get() != null ? Configuration.get().getDebugImageMaxMegabytes() : 0)*1024L*1024L;
+    }
+
+    /**
+     * @param maxBytes The maximum size of the rotated directory of this writer, or null to use the one of the 
+     * Configuration preferences.
+     */
+    public void setMaxBytes(Long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return The number of images dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Queues a copy of the image to be written to the file. The encoding is determined by the file extension.
+     *
+     * @param file
+     * @param mat
+     */
+    public void write(File file, Mat mat) {
+        write(file, mat, false);
+    }
+
+    /**
+     * Queues a copy of the image to be written to the file. The encoding is determined by the file extension.
+     *
+     * @param file
+     * @param image
+     */
+    public void write(File file, BufferedImage image) {
+        write(file, image, false);
+    }
+
+    /**
+     * Queues a copy of the image to be written to the file in the log/vision directory. The directory is
+     * size rotated.
+     *
+     * @param file
+     * @param mat
+     */
+    public void writeVision(File file, Mat mat) {
+        write(file, mat, true);
+    }
+
+    /**
+     * Queues a copy of the image to be written to the file in the log/vision directory. The directory is
+     * size rotated.
+     *
+     * @param file
+     * @param image
+     */
+    public void writeVision(File file, BufferedImage image) {
+        write(file, image, true);
+    }
+
+    private void write(File file, BufferedImage image, boolean rotate) {
+        if (image == null) {
+            return;
+        }
+        // toMat() copies the image data.
+        enqueue(new Job(file, OpenCvUtils.toMat(image), rotate));
+    }
+
+    private void write(File file, Mat mat, boolean rotate) {
+        if (mat == null) {
+            return;
+        }
+        Mat copy;
+        if (mat.type() == CvType.CV_8UC1 || mat.type() == CvType.CV_8UC3) {
+            copy = mat.clone();
+        }
+        else {
+            // Let toBufferedImage() convert other types to a known image format.
+            copy = OpenCvUtils.toMat(OpenCvUtils.toBufferedImage(mat));
+        }
+        enqueue(new Job(file, copy, rotate));
+    }
+
+    private void enqueue(Job job) {
+        pending.incrementAndGet();
+        boolean queued;
+        if (getQueuePolicy() == QueuePolicy.Block) {
+            try {
+                queue.put(job);
+                queued = true;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+        }
+        else {
+            queued = queue.offer(job);
+        }
+        if (!queued) {
+            job.mat.release();
+            pending.decrementAndGet();
+            long dropped = droppedCount.incrementAndGet();
+            Logger.trace("Debug image {} dropped, queue full, {} dropped so far.", job.file.getName(), dropped);
+        }
+    }
+
+    /**
+     * Waits until all the queued images are written.
+     *
+     * @param timeoutMs
+     * @return true if all the images were written, false on timeout.
+     * @throws InterruptedException
+     */
+    public boolean flush(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (pending.get() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private void work() {
+        while (true) {
+            Job job;
+            try {
+                job = queue.take();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            try {
+                job.file.getParentFile().mkdirs();
+                MatOfInt parameters = getEncodingParameters(job.file);
+                Imgcodecs.imwrite(job.file.getAbsolutePath(), job.mat, parameters);
+                parameters.release();
+                if (job.rotate) {
+                    rotate(job.file);
+                }
+            }
+            catch (Exception e) {
+                Logger.warn(e, "Debug image {} could not be written.", job.file.getName());
+            }
+            finally {
+                job.mat.release();
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    private MatOfInt getEncodingParameters(File file) {
+        String name = file.getName().toLowerCase();
+        Format format = getFormat();
+        if (name.endsWith(".png")) {
+            int compression = (format.extension.equals(".png") ? format.parameter : Format.Png.parameter);
+            return new MatOfInt(Imgcodecs.IMWRITE_PNG_COMPRESSION, compression);
+        }
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+            return new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, Format.Jpeg.parameter);
+        }
+        return new MatOfInt();
+    }
+
+    /**
+     * Keeps the directory of the written file below the maximum size, by deleting the oldest files. The directory
+     * size is only scanned initially and when it is exceeded, otherwise the written files are just added up.
+     *
+     * @param file
+     */
+    private void rotate(File file) {
+        long maxBytes = getMaxBytes();
+        if (maxBytes <= 0) {
+            return;
+        }
+        synchronized (rotationLock) {
+            File directory = file.getParentFile();
+            if (!directory.equals(rotationDirectory) || rotationDirectorySize < 0) {
+                rotationDirectory = directory;
+                rotationDirectorySize = getDirectorySize(directory);
+            }
+            else {
+                rotationDirectorySize += file.length();
+            }
+            if (rotationDirectorySize <= maxBytes) {
+                return;
+            }
+            File[] files = directory.listFiles(File::isFile);
+            if (files == null) {
+                return;
+            }
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            long size = 0;
+            for (File f : files) {
+                size += f.length();
+            }
+            long targetBytes = (long) (maxBytes*rotationTargetFraction);
+            int deleted = 0;
+            for (File f : files) {
+                if (size <= targetBytes) {
+                    break;
+                }
+                long length = f.length();
+                if (f.delete()) {
+                    size -= length;
+                    deleted++;
+                }
+            }
+            rotationDirectorySize = size;
+            Logger.debug("Deleted {} oldest debug images in {}, size now {} MB.", deleted, directory,
+                    size/1024/1024);
+        }
+    }
+
+    private static long getDirectorySize(File directory) {
+        long size = 0;
+        File[] files = directory.listFiles(File::isFile);
+        if (files != null) {
+            for (File f : files) {
+                size += f.length();
+            }
+        }
+        return size;
+    }
+}
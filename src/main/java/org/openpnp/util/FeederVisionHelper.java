@@ -37,7 +37,6 @@ import org.opencv.core.Mat;
 import org.opencv.core.Point;
 import org.opencv.core.RotatedRect;
 import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 import org.openpnp.gui.MainFrame;
 import org.openpnp.model.Configuration;
@@ -739,7 +738,7 @@ public class FeederVisionHelper {
 
                 if (Logger.getLevel() == org.pmw.tinylog.Level.DEBUG || Logger.getLevel() == org.pmw.tinylog.Level.TRACE) {
                     File file = Configuration.get().createResourceFile(getClass(), "tape-utils", ".png");
-                    Imgcodecs.imwrite(file.getAbsolutePath(), resultMat);
+                    DebugImageWriter.get().write(file, resultMat);
                 }
                 BufferedImage showResult = OpenCvUtils.toBufferedImage(resultMat);
                 resultMat.release();
@@ -10,6 +10,10 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.openpnp.Main;
 import org.openpnp.machine.reference.ReferenceMachine;
@@ -41,6 +45,14 @@ public class GcodeServer extends Thread {
 
     private long maxDwellTimeMilliseconds = 20000;
 
+    /**
+     * Artificial latency added to all responses, to simulate the round-trip time of a slow link.
+     */
+    private volatile long responseLatencyMilliseconds = 0;
+
+    private final AtomicInteger commandsInFlight = new AtomicInteger();
+    private volatile int maxCommandsInFlight = 0;
+
     static final String firmware = "FIRMWARE_NAME:GcodeServer, FIRMWARE_URL:http%3A//openpnp.org, X-SOURCE_CODE_URL:https%3A//github.com/openpnp/openpnp, FIRMWARE_VERSION:"+Main.getVersion()+", "
             +"X-FIRMWARE_BUILD_DATE:Oct 23 2020 00:00:00";
 
@@ -97,6 +109,32 @@ public class GcodeServer extends Thread {
         commandResponses.put(command, response);
     }
 
+    public long getResponseLatencyMilliseconds() {
+        return responseLatencyMilliseconds;
+    }
+
+    /**
+     * Delay all responses by the given latency, without blocking the reception of further commands.
+     * Response order is preserved.
+     *
+     * @param responseLatencyMilliseconds
+     */
+    public void setResponseLatencyMilliseconds(long responseLatencyMilliseconds) {
+        this.responseLatencyMilliseconds = responseLatencyMilliseconds;
+    }
+
+    /**
+     * @return The maximum number of commands that were received but not yet responded to, at the same time.
+     * Only meaningful with a response latency set.
+     */
+    public int getMaxCommandsInFlight() {
+        return maxCommandsInFlight;
+    }
+
+    public void resetMaxCommandsInFlight() {
+        maxCommandsInFlight = 0;
+    }
+
     public void shutdown() {
         try {
             serverSocket.close();
@@ -164,6 +202,7 @@ public class GcodeServer extends Thread {
         private LengthUnit lengthUnit = LengthUnit.Millimeters; 
         private boolean absolute = true;
         private String response;
+        private ScheduledExecutorService latencyExecutor;
 
         public Worker(Socket socket) throws Exception {
             this.socket = socket;
@@ -190,7 +229,32 @@ public class GcodeServer extends Thread {
         }
 
         void write(String s) throws Exception {
-            output.write((s + "\n").getBytes("UTF8"));
+            if (responseLatencyMilliseconds > 0) {
+                delayed(() -> {
+                    try {
+                        output.write((s + "\n").getBytes("UTF8"));
+                    }
+                    catch (Exception e) {
+                        Logger.error(e);
+                    }
+                });
+            }
+            else {
+                output.write((s + "\n").getBytes("UTF8"));
+            }
+        }
+
+        /**
+         * Run the task after the response latency. As all the tasks have the same delay, they are executed in
+         * submission order.
+         *
+         * @param task
+         */
+        void delayed(Runnable task) {
+            if (latencyExecutor == null) {
+                latencyExecutor = Executors.newSingleThreadScheduledExecutor();
+            }
+            latencyExecutor.schedule(task, responseLatencyMilliseconds, TimeUnit.MILLISECONDS);
         }
 
         public void run() {
@@ -198,6 +262,12 @@ public class GcodeServer extends Thread {
                 try {
                     String input = read();
                     if (input != null) {
+                        if (responseLatencyMilliseconds > 0) {
+                            int inFlight = commandsInFlight.incrementAndGet();
+                            maxCommandsInFlight = Math.max(maxCommandsInFlight, inFlight);
+                            // The command is in flight until its delayed responses are about to be written.
+                            delayed(() -> commandsInFlight.decrementAndGet());
+                        }
                         // Canned responses.
                         String response = null;
                         response = commandResponses.get(input.trim());
@@ -224,6 +294,9 @@ public class GcodeServer extends Thread {
                     break;
                 }
             }
+            if (latencyExecutor != null) {
+                latencyExecutor.shutdown();
+            }
             try {
                 input.close();
             }
@@ -1,34 +1,79 @@
 package org.openpnp.util;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 import org.openpnp.model.Identifiable;
 
 /**
  * A List specifically for storing implementations of Identifiable. This class adds a get(String)
- * method for getting the Identifiable object with the specified id from the list. Currently
- * performs a simple search through the list but is intended to be indexed eventually.
- * 
- * TODO: Perform indexing on insert and remove so that get(String) can perform better. Consider what
- * happens if an id changes out from under us.
- * 
+ * method for getting the Identifiable object with the specified id from the list.
+ *
+ * The ids are indexed, so get(String) and createId(String) take constant time. The index is kept
+ * in sync on insert and remove, other modifications make it rebuild on the next lookup. If an id
+ * changes out from under us, the index would go stale, therefore Identifiables that can be renamed
+ * while they are in a list must call {@link #idChanged()} from their setId().
+ *
  * @param <E>
  */
 public class IdentifiableList<E extends Identifiable> extends ArrayList<E> {
     private static final long serialVersionUID = -2350184908321182804L;
-    
+
+    private static final AtomicLong idChanges = new AtomicLong();
+
+    /**
+     * The index of the ids, valid as long as the list is not modified structurally behind its back,
+     * and no id has changed.
+     */
+    private static class Index<E> {
+        final Map<String, E> elements = new HashMap<>();
+        final Map<String, Integer> nextIds = new HashMap<>();
+        int modCount;
+        long idChanges;
+        boolean duplicates;
+
+        void put(E e, String id) {
+            if (id != null && elements.putIfAbsent(id, e) != null) {
+                duplicates = true;
+            }
+        }
+    }
+
+    private transient volatile Index<E> index;
+
     public IdentifiableList() {
         super();
     }
-    
+
     public IdentifiableList(IdentifiableList<E> identifiableList) {
         super(identifiableList);
     }
-    
+
+    /**
+     * Must be called by an Identifiable whenever its id is changed from a previous non-null id, so
+     * that all the lists it might be part of rebuild their index.
+     */
+    public static void idChanged() {
+        idChanges.incrementAndGet();
+    }
+
     public String createId(String prefix) {
+        Index<E> index = getIndex();
         //Only software people start counting at zero! Everyone else starts counting at one.
-        for (int i = 1; ; i++) {
+        // The ids below the next id of the prefix are known to be taken.
+        for (int i = index.nextIds.getOrDefault(prefix, 1); ; i++) {
             if (get(prefix + i) == null) {
+                index.nextIds.put(prefix, i);
                 return prefix + i;
             }
         }
@@ -38,11 +83,277 @@ public class IdentifiableList<E extends Identifiable> extends ArrayList<E> {
         if (id == null || id.isEmpty()) {
             return null;
         }
-        for (E e : this) {
-            if (e.getId().equals(id)) {
-                return e;
+        E e = getIndex().elements.get(id);
+        if (e != null && !id.equals(e.getId())) {
+            // Renamed without notice, rebuild.
+            index = null;
+            e = getIndex().elements.get(id);
+        }
+        return e;
+    }
+
+    /**
+     * @return the valid index, rebuilt if needed.
+     */
+    private Index<E> getIndex() {
+        Index<E> index = this.index;
+        if (!isValid(index)) {
+            index = new Index<>();
+            index.modCount = modCount;
+            index.idChanges = idChanges.get();
+            for (E e : this) {
+                index.put(e, e.getId());
+            }
+            this.index = index;
+        }
+        return index;
+    }
+
+    private boolean isValid(Index<E> index) {
+        return index != null
+                && index.modCount == modCount
+                && index.idChanges == idChanges.get();
+    }
+
+    /**
+     * @return the index, if it is valid before a modification, or null.
+     */
+    private Index<E> beginModification() {
+        Index<E> index = this.index;
+        return isValid(index) ? index : null;
+    }
+
+    /**
+     * Keeps the index valid after a modification that was applied to it.
+     *
+     * @param index
+     */
+    private void endModification(Index<E> index) {
+        index.modCount = modCount;
+    }
+
+    /**
+     * Indexes an element inserted at the given position, if the index stays unambiguous.
+     *
+     * @param index
+     * @param e
+     * @param appended true if the element was appended at the end of the list
+     * @return true if the element was indexed.
+     */
+    private boolean indexInserted(Index<E> index, E e, boolean appended) {
+        String id = e.getId();
+        if (!appended && id != null && index.elements.containsKey(id)) {
+            // The inserted element might now come before the indexed one.
+            return false;
+        }
+        index.put(e, id);
+        return true;
+    }
+
+    /**
+     * Removes an element from the index, if the index stays unambiguous.
+     *
+     * @param index
+     * @param e
+     * @return true if the element was removed from the index.
+     */
+    private boolean unindexRemoved(Index<E> index, E e) {
+        if (index.duplicates) {
+            // Another element with the same id might have to take its place.
+            return false;
+        }
+        String id = e.getId();
+        if (id != null) {
+            index.elements.remove(id, e);
+            // Leaves a gap to be reused by createId().
+            index.nextIds.clear();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean add(E e) {
+        Index<E> index = beginModification();
+        super.add(e);
+        if (index != null && indexInserted(index, e, true)) {
+            endModification(index);
+        }
+        return true;
+    }
+
+    @Override
+    public void add(int position, E e) {
+        Index<E> index = beginModification();
+        boolean appended = (position == size());
+        super.add(position, e);
+        if (index != null && indexInserted(index, e, appended)) {
+            endModification(index);
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        Index<E> index = beginModification();
+        List<E> added = new ArrayList<>(c);
+        boolean modified = super.addAll(added);
+        if (index != null && modified) {
+            for (E e : added) {
+                indexInserted(index, e, true);
+            }
+            endModification(index);
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean addAll(int position, Collection<? extends E> c) {
+        // Rebuilds the index on the next lookup.
+        return super.addAll(position, c);
+    }
+
+    @Override
+    public E remove(int position) {
+        Index<E> index = beginModification();
+        E e = super.remove(position);
+        if (index != null && unindexRemoved(index, e)) {
+            endModification(index);
+        }
+        return e;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int position = indexOf(o);
+        if (position < 0) {
+            return false;
+        }
+        remove(position);
+        return true;
+    }
+
+    @Override
+    public E set(int position, E e) {
+        Index<E> index = beginModification();
+        E old = super.set(position, e);
+        // Not a structural modification, therefore the index must be updated or dropped here.
+        if (old != e) {
+            if (index != null && unindexRemoved(index, old) && indexInserted(index, e, false)) {
+                endModification(index);
+            }
+            else {
+                this.index = null;
             }
         }
-        return null;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        index = null;
+    }
+
+    // The bulk removals and reorderings are structural modifications and rebuild the index on the
+    // next lookup. They are overridden to make that explicit, in case the base class changes.
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        boolean modified = super.removeAll(c);
+        index = null;
+        return modified;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        boolean modified = super.retainAll(c);
+        index = null;
+        return modified;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        boolean modified = super.removeIf(filter);
+        index = null;
+        return modified;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        super.removeRange(fromIndex, toIndex);
+        index = null;
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        super.replaceAll(operator);
+        index = null;
+    }
+
+    @Override
+    public void sort(Comparator<? super E> c) {
+        super.sort(c);
+        index = null;
+    }
+
+    /**
+     * Returns a view that modifies this list through its public methods, so the index is kept in
+     * sync. Unlike ArrayList's views, it does not detect concurrent modification.
+     */
+    @Override
+    public List<E> subList(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size());
+        return new SubList(fromIndex, toIndex - fromIndex);
+    }
+
+    private class SubList extends AbstractList<E> implements RandomAccess {
+        private final int offset;
+        private int size;
+
+        SubList(int offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public E get(int position) {
+            Objects.checkIndex(position, size);
+            return IdentifiableList.this.get(offset + position);
+        }
+
+        @Override
+        public E set(int position, E e) {
+            Objects.checkIndex(position, size);
+            return IdentifiableList.this.set(offset + position, e);
+        }
+
+        @Override
+        public void add(int position, E e) {
+            Objects.checkIndex(position, size + 1);
+            IdentifiableList.this.add(offset + position, e);
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public E remove(int position) {
+            Objects.checkIndex(position, size);
+            E e = IdentifiableList.this.remove(offset + position);
+            size--;
+            modCount++;
+            return e;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    @Override
+    public Object clone() {
+        @SuppressWarnings("unchecked")
+        IdentifiableList<E> clone = (IdentifiableList<E>) super.clone();
+        clone.index = null;
+        return clone;
     }
 }
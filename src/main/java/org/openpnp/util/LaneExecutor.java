@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ *
+ * This file is part of OpenPnP.
+ *
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+package org.openpnp.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes tasks in lanes. A lane is keyed by the resource it serves, such as a head, a driver or a camera. Each lane
+ * has its own thread, so tasks in the same lane are executed one after the other in the order of submission, while
+ * tasks in different lanes run in parallel.
+ *
+ * A task that uses several resources is submitted to all of their lanes at once and then acts as a barrier: it waits
+ * until the earlier tasks of all its lanes are done, and it holds back the later tasks of all its lanes, until it is
+ * done itself. The task is executed on the thread of its first lane. Because tasks are entered into all their lanes
+ * atomically, barriers always have the same order in the lanes they share and cannot deadlock.
+ */
+public class LaneExecutor {
+    private final String name;
+    private final Map<Object, ThreadPoolExecutor> lanes = new HashMap<>();
+    private final Map<Thread, Object> laneThreads = new ConcurrentHashMap<>();
+
+    /**
+     * Synchronizes the threads of the lanes of a barrier task.
+     */
+    private static class Barrier {
+        final CountDownLatch arrived;
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<LaneTask<?>> tasks = new ArrayList<>();
+        volatile boolean cancelled;
+
+        Barrier(int lanes) {
+            arrived = new CountDownLatch(lanes);
+        }
+
+        <T> T execute(Callable<T> callable) throws Exception {
+            arrived.countDown();
+            try {
+                arrived.await();
+                if (cancelled) {
+                    throw new CancellationException("Task cancelled in another lane.");
+                }
+                return callable.call();
+            }
+            finally {
+                done.countDown();
+            }
+        }
+
+        Object hold() throws InterruptedException {
+            arrived.countDown();
+            done.await();
+            return null;
+        }
+
+        /**
+         * Cancels the barrier task in all its lanes and releases the threads that are already waiting.
+         */
+        void cancel() {
+            cancelled = true;
+            for (LaneTask<?> task : tasks) {
+                task.cancel(false);
+            }
+            while (arrived.getCount() > 0) {
+                arrived.countDown();
+            }
+            done.countDown();
+        }
+    }
+
+    private static class LaneTask<T> extends FutureTask<T> {
+        final Barrier barrier;
+        // The task proper, as opposed to the tasks holding the other lanes of a barrier.
+        final boolean primary;
+
+        LaneTask(Callable<T> callable, Barrier barrier, boolean primary) {
+            super(callable);
+            this.barrier = barrier;
+            this.primary = primary;
+        }
+
+        void cancelTask() {
+            if (barrier != null) {
+                barrier.cancel();
+            }
+            else {
+                cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @param name The name of the executor, the lane threads are named after it.
+     */
+    public LaneExecutor(String name) {
+        this.name = name;
+    }
+
+    private ThreadPoolExecutor getLaneExecutor(Object lane) {
+        ThreadPoolExecutor executor = lanes.get(lane);
+        if (executor == null || executor.isShutdown()) {
+            executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), (runnable) -> {
+                        return new Thread(() -> {
+                            laneThreads.put(Thread.currentThread(), lane);
+                            try {
+                                runnable.run();
+                            }
+                            finally {
+                                laneThreads.remove(Thread.currentThread());
+                            }
+                        }, name+" "+lane);
+                    });
+            lanes.put(lane, executor);
+        }
+        return executor;
+    }
+
+    /**
+     * Submits a task to the given lanes. If more than one lane is given, the task is a barrier across these lanes,
+     * executed on the thread of the first lane.
+     *
+     * @param callable
+     * @param lanes The keys of the lanes, at least one.
+     * @return
+     */
+    public synchronized <T> Future<T> submit(Callable<T> callable, Object... lanes) {
+        Object[] distinctLanes = Arrays.stream(lanes).distinct().toArray();
+        if (distinctLanes.length == 0) {
+            throw new IllegalArgumentException("At least one lane must be given.");
+        }
+        if (distinctLanes.length == 1) {
+            LaneTask<T> task = new LaneTask<>(callable, null, true);
+            getLaneExecutor(distinctLanes[0]).execute(task);
+            return task;
+        }
+        Barrier barrier = new Barrier(distinctLanes.length);
+        LaneTask<T> task = new LaneTask<>(() -> barrier.execute(callable), barrier, true);
+        barrier.tasks.add(task);
+        for (int i = 1; i < distinctLanes.length; i++) {
+            barrier.tasks.add(new LaneTask<>(() -> barrier.hold(), barrier, false));
+        }
+        for (int i = 0; i < distinctLanes.length; i++) {
+            getLaneExecutor(distinctLanes[i]).execute(barrier.tasks.get(i));
+        }
+        return task;
+    }
+
+    /**
+     * @param thread
+     * @return The key of the lane, if the thread is a lane thread, null otherwise.
+     */
+    public Object getLane(Thread thread) {
+        if (thread == null) {
+            return null;
+        }
+        return laneThreads.get(thread);
+    }
+
+    /**
+     * @return True if any of the lanes has tasks queued, that are not yet executing.
+     */
+    public synchronized boolean hasQueuedTasks() {
+        for (ThreadPoolExecutor executor : lanes.values()) {
+            for (Runnable runnable : executor.getQueue()) {
+                if (runnable instanceof LaneTask
+                        && ((LaneTask<?>) runnable).primary
+                        && !((LaneTask<?>) runnable).isCancelled()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all the queued tasks of the given lanes and cancels their Futures. Barrier tasks are cancelled in all
+     * their lanes. Tasks that are already executing are not affected.
+     *
+     * @param lanes
+     */
+    public synchronized void cancelQueuedTasks(Object... lanes) {
+        for (Object lane : lanes) {
+            ThreadPoolExecutor executor = this.lanes.get(lane);
+            if (executor != null) {
+                for (Runnable runnable : new ArrayList<>(executor.getQueue())) {
+                    executor.remove(runnable);
+                    if (runnable instanceof LaneTask) {
+                        ((LaneTask<?>) runnable).cancelTask();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Shuts the lane down, interrupting its thread. Tasks submitted later will start a new lane thread.
+     *
+     * @param lane
+     */
+    public synchronized void shutdownNow(Object lane) {
+        ThreadPoolExecutor executor = lanes.get(lane);
+        if (executor != null) {
+            for (Runnable runnable : executor.shutdownNow()) {
+                if (runnable instanceof LaneTask) {
+                    ((LaneTask<?>) runnable).cancelTask();
+                }
+            }
+        }
+    }
+}
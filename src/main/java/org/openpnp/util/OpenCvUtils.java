@@ -15,8 +15,6 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
-import javax.imageio.ImageIO;
-
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
@@ -24,7 +22,6 @@ import org.opencv.core.Point;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
-import org.openpnp.model.Configuration;
 import org.openpnp.model.Footprint;
 import org.openpnp.model.Length;
 import org.openpnp.model.Location;
@@ -77,6 +74,13 @@ public class OpenCvUtils {
     }
 
     public static Mat toMat(BufferedImage img) {
+        if (SharedImage.isShared(img)) {
+            // Copy natively, without going through the Java heap.
+            Mat shared = SharedImage.getMat(img);
+            Mat mat = shared.clone();
+            shared.release();
+            return mat;
+        }
         Integer type = null;
         if (img.getType() == BufferedImage.TYPE_BYTE_GRAY) {
             type = CvType.CV_8UC1;
@@ -93,6 +97,20 @@ public class OpenCvUtils {
         return mat;
     }
 
+    /**
+     * Like toMat(), but if the image is a SharedImage, the returned Mat shares its memory instead of being a copy.
+     * The caller must therefore not modify the Mat, but should still release it.
+     * 
+     * @param img
+     * @return
+     */
+    public static Mat toMatView(BufferedImage img) {
+        if (SharedImage.isShared(img)) {
+            return SharedImage.getMat(img);
+        }
+        return toMat(img);
+    }
+
     /**
      * Finds circles of the given min and maxDiameter, no less than minDistance apart by capturing
      * an image from the given Camera. Results are returned as a List of Location where X and Y
@@ -300,26 +318,16 @@ public class OpenCvUtils {
         return mat;
     }
     
-    public synchronized static void saveDebugImage(Class implementationClass, String function, String identifier, BufferedImage img) {
+    /**
+     * Saves a debug image to the log/vision directory, if debug logging is enabled. The image is copied and written 
+     * in the background by the DebugImageWriter, in the configured format.  
+     */
+    public static void saveDebugImage(Class implementationClass, String function, String identifier, BufferedImage img) {
         if (img == null) {
             return;
         }
         if (LogUtils.isDebugEnabled()) {
-            try {
-                File file = new File(Configuration.get().getConfigurationDirectory(), "log");
-                file = new File(file, "vision");
-                file.mkdirs();
-                DateFormat df = new SimpleDateFormat("YYYY-MM-dd'T'HH.mm.ss.SSS");
-                file = new File(file, String.format("%s_%s_%s_%s.png", 
-                        implementationClass.getSimpleName(), 
-                        function, 
-                        df.format(new Date()), 
-                        identifier));
-                ImageIO.write(img, "PNG", file);
-            }
-            catch (Exception e) {
-                e.printStackTrace();
-            }
+            DebugImageWriter.get().writeVision(getDebugImageFile(implementationClass, function, identifier), img);
         }
     }
 
@@ -327,7 +335,19 @@ public class OpenCvUtils {
         if (mat == null) {
             return;
         }
-        saveDebugImage(implementationClass, function, identifier, OpenCvUtils.toBufferedImage(mat));
+        if (LogUtils.isDebugEnabled()) {
+            DebugImageWriter.get().writeVision(getDebugImageFile(implementationClass, function, identifier), mat);
+        }
+    }
+
+    private static File getDebugImageFile(Class implementationClass, String function, String identifier) {
+        DateFormat df = new SimpleDateFormat("YYYY-MM-dd'T'HH.mm.ss.SSS");
+        return new File(DebugImageWriter.getVisionDirectory(), String.format("%s_%s_%s_%s%s", 
+                implementationClass.getSimpleName(), 
+                function, 
+                df.format(new Date()), 
+                identifier,
+                DebugImageWriter.get().getFormat().getExtension()));
     }
     
     private enum MinMaxState {
@@ -0,0 +1,213 @@
+package org.openpnp.util;
+
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Images where the BufferedImage raster and OpenCV Mats share the same native memory, a direct ByteBuffer. This
+ * lets a frame pass from OpenCV to a BufferedImage and back without copying the pixels through the Java heap.
+ *
+ * The layout is the same as TYPE_3BYTE_BGR resp. TYPE_BYTE_GRAY, but the image type is TYPE_CUSTOM. Java2D can
+ * read and draw these images, but drawing is much slower than with the standard types, so shared images should
+ * only be used for frames that are converted to Mat for further processing, like the raw frames of a camera with
+ * image transforms.
+ *
+ * The shared memory is released when the BufferedImage is garbage collected. It is then pooled and reused for new
+ * images of the same size, so a camera does not allocate and free native memory on every frame. Mats obtained by 
+ * getMat() must not be used after the image is no longer referenced.
+ */
+public class SharedImage {
+    /**
+     * Maximum number of free buffers pooled per size.
+     */
+    private static final int maxPooledBuffers = 4;
+
+    /**
+     * The buffers of the images that were garbage collected, ready to be pooled.
+     */
+    private static final ReferenceQueue<SharedDataBuffer> collected = new ReferenceQueue<>();
+    /**
+     * Keeps the references alive until they are enqueued.
+     */
+    private static final Set<BufferReference> references = ConcurrentHashMap.newKeySet();
+    /**
+     * Free buffers by size. Guarded by itself.
+     */
+    private static final Map<Integer, Deque<ByteBuffer>> pool = new HashMap<>();
+    private static long reusedCount;
+
+    /**
+     * Holds the buffer of a SharedDataBuffer, so it can be pooled after the SharedDataBuffer is garbage collected.
+     */
+    private static class BufferReference extends PhantomReference<SharedDataBuffer> {
+        final ByteBuffer buffer;
+
+        BufferReference(SharedDataBuffer dataBuffer, ByteBuffer buffer) {
+            super(dataBuffer, collected);
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * DataBuffer on a direct ByteBuffer. Holds the ByteBuffer, so the memory stays valid as long as the raster is
+     * referenced.
+     */
+    public static class SharedDataBuffer extends DataBuffer {
+        private final ByteBuffer buffer;
+        private final int width;
+        private final int height;
+        private final int cvType;
+
+        SharedDataBuffer(int width, int height, int cvType) {
+            super(DataBuffer.TYPE_BYTE, width*height*CvType.channels(cvType));
+            this.buffer = allocate(getSize());
+            this.width = width;
+            this.height = height;
+            this.cvType = cvType;
+            references.add(new BufferReference(this, buffer));
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            return buffer.get(i + offsets[bank]) & 0xFF;
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            buffer.put(i + offsets[bank], (byte) val);
+        }
+
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        /**
+         * @return A new Mat header on the shared memory. Releasing it does not affect the image.
+         */
+        public Mat getMat() {
+            return new Mat(height, width, cvType, buffer);
+        }
+    }
+
+    /**
+     * @param size
+     * @return A pooled buffer of the size, or a newly allocated one.
+     */
+    private static ByteBuffer allocate(int size) {
+        synchronized (pool) {
+            reclaim();
+            Deque<ByteBuffer> buffers = pool.get(size);
+            ByteBuffer buffer = (buffers != null ? buffers.poll() : null);
+            if (buffer != null) {
+                reusedCount++;
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Pools the buffers of the images that were garbage collected.
+     */
+    private static void reclaim() {
+        BufferReference reference;
+        while ((reference = (BufferReference) collected.poll()) != null) {
+            references.remove(reference);
+            Deque<ByteBuffer> buffers = pool.computeIfAbsent(reference.buffer.capacity(), 
+                    (size) -> new ArrayDeque<>());
+            if (buffers.size() < maxPooledBuffers) {
+                buffers.push(reference.buffer);
+            }
+            // Otherwise it is freed with the reference.
+        }
+    }
+
+    /**
+     * @return The number of images created with a pooled buffer.
+     */
+    public static long getReusedCount() {
+        synchronized (pool) {
+            return reusedCount;
+        }
+    }
+
+    /**
+     * Creates a new shared image. The memory may be reused from a garbage collected image, so the pixels are 
+     * undefined.
+     *
+     * @param width
+     * @param height
+     * @param cvType CvType.CV_8UC3 for BGR images, CvType.CV_8UC1 for gray images.
+     * @return
+     */
+    public static BufferedImage create(int width, int height, int cvType) {
+        ColorModel colorModel;
+        int[] bandOffsets;
+        if (cvType == CvType.CV_8UC3) {
+            colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                    new int[] {8, 8, 8}, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            bandOffsets = new int[] {2, 1, 0};
+        }
+        else if (cvType == CvType.CV_8UC1) {
+            colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY),
+                    new int[] {8}, false, true, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            bandOffsets = new int[] {0};
+        }
+        else {
+            throw new Error(String.format("Unsupported shared image type %d", cvType));
+        }
+        SharedDataBuffer dataBuffer = new SharedDataBuffer(width, height, cvType);
+        SampleModel sampleModel = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, width, height,
+                bandOffsets.length, width*bandOffsets.length, bandOffsets);
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, dataBuffer, new Point());
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * Creates a shared image with a copy of the Mat. The copy is done natively by OpenCV.
+     *
+     * @param mat A CV_8UC3 or CV_8UC1 Mat.
+     * @return
+     */
+    public static BufferedImage fromMat(Mat mat) {
+        BufferedImage image = create(mat.cols(), mat.rows(), mat.type());
+        Mat shared = getMat(image);
+        mat.copyTo(shared);
+        shared.release();
+        return image;
+    }
+
+    public static boolean isShared(BufferedImage image) {
+        return image != null && image.getRaster().getDataBuffer() instanceof SharedDataBuffer;
+    }
+
+    /**
+     * @param image A shared image.
+     * @return A new Mat header on the memory of the image. Changes to the Mat are visible in the image and vice
+     * versa. Releasing the Mat does not affect the image.
+     */
+    public static Mat getMat(BufferedImage image) {
+        return ((SharedDataBuffer) image.getRaster().getDataBuffer()).getMat();
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ *
+ * This file is part of OpenPnP.
+ *
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+package org.openpnp.util;
+
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A template text with variables in the format {Name:Format}, as used by TextUtils.substituteVar(), parsed once
+ * into a list of literal and variable tokens. Rendering a template with a set of Values gives the same result as
+ * calling TextUtils.substituteVar() for each of the values in the order they were set, but without scanning the
+ * text with regular expressions again and again.
+ *
+ * Substituting one variable after the other can create new variables from nested curly brackets, or from
+ * substituted values that contain curly brackets. Templates and values where this may happen are rendered by
+ * sequential substitution, so the result is always the same.
+ */
+public class TextTemplate {
+    private static final Pattern variablePattern = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}");
+    private static final int maxCacheSize = 1000;
+    private static final Map<String, TextTemplate> cache = new ConcurrentHashMap<>();
+
+    private final String template;
+    private final List<Token> tokens = new ArrayList<>();
+    private final Set<String> variables = new HashSet<>();
+    private final boolean compiled;
+
+    private static class Token {
+        final String text;
+        final String name;
+        final String format;
+
+        Token(String text, String name, String format) {
+            this.text = text;
+            this.name = name;
+            this.format = format;
+        }
+    }
+
+    /**
+     * Variable values to render a template with. A Values object can be reused for many renderings, to avoid
+     * allocations.
+     */
+    public static class Values {
+        private final Map<String, Object> values = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final StringBuilder sb = new StringBuilder();
+        private final StringBuilder valueSb = new StringBuilder();
+        private final Formatter formatter = new Formatter(valueSb, (Locale) null);
+
+        /**
+         * Sets the value of a variable. As with sequential substitution, the first value set for a name wins.
+         * A null value replaces the variable with "".
+         *
+         * @param name
+         * @param value
+         * @return this
+         */
+        public Values set(String name, Object value) {
+            if (!values.containsKey(name)) {
+                values.put(name, value);
+                names.add(name);
+            }
+            return this;
+        }
+
+        public boolean isSet(String name) {
+            return values.containsKey(name);
+        }
+
+        public void clear() {
+            values.clear();
+            names.clear();
+        }
+    }
+
+    private TextTemplate(String template) {
+        this.template = template;
+        boolean compiled = true;
+        Matcher matcher = variablePattern.matcher(template);
+        int pos = 0;
+        while (matcher.find()) {
+            if (matcher.start() > pos) {
+                String literal = template.substring(pos, matcher.start());
+                compiled = compiled && isSafeLiteral(literal);
+                tokens.add(new Token(literal, null, null));
+            }
+            String name = matcher.group(1);
+            String format = matcher.group(2);
+            compiled = compiled && (format == null || isSafeLiteral(format));
+            tokens.add(new Token(matcher.group(), name, format == null ? "%s" : format));
+            variables.add(name);
+            pos = matcher.end();
+        }
+        if (pos < template.length()) {
+            String literal = template.substring(pos);
+            compiled = compiled && isSafeLiteral(literal);
+            tokens.add(new Token(literal, null, null));
+        }
+        this.compiled = compiled;
+    }
+
+    /**
+     * Text that cannot form or nest variables, neither by itself, nor when a neighboring variable is substituted.
+     */
+    private static boolean isSafeLiteral(String text) {
+        return text.indexOf('{') < 0 && text.indexOf('}') < 0
+                && !text.contains("<((") && !text.contains("))>");
+    }
+
+    /**
+     * A substituted value that cannot form variables, and that Matcher.appendReplacement() takes literally.
+     */
+    private static boolean isSafeValue(CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '{' || ch == '}' || ch == '$' || ch == '\\' || ch == '<' || ch == '>') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param template
+     * @return The parsed template, from the cache, if it was parsed before.
+     */
+    public static TextTemplate compile(String template) {
+        if (template == null) {
+            return null;
+        }
+        TextTemplate textTemplate = cache.get(template);
+        if (textTemplate == null) {
+            textTemplate = new TextTemplate(template);
+            if (cache.size() >= maxCacheSize) {
+                cache.clear();
+            }
+            cache.put(template, textTemplate);
+        }
+        return textTemplate;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @param name
+     * @return true if the template has a variable with the given name.
+     */
+    public boolean hasVariable(String name) {
+        return variables.contains(name);
+    }
+
+    /**
+     * @return true if the template is rendered from its tokens, false if it is rendered by sequential substitution.
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Renders the template with the given values. Variables without a value are left in the text as is.
+     *
+     * @param values
+     * @return
+     */
+    public String render(Values values) {
+        if (compiled) {
+            StringBuilder sb = values.sb;
+            sb.setLength(0);
+            for (Token token : tokens) {
+                if (token.name == null || !values.values.containsKey(token.name)) {
+                    sb.append(token.text);
+                    continue;
+                }
+                Object value = values.values.get(token.name);
+                if (value == null) {
+                    continue;
+                }
+                CharSequence v = formatValue(values, token.format, value);
+                if (!isSafeValue(v)) {
+                    return substitute(values);
+                }
+                sb.append(v);
+            }
+            return sb.toString();
+        }
+        return substitute(values);
+    }
+
+    private static CharSequence formatValue(Values values, String format, Object value) {
+        if (format.equals("%s") && value instanceof String) {
+            return (String) value;
+        }
+        values.valueSb.setLength(0);
+        values.formatter.format(format, value);
+        return values.valueSb;
+    }
+
+    /**
+     * Renders the template by sequential substitution, as with TextUtils.substituteVar().
+     */
+    private String substitute(Values values) {
+        String text = template;
+        for (String name : values.names) {
+            text = TextUtils.substituteVar(text, name, values.values.get(name));
+        }
+        return text;
+    }
+}
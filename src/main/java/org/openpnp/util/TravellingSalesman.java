@@ -20,8 +20,11 @@
 package org.openpnp.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
@@ -43,6 +46,12 @@ import org.openpnp.model.Location;
  * solutions a lot, because it allows the solver to quickly "untwist" routes at (or near) crossing points. These crossing 
  * points appear frequently for the rectangularly arrayed Location patterns assumed to be typically found on a PNP machine. 
  * 
+ * For larger problems, {@link #solveParallel(int, long)} can be used instead. It runs several independent annealing 
+ * chains in parallel, each with a faster cooling schedule, and then improves each route with deterministic 2-opt and 
+ * Or-opt local search. The local search only considers moves towards the nearest neighbors of each Location, so it 
+ * stays sub-quadratic on large inputs. The parallel solver has a wall-clock budget and returns the best route of all 
+ * the chains. It is opt-in, {@link #solve()} always uses the single, repeatable annealing chain. 
+ * 
  * @param <T> The class of the objects to be travelled to. Use a Locator<T> to query the Location from these objects.  
  */
 public class TravellingSalesman<T> {
@@ -66,6 +75,7 @@ public class TravellingSalesman<T> {
         for (int i = 0; i < this.travelSize; i++) {
             this.travel.add(new TravelLocation(i, this.locator.getLocation(travelInput.get(i))));
         }
+        this.nodes = this.travel.toArray(new TravelLocation[this.travelSize]);
         // register start/end Locations
         this.startLocation = startLocation != null ? new TravelLocation(-1, startLocation) : null;
         this.endLocation = endLocation != null ? new TravelLocation(this.travelSize, endLocation) : null;
@@ -88,6 +98,16 @@ public class TravellingSalesman<T> {
      * best distance to avoid excessive copies due to rounding effects.
      */
     private static final double globalBestDistanceScalingFactor = 1.0 - 1e-5;
+
+    /**
+     * Number of nearest neighbors considered by the local search for each Location.
+     */
+    private static final int neighborListSize = 10;
+
+    /**
+     * Minimal improvement for a local search move to be applied, avoids cycling due to rounding effects.
+     */
+    private static final double localSearchEpsilon = 1e-9;
     
     /**
      * Plain old data TravelLocation for faster processing. Improved solving by a factor of 6 from using
@@ -116,6 +136,7 @@ public class TravellingSalesman<T> {
     private final TravelLocation startLocation;
     private final TravelLocation endLocation;
     private final List<TravelLocation> travel;
+    private final TravelLocation[] nodes;
     
     private long solverDuration = 0; 
 
@@ -139,6 +160,15 @@ public class TravellingSalesman<T> {
         return la.getLinearDistanceTo(lb);
     }
 
+    private double getNodeDistance(int a, int b) {
+        TravelLocation la = (a < 0 ? this.startLocation : a >= this.travelSize ? this.endLocation : this.nodes[a]);
+        TravelLocation lb = (b < 0 ? this.startLocation : b >= this.travelSize ? this.endLocation : this.nodes[b]);
+        if (la == null || lb == null) {
+            return 0.0;
+        }
+        return la.getLinearDistanceTo(lb);
+    }
+
     public double getTravellingDistance() {
         double distance = 0.0;
         for (int i = 0; i <= this.travelSize; i++) {
@@ -311,12 +341,405 @@ public class TravellingSalesman<T> {
         return bestDistance;
     }
 
+    /**
+     * Solve using the default heuristics for the simulated annealing. 
+     * 
+     * @return The distance of the best route.
+     */
     public double solve() {
         // heuristic for the simulated annealing params
         int size = Math.max(1, this.travelSize);
         return simulateAnnealing(getTravellingDistance()/size*2.0, 1.0-0.001/size, size*1000+10000000);
     }
 
+    /**
+     * Solve using independent annealing chains running in parallel, each followed by 2-opt and Or-opt local search. 
+     * The chains are seeded deterministically, so the result is repeatable unless the budget is exhausted. 
+     * 
+     * @param chains Number of annealing chains. 
+     * @param maxMillis Wall-clock budget in milliseconds. When exhausted, the chains stop and the best route so far 
+     * is returned. 
+     * @return The distance of the best route.
+     */
+    public double solveParallel(int chains, long maxMillis) {
+        long startTime = System.currentTimeMillis();
+        if (this.travelSize > 3) {
+            long deadline = System.nanoTime() + maxMillis*1000000L;
+            int[][] neighbors = getNeighborLists(Math.min(neighborListSize, this.travelSize - 1));
+            int[] initialRoute = new int[this.travelSize];
+            for (int i = 0; i < this.travelSize; i++) {
+                initialRoute[i] = this.travel.get(i).index;
+            }
+            // heuristic for the simulated annealing params, cooling ten times faster than the single chain, as the 
+            // local search takes care of the fine tuning
+            int size = this.travelSize;
+            double startingTemperature = getTravellingDistance()/size*2.0;
+            double coolingRate = 1.0-0.01/size;
+            int maxIterations = size*100+1000000;
+            List<CompletableFuture<Chain>> futures = new ArrayList<>();
+            for (int c = 0; c < Math.max(1, chains); c++) {
+                final int seed = c;
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    Chain chain = new Chain(initialRoute, neighbors, seed, deadline);
+                    chain.anneal(startingTemperature, coolingRate, maxIterations);
+                    chain.improve();
+                    return chain;
+                }, ForkJoinPool.commonPool()));
+            }
+            Chain best = null;
+            for (CompletableFuture<Chain> future : futures) {
+                Chain chain = future.join();
+                if (best == null || chain.distance < best.distance) {
+                    best = chain;
+                }
+            }
+            this.travel.clear();
+            for (int node : best.route) {
+                this.travel.add(this.nodes[node]);
+            }
+        }
+        double bestDistance = getTravellingDistance();
+        if (debugLevel > 0) {
+            System.out.println("Parallel solver, size: "+this.travelSize+", chains: "+chains+", distance of travel: " + bestDistance);
+        }
+        long endTime = System.currentTimeMillis();
+        this.solverDuration = endTime - startTime;
+        return bestDistance;
+    }
+
+    /**
+     * Compute the nearest neighbors of each Location, using a grid of buckets in X/Y.  
+     * 
+     * @param k Number of neighbors per Location.
+     * @return The neighbor indices of each Location, nearest first.
+     */
+    private int[][] getNeighborLists(int k) {
+        int n = this.travelSize;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (TravelLocation l : this.nodes) {
+            minX = Math.min(minX, l.x);
+            minY = Math.min(minY, l.y);
+            maxX = Math.max(maxX, l.x);
+            maxY = Math.max(maxY, l.y);
+        }
+        // aim for about two Locations per cell
+        int cells = Math.max(1, (int) Math.sqrt(n/2.0));
+        double cellSize = Math.max(maxX - minX, maxY - minY)/cells;
+        if (cellSize <= 0.0) {
+            cellSize = 1.0;
+        }
+        int gridX = (int) ((maxX - minX)/cellSize) + 1;
+        int gridY = (int) ((maxY - minY)/cellSize) + 1;
+        // bucket the Locations by cell, counting sort style
+        int[] cellOf = new int[n];
+        int[] cellStart = new int[gridX*gridY + 1];
+        for (int i = 0; i < n; i++) {
+            int cx = Math.min(gridX - 1, (int) ((this.nodes[i].x - minX)/cellSize));
+            int cy = Math.min(gridY - 1, (int) ((this.nodes[i].y - minY)/cellSize));
+            cellOf[i] = cy*gridX + cx;
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < gridX*gridY; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] cellItems = new int[n];
+        int[] fill = Arrays.copyOf(cellStart, gridX*gridY);
+        for (int i = 0; i < n; i++) {
+            cellItems[fill[cellOf[i]]++] = i;
+        }
+        int[][] neighbors = new int[n][];
+        int[] nearest = new int[k];
+        double[] nearestDistance = new double[k];
+        for (int a = 0; a < n; a++) {
+            int count = 0;
+            int cx = cellOf[a] % gridX;
+            int cy = cellOf[a] / gridX;
+            for (int r = 0; r <= Math.max(gridX, gridY); r++) {
+                // all Locations outside of ring r are at least r cells away
+                if (count == k && nearestDistance[k - 1] <= (r - 1)*cellSize) {
+                    break;
+                }
+                for (int y = cy - r; y <= cy + r; y++) {
+                    if (y < 0 || y >= gridY) {
+                        continue;
+                    }
+                    boolean edge = (y == cy - r || y == cy + r);
+                    for (int x = cx - r; x <= cx + r; x += (edge || r == 0 ? 1 : 2*r)) {
+                        if (x < 0 || x >= gridX) {
+                            continue;
+                        }
+                        int cell = y*gridX + x;
+                        for (int j = cellStart[cell]; j < cellStart[cell + 1]; j++) {
+                            int b = cellItems[j];
+                            if (b == a) {
+                                continue;
+                            }
+                            double distance = this.nodes[a].getLinearDistanceTo(this.nodes[b]);
+                            if (count < k || distance < nearestDistance[count - 1]) {
+                                // insertion into the sorted list
+                                int p = (count < k ? count++ : k - 1);
+                                while (p > 0 && nearestDistance[p - 1] > distance) {
+                                    nearest[p] = nearest[p - 1];
+                                    nearestDistance[p] = nearestDistance[p - 1];
+                                    p--;
+                                }
+                                nearest[p] = b;
+                                nearestDistance[p] = distance;
+                            }
+                        }
+                    }
+                }
+            }
+            neighbors[a] = Arrays.copyOf(nearest, count);
+        }
+        return neighbors;
+    }
+
+    /**
+     * One annealing chain of the parallel solver, working on its own route of Location indices. Positions -1 and 
+     * travelSize denote the start and end Locations.  
+     */
+    private class Chain {
+        private final int[] route;
+        private final int[] position;
+        private final int[][] neighbors;
+        private final Random rnd;
+        private final long deadline;
+        private double distance;
+
+        private Chain(int[] initialRoute, int[][] neighbors, int seed, long deadline) {
+            this.route = initialRoute.clone();
+            this.position = new int[route.length];
+            this.neighbors = neighbors;
+            this.rnd = new Random(seed);
+            this.deadline = deadline;
+            updatePositions(0, route.length - 1);
+            this.distance = getRouteDistance();
+        }
+
+        private int node(int p) {
+            return (p < 0 ? -1 : p >= route.length ? route.length : route[p]);
+        }
+
+        private double d(int p, int q) {
+            return getNodeDistance(node(p), node(q));
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() > deadline;
+        }
+
+        private double getRouteDistance() {
+            double distance = 0.0;
+            for (int p = 0; p <= route.length; p++) {
+                distance += d(p - 1, p);
+            }
+            return distance;
+        }
+
+        private void updatePositions(int from, int to) {
+            for (int p = from; p <= to; p++) {
+                position[route[p]] = p;
+            }
+        }
+
+        private double getReverseDistance(int lo, int hi) {
+            return d(lo - 1, hi) + d(lo, hi + 1) - d(lo - 1, lo) - d(hi, hi + 1);
+        }
+
+        private void reverse(int lo, int hi) {
+            for (int i = lo, j = hi; i < j; i++, j--) {
+                int s = route[i];
+                route[i] = route[j];
+                route[j] = s;
+            }
+            updatePositions(lo, hi);
+        }
+
+        private double getSwapDistance(int a, int b) {
+            if (a + 1 == b) {
+                return d(a - 1, b) + d(b, a) + d(a, b + 1) 
+                        - d(a - 1, a) - d(a, b) - d(b, b + 1);
+            }
+            return d(a - 1, b) + d(b, a + 1) + d(b - 1, a) + d(a, b + 1) 
+                    - d(a - 1, a) - d(a, a + 1) - d(b - 1, b) - d(b, b + 1);
+        }
+
+        /**
+         * Simulated annealing with swaps and twists, like {@link TravellingSalesman#simulateAnnealing(double, double, int)}.
+         */
+        private void anneal(double t, double coolingRate, int maxIterations) {
+            int[] bestRoute = route.clone();
+            double bestDistance = globalBestDistanceScalingFactor * distance;
+            for (int i = maxIterations; i > 0 && t > 0.1; i--) {
+                if ((i & 0x3ff) == 0 && isExpired()) {
+                    break;
+                }
+                int a = rnd.nextInt(route.length);
+                int b;
+                do {
+                    b = rnd.nextInt(route.length);
+                }
+                while (b == a);
+                if (a > b) {
+                    int s = a;
+                    a = b;
+                    b = s;
+                }
+                double swapDistance = getSwapDistance(a, b);
+                double twistDistance = getReverseDistance(a, b);
+                boolean twist = (twistDistance < swapDistance);
+                if (twist) {
+                    swapDistance = twistDistance;
+                }
+                if (swapDistance < 0.0 || (Math.exp(-swapDistance / t) >= rnd.nextDouble())) {
+                    if (twist) {
+                        reverse(a, b);
+                    }
+                    else {
+                        int s = route[a];
+                        route[a] = route[b];
+                        route[b] = s;
+                        position[route[a]] = a;
+                        position[route[b]] = b;
+                    }
+                    distance += swapDistance;
+                    if (distance < bestDistance) {
+                        bestDistance = globalBestDistanceScalingFactor * distance;
+                        System.arraycopy(route, 0, bestRoute, 0, route.length);
+                    }
+                }
+                t *= coolingRate;
+            }
+            System.arraycopy(bestRoute, 0, route, 0, route.length);
+            updatePositions(0, route.length - 1);
+            distance = getRouteDistance();
+        }
+
+        /**
+         * Alternate 2-opt and Or-opt passes until neither improves the route or the budget is exhausted. 
+         */
+        private void improve() {
+            boolean improved = true;
+            while (improved) {
+                improved = twoOpt();
+                improved |= orOpt();
+                if (isExpired()) {
+                    break;
+                }
+            }
+            distance = getRouteDistance();
+        }
+
+        /**
+         * For each Location, try to reverse a segment so it becomes adjacent to one of its neighbors.
+         */
+        private boolean twoOpt() {
+            boolean improved = false;
+            for (int a = 0; a < route.length; a++) {
+                for (int c : neighbors[a]) {
+                    int i = position[a];
+                    int j = position[c];
+                    int lo, hi;
+                    if (j > i) {
+                        lo = i + 1;
+                        hi = j;
+                    }
+                    else {
+                        lo = j;
+                        hi = i - 1;
+                    }
+                    if (lo >= hi) {
+                        continue;
+                    }
+                    double delta = getReverseDistance(lo, hi);
+                    if (delta < -localSearchEpsilon) {
+                        reverse(lo, hi);
+                        distance += delta;
+                        improved = true;
+                    }
+                }
+            }
+            return improved;
+        }
+
+        /**
+         * For each Location, try to move the segment of up to three Locations starting there, next to one of its 
+         * neighbors, in either direction.
+         */
+        private boolean orOpt() {
+            boolean improved = false;
+            for (int a = 0; a < route.length; a++) {
+                for (int length = 1; length <= 3; length++) {
+                    int i = position[a];
+                    int e = i + length - 1;
+                    if (e >= route.length) {
+                        break;
+                    }
+                    double removeDistance = d(i - 1, i) + d(e, e + 1) - d(i - 1, e + 1);
+                    double bestDelta = -localSearchEpsilon;
+                    int bestP = 0;
+                    boolean bestReversed = false;
+                    for (int c : neighbors[a]) {
+                        int j = position[c];
+                        // insert between (j - 1, j) or (j, j + 1)
+                        for (int p = j - 1; p <= j; p++) {
+                            if (p >= i - 1 && p <= e) {
+                                continue;
+                            }
+                            double edgeDistance = d(p, p + 1);
+                            double forward = d(p, i) + d(e, p + 1) - edgeDistance - removeDistance;
+                            double reversed = d(p, e) + d(i, p + 1) - edgeDistance - removeDistance;
+                            if (forward < bestDelta) {
+                                bestDelta = forward;
+                                bestP = p;
+                                bestReversed = false;
+                            }
+                            if (reversed < bestDelta) {
+                                bestDelta = reversed;
+                                bestP = p;
+                                bestReversed = true;
+                            }
+                        }
+                    }
+                    if (bestDelta < -localSearchEpsilon) {
+                        moveSegment(i, e, bestP, bestReversed);
+                        distance += bestDelta;
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+            return improved;
+        }
+
+        /**
+         * Move the segment [i, e] to be between positions p and p + 1, optionally reversed.
+         */
+        private void moveSegment(int i, int e, int p, boolean reversed) {
+            int length = e - i + 1;
+            int[] segment = Arrays.copyOfRange(route, i, e + 1);
+            if (reversed) {
+                for (int k = 0; k < length/2; k++) {
+                    int s = segment[k];
+                    segment[k] = segment[length - 1 - k];
+                    segment[length - 1 - k] = s;
+                }
+            }
+            if (p < i) {
+                System.arraycopy(route, p + 1, route, p + 1 + length, i - p - 1);
+                System.arraycopy(segment, 0, route, p + 1, length);
+                updatePositions(p + 1, e);
+            }
+            else {
+                System.arraycopy(route, e + 1, route, i, p - e);
+                System.arraycopy(segment, 0, route, p - length + 1, length);
+                updatePositions(i, p);
+            }
+        }
+    }
+
     public List<T> getTravel() {
         // convert the working list back to a list of the input objects using the now rearranged t.index order. 
         List<T> travelOutput = new ArrayList<>();
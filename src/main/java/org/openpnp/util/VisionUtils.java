@@ -29,6 +29,7 @@ import org.openpnp.spi.Camera;
 import org.openpnp.spi.HeadMountable;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.PartAlignment;
+import org.openpnp.spi.PartAlignment.DeferredPartAlignmentOffset;
 import org.openpnp.spi.PartAlignment.PartAlignmentOffset;
 import org.openpnp.vision.pipeline.CvPipeline;
 
@@ -281,6 +282,52 @@ public class VisionUtils {
         }
     }
 
+    /**
+     * Like findPartAlignmentOffsets(), but the image processing may be deferred, see 
+     * PartAlignment.findOffsetsDeferred(). The Vision.PartAlignment.After script event is fired when the offsets 
+     * are obtained by DeferredPartAlignmentOffset.get().
+     */
+    public static DeferredPartAlignmentOffset findPartAlignmentOffsetsDeferred(PartAlignment p, Part part, BoardLocation boardLocation, Placement placement, Nozzle nozzle) throws Exception {
+        Map<String, Object> globals = new HashMap<>();
+        globals.put("part", part);
+        globals.put("nozzle", nozzle);
+        Configuration.get().getScripting().on("Vision.PartAlignment.Before", globals);
+
+        DeferredPartAlignmentOffset deferred;
+        try {
+            deferred = p.findOffsetsDeferred(part, boardLocation, placement, nozzle);
+        }
+        catch (Exception e) {
+            globals.put("offsets", null);
+            Configuration.get().getScripting().on("Vision.PartAlignment.After", globals);
+            throw e;
+        }
+        return new DeferredPartAlignmentOffset() {
+            @Override
+            public boolean isDone() {
+                return deferred.isDone();
+            }
+
+            @Override
+            public PartAlignmentOffset get() throws Exception {
+                PartAlignmentOffset offsets = null;
+                try {
+                    offsets = deferred.get();
+                    return offsets;
+                }
+                finally {
+                    globals.put("offsets", offsets);
+                    Configuration.get().getScripting().on("Vision.PartAlignment.After", globals);
+                }
+            }
+
+            @Override
+            public double getProcessingTime() {
+                return deferred.getProcessingTime();
+            }
+        };
+    }
+
     /**
      * Compute an RGB histogram over the provided image.
      * 
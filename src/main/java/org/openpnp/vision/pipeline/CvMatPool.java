@@ -0,0 +1,201 @@
+package org.openpnp.vision.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.opencv.core.Mat;
+
+/**
+ * A pool of native Mat buffers, keyed by size and type. The CvPipeline uses it for the images it owns, i.e.
+ * the stored result images and the replaced working images, so these buffers are reused from run to run,
+ * instead of being allocated and freed each time.
+ *
+ * The pool also keeps statistics about the native bytes owned through it, and its hit rate.
+ */
+public class CvMatPool {
+    /**
+     * Default limit of the bytes kept in the pool when not in use.
+     */
+    public static final long DEFAULT_MAX_POOLED_BYTES = 256L*1024*1024;
+
+    private static class Key {
+        final int rows;
+        final int cols;
+        final int type;
+
+        Key(int rows, int cols, int type) {
+            this.rows = rows;
+            this.cols = cols;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return rows == other.rows && cols == other.cols && type == other.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(rows, cols, type);
+        }
+    }
+
+    private final Map<Key, Deque<Mat>> pool = new HashMap<>();
+    private final Map<Mat, Long> borrowed = new IdentityHashMap<>();
+    private final Set<Mat> pooled = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long maxPooledBytes = DEFAULT_MAX_POOLED_BYTES;
+    private long pooledBytes;
+    private long borrowedBytes;
+    private long peakBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Borrow a Mat of the given size and type from the pool, or allocate a new one. The content is undefined.
+     *
+     * @param rows
+     * @param cols
+     * @param type
+     * @return
+     */
+    public synchronized Mat borrow(int rows, int cols, int type) {
+        Deque<Mat> mats = pool.get(new Key(rows, cols, type));
+        Mat mat = (mats != null ? mats.poll() : null);
+        if (mat != null) {
+            hits++;
+            pooled.remove(mat);
+            pooledBytes -= getBytes(mat);
+        }
+        else {
+            misses++;
+            mat = new Mat(rows, cols, type);
+        }
+        long bytes = getBytes(mat);
+        borrowed.put(mat, bytes);
+        borrowedBytes += bytes;
+        updatePeak();
+        return mat;
+    }
+
+    /**
+     * Copy the Mat into a buffer borrowed from the pool. This replaces Mat.clone().
+     *
+     * @param mat
+     * @return
+     */
+    public Mat copyOf(Mat mat) {
+        if (mat.empty() || mat.dims() > 2) {
+            return mat.clone();
+        }
+        Mat copy = borrow(mat.rows(), mat.cols(), mat.type());
+        mat.copyTo(copy);
+        return copy;
+    }
+
+    /**
+     * Return the Mat to the pool. The Mat need not be borrowed from the pool, but it must not be referenced
+     * anywhere else. Sub-matrices and Mats exceeding the pool limit are released instead. A Mat that is 
+     * already in the pool is ignored, so it is never handed out twice.
+     *
+     * @param mat
+     */
+    public synchronized void recycle(Mat mat) {
+        if (mat == null || pooled.contains(mat)) {
+            return;
+        }
+        Long borrowedMatBytes = borrowed.remove(mat);
+        if (borrowedMatBytes != null) {
+            borrowedBytes -= borrowedMatBytes;
+        }
+        long bytes = getBytes(mat);
+        if (mat.empty() || mat.dims() > 2 || mat.isSubmatrix() || !mat.isContinuous()
+                || pooledBytes + bytes > maxPooledBytes) {
+            mat.release();
+            return;
+        }
+        pool.computeIfAbsent(new Key(mat.rows(), mat.cols(), mat.type()), (k) -> new ArrayDeque<>())
+            .push(mat);
+        pooled.add(mat);
+        pooledBytes += bytes;
+        updatePeak();
+    }
+
+    /**
+     * Release all the pooled Mats.
+     */
+    public synchronized void release() {
+        for (Deque<Mat> mats : pool.values()) {
+            for (Mat mat : mats) {
+                mat.release();
+            }
+        }
+        pool.clear();
+        pooled.clear();
+        pooledBytes = 0;
+    }
+
+    /**
+     * Reset the statistics, typically at the start of a pipeline run.
+     */
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        peakBytes = pooledBytes + borrowedBytes;
+    }
+
+    public synchronized long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    public synchronized void setMaxPooledBytes(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * @return The native bytes currently owned through the pool, i.e. pooled or borrowed.
+     */
+    public synchronized long getOwnedBytes() {
+        return pooledBytes + borrowedBytes;
+    }
+
+    /**
+     * @return The peak native bytes owned through the pool since the statistics were reset.
+     */
+    public synchronized long getPeakBytes() {
+        return peakBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The ratio of borrowed Mats that were reused from the pool, since the statistics were reset.
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits/total;
+    }
+
+    private void updatePeak() {
+        peakBytes = Math.max(peakBytes, pooledBytes + borrowedBytes);
+    }
+
+    private static long getBytes(Mat mat) {
+        return mat.total()*mat.elemSize();
+    }
+}
@@ -5,10 +5,15 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.opencv.core.CvType;
@@ -18,7 +23,11 @@ import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 import org.openpnp.vision.FluentCv.ColorSpace;
 import org.openpnp.vision.pipeline.CvStage.Result;
+import org.openpnp.vision.pipeline.stages.ActuatorWrite;
+import org.openpnp.vision.pipeline.stages.ImageCapture;
+import org.openpnp.vision.pipeline.stages.ScriptRun;
 import org.pmw.tinylog.Logger;
+import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.ElementList;
 import org.simpleframework.xml.Root;
 import org.simpleframework.xml.Serializer;
@@ -43,6 +52,9 @@ import org.simpleframework.xml.stream.Style;
  * 
  * RoboRealm: http://www.roborealm.com/
  * 
+ * Optionally, independent branches of the pipeline can be processed in parallel, see 
+ * {@link #setParallelExecution(boolean)}.
+ * 
  * TODO: Add measuring to image window.
  * 
  * TODO: Add info showing pixel coordinates when mouse is in image window.
@@ -56,16 +68,57 @@ public class CvPipeline implements AutoCloseable {
     @ElementList
     private ArrayList<CvStage> stages = new ArrayList<>();
 
-    private Map<CvStage, Result> results = new HashMap<CvStage, Result>();
+    @Attribute(required = false)
+    private Boolean parallelExecution;
+
+    private Map<CvStage, Result> results = new ConcurrentHashMap<CvStage, Result>();
 
     private Map<String, Object> properties = new HashMap<String, Object>();
 
     private ArrayList<PipelineShot> compositeShots = new ArrayList<>();
 
-    private Mat workingImage;
+    /**
+     * The working image and color space, as passed from stage to stage. In parallel execution, each 
+     * branch of the pipeline has its own WorkingState.  
+     */
+    static class WorkingState {
+        Mat image;
+        ColorSpace colorSpace;
+    }
+
+    /**
+     * The stage being processed on the current thread in parallel execution. 
+     */
+    static class StageContext {
+        final CvPipeline pipeline;
+        final int index;
+        final WorkingState state;
+
+        StageContext(CvPipeline pipeline, int index, WorkingState state) {
+            this.pipeline = pipeline;
+            this.index = index;
+            this.state = state;
+        }
+    }
+
+    private static final ThreadLocal<StageContext> stageContext = new ThreadLocal<>();
+
+    private WorkingState workingState = new WorkingState();
+    private final CvMatPool matPool = new CvMatPool();
+    /**
+     * The Mats this pipeline borrowed from the matPool. Only these are recycled, as stages may return Mats
+     * that are also referenced elsewhere, such as the stored result of another stage.
+     */
+    private final Set<Mat> pooledImages = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    private boolean releaseIntermediateImages;
+    /**
+     * For each stage, the index of the last stage reading its result, or -1, if none. Only determined when 
+     * releaseIntermediateImages is set, otherwise null.
+     */
+    private int[] resultLastUse;
+    private CvResultCache resultCache;
     private Object workingModel;
     private Exception terminalException;
-    private ColorSpace workingColorSpace;
 
     private long totalProcessingTimeNs;
 
@@ -210,6 +263,12 @@ public class CvPipeline implements AutoCloseable {
         if (stage == null) {
             return null;
         }
+        StageContext context = getStageContext();
+        if (context != null && stages.indexOf(stage) >= context.index) {
+            // In parallel execution, a later stage might already have a result. Hide it, like 
+            // sequential processing would.
+            return null;
+        }
         return results.get(stage);
     }
 
@@ -219,13 +278,14 @@ public class CvPipeline implements AutoCloseable {
      * @return
      */
     public Mat getWorkingImage() {
-        if (workingImage == null || (workingImage.cols() == 0 && workingImage.rows() == 0)) {
-            workingImage = new Mat(480, 640, CvType.CV_8UC3, new Scalar(0, 0, 0));
-            Imgproc.line(workingImage, new Point(0, 0), new Point(640, 480), new Scalar(0, 0, 255));
-            Imgproc.line(workingImage, new Point(640, 0), new Point(0, 480), new Scalar(0, 0, 255));
-            workingColorSpace = ColorSpace.Bgr;
+        WorkingState state = getWorkingState();
+        if (state.image == null || (state.image.cols() == 0 && state.image.rows() == 0)) {
+            state.image = new Mat(480, 640, CvType.CV_8UC3, new Scalar(0, 0, 0));
+            Imgproc.line(state.image, new Point(0, 0), new Point(640, 480), new Scalar(0, 0, 255));
+            Imgproc.line(state.image, new Point(640, 0), new Point(0, 480), new Scalar(0, 0, 255));
+            state.colorSpace = ColorSpace.Bgr;
         }
-        return workingImage;
+        return state.image;
     }
 
     public Object getWorkingModel() {
@@ -233,11 +293,112 @@ public class CvPipeline implements AutoCloseable {
     }
     
     public ColorSpace getWorkingColorSpace() {
-        return workingColorSpace;
+        return getWorkingState().colorSpace;
     }
     
     public void setWorkingColorSpace(ColorSpace colorSpace) {
-        workingColorSpace = colorSpace;
+        getWorkingState().colorSpace = colorSpace;
+    }
+
+    /**
+     * @return The context of the stage processed on the current thread in parallel execution, or null.
+     */
+    private StageContext getStageContext() {
+        StageContext context = stageContext.get();
+        if (context != null && context.pipeline == this) {
+            return context;
+        }
+        return null;
+    }
+
+    private WorkingState getWorkingState() {
+        StageContext context = getStageContext();
+        if (context != null) {
+            return context.state;
+        }
+        return workingState;
+    }
+
+    WorkingState getMainWorkingState() {
+        return workingState;
+    }
+
+    void setMainWorkingState(WorkingState workingState) {
+        this.workingState = workingState;
+    }
+
+    void setWorkingModel(Object workingModel) {
+        this.workingModel = workingModel;
+    }
+
+    /**
+     * @return true if independent branches of the pipeline are processed in parallel.
+     */
+    public boolean isParallelExecution() {
+        return parallelExecution != null && parallelExecution;
+    }
+
+    /**
+     * Set whether independent branches of the pipeline are processed in parallel. The dependencies are 
+     * inferred from the stages' references to other stages, and from how they use the working image, 
+     * see {@link CvPipelineScheduler}. The results are the same as with sequential processing.
+     * 
+     * @param parallelExecution
+     */
+    public void setParallelExecution(boolean parallelExecution) {
+        // Only serialize when set, so existing pipelines remain unchanged.  
+        this.parallelExecution = parallelExecution ? true : null;
+    }
+
+    /**
+     * @return The pool of native Mat buffers used for the images owned by this pipeline.
+     */
+    public CvMatPool getMatPool() {
+        return matPool;
+    }
+
+    public boolean isReleaseIntermediateImages() {
+        return releaseIntermediateImages;
+    }
+
+    /**
+     * Set whether the images of intermediate results are released as soon as no later stage references them 
+     * anymore. The models of the results are retained. This saves native memory and copying on large camera 
+     * images, but intermediate result images are no longer available for display, therefore this must not be 
+     * set, when the pipeline is edited.
+     * 
+     * @param releaseIntermediateImages
+     */
+    public void setReleaseIntermediateImages(boolean releaseIntermediateImages) {
+        this.releaseIntermediateImages = releaseIntermediateImages;
+    }
+
+    /**
+     * @return The cache of stage results, or null if disabled.
+     */
+    public CvResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Enable the cache of stage results, so stages whose inputs are unchanged are not processed again, see 
+     * {@link CvResultCache}. The cache is only used in sequential execution. 
+     * 
+     * @param maxBytes The maximum native bytes of the cached images, or 0 to disable and release the cache.
+     */
+    public void setResultCacheMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            if (resultCache != null) {
+                resultCache.release();
+                resultCache = null;
+            }
+        }
+        else if (resultCache == null) {
+            resultCache = new CvResultCache(maxBytes);
+        }
+        else {
+            resultCache.setMaxBytes(maxBytes);
+        }
     }
 
     Exception getTerminalException() {
@@ -260,78 +421,294 @@ public class CvPipeline implements AutoCloseable {
         terminalException = null;
         totalProcessingTimeNs = 0;
         release();
+        matPool.resetStatistics();
         for (CvStage stage : stages) {
             stage.processPrepare(this);
         }
-        for (CvStage stage : stages) {
-            // Process and time the stage and get the result.
-            long processingTimeNs = System.nanoTime();
-            Result result = null;
-            try {
-                if (!stage.isEnabled()) {
-                    throw new Exception(String.format("Stage \"%s\"not enabled.", stage.getName()));
-                }
-                result = stage.process(this);
-            }
-            catch (TerminalException e) {
-                result = new Result(null, e.getOriginalException());
-                setTerminalException(e.getOriginalException());
-                Logger.debug("Stage \""+stage.getName()+"\" throws "+e.getOriginalException());
+        resultLastUse = (releaseIntermediateImages ? getResultLastUse() : null);
+        if (isParallelExecution()) {
+            new CvPipelineScheduler(this).process();
+        }
+        else {
+            CvResultCache resultCache = this.resultCache;
+            long propertiesFingerprint = 0;
+            long fingerprint = 0;
+            long[] fingerprints = null;
+            if (resultCache != null) {
+                propertiesFingerprint = CvResultCache.getPropertiesFingerprint(properties);
+                fingerprint = CvResultCache.getContentFingerprint(null, workingState.colorSpace, null);
+                fingerprints = new long[stages.size()];
             }
-            catch (Exception e) {
-                result = new Result(null, e);
-                if (stage.isEnabled()) {
-                    Logger.debug("Stage \""+stage.getName()+"\" throws "+e);
+            for (int i = 0; i < stages.size(); i++) {
+                CvStage stage = stages.get(i);
+                // Process and time the stage and get the result.
+                long processingTimeNs = System.nanoTime();
+                Long key = null;
+                CvResultCache.Entry entry = null;
+                if (resultCache != null && stage.isEnabled() && CvResultCache.isCacheable(stage)) {
+                    key = CvResultCache.getStageFingerprint(fingerprint, stage, 
+                            getReferencedFingerprints(i, fingerprints), propertiesFingerprint);
+                    entry = resultCache.get(key);
+                }
+                Result result;
+                if (entry != null) {
+                    result = new Result((entry.image != null ? copyImage(entry.image) : null), 
+                            entry.colorSpace, entry.model);
+                }
+                else {
+                    result = processStage(stage, (e) -> setTerminalException(e));
+                }
+                processingTimeNs = System.nanoTime() - processingTimeNs;
+                totalProcessingTimeNs += processingTimeNs;
+                if (result != null && stage.isEnabled() && result.model != null) {
+                    workingModel = result.model;
+                }
+                results.put(stage, storeResult(stage, result, processingTimeNs, workingState));
+                if (resultCache != null) {
+                    Object model = (result != null ? result.model : null);
+                    if (!stage.isEnabled()) {
+                        // Passes the working image through.
+                        fingerprints[i] = fingerprint;
+                    }
+                    else if (key != null) {
+                        fingerprints[i] = key;
+                        if (entry == null && !(model instanceof Exception)) {
+                            resultCache.put(key, workingState.image, workingState.colorSpace, model);
+                        }
+                    }
+                    else {
+                        fingerprints[i] = CvResultCache.getContentFingerprint(workingState.image, 
+                                workingState.colorSpace, model);
+                    }
+                    fingerprint = fingerprints[i];
+                }
+                if (resultLastUse != null) {
+                    releaseDeadResultImages(i);
                 }
             }
-            processingTimeNs = System.nanoTime() - processingTimeNs;
-            totalProcessingTimeNs += processingTimeNs;
-
-            Mat image = null;
-            Object model = null;
-            ColorSpace colorSpace = null;
-            if (result != null) {
-                image = result.image;
-                model = result.model;
-                colorSpace = result.colorSpace;
+        }
+        Logger.trace("Pipeline processed in {}ms, peak pooled native memory {}MB, pool hit rate {}%", 
+                totalProcessingTimeNs/1000000, matPool.getPeakBytes()/(1024*1024), 
+                Math.round(matPool.getHitRate()*100));
+        if (terminalException != null) {
+            throw (terminalException);
+        }
+    }
+
+    /**
+     * Process the stage and return its result. Exceptions are returned as the result model.
+     *  
+     * @param stage
+     * @param terminalExceptionHandler Receives the original exception of a TerminalException. 
+     * @return
+     */
+    Result processStage(CvStage stage, Consumer<Exception> terminalExceptionHandler) {
+        Result result = null;
+        try {
+            if (!stage.isEnabled()) {
+                throw new Exception(String.format("Stage \"%s\"not enabled.", stage.getName()));
             }
-            if(stage.isEnabled() && model != null) {
-                workingModel = model;
+            result = stage.process(this);
+        }
+        catch (TerminalException e) {
+            result = new Result(null, e.getOriginalException());
+            terminalExceptionHandler.accept(e.getOriginalException());
+            Logger.debug("Stage \""+stage.getName()+"\" throws "+e.getOriginalException());
+        }
+        catch (Exception e) {
+            result = new Result(null, e);
+            if (stage.isEnabled()) {
+                Logger.debug("Stage \""+stage.getName()+"\" throws "+e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Process the stage on the current thread in the context of the given working state, as used in 
+     * parallel execution.
+     * 
+     * @param stage
+     * @param index
+     * @param state
+     * @param terminalExceptionHandler
+     * @return
+     */
+    Result processStage(CvStage stage, int index, WorkingState state, Consumer<Exception> terminalExceptionHandler) {
+        stageContext.set(new StageContext(this, index, state));
+        try {
+            return processStage(stage, terminalExceptionHandler);
+        }
+        finally {
+            stageContext.remove();
+        }
+    }
+
+    /**
+     * Update the working state with the result of the stage and return the result to be stored. 
+     * 
+     * @param stage
+     * @param result
+     * @param processingTimeNs
+     * @param state
+     * @return
+     */
+    Result storeResult(CvStage stage, Result result, long processingTimeNs, WorkingState state) {
+        boolean retainImage = isResultImageRetained(stage);
+        Mat image = null;
+        Object model = null;
+        ColorSpace colorSpace = null;
+        if (result != null) {
+            image = result.image;
+            model = result.model;
+            colorSpace = result.colorSpace;
+        }
+        if(stage.isEnabled() && colorSpace != null) {
+            state.colorSpace = colorSpace;
+        }
+        // If the result image is null and there is a working image,
+        // replace the result image with a clone of the working image.
+        if (image == null) {
+            if (state.image != null && retainImage) {
+                image = copyImage(state.image);
             }
-            if(stage.isEnabled() && colorSpace != null) {
-                workingColorSpace = colorSpace;
+        }
+        // If the result image is not null:
+        // Release the working image if the result image is different.
+        // Replace the working image with the result image.
+        // Clone the result image for storage.
+        else {
+            if (state.image != null && state.image != image) {
+                releaseWorkingImage(state.image);
             }
-            // If the result image is null and there is a working image,
-            // replace the result image with a clone of the working image.
-            if (image == null) {
-                if (workingImage != null) {
-                    image = workingImage.clone();
-                }
+            state.image = image;
+            image = (retainImage ? copyImage(image) : null);
+        }
+
+        // If the result colorSpace is null and there is a working colorSpace,
+        // replace the result colorSpace with the working colorSpace.
+        if (colorSpace == null) {
+            if (state.colorSpace != null) {
+                colorSpace = state.colorSpace;
             }
-            // If the result image is not null:
-            // Release the working image if the result image is different.
-            // Replace the working image with the result image.
-            // Clone the result image for storage.
-            else {
-                if (workingImage != null && workingImage != image) {
-                    workingImage.release();
-                }
-                workingImage = image;
-                image = image.clone();
+        }
+
+        return new Result(image, colorSpace, model, processingTimeNs, stage);
+    }
+
+    /**
+     * Copy the image into a Mat borrowed from the matPool, owned by this pipeline.
+     * 
+     * @param image
+     * @return
+     */
+    Mat copyImage(Mat image) {
+        Mat copy = matPool.copyOf(image);
+        pooledImages.add(copy);
+        return copy;
+    }
+
+    /**
+     * Recycle the image, if it was borrowed from the matPool by this pipeline and not yet recycled. 
+     * 
+     * @param image
+     */
+    private void recycleImage(Mat image) {
+        if (image != null && pooledImages.remove(image)) {
+            matPool.recycle(image);
+        }
+    }
+
+    /**
+     * Release a working image that is replaced or dropped. Stages may return the stored result image of 
+     * another stage as their working image, such an image is left to be recycled with the result. 
+     * 
+     * @param image
+     */
+    void releaseWorkingImage(Mat image) {
+        if (image == null || isStoredResultImage(image)) {
+            return;
+        }
+        if (pooledImages.contains(image)) {
+            recycleImage(image);
+        }
+        else {
+            image.release();
+        }
+    }
+
+    private boolean isStoredResultImage(Mat image) {
+        for (Result result : results.values()) {
+            if (result.image == image) {
+                return true;
             }
+        }
+        return false;
+    }
 
-            // If the result colorSpace is null and there is a working colorSpace,
-            // replace the result colorSpace with the working colorSpace.
-            if (colorSpace == null) {
-                if (workingColorSpace != null) {
-                    colorSpace = workingColorSpace;
+    void putResult(CvStage stage, Result result) {
+        results.put(stage, result);
+    }
+
+    /**
+     * @return For each stage, the index of the last stage referencing its result, or -1 if none.
+     */
+    private int[] getResultLastUse() {
+        int[] lastUse = new int[stages.size()];
+        Arrays.fill(lastUse, -1);
+        for (int i = 0; i < stages.size(); i++) {
+            for (CvStage referencedStage : CvPipelineScheduler.getReferencedStages(this, stages.get(i))) {
+                int referencedIndex = stages.indexOf(referencedStage);
+                if (referencedIndex >= 0 && referencedIndex < i) {
+                    lastUse[referencedIndex] = i;
                 }
             }
+        }
+        return lastUse;
+    }
 
-            results.put(stage, new Result(image, colorSpace, model, processingTimeNs, stage));
+    /**
+     * @param index
+     * @param fingerprints
+     * @return The output fingerprints of the earlier stages referenced by the stage at the given index.
+     */
+    private long[] getReferencedFingerprints(int index, long[] fingerprints) {
+        List<CvStage> referencedStages = CvPipelineScheduler.getReferencedStages(this, stages.get(index));
+        long[] referencedFingerprints = new long[referencedStages.size()];
+        for (int i = 0; i < referencedFingerprints.length; i++) {
+            int referencedIndex = stages.indexOf(referencedStages.get(i));
+            // Later stages have no result yet.
+            referencedFingerprints[i] = (referencedIndex < index ? fingerprints[referencedIndex] : 0);
         }
-        if (terminalException != null) {
-            throw (terminalException);
+        return referencedFingerprints;
+    }
+
+    private boolean isResultImageRetained(CvStage stage) {
+        if (resultLastUse == null) {
+            return true;
+        }
+        int index = stages.indexOf(stage);
+        return index < 0 || resultLastUse[index] >= 0;
+    }
+
+    /**
+     * Release the result images that are no longer referenced by any stage after the given one.  
+     * 
+     * @param index
+     */
+    private void releaseDeadResultImages(int index) {
+        for (int i = 0; i < index; i++) {
+            if (resultLastUse[i] == index) {
+                Result result = results.get(stages.get(i));
+                if (result != null && result.image != null) {
+                    results.put(result.stage, new Result(null, result.colorSpace, result.model, 
+                            result.processingTimeNs, result.stage));
+                    if (result.image != workingState.image) {
+                        recycleImage(result.image);
+                    }
+                    // Otherwise a stage returned it as the working image, it is released as such.
+                }
+            }
         }
     }
 
@@ -351,14 +728,12 @@ public class CvPipeline implements AutoCloseable {
      * resources from OpenCV.
      */
     public void release() {
-        if (workingImage != null) {
-            workingImage.release();
-            workingImage = null;
+        if (workingState.image != null) {
+            releaseWorkingImage(workingState.image);
+            workingState.image = null;
         }
         for (Result result : results.values()) {
-            if (result.image != null) {
-                result.image.release();
-            }
+            recycleImage(result.image);
         }
         workingModel = null;
         results.clear();
@@ -367,11 +742,19 @@ public class CvPipeline implements AutoCloseable {
     @Override
     public void close() throws IOException {
         release();
+        matPool.release();
+        if (resultCache != null) {
+            resultCache.release();
+        }
     }
     
     @Override
     protected void finalize() throws Throwable {
         release();
+        matPool.release();
+        if (resultCache != null) {
+            resultCache.release();
+        }
         super.finalize();
     }
 
@@ -441,6 +824,47 @@ public class CvPipeline implements AutoCloseable {
         }
     }
     
+    /**
+     * @return true if the ImageCapture stages are the only enabled stages that access the machine, so the
+     * capturing can be separated from the processing by cloneCaptured().
+     */
+    public boolean isCaptureSeparable() {
+        for (CvStage stage : stages) {
+            if (stage.isEnabled() 
+                    && (stage instanceof ActuatorWrite || stage instanceof ScriptRun)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Captures the images of all the enabled ImageCapture stages now, and returns a clone of the pipeline with the 
+     * same properties, that will process these images instead of capturing. The clone can then be processed on a 
+     * different thread, while the machine already moves on. The caller must close the clone. 
+     * 
+     * @return
+     * @throws Exception
+     */
+    public CvPipeline cloneCaptured() throws Exception {
+        CvPipeline pipeline = clone();
+        pipeline.properties = new HashMap<>(properties);
+        try {
+            for (CvStage stage : stages) {
+                if (stage.isEnabled() && stage instanceof ImageCapture) {
+                    ImageCapture capture = (ImageCapture) pipeline.getStage(stage.getName());
+                    capture.setCapturedResult(((ImageCapture) stage).capture(this));
+                    pipeline.setLastCapturedImage(getLastCapturedImage());
+                }
+            }
+        }
+        catch (Exception e) {
+            pipeline.close();
+            throw e;
+        }
+        return pipeline;
+    }
+
     public Object getProperty(String name) {
         return properties.get(name);
     }
@@ -0,0 +1,295 @@
+package org.openpnp.vision.pipeline;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.openpnp.vision.pipeline.CvPipeline.WorkingState;
+import org.openpnp.vision.pipeline.CvStage.Result;
+import org.openpnp.vision.pipeline.stages.ActuatorWrite;
+import org.openpnp.vision.pipeline.stages.AffineUnwarp;
+import org.openpnp.vision.pipeline.stages.CreateFootprintTemplateImage;
+import org.openpnp.vision.pipeline.stages.CreateShapeTemplateImage;
+import org.openpnp.vision.pipeline.stages.ImageCapture;
+import org.openpnp.vision.pipeline.stages.ImageRead;
+import org.openpnp.vision.pipeline.stages.ImageRecall;
+import org.openpnp.vision.pipeline.stages.ImageWrite;
+import org.openpnp.vision.pipeline.stages.ImageWriteDebug;
+import org.openpnp.vision.pipeline.stages.ReadPartTemplateImage;
+import org.openpnp.vision.pipeline.stages.ScriptRun;
+import org.openpnp.vision.pipeline.stages.SetResult;
+import org.openpnp.vision.pipeline.stages.SizeCheck;
+import org.openpnp.vision.pipeline.stages.WritePartTemplateImage;
+import org.simpleframework.xml.Attribute;
+
+/**
+ * Processes a CvPipeline with independent branches in parallel.
+ *
+ * The dependency graph of the stages is inferred as follows:
+ *
+ * Most stages read the working image left by the previous stage, so they depend on it. Source stages such
+ * as ImageRecall or ImageRead produce a new working image without reading the previous one, so they start a
+ * new branch. Stages depend on the stages they reference by name, i.e. through their "...StageName"
+ * properties (templateStageName, ImageRecall.imageStageName, etc.).
+ *
+ * Barrier stages, such as ImageCapture, ImageWrite, ActuatorWrite or ScriptRun, have side effects or access
+ * the working model. They are processed on the calling thread, after all the previous stages have completed,
+ * and before any of the following stages start. Stages not known to this scheduler are treated as barriers.
+ *
+ * Each stage gets the same Result and processing time as with sequential processing.
+ */
+public class CvPipelineScheduler {
+    private static final Set<Class<? extends CvStage>> sourceStages = new HashSet<>(Arrays.asList(
+            CreateFootprintTemplateImage.class,
+            CreateShapeTemplateImage.class,
+            ImageRead.class,
+            ImageRecall.class,
+            ReadPartTemplateImage.class,
+            SetResult.class));
+
+    private static final Set<Class<? extends CvStage>> barrierStages = new HashSet<>(Arrays.asList(
+            ActuatorWrite.class,
+            AffineUnwarp.class,
+            ImageCapture.class,
+            ImageWrite.class,
+            ImageWriteDebug.class,
+            ScriptRun.class,
+            SizeCheck.class,
+            WritePartTemplateImage.class));
+
+    private static final Map<Class<?>, List<Field>> stageReferenceFields = new ConcurrentHashMap<>();
+
+    private final CvPipeline pipeline;
+    private final List<CvStage> stages;
+    private final Executor executor;
+    private final WorkingState[] states;
+    private final Result[] results;
+    private final Exception[] terminalExceptions;
+    private final List<CompletableFuture<Void>> futures;
+
+    public CvPipelineScheduler(CvPipeline pipeline) {
+        this(pipeline, ForkJoinPool.commonPool());
+    }
+
+    public CvPipelineScheduler(CvPipeline pipeline, Executor executor) {
+        this.pipeline = pipeline;
+        this.stages = pipeline.getStages();
+        this.executor = executor;
+        this.states = new WorkingState[stages.size()];
+        this.results = new Result[stages.size()];
+        this.terminalExceptions = new Exception[stages.size()];
+        this.futures = new ArrayList<>(stages.size());
+    }
+
+    /**
+     * @param stage
+     * @return true if the stage starts a new branch, i.e. it creates a new working image without
+     * reading the previous one.
+     */
+    public static boolean isSource(CvStage stage) {
+        return stage.isEnabled() && sourceStages.contains(stage.getClass());
+    }
+
+    /**
+     * @param stage
+     * @return true if the stage must be processed on the calling thread, with all the previous stages
+     * completed, and before any of the following stages are started.
+     */
+    public static boolean isBarrier(CvStage stage) {
+        if (!stage.isEnabled()) {
+            // Just passes the working image through.
+            return false;
+        }
+        return barrierStages.contains(stage.getClass())
+                || !stage.getClass().getPackage().equals(ImageRecall.class.getPackage());
+    }
+
+    /**
+     * @param pipeline
+     * @param stage
+     * @return The stages referenced by the given stage through its "...StageName" properties.
+     */
+    public static List<CvStage> getReferencedStages(CvPipeline pipeline, CvStage stage) {
+        List<CvStage> referencedStages = new ArrayList<>();
+        for (Field field : getStageReferenceFields(stage.getClass())) {
+            try {
+                CvStage referencedStage = pipeline.getStage((String) field.get(stage));
+                if (referencedStage != null) {
+                    referencedStages.add(referencedStage);
+                }
+            }
+            catch (IllegalAccessException e) {
+                throw new Error(e);
+            }
+        }
+        return referencedStages;
+    }
+
+    private static List<Field> getStageReferenceFields(Class<?> stageClass) {
+        return stageReferenceFields.computeIfAbsent(stageClass, (cls) -> {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (field.getType() == String.class
+                            && field.getName().endsWith("StageName")
+                            && field.isAnnotationPresent(Attribute.class)) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+            return fields;
+        });
+    }
+
+    /**
+     * Process the pipeline. Must be called from CvPipeline.process(), after the stages were prepared.
+     *
+     * @throws Exception
+     */
+    void process() throws Exception {
+        int segmentStart = 0;
+        for (int i = 0; i < stages.size(); i++) {
+            CvStage stage = stages.get(i);
+            if (isBarrier(stage)) {
+                processSegment(segmentStart, i);
+                // Process the barrier stage sequentially, on the main working state.
+                final int index = i;
+                long processingTimeNs = System.nanoTime();
+                Result result = pipeline.processStage(stage, (e) -> terminalExceptions[index] = e);
+                processingTimeNs = System.nanoTime() - processingTimeNs;
+                states[i] = pipeline.getMainWorkingState();
+                results[i] = pipeline.storeResult(stage, result, processingTimeNs, states[i]);
+                pipeline.putResult(stage, results[i]);
+                if (result != null && result.model != null) {
+                    pipeline.setWorkingModel(result.model);
+                }
+                futures.add(CompletableFuture.completedFuture(null));
+                segmentStart = i + 1;
+            }
+        }
+        processSegment(segmentStart, stages.size());
+
+        long totalProcessingTimeNs = 0;
+        Exception terminalException = null;
+        for (int i = 0; i < stages.size(); i++) {
+            totalProcessingTimeNs += results[i].processingTimeNs;
+            if (terminalExceptions[i] != null) {
+                // Like in sequential processing, the last one wins.
+                terminalException = terminalExceptions[i];
+            }
+        }
+        pipeline.setTotalProcessingTimeNs(totalProcessingTimeNs);
+        pipeline.setTerminalException(terminalException);
+    }
+
+    /**
+     * Process the stages from start (inclusive) to end (exclusive) in parallel, as far as their
+     * dependencies allow, and wait for them to complete. Afterwards, the main working state of the
+     * pipeline is that of the last stage.
+     *
+     * @param start
+     * @param end
+     * @throws Exception
+     */
+    private void processSegment(int start, int end) throws Exception {
+        for (int i = start; i < end; i++) {
+            futures.add(schedule(i, start));
+        }
+        try {
+            CompletableFuture.allOf(futures.subList(start, end).toArray(new CompletableFuture[0])).join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+        if (end > start) {
+            // Release the working images of the side branches, these would have been released in
+            // sequential processing too.
+            WorkingState lastState = states[end - 1];
+            for (int i = start; i < end - 1; i++) {
+                if (states[i] != lastState && states[i] != states[i + 1] && states[i].image != null) {
+                    pipeline.releaseWorkingImage(states[i].image);
+                    states[i].image = null;
+                }
+            }
+            pipeline.setMainWorkingState(lastState);
+        }
+        // Like in sequential processing, the working model is the last one returned by any stage so far.
+        for (int i = end - 1; i >= 0; i--) {
+            if (results[i] != null && results[i].model != null && stages.get(i).isEnabled()) {
+                pipeline.setWorkingModel(results[i].model);
+                break;
+            }
+        }
+    }
+
+    private CompletableFuture<Void> schedule(int index, int segmentStart) {
+        CvStage stage = stages.get(index);
+        boolean source = isSource(stage);
+        List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+        if (!source && index > segmentStart) {
+            // Reads the working image of the previous stage.
+            dependencies.add(futures.get(index - 1));
+        }
+        for (CvStage referencedStage : getReferencedStages(pipeline, stage)) {
+            int referencedIndex = stages.indexOf(referencedStage);
+            if (referencedIndex >= segmentStart && referencedIndex < index) {
+                dependencies.add(futures.get(referencedIndex));
+            }
+            // Earlier stages are already complete, later stages have no result yet, as in sequential
+            // processing.
+        }
+        return CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]))
+                .thenComposeAsync((v) -> {
+                    WorkingState state;
+                    if (source) {
+                        state = new WorkingState();
+                    }
+                    else if (index > segmentStart) {
+                        state = states[index - 1];
+                    }
+                    else {
+                        state = pipeline.getMainWorkingState();
+                    }
+                    long processingTimeNs = System.nanoTime();
+                    Result result = pipeline.processStage(stage, index, state,
+                            (e) -> terminalExceptions[index] = e);
+                    long stageProcessingTimeNs = System.nanoTime() - processingTimeNs;
+                    if (source && (result == null || result.image == null || result.colorSpace == null)) {
+                        // The source stage did not fully replace the working image, so it is passed through
+                        // from the previous stage, once available.
+                        CompletableFuture<Void> previous = (index > segmentStart ?
+                                futures.get(index - 1) : CompletableFuture.completedFuture(null));
+                        return previous.thenRun(() -> {
+                            // The previous branch ends here, so its working state is final.
+                            WorkingState previousState = (index > segmentStart ?
+                                    states[index - 1] : pipeline.getMainWorkingState());
+                            state.image = (previousState.image != null ?
+                                    pipeline.copyImage(previousState.image) : null);
+                            state.colorSpace = previousState.colorSpace;
+                            complete(index, stage, result, stageProcessingTimeNs, state);
+                        });
+                    }
+                    complete(index, stage, result, stageProcessingTimeNs, state);
+                    return CompletableFuture.completedFuture(null);
+                }, executor);
+    }
+
+    private void complete(int index, CvStage stage, Result result, long processingTimeNs, WorkingState state) {
+        states[index] = state;
+        results[index] = pipeline.storeResult(stage, result, processingTimeNs, state);
+        pipeline.putResult(stage, results[index]);
+    }
+}
@@ -0,0 +1,386 @@
+package org.openpnp.vision.pipeline;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opencv.core.Mat;
+import org.openpnp.spi.Camera;
+import org.openpnp.vision.FluentCv.ColorSpace;
+import org.openpnp.vision.pipeline.stages.CreateFootprintTemplateImage;
+import org.openpnp.vision.pipeline.stages.CreateShapeTemplateImage;
+import org.openpnp.vision.pipeline.stages.ImageRead;
+import org.openpnp.vision.pipeline.stages.ReadPartTemplateImage;
+import org.openpnp.vision.pipeline.stages.SimpleOcr;
+import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.ElementList;
+
+/**
+ * Memoizes the results of pipeline stages, so stages whose inputs are unchanged are not processed again
+ * when the pipeline is re-run, e.g. when tuning a pipeline in the editor.
+ *
+ * The inputs of a stage are fingerprinted as follows:
+ *
+ * The fingerprint of the working image passed into the stage, the fingerprints of the results referenced by
+ * the stage's "...StageName" properties, the stage's class and serialized properties, and the pipeline
+ * properties. Objects are serialized by their {@literal @}Attribute and {@literal @}Element values, so an 
+ * object that changed in place, such as a Part or Footprint, is detected.
+ *
+ * The fingerprint of a cacheable stage's output is its input fingerprint. Stages that are not cacheable, such
+ * as ImageCapture, ScriptRun or ImageRead, are always processed and their output is fingerprinted by hashing
+ * the image content and model. Therefore the stages after an ImageCapture are reused, if the captured image is
+ * unchanged.
+ *
+ * Cached images are copies owned by the cache. The cache is bounded by the native bytes of its images, the
+ * least recently used entries are evicted first.
+ */
+public class CvResultCache {
+    /**
+     * Default limit of the native bytes of the cached images, as used by the pipeline editor.
+     */
+    public static final long DEFAULT_MAX_BYTES = 256L*1024*1024;
+
+    private static final long PRIME = 0x100000001b3L;
+    private static final long SEED = 0xcbf29ce484222325L;
+
+    /**
+     * Stages that read pipeline properties, files or other state that is not covered by the fingerprint, or 
+     * that have side effects, such as writing files. ReadPartTemplateImage reads the template file that 
+     * WritePartTemplateImage may just have rewritten, SimpleOcr writes debug images.
+     */
+    private static final Set<Class<? extends CvStage>> uncacheableStages = new HashSet<>(Arrays.asList(
+            CreateFootprintTemplateImage.class,
+            CreateShapeTemplateImage.class,
+            ImageRead.class,
+            ReadPartTemplateImage.class,
+            SimpleOcr.class));
+
+    /**
+     * Maximum nesting of the serialized objects, deeper objects are fingerprinted by their String 
+     * representation.
+     */
+    private static final int MAX_DEPTH = 8;
+
+    private static final Map<Class<?>, List<Field>> propertyFields = new ConcurrentHashMap<>();
+
+    public static class Entry {
+        final Mat image;
+        final ColorSpace colorSpace;
+        final Object model;
+
+        Entry(Mat image, ColorSpace colorSpace, Object model) {
+            this.image = image;
+            this.colorSpace = colorSpace;
+            this.model = model;
+        }
+
+        long getBytes() {
+            return image == null ? 0 : image.total()*image.elemSize();
+        }
+    }
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    public CvResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param key
+     * @return The cached entry or null.
+     */
+    public synchronized Entry get(long key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits++;
+        }
+        else {
+            misses++;
+        }
+        return entry;
+    }
+
+    /**
+     * Cache a copy of the image together with the color space and model.
+     *
+     * @param key
+     * @param image
+     * @param colorSpace
+     * @param model
+     */
+    public synchronized void put(long key, Mat image, ColorSpace colorSpace, Object model) {
+        Entry entry = new Entry(image == null ? null : image.clone(), colorSpace, model);
+        if (entry.getBytes() > maxBytes) {
+            entry.image.release();
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            remove(previous);
+        }
+        bytes += entry.getBytes();
+        evict();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Release all the cached images and clear the cache.
+     */
+    public synchronized void release() {
+        for (Entry entry : entries.values()) {
+            remove(entry);
+        }
+        entries.clear();
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            remove(entry);
+        }
+    }
+
+    private void remove(Entry entry) {
+        bytes -= entry.getBytes();
+        if (entry.image != null) {
+            entry.image.release();
+        }
+    }
+
+    /**
+     * @param stage
+     * @return true if the stage's result is determined by the fingerprinted inputs.
+     */
+    public static boolean isCacheable(CvStage stage) {
+        return !CvPipelineScheduler.isBarrier(stage) && !uncacheableStages.contains(stage.getClass());
+    }
+
+    /**
+     * Compute the input fingerprint of the stage.
+     *
+     * @param inputFingerprint Fingerprint of the working image passed into the stage.
+     * @param stage
+     * @param referencedFingerprints Fingerprints of the results referenced by the stage.
+     * @param propertiesFingerprint Fingerprint of the pipeline properties, see
+     * {@link #getPropertiesFingerprint(Map)}.
+     * @return
+     */
+    public static long getStageFingerprint(long inputFingerprint, CvStage stage, long[] referencedFingerprints,
+            long propertiesFingerprint) {
+        long hash = combine(SEED, inputFingerprint);
+        hash = combine(hash, propertiesFingerprint);
+        for (long referencedFingerprint : referencedFingerprints) {
+            hash = combine(hash, referencedFingerprint);
+        }
+        hash = hash(hash, stage.getClass().getName());
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        visited.add(stage);
+        hash = hashFields(hash, stage, visited, 0);
+        return hash;
+    }
+
+    /**
+     * Compute the fingerprint of the pipeline properties. Cameras are represented by their id and units per
+     * pixel, other objects by their serialized values, see {@link #hashValue(long, Object, Set, int)}.
+     *
+     * @param properties
+     * @return
+     */
+    public static long getPropertiesFingerprint(Map<String, Object> properties) {
+        long hash = SEED;
+        for (Map.Entry<String, Object> property : new TreeMap<>(properties).entrySet()) {
+            hash = hash(hash, property.getKey());
+            hash = hashValue(hash, property.getValue(), Collections.newSetFromMap(new IdentityHashMap<>()), 0);
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes the value. Simple values are hashed by their String representation. Cameras are represented by
+     * their id and units per pixel, including at the current Z. Arrays, collections and maps are hashed by
+     * their elements. Other objects are hashed by their class and their {@literal @}Attribute and 
+     * {@literal @}Element fields, i.e. the values they are serialized with, or by their String representation,
+     * if they have none.
+     *
+     * @param hash
+     * @param value
+     * @param visited The objects already hashed, to break cycles.
+     * @param depth
+     * @return
+     */
+    private static long hashValue(long hash, Object value, Set<Object> visited, int depth) {
+        if (value == null
+                || value instanceof String
+                || value instanceof Number
+                || value instanceof Boolean
+                || value instanceof Character
+                || value instanceof Enum) {
+            return hash(hash, String.valueOf(value));
+        }
+        if (value instanceof Camera) {
+            Camera camera = (Camera) value;
+            hash = hash(hash, camera.getId());
+            hash = hash(hash, String.valueOf(camera.getUnitsPerPixel()));
+            return hash(hash, String.valueOf(camera.getUnitsPerPixelAtZ()));
+        }
+        if (depth >= MAX_DEPTH || !visited.add(value)) {
+            return hash(hash, String.valueOf(value));
+        }
+        if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                hash = hashValue(hash, Array.get(value, i), visited, depth + 1);
+            }
+            return combine(hash, length);
+        }
+        if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                hash = hashValue(hash, element, visited, depth + 1);
+            }
+            return combine(hash, ((Collection<?>) value).size());
+        }
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                hash = hashValue(hash, entry.getKey(), visited, depth + 1);
+                hash = hashValue(hash, entry.getValue(), visited, depth + 1);
+            }
+            return combine(hash, ((Map<?, ?>) value).size());
+        }
+        if (getPropertyFields(value.getClass()).isEmpty()) {
+            return hash(hash, String.valueOf(value));
+        }
+        hash = hash(hash, value.getClass().getName());
+        return hashFields(hash, value, visited, depth + 1);
+    }
+
+    private static long hashFields(long hash, Object object, Set<Object> visited, int depth) {
+        for (Field field : getPropertyFields(object.getClass())) {
+            try {
+                hash = hash(hash, field.getName());
+                hash = hashValue(hash, field.get(object), visited, depth);
+            }
+            catch (IllegalAccessException e) {
+                throw new Error(e);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Compute the fingerprint of an output that is not determined by the stage's inputs, by hashing the
+     * image content, color space and model.
+     *
+     * @param image
+     * @param colorSpace
+     * @param model
+     * @return
+     */
+    public static long getContentFingerprint(Mat image, ColorSpace colorSpace, Object model) {
+        long hash = SEED;
+        if (image != null && !image.empty()) {
+            hash = combine(hash, image.rows());
+            hash = combine(hash, image.cols());
+            hash = combine(hash, image.type());
+            Mat continuous = image.isContinuous() ? image : image.clone();
+            byte[] data = new byte[(int) (continuous.total()*continuous.elemSize())];
+            continuous.get(0, 0, data);
+            if (continuous != image) {
+                continuous.release();
+            }
+            hash = hash(hash, data);
+        }
+        hash = hash(hash, String.valueOf(colorSpace));
+        hash = hash(hash, String.valueOf(model));
+        return hash;
+    }
+
+    private static List<Field> getPropertyFields(Class<?> stageClass) {
+        return propertyFields.computeIfAbsent(stageClass, (cls) -> {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (field.isAnnotationPresent(Attribute.class)
+                            || field.isAnnotationPresent(Element.class)
+                            || field.isAnnotationPresent(ElementList.class)) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+            return fields;
+        });
+    }
+
+    private static long combine(long hash, long value) {
+        hash ^= value;
+        hash *= PRIME;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static long hash(long hash, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            hash = (hash ^ s.charAt(i))*PRIME;
+        }
+        return combine(hash, s.length());
+    }
+
+    private static long hash(long hash, byte[] data) {
+        // Process eight bytes at a time, then the remainder.
+        int i = 0;
+        for (; i + 8 <= data.length; i += 8) {
+            long word = (data[i] & 0xffL)
+                    | (data[i + 1] & 0xffL) << 8
+                    | (data[i + 2] & 0xffL) << 16
+                    | (data[i + 3] & 0xffL) << 24
+                    | (data[i + 4] & 0xffL) << 32
+                    | (data[i + 5] & 0xffL) << 40
+                    | (data[i + 6] & 0xffL) << 48
+                    | (data[i + 7] & 0xffL) << 56;
+            hash = (hash ^ word)*PRIME;
+            hash ^= hash >>> 31;
+        }
+        for (; i < data.length; i++) {
+            hash = (hash ^ data[i])*PRIME;
+        }
+        return combine(hash, data.length);
+    }
+}
@@ -89,8 +89,33 @@ public class ImageCapture extends CvStage {
             this.count = 1;
         }
     }
+    /**
+     * Image captured ahead of time by capture(), returned by the next process() instead of capturing. 
+     */
+    private Result capturedResult;
+
+    public void setCapturedResult(Result capturedResult) {
+        this.capturedResult = capturedResult;
+    }
+
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
+        if (capturedResult != null) {
+            Result result = capturedResult;
+            capturedResult = null;
+            return result;
+        }
+        return capture(pipeline);
+    }
+
+    /**
+     * Lights, settles and captures the image from the pipeline camera, as set up on this stage.
+     * 
+     * @param pipeline
+     * @return The captured image as the Result.
+     * @throws Exception
+     */
+    public Result capture(CvPipeline pipeline) throws Exception {
         Camera camera = (Camera) pipeline.getProperty("camera");
         if (camera == null) {
             throw new Exception("No Camera set on pipeline.");
@@ -2,8 +2,8 @@ package org.openpnp.vision.pipeline.stages;
 
 import java.io.File;
 
-import org.opencv.imgcodecs.Imgcodecs;
 import org.openpnp.model.Configuration;
+import org.openpnp.util.DebugImageWriter;
 import org.openpnp.util.LogUtils;
 import org.openpnp.vision.pipeline.CvPipeline;
 import org.openpnp.vision.pipeline.CvStage;
@@ -42,7 +42,7 @@ public class ImageWriteDebug extends CvStage {
             return null;
         }
         File file = Configuration.get().createResourceFile(getClass(), prefix, suffix);
-        Imgcodecs.imwrite(file.getAbsolutePath(), pipeline.getWorkingImage());
+        DebugImageWriter.get().write(file, pipeline.getWorkingImage());
         return null;
     }
 }
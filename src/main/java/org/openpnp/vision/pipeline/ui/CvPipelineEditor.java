@@ -12,6 +12,7 @@ import javax.swing.JSplitPane;
 
 import org.openpnp.util.UiUtils;
 import org.openpnp.vision.pipeline.CvPipeline;
+import org.openpnp.vision.pipeline.CvResultCache;
 import org.openpnp.vision.pipeline.CvStage;
 import org.openpnp.vision.pipeline.stages.ActuatorWrite;
 import org.openpnp.vision.pipeline.stages.Add;
@@ -185,6 +186,8 @@ public class CvPipelineEditor extends JPanel {
 
     public CvPipelineEditor(CvPipeline pipeline) {
         this.pipeline = pipeline;
+        // Re-running the pipeline while tuning only needs to process the stages affected by the changes.
+        pipeline.setResultCacheMaxBytes(CvResultCache.DEFAULT_MAX_BYTES);
         try {
             originalVersion = pipeline.toXmlString();
         }
@@ -66,6 +66,13 @@ public class CvPipelineEditorDialog extends JDialog {
         editor.initializeFocus();
     }
 
+    @Override
+    public void dispose() {
+        super.dispose();
+        // Release the cached stage results.
+        editor.getPipeline().setResultCacheMaxBytes(0);
+    }
+
     public void pipelineChanged() {
     }
 }
\ No newline at end of file
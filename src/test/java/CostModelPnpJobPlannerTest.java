@@ -0,0 +1,184 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.CostModelPnpJobPlanner;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.SimplePnpJobPlanner;
+import org.openpnp.machine.reference.feeder.ReferenceTubeFeeder;
+import org.openpnp.model.Abstract2DLocatable.Side;
+import org.openpnp.model.Board;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.PnpJobPlanner.PlannedPlacement;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+
+import com.google.common.io.Files;
+
+public class CostModelPnpJobPlannerTest {
+    private Head head;
+    private List<JobPlacement> jobPlacements;
+
+    /**
+     * Two nozzles and two parts, one fed next to the board, one fed 200mm away. The placements of the
+     * two parts alternate in the job.
+     *
+     * @throws Exception
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/machine.xml"),
+                new File(workingDirectory, "machine.xml"));
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/packages.xml"),
+                new File(workingDirectory, "packages.xml"));
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/parts.xml"),
+                new File(workingDirectory, "parts.xml"));
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        Machine machine = Configuration.get().getMachine();
+        head = machine.getDefaultHead();
+
+        Part far = new Part("R-0805-FAR");
+        far.setPackage(Configuration.get().getPackage("0805"));
+        // Same height, so the planner is free to reorder all placements.
+        far.setHeight(Configuration.get().getPart("R-0805-10K").getHeight());
+        Configuration.get().addPart(far);
+        ReferenceTubeFeeder feeder = new ReferenceTubeFeeder();
+        feeder.setPart(far);
+        feeder.setLocation(new Location(LengthUnit.Millimeters, 200, 0, 0, 0));
+        feeder.setEnabled(true);
+        machine.addFeeder(feeder);
+
+        Board board = new Board();
+        board.setName("test");
+        board.addPlacement(BasicJobTest.createPlacement("A", "R-0805-10K", 10, 10, 0, 0, Side.Top));
+        board.addPlacement(BasicJobTest.createPlacement("B", "R-0805-FAR", 200, 10, 0, 0, Side.Top));
+        board.addPlacement(BasicJobTest.createPlacement("C", "R-0805-10K", 20, 10, 0, 0, Side.Top));
+        board.addPlacement(BasicJobTest.createPlacement("D", "R-0805-FAR", 210, 10, 0, 0, Side.Top));
+        BoardLocation boardLocation = new BoardLocation(board);
+        boardLocation.setLocation(new Location(LengthUnit.Millimeters, 0, 0, 0, 0));
+        boardLocation.setGlobalSide(Side.Top);
+
+        jobPlacements = new ArrayList<>();
+        for (Placement placement : board.getPlacements()) {
+            jobPlacements.add(new JobPlacement(boardLocation, placement));
+        }
+    }
+
+    private static Set<String> getIds(List<PlannedPlacement> plannedPlacements) {
+        Set<String> ids = new HashSet<>();
+        for (PlannedPlacement plannedPlacement : plannedPlacements) {
+            ids.add(plannedPlacement.jobPlacement.getPlacement().getId());
+        }
+        return ids;
+    }
+
+    /**
+     * The cost model groups the placements by feeder, the simple planner takes them in job order.
+     */
+    @Test
+    public void testPlanOrder() {
+        CostModelPnpJobPlanner planner = new CostModelPnpJobPlanner();
+        planner.restart();
+        List<JobPlacement> remaining = new ArrayList<>(jobPlacements);
+        List<PlannedPlacement> first = planner.plan(head, remaining);
+        assertEquals(Set.of("A", "C"), getIds(first));
+        assertNotEquals(first.get(0).nozzle, first.get(1).nozzle);
+        assertNotEquals(first.get(0).nozzleTip, first.get(1).nozzleTip);
+        assertEquals(2, remaining.size());
+        List<PlannedPlacement> second = planner.plan(head, remaining);
+        assertEquals(Set.of("B", "D"), getIds(second));
+        assertTrue(remaining.isEmpty());
+
+        SimplePnpJobPlanner simplePlanner = new SimplePnpJobPlanner();
+        simplePlanner.restart();
+        remaining = new ArrayList<>(jobPlacements);
+        assertEquals(Set.of("A", "B"), getIds(simplePlanner.plan(head, remaining)));
+        assertEquals(Set.of("C", "D"), getIds(simplePlanner.plan(head, remaining)));
+    }
+
+    /**
+     * The predicted time of the cost model plan must beat the first-match plan of the simple planner.
+     */
+    @Test
+    public void testCompareToSimplePlanner() {
+        CostModelPnpJobPlanner planner = new CostModelPnpJobPlanner();
+        planner.restart();
+        double[] estimate = planner.estimate(head, new ArrayList<>(jobPlacements));
+        assertTrue(estimate[0] < estimate[1], "predicted "+estimate[0]+"s, first-match "+estimate[1]+"s");
+        // Same nozzle tip changes, the difference is the travel back and forth between the feeders.
+        assertTrue(estimate[1] - estimate[0] > 1.0, "predicted "+estimate[0]+"s, first-match "+estimate[1]+"s");
+    }
+
+    /**
+     * The part height order of the job processor is kept: the far part is made the shorter one, so it must be
+     * placed first, even though the cost model would otherwise start with the near feeder. Within a cycle, the
+     * placements are placed in nozzle order, so a taller part may only follow on a later nozzle once the
+     * shorter ones are exhausted.
+     */
+    @Test
+    public void testPartHeightOrder() {
+        Configuration.get().getPart("R-0805-FAR").setHeight(new Length(0.5, LengthUnit.Millimeters));
+        List<JobPlacement> sorted = new ArrayList<>(jobPlacements);
+        sorted.sort(Comparator.comparing(JobPlacement::getPartHeight).thenComparing(JobPlacement::getPartId));
+
+        CostModelPnpJobPlanner planner = new CostModelPnpJobPlanner();
+        planner.restart();
+        List<JobPlacement> remaining = new ArrayList<>(sorted);
+        assertEquals(Set.of("B", "D"), getIds(planner.plan(head, remaining)));
+        assertEquals(Set.of("A", "C"), getIds(planner.plan(head, remaining)));
+
+        // Only one short placement, the tall one follows it on the second nozzle.
+        planner.restart();
+        remaining = new ArrayList<>(sorted);
+        remaining.remove(jobPlacements.get(3));
+        List<PlannedPlacement> first = planner.plan(head, remaining);
+        assertEquals(2, first.size());
+        assertEquals("B", first.get(0).jobPlacement.getPlacement().getId());
+        assertTrue(first.get(0).nozzle.getName().compareTo(first.get(1).nozzle.getName()) < 0);
+        assertEquals(1, remaining.size());
+    }
+
+    /**
+     * The model is built once per job, placements dropped by the job processor between cycles must not be
+     * planned, and placements added must be.
+     */
+    @Test
+    public void testRemainingPlacements() {
+        CostModelPnpJobPlanner planner = new CostModelPnpJobPlanner();
+        planner.restart();
+        List<JobPlacement> remaining = new ArrayList<>(jobPlacements);
+        assertEquals(Set.of("A", "C"), getIds(planner.plan(head, remaining)));
+        // Placement D failed elsewhere and is skipped.
+        remaining.remove(jobPlacements.get(3));
+        assertEquals(Set.of("B"), getIds(planner.plan(head, remaining)));
+        assertTrue(remaining.isEmpty());
+        // Placement A is retried.
+        remaining.add(jobPlacements.get(0));
+        assertEquals(Set.of("A"), getIds(planner.plan(head, remaining)));
+        assertFalse(remaining.contains(jobPlacements.get(0)));
+        // A new job.
+        planner.restart();
+        remaining = new ArrayList<>(jobPlacements.subList(2, 4));
+        assertEquals(Set.of("C", "D"), getIds(planner.plan(head, remaining)));
+    }
+}
@@ -44,36 +44,9 @@ public class TavellingSalesmanTest {
     @Test
     public void testTravellingSalesman() throws Exception {
         for (int t = 2, scale = 100; scale > 0; t--, scale /= 10) {
-            // make this test repeatable, by seeding the random generator.
-            Random rnd = new java.util.Random(42);
-            List<Location> list = new ArrayList<Location>();
-            // add some random Locations all over 
-            for (int i = 0; i < 1*scale+10; i++) {
-                list.add(new Location(LengthUnit.Millimeters, rnd.nextDouble()*1000.0, rnd.nextDouble()*500.0, rnd.nextDouble()*20.0, 0.0));
-            }
-            // add some X-aligned rows of feeders
-            for (int i = 0; i < 3*scale; i++) {
-                list.add(new Location(LengthUnit.Millimeters, Math.floor(rnd.nextDouble()*5.0)*250.0+rnd.nextDouble()*20.0, rnd.nextDouble()*500.0, rnd.nextDouble()*10.0, 0.0));
-            }
-            // add some Y-aligned rows of feeders
-            for (int i = 0; i < 2*scale; i++) {
-                list.add(new Location(LengthUnit.Millimeters, rnd.nextDouble()*1000.0, Math.floor(rnd.nextDouble()*2.0)*500.0+rnd.nextDouble()*20.0, rnd.nextDouble()*10.0, 0.0));
-            }
+            List<Location> list = createLocations(scale);
             // create the solver
-            TravellingSalesman<Location> tsm = new TravellingSalesman<>(
-                    list, 
-                    new TravellingSalesman.Locator<Location>() { 
-                        @Override
-                        public Location getLocation(Location locatable) {
-                            return locatable;
-                        }
-                    }, 
-                    // start from origin 
-                    new Location(LengthUnit.Millimeters), 
-                    // across, loop, and no given end location respectively
-                    (t == 1 ? new Location(LengthUnit.Millimeters) : 
-                        (t == 0 ? new Location(LengthUnit.Millimeters, 1000.0, 500.0, 0.0, 0.0) : 
-                            null)));
+            TravellingSalesman<Location> tsm = createSolver(list, t);
             // now solve the bugger
             double bestDistance = tsm.solve();
             // for the unit test, roughly check expected solution distance   
@@ -91,4 +64,76 @@ public class TavellingSalesmanTest {
             }
         }
     }
+
+    /**
+     * Compares the parallel solver against the single annealing chain on the large problem. Both are 
+     * run from the same initial route and must be within a few percent of each other. The solver times are 
+     * reported for reference, they are not checked, as they depend too much on the machine running the test.  
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testParallelSolver() throws Exception {
+        List<Location> list = createLocations(100);
+        for (int t = 2; t >= 0; t--) {
+            TravellingSalesman<Location> annealing = createSolver(list, t);
+            double annealingDistance = annealing.solve();
+            TravellingSalesman<Location> parallel = createSolver(list, t);
+            // a fixed number of chains and a generous budget, so the result is repeatable
+            double parallelDistance = parallel.solveParallel(4, 60000);
+            System.out.println("TavellingSalesmanTest.testParallelSolver() solved "+list.size()+" locations, "
+                    +"annealing: "+Math.round(annealingDistance)+"mm in "+annealing.getSolverDuration()+"ms, "
+                    +"parallel: "+Math.round(parallelDistance)+"mm in "+parallel.getSolverDuration()+"ms");
+            if (parallel.getTravel().size() != list.size()) {
+                throw new Exception("org.openpnp.util.TravellingSalesman.solveParallel("+list.size()+") returned "+parallel.getTravel().size()+" locations");
+            }
+            if (parallelDistance > annealingDistance*1.05) {
+                throw new Exception("org.openpnp.util.TravellingSalesman.solveParallel("+list.size()+") distance "+parallelDistance+" is more than 5% greater than the annealing distance "+annealingDistance);
+            }
+        }
+    }
+
+    /**
+     * Generates Locations roughly arranged in X- and Y-aligned rows, like feeders would be. Plus some additional 
+     * random Locations strewn in all over. The result has 6*scale+10 Locations.
+     */
+    private static List<Location> createLocations(int scale) {
+        // make this test repeatable, by seeding the random generator.
+        Random rnd = new java.util.Random(42);
+        List<Location> list = new ArrayList<Location>();
+        // add some random Locations all over 
+        for (int i = 0; i < 1*scale+10; i++) {
+            list.add(new Location(LengthUnit.Millimeters, rnd.nextDouble()*1000.0, rnd.nextDouble()*500.0, rnd.nextDouble()*20.0, 0.0));
+        }
+        // add some X-aligned rows of feeders
+        for (int i = 0; i < 3*scale; i++) {
+            list.add(new Location(LengthUnit.Millimeters, Math.floor(rnd.nextDouble()*5.0)*250.0+rnd.nextDouble()*20.0, rnd.nextDouble()*500.0, rnd.nextDouble()*10.0, 0.0));
+        }
+        // add some Y-aligned rows of feeders
+        for (int i = 0; i < 2*scale; i++) {
+            list.add(new Location(LengthUnit.Millimeters, rnd.nextDouble()*1000.0, Math.floor(rnd.nextDouble()*2.0)*500.0+rnd.nextDouble()*20.0, rnd.nextDouble()*10.0, 0.0));
+        }
+        return list;
+    }
+
+    /**
+     * Creates the solver starting from the origin, with t == 2 for no given end Location, t == 1 for a loop
+     * and t == 0 for a route across the machine.
+     */
+    private static TravellingSalesman<Location> createSolver(List<Location> list, int t) {
+        return new TravellingSalesman<>(
+                list, 
+                new TravellingSalesman.Locator<Location>() { 
+                    @Override
+                    public Location getLocation(Location locatable) {
+                        return locatable;
+                    }
+                }, 
+                // start from origin 
+                new Location(LengthUnit.Millimeters), 
+                // across, loop, and no given end location respectively
+                (t == 1 ? new Location(LengthUnit.Millimeters) : 
+                    (t == 0 ? new Location(LengthUnit.Millimeters, 1000.0, 500.0, 0.0, 0.0) : 
+                        null)));
+    }
 }
@@ -19,6 +19,10 @@
  * For more information about OpenPnP visit http://openpnp.org
  */
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
 import java.io.File;
 
 import org.apache.commons.io.FileUtils;
@@ -30,12 +34,18 @@ import org.openpnp.machine.reference.camera.SimulatedUpCamera;
 import org.openpnp.machine.reference.driver.NullDriver;
 import org.openpnp.machine.reference.vision.ReferenceBottomVision;
 import org.openpnp.machine.reference.vision.ReferenceBottomVision.PartSizeCheckMethod;
+import org.openpnp.model.BottomVisionSettings;
 import org.openpnp.model.Configuration;
+import org.openpnp.model.Footprint.Pad;
 import org.openpnp.model.Length;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
+import org.openpnp.model.Package;
 import org.openpnp.model.Part;
 import org.openpnp.model.Placement;
+import org.openpnp.model.VisionCompositing;
+import org.openpnp.model.VisionCompositing.Composite;
+import org.openpnp.model.VisionCompositing.Shot;
 import org.openpnp.spi.Machine;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.NozzleTip;
@@ -125,6 +135,89 @@ public class VisionCompositingTest {
         });
     }
 
+    private static Composite createComposite(Part part) throws Exception {
+        Machine machine = Configuration.get().getMachine();
+        Nozzle nozzle = machine.getDefaultHead().getDefaultNozzle();
+        NozzleTip nozzleTip = machine.getNozzleTips().get(0);
+        Package pkg = part.getPackage();
+        BottomVisionSettings visionSettings = ReferenceBottomVision.getDefault().getInheritedVisionSettings(part);
+        return pkg.getVisionCompositing().new Composite(pkg, visionSettings, nozzle, nozzleTip, 
+                VisionUtils.getBottomVisionCamera(), Location.origin);
+    }
+
+    /**
+     * @return The solution of the composite as a String, for comparison.
+     */
+    private static String getSolution(Composite composite) {
+        StringBuilder solution = new StringBuilder();
+        solution.append(composite.getCompositingSolution());
+        solution.append(String.format(" %f %f %f", composite.getTolerance(), composite.getMaxCornerRadius(), 
+                composite.getMaxPadRadius()));
+        for (Shot shot : composite.getCompositeShots()) {
+            solution.append(String.format(" [%f %f %f %f %f %f %b]", shot.getX(), shot.getY(), 
+                    shot.getWidth(), shot.getHeight(), shot.getMinMaskRadius(), shot.getMaxMaskRadius(), 
+                    shot.isOptional()));
+        }
+        solution.append(composite.getRectifiedPads().size());
+        return solution.toString();
+    }
+
+    /**
+     * Checks that cached solutions are the same as freshly computed ones.
+     */
+    @Test
+    public void testSolutionCache() throws Exception {
+        SimulatedUpCamera camera = (SimulatedUpCamera) VisionUtils.getBottomVisionCamera();
+        camera.setRoamingRadius(new Length(30, LengthUnit.Millimeters));
+        for (Part part: Configuration.get().getParts()) {
+            if (!part.getId().startsWith("FID")) {
+                VisionCompositing.invalidateCompositeCache();
+                Composite fresh = createComposite(part);
+                Composite cached = createComposite(part);
+                assertSame(fresh.getCompositeShots(), cached.getCompositeShots(), part.getId());
+                assertEquals(getSolution(fresh), getSolution(cached), part.getId());
+                VisionCompositing.invalidateCompositeCache();
+                Composite recomputed = createComposite(part);
+                assertNotSame(fresh.getCompositeShots(), recomputed.getCompositeShots(), part.getId());
+                assertEquals(getSolution(fresh), getSolution(recomputed), part.getId());
+            }
+        }
+    }
+
+    /**
+     * Checks that changes of the footprint or the camera, which do not fire property changes on the 
+     * VisionCompositing, still invalidate the cached solutions.
+     */
+    @Test
+    public void testSolutionCacheInvalidation() throws Exception {
+        SimulatedUpCamera camera = (SimulatedUpCamera) VisionUtils.getBottomVisionCamera();
+        camera.setRoamingRadius(new Length(30, LengthUnit.Millimeters));
+        for (Part part: Configuration.get().getParts()) {
+            if (!part.getId().startsWith("FID")) {
+                Composite cached = createComposite(part);
+
+                // Footprint change.
+                for (Pad pad : part.getPackage().getFootprint().getPads()) {
+                    pad.setWidth(pad.getWidth()*1.1);
+                }
+                Composite changed = createComposite(part);
+                assertNotSame(cached.getCompositeShots(), changed.getCompositeShots(), part.getId());
+                VisionCompositing.invalidateCompositeCache();
+                assertEquals(getSolution(createComposite(part)), getSolution(changed), part.getId());
+
+                // Camera change.
+                cached = createComposite(part);
+                Location unitsPerPixel = camera.getUnitsPerPixel();
+                camera.setUnitsPerPixel(unitsPerPixel.multiply(1.1, 1.1, 1, 1));
+                changed = createComposite(part);
+                assertNotSame(cached.getCompositeShots(), changed.getCompositeShots(), part.getId());
+                VisionCompositing.invalidateCompositeCache();
+                assertEquals(getSolution(createComposite(part)), getSolution(changed), part.getId());
+                camera.setUnitsPerPixel(unitsPerPixel);
+            }
+        }
+    }
+
     public static void assertMaxDelta(double a, double b, double maxDelta) throws Exception {
         if (Math.abs(a - b) > maxDelta) {
             throw new Exception(String.format("abs(%f - %f) > %f", a, b, maxDelta));
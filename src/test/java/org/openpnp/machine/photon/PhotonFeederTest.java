@@ -15,6 +15,7 @@ import org.openpnp.machine.photon.sheets.GlobalConfigPropertySheet;
 import org.openpnp.machine.reference.ReferenceActuator;
 import org.openpnp.model.*;
 import org.openpnp.spi.Actuator;
+import org.openpnp.spi.Feeder;
 import org.openpnp.spi.Machine;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.PropertySheetHolder;
@@ -835,6 +836,41 @@ public class PhotonFeederTest {
         bus.verifyInMockedOrder();
     }
 
+    @Test
+    public void prefeedMovesForwardAndChecksTheStatusOnComplete() throws Exception {
+        feeder.setHardwareId(hardwareId);
+        feeder.setPartPitch(2);
+        feeder.setOffset(feederOffset);
+        feeder.setSlotAddress(feederAddress);
+        setSlotLocation(feederAddress, baseLocation);
+
+        InitializeFeeder initializeFeeder = new InitializeFeeder(feederAddress, hardwareId);
+        bus.when(initializeFeeder)
+                .reply(responses.initializeFeeder.ok(feederAddress, hardwareId));
+
+        MoveFeedForward moveFeedForward = new MoveFeedForward(feederAddress, 20);
+        bus.when(moveFeedForward)
+                .reply(responses.moveFeedForward.ok(feederAddress, 50));
+
+        MoveFeedStatus moveFeedStatus = new MoveFeedStatus(feederAddress);
+        bus.when(moveFeedStatus)
+                .reply(responses.moveFeedStatus.ok(feederAddress));
+
+        assertTrue(feeder.canPrefeed());
+        Feeder.DeferredFeed deferred = feeder.prefeed(mockedNozzle);
+
+        bus.verify(initializeFeeder)
+                .then(moveFeedForward)
+                .nothingElseSent();
+        assertEquals(0.05, deferred.getFeedTime(), 1e-9);
+
+        deferred.complete();
+
+        assertTrue(deferred.isDone());
+        bus.verify(moveFeedStatus)
+                .nothingElseSent();
+    }
+
     @Test
     public void twoFeedersCanNotHaveTheSameAddress() throws Exception {
         // Remove the main feeder, so we can make two of our own in this test
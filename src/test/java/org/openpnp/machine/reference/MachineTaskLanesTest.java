@@ -0,0 +1,130 @@
+package org.openpnp.machine.reference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.model.Configuration;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.MachineListener;
+
+import com.google.common.io.Files;
+
+/**
+ * Runs tasks in several lanes of the simulated machine. LaneExecutorTest covers the executor itself, this covers
+ * the machine task wrapper around it.
+ */
+public class MachineTaskLanesTest {
+    private static final String LANE_A = "Lane A";
+    private static final String LANE_B = "Lane B";
+
+    private ReferenceMachine machine;
+    private final List<Boolean> busyEvents = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    public void before() throws Exception {
+        File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+        machine = (ReferenceMachine) Configuration.get().getMachine();
+        machine.setEnabled(true);
+        machine.addListener(new MachineListener.Adapter() {
+            @Override
+            public void machineBusy(Machine machine, boolean busy) {
+                busyEvents.add(busy);
+            }
+        });
+    }
+
+    /**
+     * Waits until the machine is idle and the listeners were notified of it.
+     */
+    private void waitForIdle() throws Exception {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (machine.isBusy() || (!busyEvents.isEmpty() && busyEvents.get(busyEvents.size() - 1))) {
+            assertTrue(System.currentTimeMillis() < timeout, "machine still busy");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Busy and idle notifications must alternate, starting with busy and ending with idle.
+     */
+    private void assertBusyEventsBalanced() {
+        synchronized (busyEvents) {
+            assertFalse(busyEvents.isEmpty());
+            for (int i = 0; i < busyEvents.size(); i++) {
+                assertEquals(i % 2 == 0, busyEvents.get(i), "busy event "+i+" of "+busyEvents);
+            }
+            assertEquals(0, busyEvents.size() % 2, "busy events "+busyEvents);
+        }
+    }
+
+    @Test
+    public void testFailureCancelsOnlyItsLane() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Future<Object> failing = machine.submitToLanes(() -> {
+            release.await();
+            throw new Exception("Simulated failure.");
+        }, null, LANE_A);
+        Future<Object> cancelled = machine.submitToLanes(() -> runs.incrementAndGet(), null, LANE_A);
+        Future<Integer> other = machine.submitToLanes(() -> {
+            release.await();
+            return runs.incrementAndGet();
+        }, null, LANE_B);
+        Future<Integer> otherNext = machine.submitToLanes(() -> runs.incrementAndGet(), null, LANE_B);
+        Future<Integer> machineTask = machine.submitToLanes(() -> runs.incrementAndGet(), null, Machine.MACHINE_LANE);
+        release.countDown();
+
+        assertThrows(ExecutionException.class, () -> failing.get(10, TimeUnit.SECONDS));
+        other.get(10, TimeUnit.SECONDS);
+        otherNext.get(10, TimeUnit.SECONDS);
+        machineTask.get(10, TimeUnit.SECONDS);
+        assertTrue(cancelled.isCancelled());
+        assertEquals(3, runs.get());
+
+        // The failed lane takes new tasks again.
+        assertEquals("ok", machine.submitToLanes(() -> "ok", null, LANE_A).get(10, TimeUnit.SECONDS));
+        waitForIdle();
+        assertBusyEventsBalanced();
+    }
+
+    @Test
+    public void testBusyEventsBalanced() throws Exception {
+        String[] lanes = new String[] { Machine.MACHINE_LANE, LANE_A, LANE_B };
+        for (int round = 0; round < 50; round++) {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < lanes.length; i++) {
+                final long sleep = (round + i) % 3;
+                futures.add(machine.submitToLanes(() -> {
+                    Thread.sleep(sleep);
+                    return null;
+                }, null, lanes[i]));
+            }
+            for (Future<Object> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            if (round % 5 == 0) {
+                // Let the machine go idle in between, so there are several busy periods.
+                waitForIdle();
+            }
+        }
+        waitForIdle();
+        assertBusyEventsBalanced();
+        assertTrue(busyEvents.size() >= 20, "busy events "+busyEvents.size());
+    }
+}
@@ -0,0 +1,111 @@
+package org.openpnp.machine.reference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.axis.ReferenceControllerAxis;
+import org.openpnp.machine.reference.camera.AbstractSettlingCamera;
+import org.openpnp.machine.reference.camera.SimulatedUpCamera;
+import org.openpnp.machine.reference.driver.NullDriver;
+import org.openpnp.machine.reference.vision.ReferenceBottomVision;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.spi.Axis;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.util.VisionUtils;
+
+import com.google.common.io.Files;
+
+/**
+ * Runs the pnp-test sample job on the simulated machine with pipelined alignment.
+ */
+public class PipelinedAlignmentJobTest {
+    private ReferenceMachine machine;
+    private ReferencePnpJobProcessor jobProcessor;
+    private SimulatedUpCamera camera;
+    private ReferenceBottomVision bottomVision;
+
+    @BeforeEach
+    public void before() throws Exception {
+        File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        machine = (ReferenceMachine) Configuration.get().getMachine();
+        // Make it fast.
+        ((NullDriver) machine.getDefaultDriver()).setFeedRateMmPerMinute(0);
+        for (Axis axis : machine.getAxes()) {
+            if (axis instanceof ReferenceControllerAxis) {
+                ((ReferenceControllerAxis) axis).setFeedratePerSecond(new Length(1000000, LengthUnit.Millimeters));
+                ((ReferenceControllerAxis) axis).setAccelerationPerSecond2(new Length(2000000, LengthUnit.Millimeters));
+                ((ReferenceControllerAxis) axis).setJerkPerSecond3(new Length(0, LengthUnit.Millimeters));
+            }
+        }
+        camera = (SimulatedUpCamera) VisionUtils.getBottomVisionCamera();
+        camera.setSettleMethod(AbstractSettlingCamera.SettleMethod.FixedTime);
+        camera.setSettleTimeMs(0);
+        for (Nozzle nozzle : machine.getDefaultHead().getNozzles()) {
+            ((ReferenceNozzle) nozzle).setPickDwellMilliseconds(0);
+            ((ReferenceNozzle) nozzle).setPlaceDwellMilliseconds(0);
+        }
+
+        jobProcessor = (ReferencePnpJobProcessor) machine.getPnpJobProcessor();
+        jobProcessor.setPipelinedAlignment(true);
+        bottomVision = ReferenceBottomVision.getDefault();
+        bottomVision.setPreRotate(true);
+    }
+
+    private void runJob() throws Exception {
+        File jobFile = new File(new File("samples", "pnp-test"), "pnp-test.job.xml");
+        Job job = Configuration.get().loadJob(jobFile);
+        machine.setEnabled(true);
+        machine.home();
+        machine.execute(() -> {
+            jobProcessor.initialize(job);
+            while (jobProcessor.next()) {
+                //spin
+            };
+            return null;
+        }, false, 10000);
+        for (JobPlacement jobPlacement : jobProcessor.jobPlacements) {
+            assertEquals(JobPlacement.Status.Complete, jobPlacement.getStatus(),
+                    jobPlacement.getPlacement().getId());
+        }
+        assertTrue(jobProcessor.totalPartsPlaced > 0);
+        assertTrue(jobProcessor.deferredVisionTime > 0, "no deferred alignment");
+        assertEquals(0, jobProcessor.deferredVisionFailures);
+    }
+
+    /**
+     * The first pre-rotate pass is a good enough fix, so all the deferred alignments are used.
+     */
+    @Test
+    public void testSpeculativeHit() throws Exception {
+        bottomVision.setMaxAngularOffset(10);
+        bottomVision.setMaxLinearOffset(new Length(1, LengthUnit.Millimeters));
+        camera.setErrorOffsets(new Location(LengthUnit.Millimeters, 0.1, -0.1, 0, 2));
+        runJob();
+        assertEquals(0, jobProcessor.deferredVisionMisses);
+    }
+
+    /**
+     * The first pre-rotate pass is never a good enough fix, so the parts are aligned again synchronously, and
+     * still placed.
+     */
+    @Test
+    public void testSpeculativeMiss() throws Exception {
+        bottomVision.setMaxAngularOffset(0.1);
+        bottomVision.setMaxLinearOffset(new Length(0.1, LengthUnit.Millimeters));
+        camera.setErrorOffsets(new Location(LengthUnit.Millimeters, 0.1, -0.1, 0, 7));
+        runJob();
+        assertTrue(jobProcessor.deferredVisionMisses > 0);
+    }
+}
@@ -0,0 +1,192 @@
+package org.openpnp.machine.reference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.feeder.ReferenceTubeFeeder;
+import org.openpnp.model.Abstract2DLocatable.Side;
+import org.openpnp.model.Board;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+
+import com.google.common.io.Files;
+
+/**
+ * Runs a job on the BasicJobTest machine, with prefeed lookahead and a feeder that can feed ahead.
+ */
+public class PrefeedLookaheadJobTest {
+    /**
+     * Counts the feeds, feeds ahead and their completions.
+     */
+    public static class PrefeedTestFeeder extends ReferenceTubeFeeder {
+        int feeds;
+        int prefeeds;
+        int completes;
+        boolean failPrefeeds;
+
+        @Override
+        public void feed(Nozzle nozzle) throws Exception {
+            feeds++;
+        }
+
+        @Override
+        public boolean canPrefeed() {
+            return true;
+        }
+
+        @Override
+        public DeferredFeed prefeed(Nozzle nozzle) throws Exception {
+            prefeeds++;
+            return new DeferredFeed() {
+                @Override
+                public boolean isDone() {
+                    return true;
+                }
+
+                @Override
+                public void complete() throws Exception {
+                    completes++;
+                    if (failPrefeeds) {
+                        throw new Exception("Simulated feed failure.");
+                    }
+                }
+
+                @Override
+                public double getFeedTime() {
+                    return 0.1;
+                }
+            };
+        }
+    }
+
+    private Machine machine;
+    private ReferencePnpJobProcessor jobProcessor;
+    private PrefeedTestFeeder feeder;
+
+    @BeforeEach
+    public void before() throws Exception {
+        File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/machine.xml"),
+                new File(workingDirectory, "machine.xml"));
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/packages.xml"),
+                new File(workingDirectory, "packages.xml"));
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/parts.xml"),
+                new File(workingDirectory, "parts.xml"));
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        machine = Configuration.get().getMachine();
+        machine.removeFeeder(machine.getFeeder("F1"));
+        feeder = new PrefeedTestFeeder();
+        feeder.setPart(Configuration.get().getPart("R-0805-10K"));
+        feeder.setLocation(new Location(LengthUnit.Millimeters, 0, 0, -10, 0));
+        feeder.setEnabled(true);
+        machine.addFeeder(feeder);
+
+        jobProcessor = (ReferencePnpJobProcessor) machine.getPnpJobProcessor();
+        jobProcessor.setPrefeedLookahead(true);
+    }
+
+    /**
+     * Four placements of the same part, on two nozzles, i.e. two cycles.
+     */
+    private Job createJob() {
+        Board board = new Board();
+        board.setName("test");
+        for (int i = 0; i < 4; i++) {
+            Placement placement = new Placement("R"+(i + 1));
+            placement.setPart(Configuration.get().getPart("R-0805-10K"));
+            placement.setLocation(new Location(LengthUnit.Millimeters, 10 + 10*i, 10, 0, 0));
+            placement.setSide(Side.Top);
+            board.addPlacement(placement);
+        }
+        BoardLocation boardLocation = new BoardLocation(board);
+        boardLocation.setLocation(new Location(LengthUnit.Millimeters, 0, 0, -10, 0));
+        boardLocation.setGlobalSide(Side.Top);
+        Job job = new Job();
+        job.addBoardOrPanelLocation(boardLocation);
+        return job;
+    }
+
+    private void runJob() throws Exception {
+        Job job = createJob();
+        machine.setEnabled(true);
+        machine.home();
+        machine.execute(() -> {
+            jobProcessor.initialize(job);
+            while (jobProcessor.next()) {
+                //spin
+            };
+            return null;
+        });
+        for (JobPlacement jobPlacement : jobProcessor.jobPlacements) {
+            assertEquals(JobPlacement.Status.Complete, jobPlacement.getStatus(),
+                    jobPlacement.getPlacement().getId());
+        }
+        assertTrue(jobProcessor.prefeeds.isEmpty());
+    }
+
+    /**
+     * Each cycle, the first pick takes the feed ahead, the second feeds synchronously, as the feeder only has
+     * one feed ahead at a time. The feed ahead for the second cycle is issued after the picks of the first.
+     */
+    @Test
+    public void testPrefeed() throws Exception {
+        runJob();
+        assertEquals(2, feeder.prefeeds);
+        assertEquals(2, feeder.completes);
+        assertEquals(2, feeder.feeds);
+        assertEquals(0, jobProcessor.prefeedMisses);
+        assertEquals(0, jobProcessor.prefeedDrops);
+    }
+
+    /**
+     * Failed feeds ahead fall back to feed().
+     */
+    @Test
+    public void testPrefeedFailure() throws Exception {
+        feeder.failPrefeeds = true;
+        runJob();
+        assertEquals(2, feeder.prefeeds);
+        assertEquals(2, feeder.completes);
+        assertEquals(4, feeder.feeds);
+        assertEquals(2, jobProcessor.prefeedMisses);
+        assertEquals(0, jobProcessor.prefeedDrops);
+    }
+
+    /**
+     * A feed ahead for the next cycle is dropped when the job is aborted.
+     */
+    @Test
+    public void testAbort() throws Exception {
+        Job job = createJob();
+        machine.setEnabled(true);
+        machine.home();
+        machine.execute(() -> {
+            jobProcessor.initialize(job);
+            // Run until the first cycle has picked and fed ahead for the next one.
+            while (feeder.prefeeds < 2) {
+                assertTrue(jobProcessor.next());
+            }
+            assertFalse(jobProcessor.prefeeds.isEmpty());
+            jobProcessor.abort();
+            return null;
+        });
+        assertTrue(jobProcessor.prefeeds.isEmpty());
+        assertEquals(1, jobProcessor.prefeedDrops);
+        assertEquals(2, feeder.completes);
+    }
+}
@@ -0,0 +1,73 @@
+package org.openpnp.machine.reference.camera;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.model.Configuration;
+import org.openpnp.util.NanosecondTime;
+
+import com.google.common.io.Files;
+
+/**
+ * Checks that auto settling only gets frames captured after the given time, and that frames captured by 
+ * another thread are only reused when no capture scripts are configured.
+ */
+public class CapturedFrameReuseTest {
+    private File workingDirectory;
+    private ImageCamera camera;
+
+    @BeforeEach
+    public void before() throws Exception {
+        workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+        camera = (ImageCamera) Configuration.get().getMachine().getDefaultHead().getDefaultCamera();
+    }
+
+    @Test
+    public void testFrameCapturedAfter() throws Exception {
+        long t0 = NanosecondTime.getRuntime();
+        // Stands in for a frame captured by the preview.
+        BufferedImage image = camera.captureTransformed();
+        FrameRingBuffer.Frame frame = camera.captureFrameAfter(t0);
+        assertSame(image, frame.getImage());
+        assertTrue(frame.getCaptureTime() > t0);
+
+        // Nothing was captured after that frame, so a new one must be captured.
+        FrameRingBuffer.Frame next = camera.captureFrameAfter(frame.getCaptureTime());
+        assertNotSame(image, next.getImage());
+        assertTrue(next.getCaptureTime() > frame.getCaptureTime());
+
+        // Frames captured before the time are never taken.
+        long t1 = NanosecondTime.getRuntime();
+        FrameRingBuffer.Frame later = camera.captureFrameAfter(t1);
+        assertNotSame(next.getImage(), later.getImage());
+        assertTrue(later.getCaptureTime() > t1);
+    }
+
+    @Test
+    public void testNoReuseWithCaptureScripts() throws Exception {
+        // Counts the script runs in the camera settle time.
+        FileUtils.writeStringToFile(
+                new File(Configuration.get().getScripting().getEventsDirectory(), "Camera.BeforeCapture.java"),
+                "camera.setSettleTimeMs(camera.getSettleTimeMs() + 1);", "UTF-8");
+        camera.setSettleTimeMs(0);
+        assertFalse(camera.isCapturedFrameReusable());
+
+        long t0 = NanosecondTime.getRuntime();
+        BufferedImage image = camera.captureTransformed();
+        FrameRingBuffer.Frame frame = camera.captureFrameAfter(t0);
+        assertNotSame(image, frame.getImage());
+        assertTrue(frame.getCaptureTime() > t0);
+        assertEquals(1, camera.getSettleTimeMs());
+    }
+}
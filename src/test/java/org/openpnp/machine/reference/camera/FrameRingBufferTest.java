@@ -0,0 +1,76 @@
+package org.openpnp.machine.reference.camera;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+public class FrameRingBufferTest {
+    private static BufferedImage createImage() {
+        return new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
+    }
+
+    @Test
+    public void testEmpty() {
+        FrameRingBuffer buffer = new FrameRingBuffer(4);
+        assertEquals(4, buffer.getSize());
+        assertNull(buffer.getFirstFrameCapturedAfter(Long.MIN_VALUE));
+        assertNull(buffer.getLastFrame());
+    }
+
+    @Test
+    public void testFirstFrameCapturedAfter() {
+        FrameRingBuffer buffer = new FrameRingBuffer(4);
+        BufferedImage image10 = createImage();
+        BufferedImage image20 = createImage();
+        BufferedImage image30 = createImage();
+        buffer.add(image10, 10);
+        buffer.add(image20, 20);
+        buffer.add(image30, 30);
+        assertSame(image10, buffer.getFirstFrameCapturedAfter(5).getImage());
+        // Strictly after, a frame captured at t itself does not count.
+        assertSame(image20, buffer.getFirstFrameCapturedAfter(10).getImage());
+        assertSame(image20, buffer.getFirstFrameCapturedAfter(15).getImage());
+        assertEquals(20, buffer.getFirstFrameCapturedAfter(15).getCaptureTime());
+        assertNull(buffer.getFirstFrameCapturedAfter(30));
+        assertSame(image30, buffer.getLastFrame().getImage());
+    }
+
+    /**
+     * Frames added by different threads may arrive out of capture order.
+     */
+    @Test
+    public void testOutOfOrder() {
+        FrameRingBuffer buffer = new FrameRingBuffer(4);
+        BufferedImage image50 = createImage();
+        BufferedImage image40 = createImage();
+        buffer.add(image50, 50);
+        buffer.add(image40, 40);
+        assertSame(image40, buffer.getFirstFrameCapturedAfter(35).getImage());
+        assertSame(image50, buffer.getFirstFrameCapturedAfter(40).getImage());
+        assertSame(image50, buffer.getLastFrame().getImage());
+    }
+
+    @Test
+    public void testOldestReplaced() {
+        FrameRingBuffer buffer = new FrameRingBuffer(4);
+        for (int i = 1; i <= 6; i++) {
+            buffer.add(createImage(), i*10);
+        }
+        // Frames 10 and 20 were replaced by 50 and 60.
+        assertEquals(30, buffer.getFirstFrameCapturedAfter(0).getCaptureTime());
+        assertEquals(60, buffer.getLastFrame().getCaptureTime());
+    }
+
+    @Test
+    public void testClear() {
+        FrameRingBuffer buffer = new FrameRingBuffer(2);
+        buffer.add(createImage(), 10);
+        buffer.clear();
+        assertNull(buffer.getFirstFrameCapturedAfter(0));
+        assertNull(buffer.getLastFrame());
+    }
+}
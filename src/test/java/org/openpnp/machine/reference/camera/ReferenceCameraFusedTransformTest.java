@@ -0,0 +1,162 @@
+package org.openpnp.machine.reference.camera;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Compares the fused transform of ReferenceCamera against the step by step transforms.
+ */
+public class ReferenceCameraFusedTransformTest {
+    static {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    /**
+     * Pixels differing by more than this many levels in any channel are counted as mismatches.
+     */
+    private static final int PIXEL_TOLERANCE = 8;
+
+    /**
+     * Fraction of mismatching pixels allowed, for the borders, where the interpolation of the remap and the
+     * step by step transforms may fall differently on a black pixel.
+     */
+    private static final double MISMATCH_TOLERANCE = 0.02;
+
+    /**
+     * A smooth test image, so that sub-pixel differences of the interpolation stay within the pixel tolerance,
+     * while any misplaced geometry does not.
+     */
+    private static BufferedImage createImage() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int r = (int) (128 + 100 * Math.sin(x / 17.0) * Math.cos(y / 23.0));
+                int g = (int) (255.0 * x / WIDTH);
+                int b = (int) (255.0 * y / HEIGHT);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage transform(Consumer<ImageCamera> settings, boolean fused) {
+        ImageCamera camera = new ImageCamera();
+        settings.accept(camera);
+        camera.setFusedTransforms(fused);
+        return camera.transformImage(createImage());
+    }
+
+    private static void assertTransformEquals(String name, Consumer<ImageCamera> settings) {
+        BufferedImage expected = transform(settings, false);
+        BufferedImage actual = transform(settings, true);
+        assertEquals(expected.getWidth(), actual.getWidth(), name+" width");
+        assertEquals(expected.getHeight(), actual.getHeight(), name+" height");
+        int mismatches = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int e = expected.getRGB(x, y);
+                int a = actual.getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    if (Math.abs(((e >> shift) & 0xFF) - ((a >> shift) & 0xFF)) > PIXEL_TOLERANCE) {
+                        mismatches++;
+                        break;
+                    }
+                }
+            }
+        }
+        double fraction = (double) mismatches / (expected.getWidth() * expected.getHeight());
+        assertTrue(fraction <= MISMATCH_TOLERANCE, name+" has "+mismatches+" mismatching pixels");
+    }
+
+    private static void setUndistortion(ImageCamera camera) {
+        Mat cameraMatrix = Mat.eye(3, 3, CvType.CV_64FC1);
+        cameraMatrix.put(0, 0, 300);
+        cameraMatrix.put(1, 1, 300);
+        cameraMatrix.put(0, 2, WIDTH / 2.0);
+        cameraMatrix.put(1, 2, HEIGHT / 2.0);
+        Mat distortionCoefficients = new Mat(1, 5, CvType.CV_64FC1);
+        distortionCoefficients.put(0, 0, -0.2, 0.05, 0.001, -0.001, 0);
+        camera.getCalibration().setCameraMatrixMat(cameraMatrix);
+        camera.getCalibration().setDistortionCoefficientsMat(distortionCoefficients);
+        camera.setUndistorted(true);
+        cameraMatrix.release();
+        distortionCoefficients.release();
+    }
+
+    @Test
+    public void testOffByDefault() {
+        assertFalse(new ImageCamera().isFusedTransforms());
+    }
+
+    @Test
+    public void testCrop() {
+        assertTransformEquals("crop", camera -> {
+            camera.setCropWidth(200);
+            camera.setCropHeight(150);
+        });
+    }
+
+    @Test
+    public void testUndistort() {
+        assertTransformEquals("undistort", camera -> setUndistortion(camera));
+    }
+
+    @Test
+    public void testScale() {
+        assertTransformEquals("scale", camera -> {
+            camera.setScaleWidth(400);
+            camera.setScaleHeight(200);
+        });
+    }
+
+    @Test
+    public void testRotate() {
+        assertTransformEquals("rotate 30", camera -> camera.setRotation(30));
+        assertTransformEquals("rotate 90", camera -> camera.setRotation(90));
+        assertTransformEquals("rotate -135", camera -> camera.setRotation(-135));
+    }
+
+    @Test
+    public void testOffset() {
+        assertTransformEquals("offset", camera -> {
+            camera.setOffsetX(25);
+            camera.setOffsetY(-10);
+        });
+    }
+
+    @Test
+    public void testFlip() {
+        assertTransformEquals("flip x", camera -> camera.setFlipX(true));
+        assertTransformEquals("flip y", camera -> camera.setFlipY(true));
+        assertTransformEquals("flip x and y", camera -> {
+            camera.setFlipX(true);
+            camera.setFlipY(true);
+        });
+    }
+
+    @Test
+    public void testAll() {
+        assertTransformEquals("all", camera -> {
+            camera.setCropWidth(280);
+            camera.setCropHeight(200);
+            setUndistortion(camera);
+            camera.setScaleWidth(560);
+            camera.setScaleHeight(400);
+            camera.setRotation(20);
+            camera.setOffsetX(-15);
+            camera.setOffsetY(30);
+            camera.setFlipX(true);
+        });
+    }
+}
@@ -0,0 +1,127 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.driver.AbstractReferenceDriver.CommunicationsType;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+import org.openpnp.model.Configuration;
+import org.openpnp.spi.Machine;
+import org.openpnp.util.GcodeServer;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests the confirmation window of the GcodeAsyncDriver against a GcodeServer with artificial response
+ * latency.
+ */
+public class GcodeAsyncDriverWindowTest {
+    private static final int LATENCY = 40;
+    private static final int COMMANDS = 20;
+
+    GcodeServer server;
+    GcodeAsyncDriver driver;
+
+    @BeforeEach
+    public void before() throws Exception {
+        server = new GcodeServer();
+        server.addCommandResponse("G21 ; Set millimeters mode", "ok");
+        server.addCommandResponse("G90 ; Set absolute positioning mode", "ok");
+        server.addCommandResponse("M82 ; Set absolute mode for extruder", "ok");
+        for (int i = 0; i < COMMANDS; i++) {
+            server.addCommandResponse("G1 X"+i, "ok");
+        }
+
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        driver = new GcodeAsyncDriver();
+        driver.createDefaults();
+        driver.setConnectionKeepAlive(false);
+        driver.setCommunicationsType(CommunicationsType.tcp);
+        TcpCommunications tcp = (TcpCommunications) driver.getCommunications();
+        tcp.setIpAddress("localhost");
+        tcp.setPort(server.getListenerPort());
+        driver.setConnectWaitTimeMilliseconds(0);
+        driver.setTimeoutMilliseconds(2000);
+        driver.setReportedLocationConfirmation(false);
+
+        ReferenceMachine referenceMachine = (ReferenceMachine) Configuration.get().getMachine();
+        while (referenceMachine.getDrivers().size() > 0) {
+            referenceMachine.removeDriver(referenceMachine.getDrivers().get(0));
+        }
+        referenceMachine.addDriver(driver);
+
+        Machine machine = Configuration.get().getMachine();
+        machine.setEnabled(true);
+        server.setResponseLatencyMilliseconds(LATENCY);
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        Configuration.get().getMachine().setEnabled(false);
+        server.shutdown();
+    }
+
+    /**
+     * Send the commands and wait for all of them to be confirmed.
+     *
+     * @return The elapsed time in milliseconds.
+     */
+    private long sendCommands() throws Exception {
+        server.resetMaxCommandsInFlight();
+        long t0 = System.currentTimeMillis();
+        for (int i = 0; i < COMMANDS; i++) {
+            driver.sendCommand("G1 X"+i);
+        }
+        driver.drainCommandQueue(10000);
+        driver.bailOnError();
+        return System.currentTimeMillis() - t0;
+    }
+
+    @Test
+    public void testSingleCommandWindow() throws Exception {
+        driver.setConfirmationWindowCommands(1);
+        long dt = sendCommands();
+        assertEquals(1, server.getMaxCommandsInFlight());
+        assertTrue(dt >= COMMANDS*LATENCY, "one round-trip per command, took "+dt+"ms");
+    }
+
+    @Test
+    public void testCommandWindow() throws Exception {
+        driver.setConfirmationWindowCommands(5);
+        long dt = sendCommands();
+        assertTrue(server.getMaxCommandsInFlight() <= 5, "window exceeded: "+server.getMaxCommandsInFlight());
+        assertTrue(server.getMaxCommandsInFlight() > 1, "no pipelining");
+        assertTrue(dt < COMMANDS*LATENCY/2, "round-trips not hidden, took "+dt+"ms");
+    }
+
+    @Test
+    public void testByteWindow() throws Exception {
+        driver.setConfirmationWindowCommands(10);
+        // Room for two "G1 Xnn\n" commands, not three.
+        driver.setConfirmationWindowBytes(16);
+        sendCommands();
+        assertTrue(server.getMaxCommandsInFlight() <= 2, "window exceeded: "+server.getMaxCommandsInFlight());
+    }
+
+    @Test
+    public void testErrorInWindow() throws Exception {
+        // The window never fills, so the confirmed commands stay in it until it is drained.
+        driver.setConfirmationWindowCommands(COMMANDS*2);
+        driver.setCommand(null, CommandType.COMMAND_ERROR_REGEX, "^error.*");
+        // An error on a later command, while the earlier ones are confirmed but still in the window.
+        server.addCommandResponse("G1 X7", "error:7");
+        Exception e = assertThrows(Exception.class, this::sendCommands);
+        assertTrue(e.getMessage().contains("error:7 (in response to G1 X7)"), e.getMessage());
+    }
+}
@@ -0,0 +1,76 @@
+package org.openpnp.machine.reference.driver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+
+/**
+ * Replays the recorded controller transcript of GcodeResponseClassifierTest through the response
+ * classification of the ReaderThread. "matches" classifies each line with String.matches() on the
+ * driver's current commands, as processResponse() did before, "classifier" uses the
+ * GcodeResponseClassifier.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openpnp.machine.reference.driver.GcodeResponseClassifierBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GcodeResponseClassifierBenchmark {
+    @Param({"matches", "classifier"})
+    public String classification;
+
+    private GcodeDriver driver;
+    private GcodeResponseClassifier classifier;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        driver = new GcodeDriver();
+        driver.setCommand(null, CommandType.COMMAND_CONFIRM_REGEX, "^ok.*");
+        driver.setCommand(null, CommandType.COMMAND_ERROR_REGEX, "^(error|!!|ALARM).*");
+        classifier = new GcodeResponseClassifier(driver);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(18)
+    public void classify(Blackhole blackhole) {
+        String[] transcript = GcodeResponseClassifierTest.TRANSCRIPT;
+        if (classification.equals("matches")) {
+            for (String line : transcript) {
+                String confirmRegex = driver.getCommand(null, CommandType.COMMAND_CONFIRM_REGEX);
+                String errorRegex = driver.getCommand(null, CommandType.COMMAND_ERROR_REGEX);
+                blackhole.consume(line.matches(confirmRegex) || line.matches(errorRegex));
+            }
+        }
+        else {
+            for (String line : transcript) {
+                blackhole.consume(classifier.isConfirmation(line) || classifier.isError(line));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(GcodeResponseClassifierBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
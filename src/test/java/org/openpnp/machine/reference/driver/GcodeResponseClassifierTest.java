@@ -0,0 +1,74 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+
+public class GcodeResponseClassifierTest {
+    /**
+     * Recorded controller responses, mixed from Smoothieware, Marlin, Grbl and Duet transcripts.
+     */
+    static final String[] TRANSCRIPT = {
+            "ok",
+            "ok T:21.3 /0.0 @0",
+            "ok C: X:12.0000 Y:-3.5000 Z:0.0000 A:90.0000 B:0.0000",
+            "X:12.00 Y:-3.50 Z:0.00 E:0.00 Count X:960 Y:-280 Z:0",
+            "<Idle|MPos:12.000,-3.500,0.000|FS:0,0>",
+            "<Run|MPos:1.000,2.000,3.000|FS:500,0>",
+            "error:22",
+            "error: Unknown command",
+            "!! Halted",
+            "Alarm: Hard limit",
+            "echo:busy: processing",
+            "wait",
+            "",
+            "okay",
+            "Ok",
+            "[GC:G0 G54 G17 G21 G90 G94 M5 M9 T0 F0 S0]",
+            "ALARM:1",
+            "read:a1:1234",
+    };
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals("ok", GcodeResponseClassifier.getLiteralPrefix("^ok.*"));
+        assertEquals("ok", GcodeResponseClassifier.getLiteralPrefix("ok.*"));
+        assertEquals("error:", GcodeResponseClassifier.getLiteralPrefix("^error:.?.*"));
+        assertEquals("<Idle|MPos:", GcodeResponseClassifier.getLiteralPrefix("^<Idle\\|MPos:(?<X>-?\\d+\\.\\d+).*"));
+        assertEquals("", GcodeResponseClassifier.getLiteralPrefix("^(ok|error).*"));
+        assertEquals("", GcodeResponseClassifier.getLiteralPrefix("ok|error"));
+        assertEquals("", GcodeResponseClassifier.getLiteralPrefix("(?i)ok.*"));
+        assertEquals("o", GcodeResponseClassifier.getLiteralPrefix("^ok?.*"));
+        assertEquals("!!", GcodeResponseClassifier.getLiteralPrefix("^!!.*"));
+        assertEquals("", GcodeResponseClassifier.getLiteralPrefix("\\d+"));
+        assertEquals("[GC", GcodeResponseClassifier.getLiteralPrefix("^\\[GC.*"));
+    }
+
+    @Test
+    public void testClassificationMatchesRegex() {
+        String[][] regexSets = {
+                { "^ok.*", "^error.*" },
+                { "ok.*", "^(error|!!|ALARM).*" },
+                { "^ok\\s*.*", "(?i)^(error|alarm).*" },
+                { "^(ok|wait)$", "^error:.?.*" },
+                { "^<Idle\\|MPos.*", "^\\[GC:.*" },
+        };
+        GcodeDriver driver = new GcodeDriver();
+        GcodeResponseClassifier classifier = new GcodeResponseClassifier(driver);
+        for (String[] regexSet : regexSets) {
+            // Reconfigure the driver, the classifier must follow.
+            driver.setCommand(null, CommandType.COMMAND_CONFIRM_REGEX, regexSet[0]);
+            driver.setCommand(null, CommandType.COMMAND_ERROR_REGEX, regexSet[1]);
+            for (String line : TRANSCRIPT) {
+                assertEquals(line.matches(regexSet[0]), classifier.isConfirmation(line),
+                        "confirmation "+regexSet[0]+" on "+line);
+                assertEquals(line.matches(regexSet[1]), classifier.isError(line),
+                        "error "+regexSet[1]+" on "+line);
+            }
+        }
+        // Removed commands no longer match.
+        driver.setCommand(null, CommandType.COMMAND_ERROR_REGEX, null);
+        assertEquals(false, classifier.isError("error:22"));
+    }
+}
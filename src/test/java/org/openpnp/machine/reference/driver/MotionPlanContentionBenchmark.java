@@ -0,0 +1,113 @@
+package org.openpnp.machine.reference.driver;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Reader/writer contention on the motion plan, as in the AbstractMotionPlanner: one planner thread appends
+ * motions and trims the history, while camera/UI threads query the momentary motion. Compares the former
+ * TreeMap guarded by the planner lock with the lock-free ConcurrentSkipListMap.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openpnp.machine.reference.driver.MotionPlanContentionBenchmark
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MotionPlanContentionBenchmark {
+    /**
+     * Number of motions kept in the plan history.
+     */
+    private static final int HISTORY = 1000;
+    /**
+     * Number of motions per executed plan, i.e. per planner lock.
+     */
+    private static final int PLAN = 32;
+
+    @Param({"synchronized", "concurrent"})
+    public String store;
+
+    private NavigableMap<Double, Object> motionPlan;
+    private final Object lock = new Object();
+    private boolean locking;
+    private volatile double t;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        locking = store.equals("synchronized");
+        motionPlan = (locking ? new TreeMap<>() : new ConcurrentSkipListMap<>());
+        t = 0;
+        for (int i = 0; i < HISTORY; i++) {
+            t += 0.01;
+            motionPlan.put(t, new Object());
+        }
+    }
+
+    private void executeMotionPlan() {
+        double t = this.t;
+        for (int i = 0; i < PLAN; i++) {
+            t += 0.01;
+            motionPlan.put(t, new Object());
+        }
+        this.t = t;
+        // Trim the history.
+        motionPlan.headMap(t - HISTORY*0.01).clear();
+    }
+
+    private Object getMomentaryMotion(double time) {
+        Map.Entry<Double, Object> entry = motionPlan.higherEntry(time);
+        return (entry != null ? entry.getValue() : null);
+    }
+
+    @Benchmark
+    @Group("plan")
+    @GroupThreads(1)
+    public void writer() {
+        // The planner always holds its lock while executing a plan.
+        synchronized (lock) {
+            executeMotionPlan();
+        }
+    }
+
+    @Benchmark
+    @Group("plan")
+    @GroupThreads(3)
+    public Object reader() {
+        double time = t - Math.random()*HISTORY*0.01;
+        if (locking) {
+            synchronized (lock) {
+                return getMomentaryMotion(time);
+            }
+        }
+        return getMomentaryMotion(time);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(MotionPlanContentionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
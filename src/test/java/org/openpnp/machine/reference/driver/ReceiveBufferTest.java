@@ -0,0 +1,60 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+public class ReceiveBufferTest {
+    /**
+     * Creates a ReceiveBuffer on a source delivering the given chunks, one per read. A null chunk simulates a
+     * timeout, the end of the chunks the end of the stream.
+     */
+    private static ReceiveBuffer createReceiveBuffer(int size, String... chunks) {
+        LinkedList<String> queue = new LinkedList<>(Arrays.asList(chunks));
+        return new ReceiveBuffer(ByteBuffer.allocate(size), (buffer) -> {
+            if (queue.isEmpty()) {
+                return -1;
+            }
+            String chunk = queue.poll();
+            if (chunk == null) {
+                throw new TimeoutException();
+            }
+            byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(bytes.length, buffer.remaining());
+            buffer.put(bytes, 0, length);
+            if (length < bytes.length) {
+                queue.push(chunk.substring(length));
+            }
+            return length;
+        });
+    }
+
+    @Test
+    public void testReadUntil() throws Exception {
+        ReceiveBuffer receiveBuffer = createReceiveBuffer(8,
+                "ok\r\nok", null, "\n\n\rX:1.0000 Y:2.0000 Z:3.0000 A:4.0000\nerr", "or: 1\r\n", "last");
+        assertEquals("ok", receiveBuffer.readUntil("\r\n"));
+        assertEquals("ok", receiveBuffer.readUntil("\r\n"));
+        assertEquals("X:1.0000 Y:2.0000 Z:3.0000 A:4.0000", receiveBuffer.readUntil("\r\n"));
+        assertEquals("error: 1", receiveBuffer.readUntil("\r\n"));
+        // Incomplete line at the end of the stream.
+        assertNull(receiveBuffer.readUntil("\r\n"));
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        ReceiveBuffer receiveBuffer = createReceiveBuffer(4, "ab\n", "\u00ff");
+        assertEquals('a', receiveBuffer.read());
+        assertEquals("b", receiveBuffer.readUntil("\n"));
+        assertEquals(0xC3, receiveBuffer.read());
+        assertEquals(0xBF, receiveBuffer.read());
+        assertEquals(-1, receiveBuffer.read());
+    }
+}
@@ -0,0 +1,157 @@
+package org.openpnp.machine.reference.driver;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openpnp.util.GcodeServer;
+
+/**
+ * Loopback benchmark of the TCP communications against a GcodeServer, comparing the SocketChannel based
+ * TcpCommunications with the former stream based implementation, that reads byte by byte and writes
+ * command by command.
+ *
+ * roundTrip sends one command and waits for its response, the sample time mode reports the p99 round-trip time.
+ * pipelined sends a batch of commands and then reads all the responses, reported as commands per second.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openpnp.machine.reference.driver.TcpCommunicationsBenchmark
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TcpCommunicationsBenchmark {
+    private static final String COMMAND = "G1 X10.0000 Y20.0000 Z-5.0000 F5000 ; move to target";
+    private static final int BATCH = 32;
+
+    @Param({"stream", "channel"})
+    public String implementation;
+
+    private GcodeServer server;
+    private ReferenceDriverCommunications comms;
+    private List<String> batch;
+
+    /**
+     * The former TcpCommunications implementation, as the baseline.
+     */
+    static class StreamTcpCommunications extends ReferenceDriverCommunications {
+        private final int port;
+        private Socket clientSocket;
+        private BufferedReader input;
+        private DataOutputStream output;
+
+        StreamTcpCommunications(int port) {
+            this.port = port;
+        }
+
+        @Override
+        public void connect() throws Exception {
+            clientSocket = new Socket("localhost", port);
+            input = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+            output = new DataOutputStream(clientSocket.getOutputStream());
+        }
+
+        @Override
+        public void disconnect() throws Exception {
+            clientSocket.close();
+        }
+
+        @Override
+        public String getConnectionName() {
+            return "stream:" + port;
+        }
+
+        @Override
+        protected void writeBytes(byte[] data) throws IOException {
+            output.write(data);
+        }
+
+        @Override
+        public void writeLines(List<String> lines) throws IOException {
+            for (String line : lines) {
+                writeLine(line);
+            }
+        }
+
+        @Override
+        public int read() throws TimeoutException, IOException {
+            return input.read();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new GcodeServer();
+        server.addCommandResponse(COMMAND, "ok");
+        if (implementation.equals("stream")) {
+            comms = new StreamTcpCommunications(server.getListenerPort());
+        }
+        else {
+            TcpCommunications tcp = new TcpCommunications();
+            tcp.setIpAddress("localhost");
+            tcp.setPort(server.getListenerPort());
+            comms = tcp;
+        }
+        comms.connect();
+        batch = new ArrayList<>();
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(COMMAND);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        comms.disconnect();
+        server.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String roundTrip() throws Exception {
+        comms.writeLine(COMMAND);
+        return comms.readLine();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public String pipelined() throws Exception {
+        comms.writeLines(batch);
+        String response = null;
+        for (int i = 0; i < BATCH; i++) {
+            response = comms.readLine();
+        }
+        return response;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(TcpCommunicationsBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
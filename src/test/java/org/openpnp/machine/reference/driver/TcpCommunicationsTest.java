@@ -0,0 +1,140 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.driver.ReferenceDriverCommunications.LineEndingType;
+
+/**
+ * Runs TcpCommunications against a loopback server socket.
+ */
+public class TcpCommunicationsTest {
+    private ServerSocket serverSocket;
+    private Socket server;
+    private OutputStream serverOut;
+    private BufferedReader serverIn;
+    private TcpCommunications comms;
+
+    @BeforeEach
+    public void before() throws Exception {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        comms = new TcpCommunications();
+        comms.setIpAddress(InetAddress.getLoopbackAddress().getHostAddress());
+        comms.setPort(serverSocket.getLocalPort());
+        comms.connect();
+        server = serverSocket.accept();
+        serverOut = server.getOutputStream();
+        serverIn = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.US_ASCII));
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        comms.disconnect();
+        server.close();
+        serverSocket.close();
+    }
+
+    private void send(String data) throws Exception {
+        serverOut.write(data.getBytes(StandardCharsets.US_ASCII));
+        serverOut.flush();
+    }
+
+    /**
+     * Sends the data in pieces with pauses in between, so that each piece arrives in a separate read.
+     */
+    private void sendSplit(String... pieces) throws Exception {
+        for (String piece : pieces) {
+            send(piece);
+            Thread.sleep(50);
+        }
+    }
+
+    private static String repeat(char ch, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, ch);
+        return new String(chars);
+    }
+
+    @Test
+    public void testLineEndings() throws Exception {
+        send("ok\r\nok T:20\nerror: 1\r\n\r\n\nlast\n");
+        assertEquals("ok", comms.readLine());
+        assertEquals("ok T:20", comms.readLine());
+        assertEquals("error: 1", comms.readLine());
+        // Empty lines are skipped.
+        assertEquals("last", comms.readLine());
+    }
+
+    @Test
+    public void testLinesSplitAcrossReads() throws Exception {
+        sendSplit("o", "k\r", "\nX:1.0", "000 Y:2.0000\n", "\r", "\nok\n");
+        assertEquals("ok", comms.readLine());
+        assertEquals("X:1.0000 Y:2.0000", comms.readLine());
+        assertEquals("ok", comms.readLine());
+    }
+
+    @Test
+    public void testLinesSplitAcrossBufferRefills() throws Exception {
+        // Lines of 99 characters plus the line ending never align with the 8192 byte read buffer.
+        String line = repeat('x', 99);
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 250; i++) {
+            data.append(i).append(line).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        send(data.toString());
+        for (int i = 0; i < 250; i++) {
+            assertEquals(i + line, comms.readLine());
+        }
+    }
+
+    @Test
+    public void testLineLongerThanBuffer() throws Exception {
+        String longLine = repeat('y', 20000);
+        sendSplit(longLine.substring(0, 5000), longLine.substring(5000) + "\r\nok\n");
+        assertEquals(longLine, comms.readLine());
+        assertEquals("ok", comms.readLine());
+    }
+
+    @Test
+    public void testWriteLines() throws Exception {
+        comms.setLineEndingType(LineEndingType.LF);
+        comms.writeLine("G28");
+        comms.writeLines(Arrays.asList("G0 X1", "G0 Y2", "M400"));
+        assertEquals("G28", serverIn.readLine());
+        assertEquals("G0 X1", serverIn.readLine());
+        assertEquals("G0 Y2", serverIn.readLine());
+        assertEquals("M400", serverIn.readLine());
+    }
+
+    /**
+     * A pending interrupt of the writing thread must neither close the connection nor get lost.
+     */
+    @Test
+    public void testWriteWithPendingInterrupt() throws Exception {
+        Thread.currentThread().interrupt();
+        try {
+            comms.writeLine("M114");
+            assertTrue(Thread.currentThread().isInterrupted());
+        }
+        finally {
+            Thread.interrupted();
+        }
+        comms.writeLine("M400");
+        assertEquals("M114", serverIn.readLine());
+        assertEquals("M400", serverIn.readLine());
+        send("ok\n");
+        assertEquals("ok", comms.readLine());
+    }
+}
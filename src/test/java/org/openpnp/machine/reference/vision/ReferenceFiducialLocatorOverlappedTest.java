@@ -0,0 +1,92 @@
+package org.openpnp.machine.reference.vision;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.axis.ReferenceControllerAxis;
+import org.openpnp.machine.reference.driver.NullDriver;
+import org.openpnp.model.AbstractVisionSettings;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.FiducialVisionSettings;
+import org.openpnp.model.Job;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.PlacementsHolderLocation;
+import org.openpnp.spi.Axis;
+
+import com.google.common.io.Files;
+
+/**
+ * Locates the boards of the pnp-test sample job on the simulated machine, with and without the pipeline
+ * processing overlapped with the motion. In the overlapped case, the head has already moved on to the next
+ * fiducial when the worker detects the previous one, so the results only agree if the detection is mapped
+ * relative to the capture location.
+ */
+public class ReferenceFiducialLocatorOverlappedTest {
+    private ReferenceMachine machine;
+    private ReferenceFiducialLocator locator;
+    private Job job;
+
+    @BeforeEach
+    public void before() throws Exception {
+        File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        machine = (ReferenceMachine) Configuration.get().getMachine();
+        // Make it fast, the head then moves on long before the worker has processed the image.
+        ((NullDriver) machine.getDefaultDriver()).setFeedRateMmPerMinute(0);
+        for (Axis axis : machine.getAxes()) {
+            if (axis instanceof ReferenceControllerAxis) {
+                ((ReferenceControllerAxis) axis).setFeedratePerSecond(new Length(1000000, LengthUnit.Millimeters));
+                ((ReferenceControllerAxis) axis).setAccelerationPerSecond2(new Length(2000000, LengthUnit.Millimeters));
+                ((ReferenceControllerAxis) axis).setJerkPerSecond3(new Length(0, LengthUnit.Millimeters));
+            }
+        }
+        // A single pass, so the overlapped results are not refined synchronously.
+        for (AbstractVisionSettings visionSettings : Configuration.get().getVisionSettings()) {
+            if (visionSettings instanceof FiducialVisionSettings) {
+                ((FiducialVisionSettings) visionSettings).setMaxVisionPasses(1);
+            }
+        }
+        locator = (ReferenceFiducialLocator) machine.getFiducialLocator();
+
+        File jobFile = new File(new File("samples", "pnp-test"), "pnp-test.job.xml");
+        job = Configuration.get().loadJob(jobFile);
+        machine.setEnabled(true);
+        machine.home();
+    }
+
+    private List<Location> locateBoards(boolean overlapped) throws Exception {
+        locator.setOverlappedProcessing(overlapped);
+        return machine.execute(() -> {
+            List<Location> locations = new ArrayList<>();
+            for (BoardLocation boardLocation : job.getBoardLocations()) {
+                List<PlacementsHolderLocation<?>> placementsHolderLocations = new ArrayList<>();
+                placementsHolderLocations.add(boardLocation);
+                locations.add(locator.locateAllPlacementsHolder(placementsHolderLocations, null));
+            }
+            return locations;
+        }, false, 10000);
+    }
+
+    @Test
+    public void testHeadMovesBeforeDetection() throws Exception {
+        List<Location> expected = locateBoards(false);
+        List<Location> actual = locateBoards(true);
+        for (int i = 0; i < expected.size(); i++) {
+            double distance = expected.get(i).getLinearDistanceTo(actual.get(i));
+            assertTrue(distance < 0.05, "board "+i+" located "+distance+"mm off");
+            assertTrue(Math.abs(expected.get(i).getRotation() - actual.get(i).getRotation()) < 0.1,
+                    "board "+i+" rotation");
+        }
+    }
+}
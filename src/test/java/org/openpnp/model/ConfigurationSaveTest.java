@@ -0,0 +1,170 @@
+package org.openpnp.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.io.Files;
+
+public class ConfigurationSaveTest {
+    /**
+     * Checks that only the configuration files whose content changed are rewritten and backed up,
+     * and that background saves are written completely.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIncrementalSave() throws Exception {
+        File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        File backupsDirectory = new File(workingDirectory, "backups");
+
+        Configuration.initialize(workingDirectory);
+        Configuration configuration = Configuration.get();
+        configuration.load();
+        configuration.save();
+
+        // Nothing changed.
+        FileUtils.deleteDirectory(backupsDirectory);
+        configuration.save();
+        Set<String> backedUp = backedUpFiles(backupsDirectory);
+        assertFalse(backedUp.contains("parts.xml"));
+        assertFalse(backedUp.contains("packages.xml"));
+        assertFalse(backedUp.contains("vision-settings.xml"));
+
+        // Only the parts changed.
+        configuration.addPart(new Part("INCREMENTAL-SAVE-TEST-1"));
+        configuration.save();
+        backedUp = backedUpFiles(backupsDirectory);
+        assertTrue(backedUp.contains("parts.xml"));
+        assertFalse(backedUp.contains("packages.xml"));
+        assertTrue(partsFileContains(workingDirectory, "INCREMENTAL-SAVE-TEST-1"));
+
+        // Coalesced background save.
+        configuration.addPart(new Part("INCREMENTAL-SAVE-TEST-2"));
+        configuration.saveInBackground();
+        configuration.addPart(new Part("INCREMENTAL-SAVE-TEST-3"));
+        configuration.saveInBackground();
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!partsFileContains(workingDirectory, "INCREMENTAL-SAVE-TEST-3")) {
+            assertTrue(System.currentTimeMillis() < timeout, "Background save timed out.");
+            Thread.sleep(100);
+        }
+        assertTrue(partsFileContains(workingDirectory, "INCREMENTAL-SAVE-TEST-2"));
+
+        // No temporary files left behind.
+        assertEquals(0, workingDirectory.list((dir, name) -> name.endsWith(".tmp")).length);
+    }
+
+    /**
+     * Races background saves against changes of the model. A background save writes the configuration as it
+     * is when the save starts, changes made while it runs are neither written partially nor break the
+     * serialization, and an older background save never overwrites a newer save.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBackgroundSaveRace() throws Exception {
+        File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration configuration = Configuration.get();
+        configuration.load();
+        configuration.save();
+
+        // A change right after the request is covered by the pending save.
+        SwingUtilities.invokeAndWait(() -> {
+            configuration.addPart(new Part("RACE-SAVE-TEST-1"));
+            configuration.saveInBackground();
+            configuration.addPart(new Part("RACE-SAVE-TEST-2"));
+        });
+        waitForPart(workingDirectory, "RACE-SAVE-TEST-2");
+        assertTrue(partsFileContains(workingDirectory, "RACE-SAVE-TEST-1"));
+
+        // The configuration is serialized off the Event Dispatch Thread, so the save completes while it is busy.
+        CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(() -> {
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            configuration.addPart(new Part("RACE-SAVE-TEST-BUSY"));
+            configuration.saveInBackground();
+            waitForPart(workingDirectory, "RACE-SAVE-TEST-BUSY");
+        }
+        finally {
+            release.countDown();
+        }
+
+        // Model changes on the Event Dispatch Thread, while the background writer is writing.
+        for (int i = 0; i < 100; i++) {
+            String partId = "RACE-SAVE-TEST-LOOP-" + i;
+            SwingUtilities.invokeAndWait(() -> {
+                configuration.addPart(new Part(partId));
+                configuration.saveInBackground();
+            });
+            Thread.sleep(25);
+        }
+        waitForPart(workingDirectory, "RACE-SAVE-TEST-LOOP-99");
+
+        // A synchronous save supersedes the pending background save.
+        SwingUtilities.invokeAndWait(() -> {
+            configuration.addPart(new Part("RACE-SAVE-TEST-3"));
+            configuration.saveInBackground();
+            configuration.removePart(configuration.getPart("RACE-SAVE-TEST-3"));
+        });
+        configuration.save();
+        Thread.sleep(2000);
+        assertFalse(partsFileContains(workingDirectory, "RACE-SAVE-TEST-3"));
+
+        // The written files are complete.
+        Configuration.initialize(workingDirectory);
+        Configuration reloaded = Configuration.get();
+        reloaded.load();
+        assertNotNull(reloaded.getPart("RACE-SAVE-TEST-2"));
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(reloaded.getPart("RACE-SAVE-TEST-LOOP-" + i));
+        }
+        assertEquals(0, workingDirectory.list((dir, name) -> name.endsWith(".tmp")).length);
+    }
+
+    private static void waitForPart(File workingDirectory, String partId) throws Exception {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!partsFileContains(workingDirectory, partId)) {
+            assertTrue(System.currentTimeMillis() < timeout, "Background save timed out.");
+            Thread.sleep(100);
+        }
+    }
+
+    private static Set<String> backedUpFiles(File backupsDirectory) {
+        Set<String> files = new HashSet<>();
+        File[] directories = backupsDirectory.listFiles();
+        if (directories != null) {
+            for (File directory : directories) {
+                files.addAll(Arrays.asList(directory.list()));
+            }
+        }
+        return files;
+    }
+
+    private static boolean partsFileContains(File workingDirectory, String partId) throws Exception {
+        String content = FileUtils.readFileToString(new File(workingDirectory, "parts.xml"),
+                StandardCharsets.UTF_8);
+        return content.contains("\"" + partId + "\"");
+    }
+}
@@ -0,0 +1,176 @@
+package org.openpnp.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.model.Abstract2DLocatable.Side;
+import org.openpnp.model.Placement.Type;
+
+/**
+ * Counts the active placements of a job with a board on the job and a board on a panel, as the
+ * placed states and the model change.
+ */
+public class JobActivePlacementsTest {
+    private Job job;
+    private BoardLocation boardLocation;
+    private PanelLocation panelLocation;
+    private BoardLocation panelBoardLocation;
+
+    /**
+     * @return a board with four active placements, one placement on the bottom and a fiducial.
+     */
+    private static Board createBoard() {
+        Board board = new Board();
+        for (int i = 1; i <= 4; i++) {
+            board.addPlacement(new Placement("R"+i));
+        }
+        Placement bottom = new Placement("R5");
+        bottom.setSide(Side.Bottom);
+        board.addPlacement(bottom);
+        Placement fiducial = new Placement("FID1");
+        fiducial.setType(Type.Fiducial);
+        board.addPlacement(fiducial);
+        return board;
+    }
+
+    @BeforeEach
+    public void before() {
+        job = new Job();
+        boardLocation = new BoardLocation(createBoard());
+        job.addBoardOrPanelLocation(boardLocation);
+        panelLocation = new PanelLocation(new Panel());
+        job.addBoardOrPanelLocation(panelLocation);
+        panelBoardLocation = new BoardLocation(createBoard());
+        panelLocation.addChild(panelBoardLocation);
+    }
+
+    private Placement getPlacement(BoardLocation boardLocation, String id) {
+        return boardLocation.getBoard().getPlacements().get(id);
+    }
+
+    private void assertActive(int expected, int expectedTotal, PlacementsHolderLocation<?> placementsHolderLocation) {
+        assertEquals(expected, job.getActivePlacements(placementsHolderLocation));
+        assertEquals(expectedTotal, job.getTotalActivePlacements(placementsHolderLocation));
+    }
+
+    @Test
+    public void testPlacedStatus() {
+        PanelLocation root = job.getRootPanelLocation();
+        assertActive(8, 8, root);
+        assertActive(4, 4, boardLocation);
+        assertActive(4, 4, panelLocation);
+        assertActive(4, 4, panelBoardLocation);
+
+        job.storePlacedStatus(boardLocation, "R1", true);
+        job.storePlacedStatus(panelBoardLocation, "R2", true);
+        // Placements that are not active do not count, placed or not.
+        job.storePlacedStatus(boardLocation, "R5", true);
+        job.storePlacedStatus(boardLocation, "FID1", true);
+        assertActive(6, 8, root);
+        assertActive(3, 4, boardLocation);
+        assertActive(3, 4, panelLocation);
+        assertActive(3, 4, panelBoardLocation);
+
+        job.storePlacedStatus(boardLocation, "R1", false);
+        job.removePlacedStatus(panelBoardLocation, "R2");
+        assertActive(8, 8, root);
+        assertActive(4, 4, panelLocation);
+
+        job.storePlacedStatus(boardLocation, "R3", true);
+        job.storePlacedStatus(panelBoardLocation, "R3", true);
+        assertActive(6, 8, root);
+        job.removeAllPlacedStatus();
+        assertActive(8, 8, root);
+        assertActive(4, 4, boardLocation);
+    }
+
+    @Test
+    public void testModelChanges() {
+        PanelLocation root = job.getRootPanelLocation();
+        job.storePlacedStatus(boardLocation, "R2", true);
+        assertActive(7, 8, root);
+
+        getPlacement(boardLocation, "R1").setEnabled(false);
+        assertActive(6, 7, root);
+        assertActive(2, 3, boardLocation);
+
+        // A placed placement that is no longer active no longer counts as placed either.
+        getPlacement(boardLocation, "R2").setType(Type.Fiducial);
+        assertActive(6, 6, root);
+        assertActive(2, 2, boardLocation);
+
+        getPlacement(boardLocation, "R3").setSide(Side.Bottom);
+        assertActive(5, 5, root);
+        assertActive(1, 1, boardLocation);
+
+        // Flipped over, R3 and R5 face up.
+        boardLocation.setGlobalSide(Side.Bottom);
+        assertActive(6, 6, root);
+        assertActive(2, 2, boardLocation);
+
+        boardLocation.getBoard().addPlacement(new Placement("R6"));
+        getPlacement(boardLocation, "R6").setSide(Side.Bottom);
+        assertActive(7, 7, root);
+        assertActive(3, 3, boardLocation);
+
+        panelBoardLocation.setLocallyEnabled(false);
+        assertActive(3, 3, root);
+        assertActive(0, 0, panelLocation);
+        assertActive(0, 0, panelBoardLocation);
+        panelBoardLocation.setLocallyEnabled(true);
+        panelLocation.setLocallyEnabled(false);
+        assertActive(3, 3, root);
+        assertActive(0, 0, panelBoardLocation);
+        panelLocation.setLocallyEnabled(true);
+        assertActive(7, 7, root);
+
+        BoardLocation addedBoardLocation = new BoardLocation(createBoard());
+        panelLocation.addChild(addedBoardLocation);
+        job.storePlacedStatus(addedBoardLocation, "R4", true);
+        assertActive(10, 11, root);
+        assertActive(7, 8, panelLocation);
+        assertActive(3, 4, addedBoardLocation);
+    }
+
+    @Test
+    public void testHolderNotInJob() {
+        BoardLocation otherBoardLocation = new BoardLocation(createBoard());
+        assertActive(8, 8, job.getRootPanelLocation());
+        job.storePlacedStatus(otherBoardLocation, "R1", true);
+        assertActive(3, 4, otherBoardLocation);
+        assertActive(8, 8, job.getRootPanelLocation());
+    }
+
+    @Test
+    public void testBatchStateChanges() {
+        List<String> events = new ArrayList<>();
+        job.addPropertyChangeListener(evt -> {
+            if (!evt.getPropertyName().equals("dirty")) {
+                events.add(evt.getPropertyName());
+            }
+        });
+
+        job.storePlacedStatus(boardLocation, "R1", true);
+        assertEquals(1, events.size());
+        events.clear();
+
+        job.batchStateChanges(() -> {
+            job.storePlacedStatus(boardLocation, "R2", true);
+            job.batchStateChanges(() -> {
+                job.storePlacedStatus(panelBoardLocation, "R1", true);
+                job.storePlacedStatus(panelBoardLocation, "R2", true);
+            });
+            // Nested batches fire when the outermost one ends.
+            assertEquals(0, events.size());
+            // The counts are up to date within the batch.
+            assertActive(4, 8, job.getRootPanelLocation());
+        });
+        assertEquals(List.of("placed"), events);
+        assertActive(4, 8, job.getRootPanelLocation());
+        assertActive(2, 4, panelLocation);
+    }
+}
@@ -0,0 +1,108 @@
+package org.openpnp.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class JobStateIndexTest {
+    private static String key(String... ids) {
+        return String.join(PlacementsHolderLocation.ID_DELIMITTER, ids);
+    }
+
+    @Test
+    public void testHandles() {
+        JobStateIndex index = new JobStateIndex();
+        int r1 = index.getHandle(key("Pnl1", "Brd1", "R1"));
+        int r2 = index.getHandle(key("Pnl1", "Brd1", "R2"));
+        assertTrue(r1 != r2);
+        assertEquals(r1, index.getHandle(key("Pnl1", "Brd1", "R1")));
+        assertEquals(key("Pnl1", "Brd1", "R2"), index.getKey(r2));
+    }
+
+    @Test
+    public void testFlags() {
+        JobStateIndex index = new JobStateIndex();
+        int handle = index.getHandle(key("Brd1", "R1"));
+        assertFalse(index.enabled.isStored(handle));
+        assertTrue(index.enabled.get(handle, true));
+        index.enabled.put(handle, false);
+        assertTrue(index.enabled.isStored(handle));
+        assertFalse(index.enabled.get(handle, true));
+        assertTrue(index.enabled.remove(handle));
+        assertFalse(index.enabled.remove(handle));
+        assertTrue(index.enabled.get(handle, true));
+    }
+
+    @Test
+    public void testPlacedCounts() {
+        JobStateIndex index = new JobStateIndex();
+        int pnl1 = index.getHandle("Pnl1");
+        int brd1 = index.getHandle(key("Pnl1", "Brd1"));
+        int brd2 = index.getHandle(key("Pnl1", "Brd2"));
+        int brd1R1 = index.getHandle(key("Pnl1", "Brd1", "R1"));
+        int brd1R2 = index.getHandle(key("Pnl1", "Brd1", "R2"));
+        int brd2R1 = index.getHandle(key("Pnl1", "Brd2", "R1"));
+
+        index.putPlaced(brd1R1, true);
+        index.putPlaced(brd1R2, true);
+        index.putPlaced(brd2R1, false);
+        // Storing the same status again must not count twice.
+        index.putPlaced(brd1R2, true);
+        assertTrue(index.isPlaced(brd1R1));
+        assertTrue(index.isPlacedStored(brd2R1));
+        assertFalse(index.isPlaced(brd2R1));
+        assertPlacedCount(index, 2, pnl1);
+        assertPlacedCount(index, 2, brd1);
+        assertPlacedCount(index, 0, brd2);
+
+        index.putPlaced(brd1R1, false);
+        index.putPlaced(brd2R1, true);
+        assertPlacedCount(index, 2, pnl1);
+        assertPlacedCount(index, 1, brd1);
+        assertPlacedCount(index, 1, brd2);
+
+        assertTrue(index.removePlaced(brd1R2));
+        assertFalse(index.removePlaced(brd1R2));
+        assertPlacedCount(index, 1, pnl1);
+        assertPlacedCount(index, 0, brd1);
+
+        index.clearPlaced();
+        assertFalse(index.isPlacedStored(brd2R1));
+        assertPlacedCount(index, 0, pnl1);
+        assertPlacedCount(index, 0, brd2);
+    }
+
+    private static void assertPlacedCount(JobStateIndex index, int expected, int holderHandle) {
+        // The placed count of a holder is the number of placed keys it prefixes.
+        int count = 0;
+        String prefix = index.getKey(holderHandle) + PlacementsHolderLocation.ID_DELIMITTER;
+        for (int handle = 0; ; handle++) {
+            String key;
+            try {
+                key = index.getKey(handle);
+            }
+            catch (IndexOutOfBoundsException e) {
+                break;
+            }
+            if (key.startsWith(prefix) && index.isPlaced(handle)) {
+                count++;
+            }
+        }
+        assertEquals(expected, count);
+        assertEquals(expected, index.getPlacedCount(holderHandle));
+    }
+
+    @Test
+    public void testErrorHandling() {
+        JobStateIndex index = new JobStateIndex();
+        int handle = index.getHandle(key("Brd1", "R1"));
+        assertNull(index.getErrorHandling(handle));
+        index.putErrorHandling(handle, Placement.ErrorHandling.Defer);
+        assertEquals(Placement.ErrorHandling.Defer, index.getErrorHandling(handle));
+        index.putErrorHandling(handle, null);
+        assertNull(index.getErrorHandling(handle));
+    }
+}
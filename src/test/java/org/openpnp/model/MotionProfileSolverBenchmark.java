@@ -0,0 +1,102 @@
+package org.openpnp.model;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Solving the axis profiles of randomized moves, as the motion planner does for each uncoordinated move.
+ * "single" solves each profile on its own and synchronizes them, as before, "batch" solves and synchronizes all the
+ * profiles of the path with one shared SolverWorkspace. crossingTimes measures the Newton solving of the
+ * crossing times, as used when extracting profile sections.
+ *
+ * Run on the commit before to compare with the former lambda based solver.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openpnp.model.MotionProfileSolverBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MotionProfileSolverBenchmark {
+    private static final int PATHS = 256;
+
+    @Param({"single", "batch"})
+    public String solver;
+
+    private MotionProfile[][] paths;
+    private MotionProfile[][] solvedPaths;
+    private final MotionProfile.SolverWorkspace workspace = new MotionProfile.SolverWorkspace();
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(MotionProfileSolverTest.seed);
+        paths = new MotionProfile[PATHS][];
+        solvedPaths = new MotionProfile[PATHS][];
+        for (int i = 0; i < PATHS; i++) {
+            paths[i] = MotionProfileSolverTest.randomPath(random);
+            solvedPaths[i] = copy(paths[i]);
+            MotionProfile.synchronizeProfiles(solvedPaths[i]);
+        }
+    }
+
+    private static MotionProfile[] copy(MotionProfile[] path) {
+        MotionProfile[] profiles = new MotionProfile[path.length];
+        for (int axis = 0; axis < path.length; axis++) {
+            profiles[axis] = new MotionProfile(path[axis]);
+        }
+        return profiles;
+    }
+
+    @Benchmark
+    public MotionProfile[] solve() {
+        MotionProfile[] profiles = copy(paths[index++ % PATHS]);
+        if (solver.equals("batch")) {
+            MotionProfile.solveProfiles(profiles, workspace);
+            MotionProfile.synchronizeProfiles(profiles, workspace);
+        }
+        else {
+            for (MotionProfile profile : profiles) {
+                profile.assertSolved();
+            }
+            MotionProfile.synchronizeProfiles(profiles);
+        }
+        return profiles;
+    }
+
+    @Benchmark
+    public double crossingTimes() {
+        double sum = 0;
+        for (MotionProfile profile : solvedPaths[index++ % PATHS]) {
+            double sMid = (profile.s[0] + profile.s[MotionProfile.segments])*0.5;
+            Double t0 = profile.getForwardCrossingTime(sMid, false);
+            Double t1 = profile.getBackwardCrossingTime(sMid, false);
+            sum += (t0 != null ? t0 : 0) + (t1 != null ? t1 : 0);
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(MotionProfileSolverBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
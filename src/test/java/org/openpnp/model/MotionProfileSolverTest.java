@@ -0,0 +1,189 @@
+package org.openpnp.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.openpnp.model.MotionProfile.ProfileOption;
+
+/**
+ * Golden test of the MotionProfile solver. MotionProfileSolverTest.csv holds the solutions of randomized moves, as
+ * recorded with the former solver, that used lambdas and boxed Newton solving and allocated its arrays per profile.
+ * The profiles are solved both one by one and as synchronized paths in a batch with one shared SolverWorkspace.
+ *
+ * Regenerate the golden file by running main(), if the solver is deliberately changed.
+ */
+public class MotionProfileSolverTest {
+    static final long seed = 4711;
+    static final int paths = 48;
+    static final int axes = 4;
+
+    private static final String goldenFile = "MotionProfileSolverTest.csv";
+    private static final double tolerance = 1e-9;
+
+    /**
+     * Creates the axis profiles of a random move. Includes constant acceleration axes, null moves, moving entry/exit,
+     * unconstrained entry/exit, minimum times and the various synchronization options.
+     */
+    static MotionProfile[] randomPath(Random random) {
+        MotionProfile[] profiles = new MotionProfile[axes];
+        int[] synchronizeOptions = new int[] { 0, ProfileOption.SynchronizeStraighten.flag(),
+                ProfileOption.SynchronizeEarlyBird.flag(), ProfileOption.SynchronizeLastMinute.flag() };
+        int[] entryExitOptions = new int[] { 0, 0, ProfileOption.UnconstrainedEntry.flag(),
+                ProfileOption.UnconstrainedExit.flag() };
+        for (int axis = 0; axis < axes; axis++) {
+            double vMax = 100 + random.nextDouble()*900;
+            double aMax = 500 + random.nextDouble()*4500;
+            // One in four is a constant acceleration axis.
+            double jMax = (random.nextInt(4) == 0 ? 0 : aMax*(2 + random.nextDouble()*18));
+            double s0 = random.nextDouble()*400;
+            // One in eight is a null move.
+            double s1 = (random.nextInt(8) == 0 ? s0 : random.nextDouble()*400);
+            double v0 = 0;
+            double v1 = 0;
+            double a0 = 0;
+            double a1 = 0;
+            int options = synchronizeOptions[random.nextInt(synchronizeOptions.length)];
+            if (random.nextBoolean()) {
+                // Moving entry/exit.
+                v0 = (random.nextDouble()*2 - 1)*vMax*0.8;
+                v1 = (random.nextDouble()*2 - 1)*vMax*0.8;
+                if (jMax != 0 && random.nextBoolean()) {
+                    a0 = (random.nextDouble()*2 - 1)*aMax*0.5;
+                    a1 = (random.nextDouble()*2 - 1)*aMax*0.5;
+                }
+            }
+            else {
+                options |= entryExitOptions[random.nextInt(entryExitOptions.length)];
+            }
+            double tMin = (random.nextInt(4) == 0 ? 0.1 + random.nextDouble() : 0);
+            profiles[axis] = new MotionProfile(s0, s1, v0, v1, a0, a1,
+                    -1000, 1000, vMax, aMax, aMax, jMax, tMin, Double.POSITIVE_INFINITY, options);
+        }
+        return profiles;
+    }
+
+    private static double crossing(Double t) {
+        return (t != null ? t : Double.NaN);
+    }
+
+    private static double[] solution(MotionProfile profile) {
+        double sMid = (profile.s[0] + profile.s[MotionProfile.segments])*0.5;
+        double sQuarter = profile.s[0] + (profile.s[MotionProfile.segments] - profile.s[0])*0.25;
+        return new double[] {
+                profile.time,
+                profile.t[0], profile.t[1], profile.t[2], profile.t[3], profile.t[4],
+                profile.t[5], profile.t[6], profile.t[7], profile.t[8],
+                profile.v[4], profile.a[2], profile.a[6], profile.j[0], profile.j[6],
+                crossing(profile.getForwardCrossingTime(sMid, false)),
+                crossing(profile.getBackwardCrossingTime(sMid, false)),
+                crossing(profile.getForwardCrossingTime(sQuarter, false)),
+        };
+    }
+
+    private static String solutionLine(String mode, int path, int axis, MotionProfile profile) {
+        StringBuilder line = new StringBuilder();
+        line.append(mode).append(',').append(path).append(',').append(axis);
+        for (double value : solution(profile)) {
+            line.append(',').append(String.format(Locale.ROOT, "%.12g", value));
+        }
+        return line.toString();
+    }
+
+    /**
+     * @return The solution lines of all the random paths, solved one by one and synchronized in a batch.
+     */
+    private static List<String> solveAll() {
+        List<String> lines = new ArrayList<>();
+        MotionProfile.SolverWorkspace workspace = new MotionProfile.SolverWorkspace();
+        Random random = new Random(seed);
+        for (int path = 0; path < paths; path++) {
+            MotionProfile[] profiles = randomPath(random);
+            for (int axis = 0; axis < axes; axis++) {
+                MotionProfile single = new MotionProfile(profiles[axis]);
+                single.solve();
+                lines.add(solutionLine("single", path, axis, single));
+            }
+            MotionProfile.solveProfiles(profiles, workspace);
+            MotionProfile.synchronizeProfiles(profiles, workspace);
+            for (int axis = 0; axis < axes; axis++) {
+                lines.add(solutionLine("synchronized", path, axis, profiles[axis]));
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> readGolden() throws Exception {
+        List<String> lines = new ArrayList<>();
+        InputStream in = MotionProfileSolverTest.class.getResourceAsStream(goldenFile);
+        assertNotNull(in, goldenFile);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void testGoldenSolutions() throws Exception {
+        List<String> golden = readGolden();
+        List<String> solved = solveAll();
+        assertEquals(golden.size(), solved.size());
+        for (int i = 0; i < golden.size(); i++) {
+            String[] expected = golden.get(i).split(",");
+            String[] actual = solved.get(i).split(",");
+            assertEquals(expected.length, actual.length);
+            String label = expected[0]+" path "+expected[1]+" axis "+expected[2];
+            assertEquals(expected[0]+expected[1]+expected[2], actual[0]+actual[1]+actual[2]);
+            for (int k = 3; k < expected.length; k++) {
+                double e = Double.parseDouble(expected[k]);
+                double a = Double.parseDouble(actual[k]);
+                if (Double.isNaN(e)) {
+                    assertEquals(e, a, label+" value "+k);
+                }
+                else {
+                    assertEquals(e, a, tolerance*Math.max(1, Math.abs(e)), label+" value "+k);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMomentaryValues() throws Exception {
+        Random random = new Random(seed);
+        MotionProfile.SolverWorkspace workspace = new MotionProfile.SolverWorkspace();
+        MotionProfile[] profiles = randomPath(random);
+        MotionProfile.solveProfiles(profiles, workspace);
+        MotionProfile.synchronizeProfiles(profiles, workspace);
+        for (MotionProfile profile : profiles) {
+            // Check the momentary location against the crossing times.
+            double sMid = (profile.s[0] + profile.s[MotionProfile.segments])*0.5;
+            Double tMid = profile.getForwardCrossingTime(sMid, false);
+            if (tMid != null) {
+                assertEquals(sMid, profile.getMomentaryLocation(tMid), 1e-3);
+            }
+            assertEquals(profile.s[0], profile.getMomentaryLocation(0), tolerance);
+            assertEquals(profile.s[MotionProfile.segments], profile.getMomentaryLocation(profile.time), tolerance);
+            assertEquals(profile.v[MotionProfile.segments], profile.getMomentaryVelocity(profile.time), tolerance);
+        }
+    }
+
+    public static void main(String[] args) {
+        for (String line : solveAll()) {
+            System.out.println(line);
+        }
+    }
+}
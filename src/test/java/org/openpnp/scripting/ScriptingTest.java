@@ -1,6 +1,7 @@
 package org.openpnp.scripting;
 
 import java.io.File;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -193,5 +194,53 @@ public class ScriptingTest {
             }
         }
         System.out.println("All " + numThreads + " threads returned the expected results");
+
+        // ==== Test 6 ====
+        // Check that cached scripts are reloaded when modified, and that new and deleted event
+        // scripts are picked up
+        // ================
+
+        if (supportedTestFileExtensions.contains("js")) {
+            File cacheScript = new File(scriptsDirectory, "Events/cacheEvent.js");
+            FileUtils.writeStringToFile(cacheScript, "testResults.put(\"cache\", \"1\");",
+                    Charset.defaultCharset());
+            scripting.on("cacheEvent", testGlobals);
+            if (!"1".equals(testResults.get("cache"))) {
+                throw new Exception("New event script was not executed");
+            }
+            scripting.on("cacheEvent", testGlobals);
+            FileUtils.writeStringToFile(cacheScript, "testResults.put(\"cache\", \"22\");",
+                    Charset.defaultCharset());
+            scripting.on("cacheEvent", testGlobals);
+            if (!"22".equals(testResults.get("cache"))) {
+                throw new Exception("Modified event script was not reloaded");
+            }
+            cacheScript.delete();
+            testResults.remove("cache");
+            scripting.on("cacheEvent", testGlobals);
+            if (testResults.containsKey("cache")) {
+                throw new Exception("Deleted event script was still executed");
+            }
+            Scripting.ScriptStatistics statistics =
+                    scripting.getScriptStatistics().get(cacheScript.getAbsolutePath());
+            if (statistics == null || statistics.getCount() != 3) {
+                throw new Exception("Script statistics didn't count the executions: " + statistics);
+            }
+        }
+
+        // ==== Test 7 ====
+        // Check that compiled scripts are dropped with their engines, when the pool destroys them
+        // ================
+
+        if (supportedTestFileExtensions.contains("js")) {
+            scripting.on("testEvent", testGlobals);
+            if (scripting.getCompiledCacheEngineCount() == 0) {
+                throw new Exception("No compiled scripts cached for the pooled engines");
+            }
+            scripting.clearScriptingEnginePool();
+            if (scripting.getCompiledCacheEngineCount() != 0) {
+                throw new Exception("Compiled scripts left in the cache after the pool was cleared");
+            }
+        }
     }
 }
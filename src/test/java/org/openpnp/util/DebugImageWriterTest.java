@@ -0,0 +1,122 @@
+package org.openpnp.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.openpnp.util.DebugImageWriter.QueuePolicy;
+
+import com.google.common.io.Files;
+
+public class DebugImageWriterTest {
+    /**
+     * Writes images in the background and checks they are written completely, even though the source Mat is
+     * modified and released right after queuing it.
+     */
+    @Test
+    public void testWrite() throws Exception {
+        nu.pattern.OpenCV.loadLocally();
+        File directory = Files.createTempDir();
+        DebugImageWriter writer = new DebugImageWriter(16);
+        for (int i = 0; i < 8; i++) {
+            Mat mat = new Mat(120, 160, CvType.CV_8UC3, new Scalar(i*10, 50, 200));
+            Imgproc.circle(mat, new Point(80, 60), 20, new Scalar(255, 255, 255), -1);
+            writer.write(new File(directory, "image"+i+".png"), mat);
+            // Must not affect the queued copy.
+            mat.setTo(new Scalar(0, 0, 0));
+            mat.release();
+        }
+        assertTrue(writer.flush(10000));
+        for (int i = 0; i < 8; i++) {
+            Mat mat = Imgcodecs.imread(new File(directory, "image"+i+".png").getAbsolutePath());
+            assertEquals(160, mat.cols());
+            assertEquals(120, mat.rows());
+            assertEquals(255.0, mat.get(60, 80)[0]);
+            assertEquals(i*10.0, mat.get(5, 5)[0]);
+            mat.release();
+        }
+    }
+
+    /**
+     * Writes noise images, which do not compress, into a rotated directory and checks that the oldest are
+     * deleted to keep it below the maximum size.
+     */
+    @Test
+    public void testRotation() throws Exception {
+        nu.pattern.OpenCV.loadLocally();
+        File directory = Files.createTempDir();
+        DebugImageWriter writer = new DebugImageWriter(16);
+        long maxBytes = 100*1024;
+        writer.setMaxBytes(maxBytes);
+        long base = System.currentTimeMillis() - 3600*1000;
+        int count = 10;
+        for (int i = 0; i < count; i++) {
+            Mat mat = new Mat(100, 100, CvType.CV_8UC3);
+            Core.randu(mat, 0, 256);
+            File file = new File(directory, "image"+i+".png");
+            writer.writeVision(file, mat);
+            mat.release();
+            assertTrue(writer.flush(10000));
+            if (file.exists()) {
+                // Make the age order unambiguous.
+                file.setLastModified(base + i*1000);
+            }
+        }
+        long size = 0;
+        for (File file : directory.listFiles()) {
+            size += file.length();
+        }
+        assertTrue(size <= maxBytes, "directory size "+size);
+        assertTrue(new File(directory, "image"+(count - 1)+".png").exists());
+        assertFalse(new File(directory, "image0.png").exists());
+        // The files left are the newest.
+        boolean deleted = false;
+        for (int i = count - 1; i >= 0; i--) {
+            boolean exists = new File(directory, "image"+i+".png").exists();
+            assertFalse(exists && deleted, "image"+i+" kept after a newer image was deleted");
+            deleted |= !exists;
+        }
+
+        // Without a maximum size, nothing is deleted.
+        File unlimited = Files.createTempDir();
+        writer.setMaxBytes(0L);
+        for (int i = 0; i < count; i++) {
+            Mat mat = new Mat(100, 100, CvType.CV_8UC3);
+            Core.randu(mat, 0, 256);
+            writer.writeVision(new File(unlimited, "image"+i+".png"), mat);
+            mat.release();
+        }
+        assertTrue(writer.flush(10000));
+        assertEquals(count, unlimited.listFiles().length);
+    }
+
+    /**
+     * With the Drop policy, images that do not fit into the queue are dropped instead of blocking the caller.
+     */
+    @Test
+    public void testDropPolicy() throws Exception {
+        nu.pattern.OpenCV.loadLocally();
+        File directory = Files.createTempDir();
+        // No workers, so the queue is never drained.
+        DebugImageWriter writer = new DebugImageWriter(2, 0);
+        writer.setQueuePolicy(QueuePolicy.Drop);
+        for (int i = 0; i < 5; i++) {
+            Mat mat = new Mat(10, 10, CvType.CV_8UC1, new Scalar(i));
+            writer.write(new File(directory, "image"+i+".png"), mat);
+            mat.release();
+        }
+        assertEquals(3, writer.getDroppedCount());
+        assertFalse(writer.flush(100));
+        assertEquals(0, directory.listFiles().length);
+    }
+}
@@ -0,0 +1,86 @@
+package org.openpnp.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openpnp.model.Board;
+import org.openpnp.model.Placement;
+
+/**
+ * Importing a board with many placements, as BoardPlacementsPanel does when merging an imported
+ * board into an existing one: every imported placement is looked up by id and the new ones are
+ * added. createIds measures generating the ids of all the placements of the board.
+ *
+ * Run on the commit before to compare with the former linear search.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openpnp.util.IdentifiableListBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IdentifiableListBenchmark {
+    @Param({"20000"})
+    public int placements;
+
+    private Board importedBoard;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        importedBoard = new Board();
+        for (int i = 1; i <= placements; i++) {
+            importedBoard.addPlacement(new Placement("R" + i));
+        }
+    }
+
+    @Benchmark
+    public Board importBoard() {
+        Board board = new Board();
+        // Half of the placements already exist and are merged.
+        for (int i = 1; i <= placements; i += 2) {
+            board.addPlacement(new Placement("R" + i));
+        }
+        IdentifiableList<Placement> existingPlacements = board.getPlacements();
+        for (Placement placement : importedBoard.getPlacements()) {
+            Placement existingPlacement = existingPlacements.get(placement.getId());
+            if (existingPlacement != null) {
+                existingPlacement.setComments(placement.getComments());
+            }
+            else {
+                board.addPlacement(new Placement(placement));
+            }
+        }
+        return board;
+    }
+
+    @Benchmark
+    public IdentifiableList<Placement> createIds() {
+        IdentifiableList<Placement> list = new IdentifiableList<>();
+        for (int i = 0; i < placements; i++) {
+            list.add(new Placement(list.createId("R")));
+        }
+        return list;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(IdentifiableListBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,157 @@
+package org.openpnp.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.openpnp.model.Identifiable;
+
+public class IdentifiableListTest {
+    static class Item implements Identifiable {
+        private String id;
+
+        Item(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        void setId(String id) {
+            String oldValue = this.id;
+            this.id = id;
+            if (oldValue != null && !oldValue.equals(id)) {
+                IdentifiableList.idChanged();
+            }
+        }
+    }
+
+    @Test
+    public void testGet() {
+        IdentifiableList<Item> list = new IdentifiableList<>();
+        Item a = new Item("A");
+        Item b = new Item("B");
+        list.add(a);
+        list.add(b);
+        assertSame(a, list.get("A"));
+        assertSame(b, list.get("B"));
+        assertNull(list.get("C"));
+        assertNull(list.get(""));
+        assertNull(list.get((String) null));
+
+        Item c = new Item("C");
+        list.add(0, c);
+        assertSame(c, list.get("C"));
+        list.remove(a);
+        assertNull(list.get("A"));
+        list.set(0, a);
+        assertSame(a, list.get("A"));
+        assertNull(list.get("C"));
+        list.clear();
+        assertNull(list.get("A"));
+    }
+
+    @Test
+    public void testDuplicates() {
+        IdentifiableList<Item> list = new IdentifiableList<>();
+        Item first = new Item("A");
+        Item second = new Item("A");
+        list.add(first);
+        list.add(second);
+        // Like a linear search, the first one is found.
+        assertSame(first, list.get("A"));
+        list.add(0, second);
+        assertSame(second, list.get("A"));
+        list.remove(0);
+        assertSame(first, list.get("A"));
+        list.remove(0);
+        assertSame(second, list.get("A"));
+    }
+
+    @Test
+    public void testBulkModifications() {
+        IdentifiableList<Item> list = new IdentifiableList<>();
+        Item a = new Item("A");
+        Item b = new Item("B");
+        Item c = new Item("C");
+        list.addAll(Arrays.asList(c, b, a));
+        assertSame(c, list.get("C"));
+        list.removeIf(e -> e == b);
+        assertNull(list.get("B"));
+        list.addAll(1, Arrays.asList(b));
+        assertSame(b, list.get("B"));
+        list.sort(Comparator.comparing(Item::getId));
+        assertSame(a, list.get(0));
+        list.replaceAll(e -> e == c ? new Item("D") : e);
+        assertNull(list.get("C"));
+        assertEquals("D", list.get("D").getId());
+        list.removeAll(Arrays.asList(a));
+        assertNull(list.get("A"));
+        list.retainAll(Arrays.asList(a));
+        assertNull(list.get("B"));
+    }
+
+    @Test
+    public void testSubList() {
+        IdentifiableList<Item> list = new IdentifiableList<>();
+        for (String id : new String[] {"A", "B", "C", "D"}) {
+            list.add(new Item(id));
+        }
+        List<Item> view = list.subList(1, 3);
+        assertEquals("B", view.get(0).getId());
+        view.set(0, new Item("X"));
+        assertNull(list.get("B"));
+        assertEquals("X", list.get("X").getId());
+        view.add(new Item("Y"));
+        assertEquals(3, view.size());
+        assertSame(list.get(3), list.get("Y"));
+        view.removeIf(e -> e.getId().equals("C"));
+        assertNull(list.get("C"));
+        view.clear();
+        assertNull(list.get("X"));
+        assertEquals(2, list.size());
+        assertSame(list.get(1), list.get("D"));
+    }
+
+    @Test
+    public void testRename() {
+        IdentifiableList<Item> list = new IdentifiableList<>();
+        Item a = new Item("A");
+        list.add(a);
+        assertSame(a, list.get("A"));
+        a.setId("B");
+        assertNull(list.get("A"));
+        assertSame(a, list.get("B"));
+    }
+
+    @Test
+    public void testCreateId() {
+        IdentifiableList<Item> list = new IdentifiableList<>();
+        assertEquals("R1", list.createId("R"));
+        // Not added yet, so the same id is created again.
+        assertEquals("R1", list.createId("R"));
+        for (int i = 0; i < 3; i++) {
+            list.add(new Item(list.createId("R")));
+        }
+        assertEquals("R4", list.createId("R"));
+        assertEquals("C1", list.createId("C"));
+        // Gaps are reused.
+        list.remove(list.get("R2"));
+        assertEquals("R2", list.createId("R"));
+        list.add(new Item("R2"));
+        list.add(new Item("R5"));
+        assertEquals("R4", list.createId("R"));
+        list.add(new Item("R4"));
+        assertEquals("R6", list.createId("R"));
+        // Renamed into a gap.
+        list.get("R5").setId("R6");
+        assertEquals("R5", list.createId("R"));
+    }
+}
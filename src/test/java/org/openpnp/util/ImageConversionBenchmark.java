@@ -0,0 +1,80 @@
+package org.openpnp.util;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the round trip of a camera frame from a Mat to a BufferedImage and back to a Mat, as done between
+ * the camera capture and the image transforms, using the copying conversions vs. the SharedImage.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test 
+ * -Dexec.mainClass=org.openpnp.util.ImageConversionBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageConversionBenchmark {
+    @Param({"640x480", "1280x720", "2592x1944"})
+    public String resolution;
+
+    private Mat frame;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        nu.pattern.OpenCV.loadLocally();
+        String[] size = resolution.split("x");
+        frame = new Mat(Integer.parseInt(size[1]), Integer.parseInt(size[0]), CvType.CV_8UC3);
+        Core.randu(frame, 0, 255);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        frame.release();
+    }
+
+    @Benchmark
+    public double copying() {
+        BufferedImage image = OpenCvUtils.toBufferedImage(frame);
+        Mat mat = OpenCvUtils.toMat(image);
+        double value = mat.get(0, 0)[0];
+        mat.release();
+        return value;
+    }
+
+    @Benchmark
+    public double shared() {
+        BufferedImage image = SharedImage.fromMat(frame);
+        Mat mat = OpenCvUtils.toMatView(image);
+        double value = mat.get(0, 0)[0];
+        mat.release();
+        return value;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ImageConversionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,100 @@
+package org.openpnp.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class LaneExecutorTest {
+    private static final long timeout = 5;
+
+    @Test
+    public void testOrderWithinLane() throws Exception {
+        LaneExecutor executor = new LaneExecutor("Test");
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        Future<?> last = null;
+        for (int i = 0; i < 100; i++) {
+            final int n = i;
+            last = executor.submit(() -> order.add(n), "A");
+        }
+        last.get(timeout, TimeUnit.SECONDS);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void testParallelLanes() throws Exception {
+        LaneExecutor executor = new LaneExecutor("Test");
+        CountDownLatch latch = new CountDownLatch(1);
+        // Lane A can only complete, if lane B runs in parallel.
+        Future<Boolean> a = executor.submit(() -> latch.await(timeout, TimeUnit.SECONDS), "A");
+        Future<Object> b = executor.submit(() -> {
+            latch.countDown();
+            return executor.getLane(Thread.currentThread());
+        }, "B");
+        assertTrue(a.get(timeout, TimeUnit.SECONDS));
+        assertEquals("B", b.get(timeout, TimeUnit.SECONDS));
+        assertNull(executor.getLane(Thread.currentThread()));
+    }
+
+    @Test
+    public void testBarrier() throws Exception {
+        LaneExecutor executor = new LaneExecutor("Test");
+        AtomicBoolean aDone = new AtomicBoolean();
+        AtomicBoolean bDone = new AtomicBoolean();
+        AtomicBoolean barrierDone = new AtomicBoolean();
+        executor.submit(() -> {
+            Thread.sleep(100);
+            aDone.set(true);
+            return null;
+        }, "A");
+        executor.submit(() -> {
+            Thread.sleep(50);
+            bDone.set(true);
+            return null;
+        }, "B");
+        Future<Object> barrier = executor.submit(() -> {
+            assertTrue(aDone.get());
+            assertTrue(bDone.get());
+            Thread.sleep(50);
+            barrierDone.set(true);
+            return executor.getLane(Thread.currentThread());
+        }, "B", "A");
+        Future<Boolean> afterA = executor.submit(() -> barrierDone.get(), "A");
+        Future<Boolean> afterB = executor.submit(() -> barrierDone.get(), "B");
+        // Executed on the thread of the first lane.
+        assertEquals("B", barrier.get(timeout, TimeUnit.SECONDS));
+        assertTrue(afterA.get(timeout, TimeUnit.SECONDS));
+        assertTrue(afterB.get(timeout, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancelQueuedTasks() throws Exception {
+        LaneExecutor executor = new LaneExecutor("Test");
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.submit(() -> latch.await(timeout, TimeUnit.SECONDS), "A");
+        Future<Object> queued = executor.submit(() -> null, "A");
+        // The barrier is queued in lane A, but its primary task is in lane B.
+        Future<Object> barrier = executor.submit(() -> null, "B", "A");
+        assertTrue(executor.hasQueuedTasks());
+        executor.cancelQueuedTasks("A");
+        assertTrue(queued.isCancelled());
+        assertTrue(barrier.isCancelled());
+        // Lane B must not be held by the cancelled barrier.
+        assertTrue(executor.submit(() -> true, "B").get(timeout, TimeUnit.SECONDS));
+        latch.countDown();
+        assertTrue(executor.submit(() -> true, "A").get(timeout, TimeUnit.SECONDS));
+        assertFalse(executor.hasQueuedTasks());
+    }
+}
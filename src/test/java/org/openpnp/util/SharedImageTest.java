@@ -0,0 +1,81 @@
+package org.openpnp.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+public class SharedImageTest {
+    /**
+     * Checks that the BufferedImage and the Mat see the same pixels, and that toMat() still returns a copy.
+     */
+    @Test
+    public void testShared() throws Exception {
+        nu.pattern.OpenCV.loadLocally();
+        Mat source = new Mat(48, 64, CvType.CV_8UC3, new Scalar(10, 20, 30));
+        BufferedImage image = SharedImage.fromMat(source);
+        source.release();
+        assertTrue(SharedImage.isShared(image));
+        assertFalse(SharedImage.isShared(OpenCvUtils.toBufferedImage(OpenCvUtils.toMat(image))));
+        assertEquals(64, image.getWidth());
+        assertEquals(48, image.getHeight());
+        // BGR in the Mat is RGB 30, 20, 10 in the image.
+        assertEquals(0x1E140A, image.getRGB(5, 5) & 0xFFFFFF);
+
+        // Writes through the Mat are seen by the image.
+        Mat view = OpenCvUtils.toMatView(image);
+        view.put(5, 5, new byte[] {1, 2, 3});
+        view.release();
+        assertEquals(0x030201, image.getRGB(5, 5) & 0xFFFFFF);
+
+        // Writes through the image are seen by the Mat, but not by a copy.
+        Mat copy = OpenCvUtils.toMat(image);
+        image.setRGB(6, 5, 0x405060);
+        view = SharedImage.getMat(image);
+        assertEquals(0x60, (int) view.get(5, 6)[0]);
+        assertEquals(0x40, (int) view.get(5, 6)[2]);
+        assertEquals(10, (int) copy.get(5, 6)[0]);
+        view.release();
+        copy.release();
+
+        // Java2D can draw it.
+        BufferedImage drawn = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        drawn.getGraphics().drawImage(image, 0, 0, null);
+        assertEquals(0x405060, drawn.getRGB(6, 5) & 0xFFFFFF);
+    }
+
+    /**
+     * Checks that the memory of garbage collected images is reused for new images of the same size.
+     */
+    @Test
+    public void testReuse() throws Exception {
+        nu.pattern.OpenCV.loadLocally();
+        Set<ByteBuffer> buffers = Collections.newSetFromMap(new IdentityHashMap<>());
+        long reusedCount = SharedImage.getReusedCount();
+        boolean reused = false;
+        for (int i = 0; i < 100 && !reused; i++) {
+            Mat source = new Mat(48, 64, CvType.CV_8UC3, new Scalar(i, 20, 30));
+            BufferedImage image = SharedImage.fromMat(source);
+            source.release();
+            // The pixels are those of the new frame, even if the memory is reused.
+            assertEquals((30 << 16) | (20 << 8) | i, image.getRGB(5, 5) & 0xFFFFFF);
+            ByteBuffer buffer = ((SharedImage.SharedDataBuffer) image.getRaster().getDataBuffer()).getBuffer();
+            reused = !buffers.add(buffer);
+            image = null;
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertTrue(reused);
+        assertTrue(SharedImage.getReusedCount() > reusedCount);
+    }
+}
@@ -0,0 +1,145 @@
+package org.openpnp.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Differential test of TextTemplate against sequential TextUtils.substituteVar(), over the command templates that
+ * GcodeDriver.createDefaultCommands() and GcodeDriverSolutions propose for the supported firmware dialects.
+ */
+public class TextTemplateTest {
+    private static final List<String> axisVariables = Arrays.asList("X", "Y", "Z", "Rotation", "A", "B");
+
+    private static List<String> getTemplates() {
+        List<String> templates = new ArrayList<>();
+        // GcodeDriver.createDefaultCommands()
+        templates.add("G92 {XL}{X:%.4f} {YL}{Y:%.4f} {ZL}{Z:%.4f} {RotationL}{Rotation:%.4f} ; Reset current position to given coordinates");
+        templates.add("{Acceleration:M204 S%.1f} G0 {XL}{X:%.4f} {YL}{Y:%.4f} {ZL}{Z:%.4f} {RotationL}{Rotation:%.4f} {FeedRate:F%.1f} ; Send standard Gcode move");
+        // GcodeDriverSolutions MOVE_TO_COMMAND, TinyG, generic, Marlin.
+        for (int dialect = 0; dialect < 3; dialect++) {
+            String command;
+            if (dialect == 0) {
+                command = "M201.3 ";
+                for (String variable : axisVariables) {
+                    command += "{"+variable+"Jerk:"+variable+"%.0f} ";
+                }
+                command += "\n";
+            }
+            else {
+                command = "{Acceleration:M204 S%.2f }";
+                if (dialect == 2) {
+                    command += "\n";
+                }
+            }
+            command += "G1 ";
+            for (String variable : axisVariables) {
+                command += "{"+variable+":"+variable+"%.4f} ";
+            }
+            command += "{FeedRate:F%.0f} ; move to target";
+            templates.add(command);
+        }
+        // GcodeDriverSolutions HOME_COMMAND, TinyG and generic.
+        String home = "G28.2 X0 Y0 Z0 ; Home all axes\nG28.3";
+        for (String variable : axisVariables) {
+            home += " {"+variable+":"+variable+"%.4f}";
+        }
+        home += " ; Set all axes to home coordinates\nG92.1 ; Reset all offsets";
+        templates.add(home);
+        templates.add("{Acceleration:M204 S%.2f ; Initialize acceleration}\nG28 ; Home all axes");
+        // GcodeDriverSolutions SET_GLOBAL_OFFSETS_COMMAND, TinyG and generic.
+        for (String prefix : new String[] { "G28.3 ", "G92 " }) {
+            String command = prefix;
+            for (String variable : axisVariables) {
+                command += "{"+variable+":"+variable+"%.4f} ";
+            }
+            templates.add(command + "; reset coordinates");
+        }
+        // Other variables used in MOVE_TO_COMMANDs.
+        templates.add("{Id} {Name:(%s)} {FeedRateF:F%.2f} {AccelerationF:M204 S%.2f} {XDecreasing:M42 P1 S1} {XIncreasing:M42 P1 S0} {XF:X%.4f} {XJerkMupm3:X%.0f} {Unknown} G1 {X:X%.4f}");
+        // Nested curly brackets as proposed by ActuatorSolutions, and other irregular templates.
+        templates.add("{XDecreasing:M400 <((X:G1 X%%.4f))>} {X:X%.4f} {FeedRate:F%.0f}");
+        templates.add("{{X}Y} {Y:%.4f}} {X:%.4f");
+        templates.add("");
+        templates.add("G1 no variables");
+        return templates;
+    }
+
+    private static Object getValue(String name, Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return null;
+            case 1:
+                if (name.endsWith("L") || name.equals("Id") || name.equals("Name") || name.equals("Unknown")) {
+                    String[] strings = { "X", "N1", "Nozzle $1 \\ {X}" };
+                    return strings[random.nextInt(strings.length)];
+                }
+                if (name.endsWith("Decreasing") || name.endsWith("Increasing")) {
+                    return true;
+                }
+                return (double) random.nextInt(100);
+            case 2:
+                return -0.0;
+            default:
+                return random.nextDouble()*1000 - 500;
+        }
+    }
+
+    @Test
+    public void testRenderEqualsSubstitution() {
+        Random random = new Random(42);
+        List<String> names = new ArrayList<>(Arrays.asList("Id", "Name", "FeedRate", "FeedRateF", "Acceleration",
+                "AccelerationF", "Jerk", "JerkF", "Unknown"));
+        for (String variable : axisVariables) {
+            for (String suffix : new String[] { "", "F", "L", "Decreasing", "Increasing", "Jerk", "JerkMupm3" }) {
+                names.add(variable + suffix);
+            }
+            names.add("BacklashOffset" + variable);
+        }
+        TextTemplate.Values values = new TextTemplate.Values();
+        for (String template : getTemplates()) {
+            TextTemplate textTemplate = TextTemplate.compile(template);
+            for (int i = 0; i < 200; i++) {
+                values.clear();
+                String expected = template;
+                List<String> order = new ArrayList<>(names);
+                Collections.shuffle(order, random);
+                for (String name : order.subList(0, random.nextInt(order.size() + 1))) {
+                    Object value = getValue(name, random);
+                    values.set(name, value);
+                    expected = TextUtils.substituteVar(expected, name, value);
+                }
+                assertEquals(expected, textTemplate.render(values), template);
+            }
+        }
+    }
+
+    @Test
+    public void testFirstValueWins() {
+        TextTemplate template = TextTemplate.compile("G1 {X:X%.2f}");
+        TextTemplate.Values values = new TextTemplate.Values()
+                .set("X", 1.0)
+                .set("X", 2.0);
+        assertEquals("G1 X1.00", template.render(values));
+        values.clear();
+        assertEquals("G1 {X:X%.2f}", template.render(values));
+    }
+
+    @Test
+    public void testHasVariable() {
+        TextTemplate template = TextTemplate.compile("{Acceleration:M204 S%.1f} G0 {XL}{X:%.4f} {XF:%.4f}");
+        assertTrue(template.hasVariable("XF"));
+        assertTrue(template.hasVariable("Acceleration"));
+        assertFalse(template.hasVariable("Y"));
+        assertTrue(template.isCompiled());
+        assertFalse(TextTemplate.compile("{XDecreasing:<((X))>}").isCompiled());
+    }
+}
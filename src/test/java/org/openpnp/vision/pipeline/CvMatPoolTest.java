@@ -0,0 +1,168 @@
+package org.openpnp.vision.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openpnp.vision.FluentCv;
+import org.openpnp.vision.pipeline.CvStage.Result;
+import org.openpnp.vision.pipeline.stages.BlurGaussian;
+import org.openpnp.vision.pipeline.stages.ComposeResult;
+import org.openpnp.vision.pipeline.stages.ConvertColor;
+import org.openpnp.vision.pipeline.stages.DetectEdgesCanny;
+import org.openpnp.vision.pipeline.stages.FindContours;
+import org.openpnp.vision.pipeline.stages.ImageRecall;
+
+public class CvMatPoolTest {
+    static {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void testReuse() {
+        CvMatPool pool = new CvMatPool();
+        Mat mat = pool.borrow(480, 640, CvType.CV_8UC3);
+        assertEquals(0, pool.getHits());
+        assertEquals(480*640*3, pool.getOwnedBytes());
+        pool.recycle(mat);
+        assertSame(mat, pool.borrow(480, 640, CvType.CV_8UC3));
+        assertEquals(1, pool.getHits());
+        // Different type.
+        Mat gray = pool.borrow(480, 640, CvType.CV_8UC1);
+        assertEquals(2, pool.getMisses());
+        assertEquals(480*640*4, pool.getPeakBytes());
+        pool.recycle(mat);
+        pool.recycle(gray);
+        pool.release();
+        assertEquals(0, pool.getOwnedBytes());
+    }
+
+    @Test
+    public void testLimit() {
+        CvMatPool pool = new CvMatPool();
+        pool.setMaxPooledBytes(1000);
+        Mat mat = pool.borrow(100, 100, CvType.CV_8UC1);
+        pool.recycle(mat);
+        assertTrue(mat.empty());
+        assertEquals(0, pool.getOwnedBytes());
+    }
+
+    @Test
+    public void testDoubleRecycle() {
+        CvMatPool pool = new CvMatPool();
+        Mat mat = pool.borrow(480, 640, CvType.CV_8UC3);
+        pool.recycle(mat);
+        // Ignored, the Mat is already pooled.
+        pool.recycle(mat);
+        assertSame(mat, pool.borrow(480, 640, CvType.CV_8UC3));
+        assertNotEquals(mat.dataAddr(), pool.borrow(480, 640, CvType.CV_8UC3).dataAddr());
+        assertEquals(480*640*3*2, pool.getOwnedBytes());
+    }
+
+    /**
+     * ComposeResult returns the stored result image of another stage as the working image. The aliased
+     * Mat must be recycled only once, otherwise the pool hands the same buffer to two borrowers.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAliasedResultImages() throws Exception {
+        try (CvPipeline pipeline = new CvPipeline()) {
+            BlurGaussian blur = new BlurGaussian();
+            blur.setKernelSize(5);
+            pipeline.add("blur", blur);
+            ConvertColor gray = new ConvertColor();
+            gray.setConversion(FluentCv.ColorCode.Bgr2Gray);
+            pipeline.add("gray", gray);
+            pipeline.add("canny", new DetectEdgesCanny());
+            pipeline.add("contours", new FindContours());
+            ComposeResult compose = new ComposeResult();
+            compose.setImageStageName("blur");
+            compose.setModelStageName("contours");
+            pipeline.add("compose", compose);
+            ConvertColor gray2 = new ConvertColor();
+            gray2.setConversion(FluentCv.ColorCode.Bgr2Gray);
+            pipeline.add("gray2", gray2);
+            ComposeResult result = new ComposeResult();
+            result.setImageStageName("gray");
+            result.setModelStageName("contours");
+            pipeline.add("result", result);
+            for (int i = 0; i < 3; i++) {
+                pipeline.process();
+                // No two live images may share a buffer.
+                Map<Long, String> buffers = new HashMap<>();
+                for (CvStage stage : pipeline.getStages()) {
+                    Mat image = pipeline.getResult(stage).image;
+                    assertNotNull(image, stage.getName());
+                    String other = buffers.put(image.dataAddr(), stage.getName());
+                    assertNull(other, stage.getName()+" shares its image with "+other);
+                }
+                Mat working = pipeline.getWorkingImage();
+                String other = buffers.get(working.dataAddr());
+                assertTrue(other == null || pipeline.getResult(other).image == working, 
+                        "working image shares its buffer with "+other);
+                // The results are still intact.
+                assertEquals(3, pipeline.getResult("compose").image.channels());
+                assertEquals(1, pipeline.getResult("gray2").image.channels());
+            }
+        }
+    }
+
+    private CvPipeline createPipeline() {
+        CvPipeline pipeline = new CvPipeline();
+        BlurGaussian blur = new BlurGaussian();
+        blur.setKernelSize(5);
+        pipeline.add("blur", blur);
+        ConvertColor gray = new ConvertColor();
+        gray.setConversion(FluentCv.ColorCode.Bgr2Gray);
+        pipeline.add("gray", gray);
+        DetectEdgesCanny canny = new DetectEdgesCanny();
+        pipeline.add("canny", canny);
+        pipeline.add("contours", new FindContours());
+        ImageRecall recall = new ImageRecall();
+        recall.setImageStageName("blur");
+        pipeline.add("recall", recall);
+        return pipeline;
+    }
+
+    @Test
+    public void testReleaseIntermediateImages() throws Exception {
+        try (CvPipeline retained = createPipeline(); CvPipeline released = createPipeline()) {
+            released.setReleaseIntermediateImages(true);
+            retained.process();
+            released.process();
+            for (CvStage stage : retained.getStages()) {
+                Result expected = retained.getResult(stage);
+                Result actual = released.getResult(stage.getName());
+                assertNotNull(expected.image, stage.getName());
+                assertNull(actual.image, stage.getName());
+                assertEquals(expected.colorSpace, actual.colorSpace, stage.getName());
+                if (expected.model instanceof List) {
+                    assertEquals(((List<?>) expected.model).size(), ((List<?>) actual.model).size(), stage.getName());
+                }
+            }
+            Mat expected = retained.getWorkingImage();
+            Mat actual = released.getWorkingImage();
+            byte[] expectedBytes = new byte[(int) (expected.total()*expected.elemSize())];
+            byte[] actualBytes = new byte[(int) (actual.total()*actual.elemSize())];
+            expected.get(0, 0, expectedBytes);
+            actual.get(0, 0, actualBytes);
+            assertArrayEquals(expectedBytes, actualBytes);
+
+            // The second run reuses the buffers of the first.
+            retained.process();
+            assertTrue(retained.getMatPool().getHitRate() > 0.5, "hit rate "+retained.getMatPool().getHitRate());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.openpnp.vision.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Mat;
+import org.openpnp.vision.FluentCv;
+import org.openpnp.vision.pipeline.CvStage.Result;
+import org.openpnp.vision.pipeline.stages.Add;
+import org.openpnp.vision.pipeline.stages.BlurGaussian;
+import org.openpnp.vision.pipeline.stages.ConvertColor;
+import org.openpnp.vision.pipeline.stages.DetectEdgesCanny;
+import org.openpnp.vision.pipeline.stages.FindContours;
+import org.openpnp.vision.pipeline.stages.ImageRecall;
+import org.openpnp.vision.pipeline.stages.Threshold;
+
+public class CvPipelineSchedulerTest {
+    /**
+     * Two branches from a common blurred gray image, joined by an Add stage.
+     */
+    private CvPipeline createPipeline() {
+        CvPipeline pipeline = new CvPipeline();
+        BlurGaussian blur = new BlurGaussian();
+        blur.setKernelSize(5);
+        pipeline.add("blur", blur);
+        ConvertColor gray = new ConvertColor();
+        gray.setConversion(FluentCv.ColorCode.Bgr2Gray);
+        pipeline.add("gray", gray);
+        Threshold threshold = new Threshold();
+        threshold.setThreshold(10);
+        pipeline.add("threshold", threshold);
+        ImageRecall recall = new ImageRecall();
+        recall.setImageStageName("gray");
+        pipeline.add("recall", recall);
+        DetectEdgesCanny canny = new DetectEdgesCanny();
+        canny.setThreshold1(20);
+        canny.setThreshold2(60);
+        pipeline.add("canny", canny);
+        Add add = new Add();
+        add.setFirstStageName("threshold");
+        add.setSecondStageName("canny");
+        pipeline.add("add", add);
+        pipeline.add("contours", new FindContours());
+        return pipeline;
+    }
+
+    @Test
+    public void testDependencies() {
+        CvPipeline pipeline = createPipeline();
+        assertTrue(CvPipelineScheduler.isSource(pipeline.getStage("recall")));
+        assertFalse(CvPipelineScheduler.isSource(pipeline.getStage("canny")));
+        assertFalse(CvPipelineScheduler.isBarrier(pipeline.getStage("canny")));
+        List<CvStage> referencedStages = CvPipelineScheduler.getReferencedStages(pipeline, pipeline.getStage("add"));
+        assertEquals(2, referencedStages.size());
+        assertTrue(referencedStages.contains(pipeline.getStage("threshold")));
+        assertTrue(referencedStages.contains(pipeline.getStage("canny")));
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+        try (CvPipeline sequential = createPipeline(); CvPipeline parallel = createPipeline()) {
+            parallel.setParallelExecution(true);
+            sequential.process();
+            parallel.process();
+            for (CvStage stage : sequential.getStages()) {
+                Result expected = sequential.getResult(stage);
+                Result actual = parallel.getResult(stage.getName());
+                assertEquals(expected.colorSpace, actual.colorSpace, stage.getName());
+                assertArrayEquals(getBytes(expected.image), getBytes(actual.image), stage.getName());
+                assertEquals(expected.model == null, actual.model == null, stage.getName());
+                if (expected.model instanceof List) {
+                    assertEquals(((List<?>) expected.model).size(), ((List<?>) actual.model).size(), stage.getName());
+                }
+            }
+            assertArrayEquals(getBytes(sequential.getWorkingImage()), getBytes(parallel.getWorkingImage()));
+            assertEquals(sequential.getWorkingColorSpace(), parallel.getWorkingColorSpace());
+        }
+    }
+
+    private static byte[] getBytes(Mat mat) {
+        byte[] bytes = new byte[(int) (mat.total() * mat.elemSize())];
+        mat.get(0, 0, bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,151 @@
+package org.openpnp.vision.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.openpnp.model.Footprint;
+import org.openpnp.vision.FluentCv;
+import org.openpnp.vision.pipeline.CvStage.Result;
+import org.openpnp.vision.pipeline.stages.BlurGaussian;
+import org.openpnp.vision.pipeline.stages.ConvertColor;
+import org.openpnp.vision.pipeline.stages.DetectEdgesCanny;
+import org.openpnp.vision.pipeline.stages.FindContours;
+import org.openpnp.vision.pipeline.stages.ImageRead;
+import org.openpnp.vision.pipeline.stages.ImageRecall;
+import org.openpnp.vision.pipeline.stages.ReadPartTemplateImage;
+
+public class CvResultCacheTest {
+    private static File imageFile;
+
+    @BeforeAll
+    public static void createImage() throws Exception {
+        nu.pattern.OpenCV.loadLocally();
+        Mat image = new Mat(480, 640, CvType.CV_8UC3, new Scalar(20, 20, 20));
+        Imgproc.circle(image, new Point(320, 240), 50, new Scalar(200, 200, 200), -1);
+        Imgproc.rectangle(image, new Point(100, 100), new Point(160, 130), new Scalar(0, 0, 255), -1);
+        imageFile = File.createTempFile("CvResultCacheTest", ".png");
+        imageFile.deleteOnExit();
+        Imgcodecs.imwrite(imageFile.getAbsolutePath(), image);
+        image.release();
+    }
+
+    private CvPipeline createPipeline() {
+        CvPipeline pipeline = new CvPipeline();
+        ImageRead read = new ImageRead();
+        read.setFile(imageFile);
+        pipeline.add("read", read);
+        BlurGaussian blur = new BlurGaussian();
+        blur.setKernelSize(5);
+        pipeline.add("blur", blur);
+        ConvertColor gray = new ConvertColor();
+        gray.setConversion(FluentCv.ColorCode.Bgr2Gray);
+        pipeline.add("gray", gray);
+        pipeline.add("canny", new DetectEdgesCanny());
+        pipeline.add("contours", new FindContours());
+        ImageRecall recall = new ImageRecall();
+        recall.setImageStageName("blur");
+        pipeline.add("recall", recall);
+        return pipeline;
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        try (CvPipeline cached = createPipeline(); CvPipeline uncached = createPipeline()) {
+            cached.setResultCacheMaxBytes(CvResultCache.DEFAULT_MAX_BYTES);
+            CvResultCache cache = cached.getResultCache();
+            cached.process();
+            assertEquals(0, cache.getHits());
+            assertEquals(5, cache.getMisses());
+
+            // Unchanged, all stages are reused.
+            cached.process();
+            assertEquals(5, cache.getHits());
+            uncached.process();
+            assertSameResults(uncached, cached);
+
+            // Changing a stage property invalidates the stage and the stages after it.
+            ((DetectEdgesCanny) cached.getStage("canny")).setThreshold1(10);
+            ((DetectEdgesCanny) uncached.getStage("canny")).setThreshold1(10);
+            cached.process();
+            // blur and gray reused, canny, contours and recall (referencing blur but working on the canny image) not.
+            assertEquals(7, cache.getHits());
+            cached.process();
+            assertEquals(12, cache.getHits());
+            uncached.process();
+            assertSameResults(uncached, cached);
+
+            // Changing a pipeline property invalidates all.
+            cached.setProperty("MaskCircle.diameter", 10);
+            cached.process();
+            assertEquals(12, cache.getHits());
+
+            cached.setResultCacheMaxBytes(0);
+            assertEquals(0, cache.getBytes());
+        }
+    }
+
+    /**
+     * Object valued pipeline properties are fingerprinted by their serialized values, not by identity.
+     */
+    @Test
+    public void testPropertiesFingerprint() {
+        Footprint footprint = new Footprint();
+        footprint.setBodyWidth(1.0);
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("footprint", footprint);
+        long fingerprint = CvResultCache.getPropertiesFingerprint(properties);
+        assertEquals(fingerprint, CvResultCache.getPropertiesFingerprint(properties));
+
+        // Changed in place.
+        footprint.setBodyWidth(2.0);
+        long changedFingerprint = CvResultCache.getPropertiesFingerprint(properties);
+        assertNotEquals(fingerprint, changedFingerprint);
+
+        // An equal copy.
+        Footprint copy = new Footprint();
+        copy.setBodyWidth(2.0);
+        properties.put("footprint", copy);
+        assertEquals(changedFingerprint, CvResultCache.getPropertiesFingerprint(properties));
+    }
+
+    @Test
+    public void testUncacheableStages() {
+        assertFalse(CvResultCache.isCacheable(new ImageRead()));
+        assertFalse(CvResultCache.isCacheable(new ReadPartTemplateImage()));
+    }
+
+    private static void assertSameResults(CvPipeline expectedPipeline, CvPipeline actualPipeline) {
+        for (CvStage stage : expectedPipeline.getStages()) {
+            Result expected = expectedPipeline.getResult(stage);
+            Result actual = actualPipeline.getResult(stage.getName());
+            assertEquals(expected.colorSpace, actual.colorSpace, stage.getName());
+            assertArrayEquals(getBytes(expected.image), getBytes(actual.image), stage.getName());
+            if (expected.model instanceof List) {
+                assertEquals(((List<?>) expected.model).size(), ((List<?>) actual.model).size(), stage.getName());
+            }
+        }
+        assertArrayEquals(getBytes(expectedPipeline.getWorkingImage()), getBytes(actualPipeline.getWorkingImage()));
+        assertEquals(expectedPipeline.getWorkingColorSpace(), actualPipeline.getWorkingColorSpace());
+    }
+
+    private static byte[] getBytes(Mat mat) {
+        byte[] bytes = new byte[(int) (mat.total()*mat.elemSize())];
+        mat.get(0, 0, bytes);
+        return bytes;
+    }
+}